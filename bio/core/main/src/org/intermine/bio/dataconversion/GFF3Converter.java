@@ -25,6 +25,7 @@ import java.util.Set;
 
 import org.apache.log4j.Logger;
 import org.intermine.bio.io.gff3.GFF3Parser;
+import org.intermine.bio.io.gff3.GFF3PipelinedParser;
 import org.intermine.bio.io.gff3.GFF3Record;
 import org.intermine.bio.util.BioConverterUtil;
 import org.intermine.dataconversion.DataConverter;
@@ -57,6 +58,8 @@ public class GFF3Converter extends DataConverter
     private GFF3RecordHandler handler;
     private GFF3SeqHandler sequenceHandler;
     private boolean dontCreateLocations;
+    private int parserThreads = 0;
+    private long recordCount = 0;
     private final Map<String, Item> dataSets = new HashMap<String, Item>();
     private final Map<String, Item> dataSources = new HashMap<String, Item>();
 
@@ -200,35 +203,57 @@ public class GFF3Converter extends DataConverter
      */
     public void parse(BufferedReader bReader)  throws IOException, ObjectStoreException {
         GFF3Record record;
-        long start, now, opCount;
+        long start, now, opCount, parseStart;
 
         opCount = 0;
         start = System.currentTimeMillis();
+        parseStart = start;
         boolean duplicates = false;
         Set<String> processedIds = new HashSet<String>();
         Set<String> duplicatedIds = new HashSet<String>();
-        for (Iterator<?> i = GFF3Parser.parse(bReader); i.hasNext();) {
-            record = (GFF3Record) i.next();
-
-            // we only care about dupes if we are NOT creating locations
-            if (processedIds.contains(record.getId()) && dontCreateLocations) {
-                duplicates = true;
-                duplicatedIds.add(record.getId());
-            } else {
-                if (record.getId() != null) {
-                    processedIds.add(record.getId());
+        Iterator<?> records;
+        GFF3PipelinedParser pipeline = null;
+        if (parserThreads > 0) {
+            pipeline = new GFF3PipelinedParser(bReader, parserThreads,
+                    GFF3PipelinedParser.DEFAULT_CHUNK_SIZE);
+            records = pipeline;
+        } else {
+            records = GFF3Parser.parse(bReader);
+        }
+        try {
+            while (records.hasNext()) {
+                record = (GFF3Record) records.next();
+
+                // we only care about dupes if we are NOT creating locations
+                if (processedIds.contains(record.getId()) && dontCreateLocations) {
+                    duplicates = true;
+                    duplicatedIds.add(record.getId());
+                } else {
+                    if (record.getId() != null) {
+                        processedIds.add(record.getId());
+                    }
+                }
+                if (!duplicates) {
+                    process(record);
+                }
+                opCount++;
+                if (opCount % 1000 == 0) {
+                    now = System.currentTimeMillis();
+                    LOG.info("processed " + opCount + " lines --took " + (now - start) + " ms");
+                    start = System.currentTimeMillis();
                 }
             }
-            if (!duplicates) {
-                process(record);
-            }
-            opCount++;
-            if (opCount % 1000 == 0) {
-                now = System.currentTimeMillis();
-                LOG.info("processed " + opCount + " lines --took " + (now - start) + " ms");
-                start = System.currentTimeMillis();
+        } finally {
+            if (pipeline != null) {
+                pipeline.close();
             }
         }
+        recordCount += opCount;
+        long took = System.currentTimeMillis() - parseStart;
+        LOG.info("processed " + opCount + " records in " + took + " ms ("
+                + (opCount * 1000 / Math.max(took, 1)) + " records/second, "
+                + (parserThreads > 0 ? parserThreads + " parser threads" : "single threaded")
+                + ")");
         if (duplicates) {
             LOG.error("Duplicated IDs in GFF file: " + duplicatedIds);
             throw new IllegalArgumentException("Duplicated IDs in GFF file: " + duplicatedIds);
@@ -710,6 +735,24 @@ public class GFF3Converter extends DataConverter
         this.dontCreateLocations = dontCreateLocations;
     }
 
+    /**
+     * Set the number of threads used to split and decode GFF3 lines. If zero, the default, lines
+     * are parsed in the thread that creates the Items. Records are always processed in file
+     * order, whatever the number of threads.
+     * @param parserThreads the number of parser threads
+     */
+    public void setParserThreads(int parserThreads) {
+        this.parserThreads = parserThreads;
+    }
+
+    /**
+     * Return the total number of GFF3 records read by all calls to parse().
+     * @return the number of records
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
     /**
      * Create and add a synonym Item from the given information.
      * @param subject the subject of the new Synonym
@@ -0,0 +1,201 @@
+package org.intermine.bio.io.fasta;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.intermine.objectstore.query.ClobAccess;
+
+/**
+ * Writes sequences in FASTA format, streaming the residues to the output as they are read rather
+ * than building a String or BioJava Sequence of each one first. The residues of a ClobAccess are
+ * read a window of clob pages at a time, so the memory used does not depend on the length of the
+ * sequences. Residue lines are wrapped as they are written, at 60 characters by default, the
+ * same as BioJava.
+ *
+ * @author julie
+ */
+public class FastaWriter
+{
+    /** The default number of residues on each line. */
+    public static final int DEFAULT_LINE_LENGTH = 60;
+
+    private static final String ENCODING = "UTF-8";
+    private static final int BUFFER_SIZE = 65536;
+
+    private final OutputStream out;
+    private final LineWrappingOutputStream wrapper;
+    private final PrintStream residues;
+    private final GZIPOutputStream gzip;
+
+    /**
+     * Create a writer with the default line length.
+     *
+     * @param out the stream to write to
+     */
+    public FastaWriter(OutputStream out) {
+        this(out, DEFAULT_LINE_LENGTH, false);
+    }
+
+    /**
+     * Create a writer.
+     *
+     * @param out the stream to write to
+     * @param lineLength the number of residues on each line
+     * @param doGzip true to compress the output with gzip, in which case close() or finish() must
+     * be called at the end
+     * @throws IllegalArgumentException if lineLength is not positive
+     */
+    public FastaWriter(OutputStream out, int lineLength, boolean doGzip) {
+        if (lineLength < 1) {
+            throw new IllegalArgumentException("lineLength must be positive: " + lineLength);
+        }
+        try {
+            if (doGzip) {
+                gzip = new GZIPOutputStream(out, BUFFER_SIZE);
+                this.out = new BufferedOutputStream(gzip, BUFFER_SIZE);
+            } else {
+                gzip = null;
+                this.out = new BufferedOutputStream(out, BUFFER_SIZE);
+            }
+            wrapper = new LineWrappingOutputStream(this.out, lineLength);
+            residues = new PrintStream(wrapper, false, ENCODING);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not create FASTA output stream", e);
+        }
+    }
+
+    /**
+     * Write a sequence. The residues of a ClobAccess are streamed from the database a window of
+     * pages at a time.
+     *
+     * @param header the description line, without the leading &gt;, or null for none
+     * @param sequence the residues
+     * @throws IOException if the output cannot be written
+     */
+    public void writeSequence(String header, CharSequence sequence) throws IOException {
+        out.write('>');
+        if (header != null) {
+            out.write(header.replace('\n', ' ').getBytes(ENCODING));
+        }
+        out.write('\n');
+        wrapper.startSequence();
+        if (sequence instanceof ClobAccess) {
+            ((ClobAccess) sequence).drainToPrintStream(residues);
+        } else {
+            residues.append(sequence);
+        }
+        residues.flush();
+        if (residues.checkError()) {
+            throw new IOException("Error writing sequence " + header);
+        }
+        wrapper.endSequence();
+    }
+
+    /**
+     * Write text, such as a message, directly to the output.
+     *
+     * @param text the text
+     * @throws IOException if the output cannot be written
+     */
+    public void writeText(String text) throws IOException {
+        out.write(text.getBytes(ENCODING));
+    }
+
+    /**
+     * Flush the output, and finish the gzip stream if the output is compressed. The underlying
+     * stream is not closed.
+     *
+     * @throws IOException if the output cannot be written
+     */
+    public void finish() throws IOException {
+        out.flush();
+        if (gzip != null) {
+            gzip.finish();
+        }
+        out.flush();
+    }
+
+    /**
+     * Finish the output and close the underlying stream.
+     *
+     * @throws IOException if the output cannot be written
+     */
+    public void close() throws IOException {
+        finish();
+        out.close();
+    }
+
+    /**
+     * An OutputStream that starts a new line after every lineLength bytes of a sequence.
+     */
+    private static class LineWrappingOutputStream extends FilterOutputStream
+    {
+        private final int lineLength;
+        private int column = 0;
+
+        LineWrappingOutputStream(OutputStream out, int lineLength) {
+            super(out);
+            this.lineLength = lineLength;
+        }
+
+        void startSequence() {
+            column = 0;
+        }
+
+        void endSequence() throws IOException {
+            if (column > 0) {
+                out.write('\n');
+            }
+            column = 0;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (column == lineLength) {
+                out.write('\n');
+                column = 0;
+            }
+            out.write(b);
+            column++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (column == lineLength) {
+                    out.write('\n');
+                    column = 0;
+                }
+                int chunk = Math.min(len, lineLength - column);
+                out.write(b, off, chunk);
+                column += chunk;
+                off += chunk;
+                len -= chunk;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // The FastaWriter flushes the underlying stream itself
+        }
+
+        @Override
+        public void close() {
+            // The FastaWriter closes the underlying stream itself
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package org.intermine.bio.io.gff3;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A GFF3 parser that splits and decodes lines on several worker threads, while returning the
+ * GFF3Records in the same order as GFF3Parser would.
+ * <p>
+ * A reader thread reads the file in chunks of lines, each of which is handed to the worker pool
+ * to be turned into GFF3Records. The Futures for the chunks are queued in file order, so the
+ * consumer of this Iterator sees an ordered stream, and the queue is bounded so that the reader
+ * cannot get far ahead of the consumer. The line buffers are recycled once a chunk has been
+ * parsed.
+ * <p>
+ * Callers must call close() when they stop iterating early, so that the threads are stopped.
+ *
+ * @author julie
+ */
+public class GFF3PipelinedParser implements Iterator<GFF3Record>
+{
+    private static final Logger LOG = Logger.getLogger(GFF3PipelinedParser.class);
+    private static final AtomicInteger PARSER_COUNT = new AtomicInteger(0);
+
+    /**
+     * The default number of lines handed to a worker thread at once.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private final BufferedReader reader;
+    private final int chunkSize;
+    private final ExecutorService workers;
+    private final BlockingQueue<Future<List<GFF3Record>>> chunks;
+    private final BlockingQueue<String[]> freeBuffers;
+    private final Thread readerThread;
+    private volatile boolean closed = false;
+
+    private Iterator<GFF3Record> current = Collections.<GFF3Record>emptyList().iterator();
+    private boolean finished = false;
+
+    /**
+     * Construct a GFF3PipelinedParser and start reading from the given reader.
+     *
+     * @param reader the Reader to read GFF3 lines from
+     * @param threads the number of worker threads that parse lines
+     * @param chunkSize the number of lines handed to a worker at once
+     */
+    public GFF3PipelinedParser(BufferedReader reader, int threads, int chunkSize) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive, got " + threads);
+        }
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive, got " + chunkSize);
+        }
+        this.reader = reader;
+        this.chunkSize = chunkSize;
+        final String name = "GFF3PipelinedParser-" + PARSER_COUNT.incrementAndGet();
+        workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private int count = 0;
+            @Override
+            public synchronized Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name + "-worker-" + (++count));
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        // Enough chunks in flight to keep every worker busy while the consumer catches up
+        chunks = new ArrayBlockingQueue<Future<List<GFF3Record>>>(threads * 2);
+        freeBuffers = new ArrayBlockingQueue<String[]>(threads * 2 + 2);
+        readerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                readChunks();
+            }
+        }, name + "-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    /**
+     * Reads lines into chunks and submits them to the workers, in the reader thread. The end of
+     * the input, or an error, is signalled by a completed Future in the queue.
+     */
+    private void readChunks() {
+        try {
+            String[] buffer = newBuffer();
+            int count = 0;
+            String line;
+            while ((!closed) && ((line = reader.readLine()) != null)) {
+                if (line.startsWith(">")) {
+                    // The start of the FASTA section, which is handled by the sequence handler
+                    break;
+                }
+                String trimmedLine = line.trim();
+                if (trimmedLine.length() == 0 || trimmedLine.startsWith("#")) {
+                    continue;
+                }
+                buffer[count++] = line;
+                if (count == chunkSize) {
+                    chunks.put(workers.submit(new ChunkParser(buffer, count)));
+                    buffer = newBuffer();
+                    count = 0;
+                }
+            }
+            if (count > 0) {
+                chunks.put(workers.submit(new ChunkParser(buffer, count)));
+            }
+            chunks.put(completed(new Callable<List<GFF3Record>>() {
+                @Override
+                public List<GFF3Record> call() {
+                    return null;
+                }
+            }));
+        } catch (final IOException e) {
+            try {
+                chunks.put(completed(new Callable<List<GFF3Record>>() {
+                    @Override
+                    public List<GFF3Record> call() throws IOException {
+                        throw e;
+                    }
+                }));
+            } catch (InterruptedException e2) {
+                // We have been closed, so nobody is waiting for the error
+            }
+        } catch (InterruptedException e) {
+            // We have been closed
+        }
+    }
+
+    private String[] newBuffer() {
+        String[] retval = freeBuffers.poll();
+        return (retval == null ? new String[chunkSize] : retval);
+    }
+
+    private static Future<List<GFF3Record>> completed(Callable<List<GFF3Record>> callable) {
+        FutureTask<List<GFF3Record>> retval = new FutureTask<List<GFF3Record>>(callable);
+        retval.run();
+        return retval;
+    }
+
+    /**
+     * Parses a chunk of lines into GFF3Records, in a worker thread.
+     */
+    private class ChunkParser implements Callable<List<GFF3Record>>
+    {
+        private final String[] lines;
+        private final int count;
+
+        ChunkParser(String[] lines, int count) {
+            this.lines = lines;
+            this.count = count;
+        }
+
+        @Override
+        public List<GFF3Record> call() throws IOException {
+            List<GFF3Record> records = new ArrayList<GFF3Record>(count);
+            for (int i = 0; i < count; i++) {
+                records.add(new GFF3Record(lines[i]));
+                lines[i] = null;
+            }
+            freeBuffers.offer(lines);
+            return records;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasNext() {
+        while ((!current.hasNext()) && (!finished)) {
+            if (closed) {
+                throw new IllegalStateException("GFF3PipelinedParser has been closed");
+            }
+            try {
+                List<GFF3Record> records = chunks.take().get();
+                if (records == null) {
+                    finished = true;
+                    close();
+                } else {
+                    current = records.iterator();
+                }
+            } catch (InterruptedException e) {
+                close();
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for GFF records", e);
+            } catch (ExecutionException e) {
+                close();
+                throw new RuntimeException("IOException while getting next GFF record",
+                        e.getCause());
+            }
+        }
+        return current.hasNext();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public GFF3Record next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("remove not supported");
+    }
+
+    /**
+     * Stops the reader and worker threads. Records that have already been parsed can still be
+     * read from the current chunk, but no more will be fetched. This method may be called more
+     * than once.
+     */
+    public void close() {
+        if (!closed) {
+            closed = true;
+            readerThread.interrupt();
+            workers.shutdownNow();
+            chunks.clear();
+            if (!finished) {
+                LOG.info("GFF3PipelinedParser closed before the end of the input");
+            }
+        }
+    }
+}
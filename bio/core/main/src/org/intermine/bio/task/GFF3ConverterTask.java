@@ -54,6 +54,8 @@ public class GFF3ConverterTask extends Task
 
     private boolean dontCreateLocations = false;
 
+    private int parserThreads = 0;
+
      /**
      * Set the data fileset
      * @param fs the fileset
@@ -154,6 +156,15 @@ public class GFF3ConverterTask extends Task
         this.dontCreateLocations = dontCreateLocations;
     }
 
+    /**
+     * Set the number of threads used to parse GFF3 lines, the default is 0 - parse in the same
+     * thread that creates items.
+     * @param parserThreads the number of parser threads
+     */
+    public void setParserThreads(int parserThreads) {
+        this.parserThreads = parserThreads;
+    }
+
     /**
      * @see Task#execute()
      */
@@ -230,6 +241,7 @@ public class GFF3ConverterTask extends Task
             if (dontCreateLocations) {
                 gff3converter.setDontCreateLocations(dontCreateLocations);
             }
+            gff3converter.setParserThreads(parserThreads);
             DirectoryScanner ds = fileSet.getDirectoryScanner(getProject());
             String[] files = ds.getIncludedFiles();
             if (files.length == 0) {
@@ -238,7 +250,13 @@ public class GFF3ConverterTask extends Task
             for (int i = 0; i < files.length; i++) {
                 File f = new File(ds.getBasedir(), files[i]);
                 System.err .println("Processing file: " + f.getName());
+                long start = System.currentTimeMillis();
+                long startCount = gff3converter.getRecordCount();
                 gff3converter.parse(new BufferedReader(new FileReader(f)));
+                long records = gff3converter.getRecordCount() - startCount;
+                long took = Math.max(System.currentTimeMillis() - start, 1);
+                log("Processed " + records + " records from " + f.getName() + " in " + took
+                        + " ms (" + (records * 1000 / took) + " records/second)");
             }
             gff3converter.storeAll();
             gff3converter.close();
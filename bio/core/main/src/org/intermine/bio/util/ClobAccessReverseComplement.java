@@ -41,6 +41,8 @@ public class ClobAccessReverseComplement extends ClobAccess
         clob = ca.getClob();
         offset = ca.getOffset();
         length = ca.getLengthWithoutInit();
+        lengthKnown = ca.isLengthKnown();
+        packed = ca.isPacked();
         subSequence = ca.getSubSequence();
     }
 
@@ -133,10 +135,13 @@ public class ClobAccessReverseComplement extends ClobAccess
     public String toString() {
         init();
         StringBuilder retval = new StringBuilder();
+        if (length == 0) {
+            return "";
+        }
         int lowestPage = offset / CLOB_PAGE_SIZE;
         int highestPage = (offset + length - 1) / CLOB_PAGE_SIZE;
         for (int page = highestPage; page >= lowestPage; page--) {
-            String pageText = (String) results.get(page);
+            String pageText = getPage(page);
             if (page == highestPage) {
                 pageText = pageText.substring(0, offset + length - page * CLOB_PAGE_SIZE);
             }
@@ -157,11 +162,14 @@ public class ClobAccessReverseComplement extends ClobAccess
     @Override
     public void drainToPrintStream(PrintStream out) {
         init();
+        if (length == 0) {
+            return;
+        }
         int lowestPage = offset / CLOB_PAGE_SIZE;
         int highestPage = (offset + length - 1) / CLOB_PAGE_SIZE;
         for (int page = highestPage; page >= lowestPage; page--) {
             StringBuilder retval = new StringBuilder();
-            String pageText = (String) results.get(page);
+            String pageText = getPage(page);
             if (page == highestPage) {
                 pageText = pageText.substring(0, offset + length - page * CLOB_PAGE_SIZE);
             }
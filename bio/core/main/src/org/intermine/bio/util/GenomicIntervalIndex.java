@@ -0,0 +1,398 @@
+package org.intermine.bio.util;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+import org.apache.log4j.Logger;
+import org.intermine.metadata.ClassDescriptor;
+import org.intermine.metadata.ConstraintOp;
+import org.intermine.metadata.Model;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.query.ConstraintSet;
+import org.intermine.objectstore.query.ContainsConstraint;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.QueryClass;
+import org.intermine.objectstore.query.QueryField;
+import org.intermine.objectstore.query.QueryObjectReference;
+import org.intermine.objectstore.query.Results;
+import org.intermine.objectstore.query.ResultsRow;
+
+/**
+ * An in-memory index of the chromosome locations of all sequence features in a production
+ * database, by organism and chromosome, for answering overlap queries without going to the
+ * database. It is meant for read-only webapps, as it does not see changes made after it is built.
+ * <p>
+ * The index is built from the Location, SequenceFeature, Chromosome and Organism classes of the
+ * model by name, so it does not need the compiled model. Each chromosome is an IntervalIndex of
+ * the start, end, id and class of its features.
+ *
+ * @author julie
+ */
+public class GenomicIntervalIndex
+{
+    private static final Logger LOG = Logger.getLogger(GenomicIntervalIndex.class);
+    private static final Map<ObjectStore, GenomicIntervalIndex> INDEXES =
+        new WeakHashMap<ObjectStore, GenomicIntervalIndex>();
+
+    // organism short name -> lower case chromosome primaryIdentifier -> index
+    private final Map<String, Map<String, IntervalIndex>> chromosomes =
+        new TreeMap<String, Map<String, IntervalIndex>>();
+    private final Map<Integer, String> taxonIdToOrganism = new HashMap<Integer, String>();
+    private final List<String> classNames = new ArrayList<String>();
+    private long buildTime;
+
+    /**
+     * Returns the index registered for an ObjectStore.
+     *
+     * @param os the ObjectStore
+     * @return the index, or null if none has been built, in which case callers should use the
+     * database
+     */
+    public static GenomicIntervalIndex getIndex(ObjectStore os) {
+        synchronized (INDEXES) {
+            return INDEXES.get(os);
+        }
+    }
+
+    /**
+     * Registers an index for an ObjectStore, or removes it.
+     *
+     * @param os the ObjectStore
+     * @param index the index, or null to make callers go back to using the database
+     */
+    public static void setIndex(ObjectStore os, GenomicIntervalIndex index) {
+        synchronized (INDEXES) {
+            if (index == null) {
+                INDEXES.remove(os);
+            } else {
+                INDEXES.put(os, index);
+            }
+        }
+    }
+
+    /**
+     * Reads the locations of all sequence features on chromosomes from an ObjectStore.
+     *
+     * @param os the ObjectStore to read from
+     * @return a new index
+     * @throws ObjectStoreException if the locations cannot be read
+     */
+    public static GenomicIntervalIndex build(ObjectStore os) throws ObjectStoreException {
+        long start = System.currentTimeMillis();
+        Model model = os.getModel();
+        QueryClass qcLoc = new QueryClass(getType(model, "Location"));
+        QueryClass qcFeature = new QueryClass(getType(model, "SequenceFeature"));
+        QueryClass qcChr = new QueryClass(getType(model, "Chromosome"));
+        QueryClass qcOrg = new QueryClass(getType(model, "Organism"));
+
+        Query q = new Query();
+        q.addFrom(qcLoc);
+        q.addFrom(qcFeature);
+        q.addFrom(qcChr);
+        q.addFrom(qcOrg);
+        q.addToSelect(new QueryField(qcOrg, "shortName"));
+        q.addToSelect(new QueryField(qcOrg, "taxonId"));
+        q.addToSelect(new QueryField(qcChr, "primaryIdentifier"));
+        q.addToSelect(new QueryField(qcLoc, "start"));
+        q.addToSelect(new QueryField(qcLoc, "end"));
+        q.addToSelect(new QueryField(qcFeature, "id"));
+        q.addToSelect(new QueryField(qcFeature, "class"));
+        ConstraintSet cs = new ConstraintSet(ConstraintOp.AND);
+        cs.addConstraint(new ContainsConstraint(new QueryObjectReference(qcLoc, "feature"),
+                    ConstraintOp.CONTAINS, qcFeature));
+        cs.addConstraint(new ContainsConstraint(new QueryObjectReference(qcLoc, "locatedOn"),
+                    ConstraintOp.CONTAINS, qcChr));
+        cs.addConstraint(new ContainsConstraint(new QueryObjectReference(qcChr, "organism"),
+                    ConstraintOp.CONTAINS, qcOrg));
+        q.setConstraint(cs);
+
+        GenomicIntervalIndex retval = new GenomicIntervalIndex();
+        Map<Class<?>, Short> classNumbers = new HashMap<Class<?>, Short>();
+        Map<String, Map<String, Collector>> collectors =
+            new HashMap<String, Map<String, Collector>>();
+        Results results = os.execute(q, 10000, true, false, false);
+        for (Iterator<?> iter = results.iterator(); iter.hasNext();) {
+            ResultsRow<?> row = (ResultsRow<?>) iter.next();
+            String organism = (String) row.get(0);
+            Integer taxonId = (Integer) row.get(1);
+            String chr = (String) row.get(2);
+            Integer locStart = (Integer) row.get(3);
+            Integer locEnd = (Integer) row.get(4);
+            if (organism == null || chr == null || locStart == null || locEnd == null) {
+                continue;
+            }
+            if (taxonId != null) {
+                retval.taxonIdToOrganism.put(taxonId, organism);
+            }
+            Class<?> featureClass = (Class<?>) row.get(6);
+            Short classNumber = classNumbers.get(featureClass);
+            if (classNumber == null) {
+                classNumber = Short.valueOf((short) retval.classNames.size());
+                classNumbers.put(featureClass, classNumber);
+                retval.classNames.add(featureClass.getSimpleName());
+            }
+            Map<String, Collector> orgCollectors = collectors.get(organism);
+            if (orgCollectors == null) {
+                orgCollectors = new HashMap<String, Collector>();
+                collectors.put(organism, orgCollectors);
+            }
+            String chrKey = chr.toLowerCase();
+            Collector collector = orgCollectors.get(chrKey);
+            if (collector == null) {
+                collector = new Collector();
+                orgCollectors.put(chrKey, collector);
+            }
+            collector.add(locStart.intValue(), locEnd.intValue(),
+                    ((Integer) row.get(5)).intValue(), classNumber.shortValue());
+        }
+        for (Map.Entry<String, Map<String, Collector>> orgEntry : collectors.entrySet()) {
+            Map<String, IntervalIndex> orgChromosomes = new TreeMap<String, IntervalIndex>();
+            for (Map.Entry<String, Collector> chrEntry : orgEntry.getValue().entrySet()) {
+                orgChromosomes.put(chrEntry.getKey(), chrEntry.getValue().toIndex());
+            }
+            retval.chromosomes.put(orgEntry.getKey(), orgChromosomes);
+        }
+        retval.buildTime = System.currentTimeMillis() - start;
+        LOG.info("Built genomic interval index in " + retval.buildTime + " ms: "
+                + retval.getMemoryReport());
+        return retval;
+    }
+
+    private static Class<?> getType(Model model, String className) throws ObjectStoreException {
+        ClassDescriptor cld = model.getClassDescriptorByName(className);
+        if (cld == null) {
+            throw new ObjectStoreException("Cannot build a genomic interval index for model "
+                    + model.getName() + " without a " + className + " class");
+        }
+        return cld.getType();
+    }
+
+    /**
+     * Returns the names of a class and all its subclasses, for use as the class filter of
+     * findOverlappingIds() and countOverlapping().
+     *
+     * @param model the model
+     * @param className the unqualified name of a class
+     * @return a Set of unqualified class names, empty if the class is not in the model
+     */
+    public static Set<String> getClassAndSubclassNames(Model model, String className) {
+        Set<String> retval = new HashSet<String>();
+        ClassDescriptor cld = model.getClassDescriptorByName(className);
+        if (cld != null) {
+            retval.add(cld.getUnqualifiedName());
+            for (ClassDescriptor sub : model.getAllSubs(cld)) {
+                retval.add(sub.getUnqualifiedName());
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * Returns the short name of the organism with the given taxon id.
+     *
+     * @param taxonId a taxon id
+     * @return the organism short name, or null if no features of that organism are indexed
+     */
+    public String getOrganismByTaxonId(Integer taxonId) {
+        return taxonIdToOrganism.get(taxonId);
+    }
+
+    /**
+     * Returns the index of one chromosome.
+     *
+     * @param organism the organism short name
+     * @param chr the chromosome primaryIdentifier, in any case
+     * @return the index, or null if there are no features on that chromosome
+     */
+    public IntervalIndex getChromosome(String organism, String chr) {
+        Map<String, IntervalIndex> orgChromosomes = chromosomes.get(organism);
+        if (orgChromosomes == null || chr == null) {
+            return null;
+        }
+        return orgChromosomes.get(chr.toLowerCase());
+    }
+
+    /**
+     * Returns the unqualified class name for a class number of an IntervalIndex.
+     *
+     * @param classNumber a number returned by IntervalIndex.getClassNumber()
+     * @return the class name
+     */
+    public String getClassName(int classNumber) {
+        return classNames.get(classNumber);
+    }
+
+    /**
+     * Finds the ids of features of the given classes that overlap a range.
+     *
+     * @param organism the organism short name
+     * @param chr the chromosome primaryIdentifier
+     * @param start the start of the range
+     * @param end the end of the range
+     * @param classFilter the unqualified class names of the features to find, or null for all
+     * @return the ids of the features, in order of start
+     */
+    public int[] findOverlappingIds(String organism, String chr, int start, int end,
+            Collection<String> classFilter) {
+        IntervalIndex index = getChromosome(organism, chr);
+        if (index == null) {
+            return new int[0];
+        }
+        boolean[] wanted = getWantedClasses(classFilter);
+        int[] positions = index.findOverlapping(start, end);
+        int[] retval = new int[positions.length];
+        int count = 0;
+        for (int position : positions) {
+            if (wanted == null || wanted[index.getClassNumber(position)]) {
+                retval[count++] = index.getId(position);
+            }
+        }
+        return Arrays.copyOf(retval, count);
+    }
+
+    /**
+     * Counts the features of the given classes that overlap a range.
+     *
+     * @param organism the organism short name
+     * @param chr the chromosome primaryIdentifier
+     * @param start the start of the range
+     * @param end the end of the range
+     * @param classFilter the unqualified class names of the features to count, or null for all
+     * @return the number of features
+     */
+    public int countOverlapping(String organism, String chr, int start, int end,
+            Collection<String> classFilter) {
+        IntervalIndex index = getChromosome(organism, chr);
+        if (index == null) {
+            return 0;
+        }
+        if (classFilter == null) {
+            return index.countOverlapping(start, end);
+        }
+        return findOverlappingIds(organism, chr, start, end, classFilter).length;
+    }
+
+    private boolean[] getWantedClasses(Collection<String> classFilter) {
+        if (classFilter == null) {
+            return null;
+        }
+        boolean[] retval = new boolean[classNames.size()];
+        for (int i = 0; i < retval.length; i++) {
+            retval[i] = classFilter.contains(classNames.get(i));
+        }
+        return retval;
+    }
+
+    /**
+     * Returns the number of features indexed.
+     *
+     * @return the number of locations
+     */
+    public long size() {
+        long retval = 0;
+        for (Map<String, IntervalIndex> orgChromosomes : chromosomes.values()) {
+            for (IntervalIndex index : orgChromosomes.values()) {
+                retval += index.size();
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * Returns the approximate number of bytes used by the index arrays.
+     *
+     * @return a number of bytes
+     */
+    public long getMemoryUsage() {
+        long retval = 0;
+        for (Map<String, IntervalIndex> orgChromosomes : chromosomes.values()) {
+            for (IntervalIndex index : orgChromosomes.values()) {
+                retval += index.getMemoryUsage();
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * Returns a description of the size of the index, by organism.
+     *
+     * @return a String for logging
+     */
+    public String getMemoryReport() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(size()).append(" locations in ").append(getMemoryUsage() / 1024)
+            .append(" kB, ").append(classNames.size()).append(" classes");
+        for (Map.Entry<String, Map<String, IntervalIndex>> orgEntry : chromosomes.entrySet()) {
+            long locations = 0;
+            long bytes = 0;
+            for (IntervalIndex index : orgEntry.getValue().values()) {
+                locations += index.size();
+                bytes += index.getMemoryUsage();
+            }
+            sb.append("; ").append(orgEntry.getKey()).append(": ")
+                .append(orgEntry.getValue().size()).append(" chromosomes, ").append(locations)
+                .append(" locations, ").append(bytes / 1024).append(" kB");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns how long the index took to build.
+     *
+     * @return a number of milliseconds
+     */
+    public long getBuildTime() {
+        return buildTime;
+    }
+
+    /**
+     * Accumulates the locations of one chromosome in growable arrays while reading them.
+     */
+    private static class Collector
+    {
+        private int[] starts = new int[64];
+        private int[] ends = new int[64];
+        private int[] ids = new int[64];
+        private short[] classes = new short[64];
+        private int size = 0;
+
+        void add(int start, int end, int id, short classNumber) {
+            if (size == starts.length) {
+                int capacity = size * 2;
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                ids = Arrays.copyOf(ids, capacity);
+                classes = Arrays.copyOf(classes, capacity);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            ids[size] = id;
+            classes[size] = classNumber;
+            size++;
+        }
+
+        IntervalIndex toIndex() {
+            return new IntervalIndex(starts, ends, ids, classes, size);
+        }
+    }
+}
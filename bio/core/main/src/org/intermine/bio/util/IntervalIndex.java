@@ -0,0 +1,260 @@
+package org.intermine.bio.util;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Arrays;
+
+/**
+ * An immutable index of the intervals on one chromosome, for finding the intervals that overlap a
+ * range without going to the database.
+ * <p>
+ * The intervals are held in primitive arrays sorted by start, which are treated as an implicit
+ * balanced binary tree: the element at position i is a node at the level given by the number of
+ * trailing one bits of i. Each node also records the greatest end in its subtree, so that subtrees
+ * that end before the query range can be skipped. Coordinates are inclusive at both ends, as in
+ * InterMine Locations.
+ *
+ * @author julie
+ */
+public class IntervalIndex
+{
+    // Below this level, subtrees are scanned rather than searched
+    private static final int SCAN_LEVEL = 3;
+
+    private final int size;
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] ids;
+    private final short[] classes;
+    private final int[] maxEnds;
+    private final int maxLevel;
+
+    /**
+     * Creates an index of the given intervals. The arrays are copied, and need not be sorted.
+     *
+     * @param starts the start of each interval
+     * @param ends the end of each interval
+     * @param ids the InterMine id of the feature of each interval
+     * @param classes a number identifying the class of the feature of each interval
+     * @param size the number of intervals, which may be less than the length of the arrays
+     */
+    public IntervalIndex(int[] starts, int[] ends, int[] ids, short[] classes, int size) {
+        this.size = size;
+        // Sort by start, keeping the original position in the low bits
+        long[] order = new long[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = (((long) starts[i]) << 32) | i;
+        }
+        Arrays.sort(order);
+        this.starts = new int[size];
+        this.ends = new int[size];
+        this.ids = new int[size];
+        this.classes = new short[size];
+        for (int i = 0; i < size; i++) {
+            int from = (int) order[i];
+            this.starts[i] = starts[from];
+            this.ends[i] = ends[from];
+            this.ids[i] = ids[from];
+            this.classes[i] = classes[from];
+        }
+        this.maxEnds = new int[size];
+        this.maxLevel = buildTree();
+    }
+
+    /**
+     * Fills in maxEnds, level by level from the leaves.
+     *
+     * @return the level of the root
+     */
+    private int buildTree() {
+        if (size == 0) {
+            return -1;
+        }
+        int lastIndex = 0;
+        int last = 0;
+        for (int i = 0; i < size; i += 2) {
+            lastIndex = i;
+            maxEnds[i] = ends[i];
+            last = ends[i];
+        }
+        int level;
+        for (level = 1; (1 << level) <= size; level++) {
+            int x = 1 << (level - 1);
+            for (int i = (x << 1) - 1; i < size; i += x << 2) {
+                int left = maxEnds[i - x];
+                // The right child may be beyond the end of the array, in which case the last
+                // complete node stands in for it
+                int right = (i + x < size ? maxEnds[i + x] : last);
+                maxEnds[i] = Math.max(ends[i], Math.max(left, right));
+            }
+            lastIndex = (((lastIndex >> level) & 1) != 0 ? lastIndex - x : lastIndex + x);
+            if (lastIndex < size && maxEnds[lastIndex] > last) {
+                last = maxEnds[lastIndex];
+            }
+        }
+        return level - 1;
+    }
+
+    /**
+     * Returns the number of intervals in the index.
+     *
+     * @return the size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Finds the intervals that overlap the given range.
+     *
+     * @param start the start of the range
+     * @param end the end of the range
+     * @return the positions of the overlapping intervals in ascending order of start, for use with
+     * getStart(), getEnd(), getId() and getClassNumber()
+     */
+    public int[] findOverlapping(int start, int end) {
+        Hits hits = new Hits();
+        search(start, end, hits);
+        int[] retval = Arrays.copyOf(hits.positions, hits.count);
+        Arrays.sort(retval);
+        return retval;
+    }
+
+    /**
+     * Counts the intervals that overlap the given range.
+     *
+     * @param start the start of the range
+     * @param end the end of the range
+     * @return the number of overlapping intervals
+     */
+    public int countOverlapping(int start, int end) {
+        Hits hits = new Hits();
+        hits.countOnly = true;
+        search(start, end, hits);
+        return hits.count;
+    }
+
+    private void search(int start, int end, Hits hits) {
+        if (size == 0) {
+            return;
+        }
+        // A stack of subtrees still to visit: the node, its level, and whether its left subtree
+        // has already been visited
+        int depth = 2 * (maxLevel + 2);
+        int[] nodes = new int[depth];
+        int[] levels = new int[depth];
+        boolean[] leftDone = new boolean[depth];
+        int top;
+        nodes[0] = (1 << maxLevel) - 1;
+        levels[0] = maxLevel;
+        leftDone[0] = false;
+        top = 1;
+        while (top > 0) {
+            top--;
+            int x = nodes[top];
+            int level = levels[top];
+            if (level <= SCAN_LEVEL) {
+                int i0 = (x >> level) << level;
+                int i1 = Math.min(i0 + (1 << (level + 1)) - 1, size);
+                for (int i = i0; i < i1 && starts[i] <= end; i++) {
+                    if (ends[i] >= start) {
+                        hits.add(i);
+                    }
+                }
+            } else if (!leftDone[top]) {
+                int left = x - (1 << (level - 1));
+                leftDone[top] = true;
+                top++;
+                if (left >= size || maxEnds[left] >= start) {
+                    nodes[top] = left;
+                    levels[top] = level - 1;
+                    leftDone[top] = false;
+                    top++;
+                }
+            } else if (x < size && starts[x] <= end) {
+                if (ends[x] >= start) {
+                    hits.add(x);
+                }
+                nodes[top] = x + (1 << (level - 1));
+                levels[top] = level - 1;
+                leftDone[top] = false;
+                top++;
+            }
+        }
+    }
+
+    /**
+     * Returns the start of the interval at the given position.
+     *
+     * @param position a position returned by findOverlapping()
+     * @return the start
+     */
+    public int getStart(int position) {
+        return starts[position];
+    }
+
+    /**
+     * Returns the end of the interval at the given position.
+     *
+     * @param position a position returned by findOverlapping()
+     * @return the end
+     */
+    public int getEnd(int position) {
+        return ends[position];
+    }
+
+    /**
+     * Returns the feature id of the interval at the given position.
+     *
+     * @param position a position returned by findOverlapping()
+     * @return the id
+     */
+    public int getId(int position) {
+        return ids[position];
+    }
+
+    /**
+     * Returns the class number of the interval at the given position.
+     *
+     * @param position a position returned by findOverlapping()
+     * @return the number passed to the constructor for the class of the feature
+     */
+    public int getClassNumber(int position) {
+        return classes[position];
+    }
+
+    /**
+     * Returns the approximate number of bytes used by this index.
+     *
+     * @return a number of bytes
+     */
+    public long getMemoryUsage() {
+        // Four int arrays and a short array, plus the array headers
+        return 18L * size + 5 * 16;
+    }
+
+    private static class Hits
+    {
+        int[] positions = new int[16];
+        int count = 0;
+        boolean countOnly = false;
+
+        void add(int position) {
+            if (!countOnly) {
+                if (count == positions.length) {
+                    positions = Arrays.copyOf(positions, count * 2);
+                }
+                positions[count] = position;
+            }
+            count++;
+        }
+    }
+}
@@ -77,6 +77,20 @@ public class GFF3ConverterTest extends ItemsTestCase {
     }
 
 
+    /**
+     * Test that parsing lines on several threads creates the same items.
+     */
+    public void testParseLocatedPipelined() throws Exception {
+        BufferedReader srcReader = new BufferedReader(new
+                                                      InputStreamReader(getClass().getClassLoader().getResourceAsStream("test.gff")));
+        converter.setParserThreads(2);
+        converter.parse(srcReader);
+        converter.storeAll();
+
+        assertEquals(readItemSet("GFF3ConverterTest.xml"), writer.getItems());
+    }
+
+
     /**
      * Test creating items with dontCreateLocations flag true.
      */
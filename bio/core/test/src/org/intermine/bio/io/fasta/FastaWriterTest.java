@@ -0,0 +1,74 @@
+package org.intermine.bio.io.fasta;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import junit.framework.TestCase;
+
+import org.intermine.objectstore.query.PendingClob;
+
+/**
+ * Tests for the FastaWriter class.
+ *
+ * @author julie
+ */
+public class FastaWriterTest extends TestCase
+{
+    public FastaWriterTest(String arg) {
+        super(arg);
+    }
+
+    public void testWrap() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        FastaWriter writer = new FastaWriter(baos, 4, false);
+        writer.writeSequence("seq1 description", "ACGTACGTAC");
+        writer.writeSequence("seq2", new PendingClob("ACGTACGT"));
+        writer.writeSequence("empty", "");
+        writer.finish();
+        assertEquals(">seq1 description\nACGT\nACGT\nAC\n>seq2\nACGT\nACGT\n>empty\n",
+                baos.toString("UTF-8"));
+    }
+
+    public void testDefaultLineLength() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 150; i++) {
+            sb.append("ACGT".charAt(i % 4));
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        FastaWriter writer = new FastaWriter(baos);
+        writer.writeSequence("s", sb);
+        writer.finish();
+        String[] lines = baos.toString("UTF-8").split("\n");
+        assertEquals(4, lines.length);
+        assertEquals(60, lines[1].length());
+        assertEquals(60, lines[2].length());
+        assertEquals(30, lines[3].length());
+    }
+
+    public void testGzip() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        FastaWriter writer = new FastaWriter(baos, 60, true);
+        writer.writeSequence("seq", "GATTACA");
+        writer.finish();
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        ByteArrayOutputStream unzipped = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            unzipped.write(buffer, 0, read);
+        }
+        assertEquals(">seq\nGATTACA\n", unzipped.toString("UTF-8"));
+    }
+}
@@ -0,0 +1,98 @@
+package org.intermine.bio.io.gff3;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the GFF3PipelinedParser class.
+ *
+ * @author julie
+ */
+public class GFF3PipelinedParserTest extends TestCase
+{
+    public GFF3PipelinedParserTest(String arg) {
+        super(arg);
+    }
+
+    public void testSameAsGFF3Parser() throws Exception {
+        List<String> expected = new ArrayList<String>();
+        Iterator<?> iter = GFF3Parser.parse(new BufferedReader(new InputStreamReader(getClass()
+                .getClassLoader().getResourceAsStream("gff_test_data.gff3"))));
+        while (iter.hasNext()) {
+            expected.add(iter.next().toString());
+        }
+
+        // A small chunk size, so that records are spread across several workers
+        GFF3PipelinedParser parser = new GFF3PipelinedParser(new BufferedReader(
+                new InputStreamReader(getClass().getClassLoader()
+                    .getResourceAsStream("gff_test_data.gff3"))), 3, 2);
+        List<String> got = new ArrayList<String>();
+        while (parser.hasNext()) {
+            got.add(parser.next().toString());
+        }
+        assertEquals(expected, got);
+    }
+
+    public void testOrderPreserved() throws Exception {
+        StringBuffer gff = new StringBuffer("##gff-version 3\n");
+        for (int i = 1; i <= 5000; i++) {
+            gff.append("4\t.\texon\t" + i + "\t" + (i + 10) + "\t.\t-\t.\tID=exon" + i + "\n");
+            if (i % 100 == 0) {
+                gff.append("# comment\n\n");
+            }
+        }
+        gff.append(">4\nACGT\n");
+        GFF3PipelinedParser parser = new GFF3PipelinedParser(new BufferedReader(
+                new StringReader(gff.toString())), 4, 7);
+        int count = 0;
+        while (parser.hasNext()) {
+            GFF3Record record = parser.next();
+            count++;
+            assertEquals("exon" + count, record.getId());
+            assertEquals(count, record.getStart());
+        }
+        assertEquals(5000, count);
+    }
+
+    public void testParseError() throws Exception {
+        String gff = "4\t.\texon\t22335\t22528\t.\t-\t.\tID=CG32013:2\n"
+            + "4\t.\texon\tnotanumber\t22528\t.\t-\t.\tID=CG32013:3\n";
+        GFF3PipelinedParser parser = new GFF3PipelinedParser(new BufferedReader(
+                new StringReader(gff)), 2, 1);
+        assertEquals("CG32013:2", parser.next().getId());
+        try {
+            parser.next();
+            fail("Expected RuntimeException");
+        } catch (RuntimeException e) {
+            assertTrue(e.getCause().getMessage().startsWith("can not parse integer"));
+        }
+    }
+
+    public void testCloseEarly() throws Exception {
+        StringBuffer gff = new StringBuffer();
+        for (int i = 1; i <= 10000; i++) {
+            gff.append("4\t.\texon\t" + i + "\t" + (i + 10) + "\t.\t-\t.\tID=exon" + i + "\n");
+        }
+        GFF3PipelinedParser parser = new GFF3PipelinedParser(new BufferedReader(
+                new StringReader(gff.toString())), 2, 10);
+        assertEquals("exon1", parser.next().getId());
+        parser.close();
+        parser.close();
+    }
+}
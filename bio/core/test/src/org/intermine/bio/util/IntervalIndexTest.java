@@ -0,0 +1,97 @@
+package org.intermine.bio.util;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the IntervalIndex class.
+ * @author julie
+ */
+public class IntervalIndexTest extends TestCase
+{
+    public void testEmpty() {
+        IntervalIndex index = new IntervalIndex(new int[0], new int[0], new int[0], new short[0],
+                0);
+        assertEquals(0, index.size());
+        assertEquals(0, index.findOverlapping(1, 100).length);
+        assertEquals(0, index.countOverlapping(1, 100));
+    }
+
+    public void testSimple() {
+        int[] starts = new int[] {50, 10, 30, 200};
+        int[] ends = new int[] {60, 20, 300, 250};
+        int[] ids = new int[] {1, 2, 3, 4};
+        short[] classes = new short[] {0, 1, 0, 1};
+        IntervalIndex index = new IntervalIndex(starts, ends, ids, classes, 4);
+
+        int[] found = index.findOverlapping(20, 55);
+        assertEquals(3, found.length);
+        // In order of start, with the ends of the range inclusive
+        assertEquals(2, index.getId(found[0]));
+        assertEquals(3, index.getId(found[1]));
+        assertEquals(1, index.getId(found[2]));
+        assertEquals(10, index.getStart(found[0]));
+        assertEquals(20, index.getEnd(found[0]));
+        assertEquals(1, index.getClassNumber(found[0]));
+
+        assertEquals(2, index.countOverlapping(250, 1000));
+        assertEquals(0, index.countOverlapping(301, 1000));
+        assertEquals(0, index.countOverlapping(1, 9));
+    }
+
+    public void testAgainstScan() {
+        Random random = new Random(42);
+        for (int round = 0; round < 20; round++) {
+            int size = random.nextInt(2000);
+            int[] starts = new int[size];
+            int[] ends = new int[size];
+            int[] ids = new int[size];
+            short[] classes = new short[size];
+            for (int i = 0; i < size; i++) {
+                starts[i] = 1 + random.nextInt(100000);
+                // Mostly short features, with the odd very long one
+                int length = (random.nextInt(50) == 0 ? random.nextInt(50000) : random.nextInt(500));
+                ends[i] = starts[i] + length;
+                ids[i] = i;
+            }
+            IntervalIndex index = new IntervalIndex(starts, ends, ids, classes, size);
+            for (int query = 0; query < 200; query++) {
+                int start = random.nextInt(110000);
+                int end = start + random.nextInt(2000);
+                List<Integer> expected = new ArrayList<Integer>();
+                for (int i = 0; i < size; i++) {
+                    if (starts[i] <= end && ends[i] >= start) {
+                        expected.add(i);
+                    }
+                }
+                int[] found = index.findOverlapping(start, end);
+                int[] foundIds = new int[found.length];
+                for (int i = 0; i < found.length; i++) {
+                    foundIds[i] = index.getId(found[i]);
+                }
+                Arrays.sort(foundIds);
+                int[] expectedIds = new int[expected.size()];
+                for (int i = 0; i < expectedIds.length; i++) {
+                    expectedIds[i] = expected.get(i);
+                }
+                assertTrue("size " + size + " range " + start + ".." + end,
+                        Arrays.equals(expectedIds, foundIds));
+                assertEquals(expectedIds.length, index.countOverlapping(start, end));
+            }
+        }
+    }
+}
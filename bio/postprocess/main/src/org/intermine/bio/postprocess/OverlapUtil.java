@@ -15,6 +15,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
@@ -47,6 +48,7 @@ import org.intermine.util.DynamicUtil;
 public abstract class OverlapUtil
 {
     private static final Logger LOG = Logger.getLogger(OverlapUtil.class);
+    private static final int BATCH_SIZE = 10000;
 
     private OverlapUtil() {
       //disable external instantiation
@@ -113,7 +115,9 @@ public abstract class OverlapUtil
 
         QueryClass qcLoc = new QueryClass(Location.class);
         q.addFrom(qcLoc);
-        q.addToSelect(qcLoc);
+        QueryField qfStart = new QueryField(qcLoc, "start");
+        q.addToSelect(qfStart);
+        q.addToSelect(new QueryField(qcLoc, "end"));
 
         q.setDistinct(false);
         QueryClass qcObj = new QueryClass(SequenceFeature.class);
@@ -129,89 +133,134 @@ public abstract class OverlapUtil
                 subject);
         cs.addConstraint(subjectIdConstraint);
 
-        q.addToOrderBy(new QueryField(qcLoc, "start"));
-
+        q.addToOrderBy(qfStart);
+
+        // The features are read in order of start, and the features that may still overlap the
+        // next one are kept in a heap ordered by end.  Before each feature is added, the features
+        // that end before it starts are removed from the top of the heap, so it overlaps all the
+        // features left.  The decisions for each pair of classes are cached, as they need
+        // reflection.
+        Map<Class<?>, Boolean> ignoredClasses = new HashMap<Class<?>, Boolean>();
+        Map<Class<?>, Map<Class<?>, String>> summaryLines
+            = new HashMap<Class<?>, Map<Class<?>, String>>();
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        PriorityQueue<ActiveFeature> active = new PriorityQueue<ActiveFeature>();
         try {
             ((ObjectStoreInterMineImpl) os).goFaster(q);
-            Results results = os.execute(q);
-            Map<Location, SequenceFeature> currentLocations
-                = new HashMap<Location, SequenceFeature>();
+            Results results = os.execute(q, BATCH_SIZE, true, false, true);
             int count = 0;
             Iterator<?> resIter = results.iterator();
 
             while (resIter.hasNext()) {
                 ResultsRow<?> rr = (ResultsRow<?>) resIter.next();
 
-                Location location = (Location) rr.get(0);
-
-                if (location.getStart() == null || location.getEnd() == null) {
+                Integer start = (Integer) rr.get(0);
+                Integer end = (Integer) rr.get(1);
+                if (start == null || end == null) {
                     continue;
                 }
 
-                SequenceFeature lsf = (SequenceFeature) rr.get(1);
+                SequenceFeature lsf = (SequenceFeature) rr.get(2);
+                Class<?> lsfClass = lsf.getClass();
 
-                if (isAClassToIgnore(classesToIgnore, lsf.getClass())) {
+                Boolean ignored = ignoredClasses.get(lsfClass);
+                if (ignored == null) {
+                    ignored = Boolean.valueOf(isAClassToIgnore(classesToIgnore, lsfClass));
+                    ignoredClasses.put(lsfClass, ignored);
+                }
+                if (ignored.booleanValue()) {
                     continue;
                 }
 
-                int start = location.getStart().intValue();
-
-                // Okay, first we compare this location to all the currentLocations.
-                Iterator<?> currIter = currentLocations.entrySet().iterator();
-                while (currIter.hasNext()) {
-                    Map.Entry<Location, SequenceFeature> currEntry = (Map.Entry<Location,
-                            SequenceFeature>) currIter.next();
-                    Location currLoc = currEntry.getKey();
-                    SequenceFeature currLsf = currEntry.getValue();
-                    if (currLoc.getEnd().intValue() < start) {
-                        currIter.remove();
+                while (!active.isEmpty() && (active.peek().end < start.intValue())) {
+                    active.poll();
+                }
+
+                Map<Class<?>, String> lsfSummaryLines = summaryLines.get(lsfClass);
+                if (lsfSummaryLines == null) {
+                    lsfSummaryLines = new HashMap<Class<?>, String>();
+                    summaryLines.put(lsfClass, lsfSummaryLines);
+                }
+                for (ActiveFeature curr : active) {
+                    // They overlap, so check to see if we have configured them out.
+                    String summaryLine;
+                    if (lsfSummaryLines.containsKey(curr.clazz)) {
+                        summaryLine = lsfSummaryLines.get(curr.clazz);
                     } else {
-                        // They overlap, so check to see if we have configured them out.
-                        if ((!ignoreSelfMatches)
-                                || (!lsf.getClass().equals(currLsf.getClass()))) {
-                            if (!(ignoreCombination(classesToIgnore, lsf.getClass(),
-                                            currLsf.getClass())
-                                    || ignoreCombination(classesToIgnore, currLsf.getClass(),
-                                        lsf.getClass()))) {
-                                ++count;
-                                osw.addToCollection(lsf.getId(), SequenceFeature.class,
-                                        "overlappingFeatures", currLsf.getId());
-                                osw.addToCollection(currLsf.getId(), SequenceFeature.class,
-                                        "overlappingFeatures", lsf.getId());
-
-                                // Log it, for the summary.
-                                String classname1 = Util.getFriendlyName(lsf.getClass());
-                                String classname2 = Util.getFriendlyName(currLsf
-                                        .getClass());
-
-                                String summaryLine = classname1.compareTo(classname2) > 0
-                                    ? classname2 + " - " + classname1 : classname1 + " - "
-                                    + classname2;
-                                Integer summaryCount = summary.get(summaryLine);
-                                if (summaryCount == null) {
-                                    summaryCount = new Integer(0);
-                                }
-                                summary.put(summaryLine, new Integer(summaryCount.intValue()
-                                            + 1));
-                            }
-                        }
+                        summaryLine = getSummaryLine(classesToIgnore, ignoreSelfMatches,
+                                lsfClass, curr.clazz);
+                        lsfSummaryLines.put(curr.clazz, summaryLine);
+                    }
+                    if (summaryLine == null) {
+                        continue;
                     }
+                    ++count;
+                    osw.addToCollection(lsf.getId(), SequenceFeature.class,
+                            "overlappingFeatures", curr.id);
+                    osw.addToCollection(curr.id, SequenceFeature.class,
+                            "overlappingFeatures", lsf.getId());
+
+                    // Log it, for the summary.
+                    Integer summaryCount = counts.get(summaryLine);
+                    counts.put(summaryLine, new Integer(summaryCount == null ? 1
+                                : summaryCount.intValue() + 1));
                 }
-                currentLocations.put(location, lsf);
+                active.add(new ActiveFeature(end.intValue(), lsf.getId(), lsfClass));
             }
             LOG.info("Stored " + count + " overlaps for " + results.size()
                     + " features on feature id " + subject.getId() + ", identifier: "
                      + subject.getSecondaryIdentifier());
-            Integer summaryCount = summary.get("total");
-            if (summaryCount == null) {
-                summaryCount = new Integer(0);
+            counts.put("total", new Integer(count));
+            for (Map.Entry<String, Integer> countEntry : counts.entrySet()) {
+                Integer summaryCount = summary.get(countEntry.getKey());
+                summary.put(countEntry.getKey(), new Integer(countEntry.getValue().intValue()
+                            + (summaryCount == null ? 0 : summaryCount.intValue())));
             }
-            summary.put("total", new Integer(summaryCount.intValue() + count));
         } finally {
             ((ObjectStoreInterMineImpl) os).releaseGoFaster(q);
         }
     }
 
+    /**
+     * Return the line of the summary that an overlap between the two classes is counted under,
+     * or null if overlaps between them should not be stored.
+     */
+    private static String getSummaryLine(Map<Class<?>, Set<Class<?>>> classesToIgnore,
+            boolean ignoreSelfMatches, Class<?> class1, Class<?> class2) {
+        if (ignoreSelfMatches && class1.equals(class2)) {
+            return null;
+        }
+        if (ignoreCombination(classesToIgnore, class1, class2)
+                || ignoreCombination(classesToIgnore, class2, class1)) {
+            return null;
+        }
+        String classname1 = Util.getFriendlyName(class1);
+        String classname2 = Util.getFriendlyName(class2);
+        return classname1.compareTo(classname2) > 0 ? classname2 + " - " + classname1
+            : classname1 + " - " + classname2;
+    }
+
+    /**
+     * A feature that may overlap features that start after it, ordered by end.
+     */
+    private static class ActiveFeature implements Comparable<ActiveFeature>
+    {
+        final int end;
+        final Integer id;
+        final Class<?> clazz;
+
+        ActiveFeature(int end, Integer id, Class<?> clazz) {
+            this.end = end;
+            this.id = id;
+            this.clazz = clazz;
+        }
+
+        @Override
+        public int compareTo(ActiveFeature other) {
+            return (end < other.end) ? -1 : ((end == other.end) ? 0 : 1);
+        }
+    }
+
     /**
      * Return true if and only if the given SequenceFeature should be ignored when looking
      * for overlaps.
@@ -127,7 +127,7 @@ public class PostProcessOperationsTask extends DynamicAttributeTask
                 cr.createUtrRefs();
             } else if ("transfer-sequences".equals(operation)) {
                 TransferSequences ts = new TransferSequences(getObjectStoreWriter());
-                ts = new TransferSequences(getObjectStoreWriter());
+                configureDynamicAttributes(ts);
                 LOGGER.info("Starting TransferSequences.transferToLocatedSequenceFeatures()");
                 ts.transferToLocatedSequenceFeatures();
 
@@ -136,6 +136,7 @@ public class PostProcessOperationsTask extends DynamicAttributeTask
                 ts.transferToTranscripts();
             } else if ("transfer-sequences-located-sequence-feature".equals(operation)) {
                 TransferSequences ts = new TransferSequences(getObjectStoreWriter());
+                configureDynamicAttributes(ts);
                 LOGGER.info("Starting TransferSequences.transferToLocatedSequenceFeatures()");
                 ts.transferToLocatedSequenceFeatures();
             } else if ("transfer-sequences-transcripts".equals(operation)) {
@@ -10,10 +10,14 @@ package org.intermine.bio.postprocess;
  *
  */
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 import org.intermine.bio.util.ClobAccessReverseComplement;
@@ -29,6 +33,7 @@ import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.objectstore.ObjectStoreWriter;
 import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
+import org.intermine.objectstore.intermine.PartitionedObjectStoreWriter;
 import org.intermine.objectstore.proxy.ProxyReference;
 import org.intermine.objectstore.query.ClobAccess;
 import org.intermine.metadata.ConstraintOp;
@@ -59,6 +64,7 @@ public class TransferSequences
 {
     protected ObjectStoreWriter osw;
     private Model model;
+    private int threads = 1;
     private static final Logger LOG = Logger.getLogger(TransferSequences.class);
 
     /**
@@ -70,6 +76,23 @@ public class TransferSequences
         this.model = osw.getModel();
     }
 
+    /**
+     * Set the number of chromosomes to transfer sequences to located features for at once. Each
+     * chromosome is processed in its own transaction on one of a pool of that many
+     * ObjectStoreWriters. Set by the transfer.sequences.threads property. The default, 1,
+     * processes the chromosomes one after another with the ObjectStoreWriter passed to the
+     * constructor.
+     *
+     * @param threads the number of threads, as a String
+     */
+    public void setTransferSequencesThreads(String threads) {
+        this.threads = Integer.parseInt(threads.trim());
+        if (this.threads < 1) {
+            throw new IllegalArgumentException("transfer.sequences.threads must be at least 1, "
+                    + "was " + threads);
+        }
+    }
+
     private void storeNewSequence(SequenceFeature feature, ClobAccess sequenceString)
         throws ObjectStoreException {
         Sequence sequence =
@@ -87,7 +110,9 @@ public class TransferSequences
      * Use the Location relations to copy the sequence from the Chromosomes to every
      * SequenceFeature that is located on a Chromosome and which doesn't already have a
      * sequence (ie. don't copy to Assembly).  Uses the ObjectStoreWriter that was passed to the
-     * constructor.
+     * constructor, or if transfer.sequences.threads is more than 1, processes that many
+     * chromosomes at once with a pool of ObjectStoreWriters.  The features' sequences refer to
+     * ranges of the chromosome clob, so no residues are read.
      *
      * @throws Exception if there are problems with the transfer
      */
@@ -107,28 +132,71 @@ public class TransferSequences
         SingletonResults res = os.executeSingleton(q);
         Iterator<?> chrIter = res.iterator();
 
-        Set<Chromosome> chromosomes = new HashSet<Chromosome>();
+        Set<Chromosome> chromosomeSet = new HashSet<Chromosome>();
         while (chrIter.hasNext()) {
             Chromosome chr = (Chromosome) chrIter.next();
-            chromosomes.add(chr);
+            chromosomeSet.add(chr);
         }
+        // Start with the longest chromosomes, so that the threads finish at about the same time
+        List<Chromosome> chromosomes = new ArrayList<Chromosome>(chromosomeSet);
+        Collections.sort(chromosomes, new Comparator<Chromosome>() {
+            @Override
+            public int compare(Chromosome c1, Chromosome c2) {
+                int l1 = (c1.getLength() == null) ? 0 : c1.getLength().intValue();
+                int l2 = (c2.getLength() == null) ? 0 : c2.getLength().intValue();
+                return (l1 > l2) ? -1 : ((l1 == l2) ? 0 : 1);
+            }
+        });
 
         LOG.info("Found " + chromosomes.size() + " chromosomes with sequence, took "
                 + (System.currentTimeMillis() - startTime) + " ms.");
 
-        for (Chromosome chr : chromosomes) {
-            String organism = "";
-            if (chr.getOrganism() != null) {
-                organism = chr.getOrganism().getShortName();
+        final int chromosomeCount = chromosomes.size();
+        final AtomicInteger chromosomesDone = new AtomicInteger(0);
+        final AtomicInteger featuresDone = new AtomicInteger(0);
+        int poolSize = Math.min(threads, chromosomeCount);
+        if (poolSize <= 1) {
+            for (Chromosome chr : chromosomes) {
+                featuresDone.addAndGet(transferForChromosome(chr, osw));
+                LOG.info("Transferred sequences for " + chromosomesDone.incrementAndGet()
+                        + " of " + chromosomeCount + " chromosomes");
+            }
+        } else {
+            LOG.info("Transferring sequences for " + poolSize + " chromosomes at once");
+            PartitionedObjectStoreWriter writers = new PartitionedObjectStoreWriter(os, poolSize);
+            try {
+                writers.process(chromosomes, new PartitionedObjectStoreWriter.Job<Chromosome>() {
+                    @Override
+                    public void process(Chromosome chr, ObjectStoreWriter writer)
+                        throws Exception {
+                        featuresDone.addAndGet(transferForChromosome(chr, writer));
+                        LOG.info("Transferred sequences for " + chromosomesDone.incrementAndGet()
+                                + " of " + chromosomeCount + " chromosomes");
+                    }
+                });
+            } finally {
+                writers.close();
             }
-            LOG.info("Starting transfer for " + organism + " chromosome "
-                    + chr.getPrimaryIdentifier());
-            transferForChromosome(chr);
         }
+        long took = System.currentTimeMillis() - startTime;
+        LOG.info("Finished setting " + featuresDone.get() + " feature sequences on "
+                + chromosomeCount + " chromosomes - took " + took + " ms ("
+                + ((1000L * featuresDone.get()) / Math.max(1L, took)) + " per second).");
     }
 
-
-    private void transferForChromosome(Chromosome chr) throws Exception {
+    /**
+     * Sets the sequences of the features located on a chromosome, in a transaction of the given
+     * writer.
+     *
+     * @return the number of features given a sequence
+     */
+    private int transferForChromosome(Chromosome chr, ObjectStoreWriter osw) throws Exception {
+        String organism = "";
+        if (chr.getOrganism() != null) {
+            organism = chr.getOrganism().getShortName();
+        }
+        LOG.info("Starting transfer for " + organism + " chromosome "
+                + chr.getPrimaryIdentifier());
 
         long startTime = System.currentTimeMillis();
 
@@ -224,8 +292,9 @@ public class TransferSequences
                 i++;
                 if (i % 1000 == 0) {
                     long now = System.currentTimeMillis();
-                    LOG.info("Set sequences for " + i + " features"
-                             + " (avg = " + ((60000L * i) / (now - start)) + " per minute)");
+                    LOG.info("Set sequences for " + i + " features on chromosome "
+                             + chr.getPrimaryIdentifier() + " (avg = "
+                             + ((60000L * i) / (now - start)) + " per minute)");
                 }
             } catch (Exception e) {
                 Exception e2 = new Exception("Exception while processing SequenceFeature "
@@ -237,21 +306,22 @@ public class TransferSequences
 
         osw.commitTransaction();
 
-        String organism = "";
-        if (chr.getOrganism() != null) {
-            organism = chr.getOrganism().getShortName();
-        }
+        long took = System.currentTimeMillis() - startTime;
         LOG.info("Finished setting " + i + " feature sequences for " + organism + " chromosome "
-                + chr.getPrimaryIdentifier() + " - took "
-                + (System.currentTimeMillis() - startTime) + " ms.");
+                + chr.getPrimaryIdentifier() + " - took " + took + " ms ("
+                + ((1000L * i) / Math.max(1L, took)) + " per second).");
+        return i;
     }
 
     private ClobAccess getSubSequence(Sequence chromosomeSequence, Location locationOnChr) {
         int charsToCopy =
             locationOnChr.getEnd().intValue() - locationOnChr.getStart().intValue() + 1;
         ClobAccess chromosomeSequenceString = chromosomeSequence.getResidues();
+        // The length is stored with the clob, and the subsequence is only a reference into the
+        // chromosome clob, so no clob pages are read from the database here
+        int chromosomeLength = chromosomeSequenceString.length();
 
-        if (charsToCopy > chromosomeSequenceString.length()) {
+        if (charsToCopy > chromosomeLength) {
             LOG.warn("SequenceFeature too long, ignoring - Location: "
                       + locationOnChr.getId() + "  LSF id: " + locationOnChr.getFeature());
             return null;
@@ -266,7 +336,7 @@ public class TransferSequences
             return null;
         }
 
-        if (endPos > chromosomeSequenceString.length()) {
+        if (endPos > chromosomeLength) {
             LOG.warn(" has end coordinate greater than chromsome length."
                       + "ignoring Location: "
                       + locationOnChr.getId() + "  LSF id: " + locationOnChr.getFeature());
@@ -381,7 +451,7 @@ public class TransferSequences
             if (currentTranscript == null || !transcript.equals(currentTranscript)) {
                 if (currentTranscript != null) {
                     storeNewSequence(currentTranscript,
-                            new PendingClob(currentTranscriptBases.toString()));
+                            new PendingClob(currentTranscriptBases.toString(), true));
                     i++;
                     if (i % 100 == 0) {
                         long now = System.currentTimeMillis();
@@ -404,7 +474,8 @@ public class TransferSequences
         if (currentTranscript == null) {
             LOG.error("in transferToTranscripts(): no Transcripts found");
         } else {
-            storeNewSequence(currentTranscript, new PendingClob(currentTranscriptBases.toString()));
+            storeNewSequence(currentTranscript,
+                    new PendingClob(currentTranscriptBases.toString(), true));
         }
 
         LOG.info("Finished setting " + i + " Trascript sequences - took "
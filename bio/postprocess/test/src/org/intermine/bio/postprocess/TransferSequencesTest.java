@@ -198,6 +198,46 @@ public class TransferSequencesTest extends TestCase
         checkExonSequences();
     }
 
+    public void testTransferToLocatedSequenceFeaturesInParallel() throws Exception {
+        // A second chromosome with the same residues, so that two chromosomes are processed at
+        // once, with exons at the positions of exon 2 on the forward strand and exon 5 on the
+        // reverse strand
+        Chromosome chr2 =
+            (Chromosome) DynamicUtil.createObject(Collections.singleton(Chromosome.class));
+        chr2.setLength(new Integer(4000));
+        chr2.setPrimaryIdentifier("store_chromosome_2");
+        Sequence chr2Sequence =
+            (Sequence) DynamicUtil.createObject(Collections.singleton(Sequence.class));
+        PendingClob clob = new PendingClob(storedChrSequence);
+        chr2Sequence.setResidues(clob.subSequence(0, storedChrSequence.length()));
+        chr2.setSequence(chr2Sequence);
+        Exon forwardExon = (Exon) DynamicUtil.createObject(Collections.singleton(Exon.class));
+        forwardExon.setPrimaryIdentifier("chr2_exon_forward");
+        Exon reverseExon = (Exon) DynamicUtil.createObject(Collections.singleton(Exon.class));
+        reverseExon.setPrimaryIdentifier("chr2_exon_reverse");
+        osw.beginTransaction();
+        osw.store(chr2Sequence);
+        osw.store(chr2);
+        osw.store(forwardExon);
+        osw.store(reverseExon);
+        osw.store(createLocation(chr2, forwardExon, "1", 2484, 2777));
+        osw.store(createLocation(chr2, reverseExon, "-1", 2496, 2714));
+        osw.commitTransaction();
+
+        TransferSequences ts = new TransferSequences(osw);
+        ts.setTransferSequencesThreads("2");
+        ts.transferToLocatedSequenceFeatures();
+        checkExonSequences();
+
+        ObjectStore os = osw.getObjectStore();
+        Exon resForward = (Exon) os.getObjectById(forwardExon.getId());
+        assertEquals(expectedExonSequence2, resForward.getSequence().getResidues().toString());
+        Exon resReverse = (Exon) os.getObjectById(reverseExon.getId());
+        assertEquals(expectedExonSequence5, resReverse.getSequence().getResidues().toString());
+        CDS resCDS = (CDS) os.getObjectById(storedCDS.getId());
+        assertNull(resCDS.getSequence());
+    }
+
     public void testTranscriptSequence() throws Exception {
         TransferSequences ts = new TransferSequences(osw);
         ts.transferToLocatedSequenceFeatures();
@@ -272,7 +272,8 @@ public class FastaLoaderTask extends FileDirectDataLoaderTask
 
         String sequence = bioJavaSequence.seqString();
         String md5checksum = Util.getMd5checksum(sequence);
-        flymineSequence.setResidues(new PendingClob(sequence));
+        // Nucleotide sequences are stored packed, at about a third of the size
+        flymineSequence.setResidues(new PendingClob(sequence, "dna".equals(sequenceType)));
         flymineSequence.setLength(bioJavaSequence.length());
         flymineSequence.setMd5checksum(md5checksum);
         Class<? extends InterMineObject> imClass;
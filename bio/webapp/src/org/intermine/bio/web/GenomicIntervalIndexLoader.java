@@ -0,0 +1,67 @@
+package org.intermine.bio.web;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Properties;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+
+import org.apache.log4j.Logger;
+import org.intermine.api.InterMineAPI;
+import org.intermine.bio.util.GenomicIntervalIndex;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.web.context.InterMineContext;
+
+/**
+ * Builds the GenomicIntervalIndex of the production objectstore when the webapp starts, if
+ * genomicIntervalIndex.enabled is true in the web properties. The index is built in the
+ * background, and overlap lookups use the database until it is ready, or if it fails to build.
+ * This servlet must be loaded after the struts ActionServlet, which sets up the InterMineAPI.
+ *
+ * @author julie
+ */
+public class GenomicIntervalIndexLoader extends HttpServlet
+{
+    private static final long serialVersionUID = 1L;
+    private static final Logger LOG = Logger.getLogger(GenomicIntervalIndexLoader.class);
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void init() throws ServletException {
+        Properties webProperties = InterMineContext.getWebProperties();
+        if (webProperties == null
+                || !"true".equals(webProperties.getProperty("genomicIntervalIndex.enabled"))) {
+            return;
+        }
+        InterMineAPI im = InterMineContext.getInterMineAPI();
+        if (im == null) {
+            LOG.warn("No InterMineAPI available - not building the genomic interval index");
+            return;
+        }
+        final ObjectStore os = im.getObjectStore();
+        Thread builder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    GenomicIntervalIndex.setIndex(os, GenomicIntervalIndex.build(os));
+                } catch (Exception e) {
+                    LOG.error("Failed to build the genomic interval index - overlap lookups"
+                            + " will use the database", e);
+                }
+            }
+        }, "GenomicIntervalIndexLoader");
+        builder.setDaemon(true);
+        builder.start();
+    }
+}
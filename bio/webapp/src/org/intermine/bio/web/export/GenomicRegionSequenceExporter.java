@@ -5,18 +5,12 @@ import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 
 import javax.servlet.http.HttpServletResponse;
 
-import org.apache.commons.collections.keyvalue.MultiKey;
-import org.biojava.bio.seq.DNATools;
-import org.biojava.bio.seq.Sequence;
-import org.biojava.bio.seq.io.FastaFormat;
-import org.biojava.bio.seq.io.SeqIOTools;
+import org.intermine.bio.io.fasta.FastaWriter;
 import org.intermine.bio.web.model.GenomicRegion;
 import org.intermine.model.bio.Chromosome;
 import org.intermine.model.bio.Organism;
@@ -34,8 +28,6 @@ public class GenomicRegionSequenceExporter
 {
     private ObjectStore os;
     private OutputStream out;
-    // Map to hold DNA sequence of a whole chromosome in memory
-    private static Map<MultiKey, String> chromosomeSequenceMap = new HashMap<MultiKey, String>();
 
     /**
      * Instructor
@@ -53,8 +45,8 @@ public class GenomicRegionSequenceExporter
      * @param grList a list of GenomicRegion objects
      * @throws Exception ex
      */
-    @SuppressWarnings("deprecation")
     public void export(List<GenomicRegion> grList) throws Exception {
+        FastaWriter writer = new FastaWriter(out);
         GenomicRegion aRegion = grList.get(0);
         Organism org = (Organism) DynamicUtil.createObject(Collections
                 .singleton(Organism.class));
@@ -70,19 +62,6 @@ public class GenomicRegionSequenceExporter
             chr = (Chromosome) os.getObjectByExample(chr,
                         new HashSet<String>(Arrays.asList("primaryIdentifier", "organism")));
 
-            String chrResidueString;
-            if (chromosomeSequenceMap.get(new MultiKey(gr.getChr(), gr
-                    .getOrganism())) == null) {
-                chrResidueString = chr.getSequence().getResidues()
-                        .toString();
-                chromosomeSequenceMap.put(
-                        new MultiKey(gr.getChr(), gr.getOrganism()), chr
-                                .getSequence().getResidues().toString());
-            } else {
-                chrResidueString = chromosomeSequenceMap.get(new MultiKey(
-                        gr.getChr(), gr.getOrganism()));
-            }
-
             int chrLength = chr.getLength();
             int start;
             int end;
@@ -104,19 +83,11 @@ public class GenomicRegionSequenceExporter
             headerBits.add(gr.getOrganism());
             String header = StringUtil.join(headerBits, " ");
 
-            String seqName = "genomic_region_" + gr.getChr() + "_"
-                    + start + "_" + end + "_"
-                    + gr.getOrganism().replace("\\. ", "_");
-
-            Sequence chrSeg = DNATools.createDNASequence(
-                chrResidueString.substring(start - 1, end),
-                seqName);
-            chrSeg.getAnnotation().setProperty(
-                    FastaFormat.PROPERTY_DESCRIPTIONLINE, header);
-
-            // write it out
-            SeqIOTools.writeFasta(out, chrSeg);
+            // Only the clob pages covering the region are read from the database, and they are
+            // streamed to the output
+            writer.writeSequence(header,
+                    chr.getSequence().getResidues().subSequence(start - 1, end));
         }
-        out.flush();
+        writer.finish();
     }
 }
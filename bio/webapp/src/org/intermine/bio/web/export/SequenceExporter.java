@@ -11,27 +11,17 @@ package org.intermine.bio.web.export;
  */
 
 import java.io.OutputStream;
-import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.commons.collections.keyvalue.MultiKey;
 import org.apache.log4j.Logger;
-import org.biojava.bio.Annotation;
-import org.biojava.bio.seq.DNATools;
-import org.biojava.bio.seq.Sequence;
-import org.biojava.bio.seq.io.FastaFormat;
-import org.biojava.bio.seq.io.SeqIOTools;
-import org.biojava.bio.symbol.IllegalSymbolException;
 import org.intermine.api.config.ClassKeyHelper;
 import org.intermine.api.results.ResultElement;
-import org.intermine.bio.web.biojava.BioSequence;
-import org.intermine.bio.web.biojava.BioSequenceFactory;
+import org.intermine.bio.io.fasta.FastaWriter;
 import org.intermine.metadata.FieldDescriptor;
 import org.intermine.model.FastPathObject;
 import org.intermine.model.InterMineObject;
@@ -67,8 +57,6 @@ public class SequenceExporter implements Exporter
     private final Map<String, List<FieldDescriptor>> classKeys;
 
     private int extension; // must > 0
-    // Map to hold DNA sequence of a whole chromosome in memory
-    private static Map<MultiKey, String> chromosomeSequenceMap = new HashMap<MultiKey, String>();
     private List<Path> paths = Collections.emptyList();
 
     /**
@@ -115,14 +103,15 @@ public class SequenceExporter implements Exporter
     }
 
     /**
-     * {@inheritDoc} Lines are always separated with \n because third party tool
-     * writeFasta is used for writing sequence.
+     * {@inheritDoc} Lines are always separated with \n. The residues are streamed from the
+     * database by a FastaWriter, so no whole sequence is held in memory.
      */
     public void export(Iterator<? extends List<ResultElement>> resultIt,
             Collection<Path> unionPathCollection, Collection<Path> newPathCollection) {
         // IDs of the features we have successfully output - used to avoid
         // duplicates
         IntPresentSet exportedIDs = new IntPresentSet();
+        FastaWriter writer = new FastaWriter(out);
 
         try {
             while (resultIt.hasNext()) {
@@ -132,7 +121,7 @@ public class SequenceExporter implements Exporter
 
                 ResultElement resultElement = row.get(featureIndex);
 
-                Sequence bioSequence;
+                CharSequence residues;
                 Object object = os.getObjectById(resultElement.getId());
                 if (!(object instanceof InterMineObject)) {
                     continue;
@@ -146,106 +135,87 @@ public class SequenceExporter implements Exporter
 
                 if (object instanceof SequenceFeature) {
                     if (extension > 0) {
-                        bioSequence = createSequenceFeatureWithExtension(header, object,
+                        residues = getSequenceFeatureWithExtension(header, object,
                                 row, unionPathCollection, newPathCollection);
                     } else {
-                        bioSequence = createSequenceFeature(header, object,
+                        residues = getSequenceFeature(header, object,
                                 row, unionPathCollection, newPathCollection);
                     }
                 } else if (object instanceof Protein) {
-                    bioSequence = createProtein(header, object, row,
+                    residues = getProtein(header, object, row,
                             unionPathCollection, newPathCollection);
                 } else {
                     // ignore other objects
                     continue;
                 }
 
-                if (bioSequence == null) {
+                if (residues == null) {
                     // the object doesn't have a sequence
-                    header.append("no sequence attached.");
                     continue;
                 }
 
-                Annotation annotation = bioSequence.getAnnotation();
                 String headerString = header.toString();
 
-                if (headerString.length() > 0) {
-                    annotation.setProperty(FastaFormat.PROPERTY_DESCRIPTIONLINE, headerString);
-                } else {
+                if (headerString.length() == 0) {
                     if (object instanceof BioEntity) {
-                        annotation.setProperty(FastaFormat.PROPERTY_DESCRIPTIONLINE,
-                                ((BioEntity) object).getPrimaryIdentifier());
+                        headerString = ((BioEntity) object).getPrimaryIdentifier();
                     } else {
                         // last resort
-                        annotation.setProperty(FastaFormat.PROPERTY_DESCRIPTIONLINE,
-                                "sequence_" + exportedIDs.size());
+                        headerString = "sequence_" + exportedIDs.size();
                     }
                 }
-                SeqIOTools.writeFasta(out, bioSequence);
+                writer.writeSequence(headerString, residues);
                 writtenResultsCount++;
                 exportedIDs.add(objectId);
             }
 
             if (writtenResultsCount == 0) {
-                out.write("Nothing was found for export".getBytes(Charset.forName("UTF-8")));
+                writer.writeText("Nothing was found for export");
             }
 
-            out.flush();
+            writer.finish();
         } catch (Exception e) {
             throw new ExportException("Export failed.", e);
         }
     }
 
-    private BioSequence createProtein(StringBuffer header, Object object,
+    private CharSequence getProtein(StringBuffer header, Object object,
             List<ResultElement> row, Collection<Path> unionPathCollection,
-            Collection<Path> newPathCollection)
-        throws IllegalSymbolException {
-        BioSequence bioSequence;
+            Collection<Path> newPathCollection) {
         Protein protein = (Protein) object;
-        bioSequence = BioSequenceFactory.make(protein);
+        if (protein.getSequence() == null || protein.getSequence().getResidues() == null) {
+            return null;
+        }
 
         makeHeader(header, object, row, unionPathCollection, newPathCollection);
 
-        return bioSequence;
+        return protein.getSequence().getResidues();
     }
 
-    private BioSequence createSequenceFeature(StringBuffer header,
+    private CharSequence getSequenceFeature(StringBuffer header,
             Object object, List<ResultElement> row,
             Collection<Path> unionPathCollection,
-            Collection<Path> newPathCollection)
-        throws IllegalSymbolException {
-        BioSequence bioSequence;
+            Collection<Path> newPathCollection) {
         SequenceFeature feature = (SequenceFeature) object;
-        bioSequence = BioSequenceFactory.make(feature);
+        if (feature.getSequence() == null || feature.getSequence().getResidues() == null) {
+            return null;
+        }
 
         makeHeader(header, object, row, unionPathCollection, newPathCollection);
-        return bioSequence;
+        return feature.getSequence().getResidues();
     }
 
-    private Sequence createSequenceFeatureWithExtension(StringBuffer header,
+    private CharSequence getSequenceFeatureWithExtension(StringBuffer header,
             Object object, List<ResultElement> row,
             Collection<Path> unionPathCollection,
-            Collection<Path> newPathCollection)
-        throws IllegalSymbolException {
+            Collection<Path> newPathCollection) {
 
         SequenceFeature feature = (SequenceFeature) object;
 
         Chromosome chr = feature.getChromosome();
-        String chrName = chr.getPrimaryIdentifier();
         int chrLength = chr.getLength();
         int start = feature.getChromosomeLocation().getStart();
         int end = feature.getChromosomeLocation().getEnd();
-        String org = feature.getOrganism().getShortName();
-
-        String chrResidueString;
-        if (chromosomeSequenceMap.get(new MultiKey(chrName, org)) == null) {
-            chrResidueString = chr.getSequence().getResidues()
-                    .toString();
-            chromosomeSequenceMap.put(
-                    new MultiKey(chrName, org), chr.getSequence().getResidues().toString());
-        } else {
-            chrResidueString = chromosomeSequenceMap.get(new MultiKey(chrName, org));
-        }
 
         if (extension > 0) {
             start = start - extension;
@@ -255,15 +225,9 @@ public class SequenceExporter implements Exporter
         end = Math.min(end, chrLength);
         start = Math.max(start, 1);
 
-        String seqName = "genomic_region_" + chrName + "_"
-                + start + "_" + end + "_"
-                + org.replace("\\. ", "_");
-
-        Sequence seq = DNATools.createDNASequence(chrResidueString.substring(start - 1, end),
-                        seqName);
-
         makeHeader(header, object, row, unionPathCollection, newPathCollection);
-        return seq;
+        // Only the clob pages covering the region are read from the database
+        return chr.getSequence().getResidues().subSequence(start - 1, end);
     }
 
     /**
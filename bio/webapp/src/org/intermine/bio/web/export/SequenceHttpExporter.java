@@ -44,8 +44,8 @@ import org.intermine.web.struts.TableExportForm;
 /**
  * Obsoleted - replaced by new results table
  *
- * An implementation of TableExporter that exports sequence objects using the BioJava sequence and
- * feature writers.
+ * An implementation of TableExporter that exports sequence objects in FASTA format, streaming the
+ * residues with a SequenceExporter.
  *
  * @author Kim Rutherford
  */
@@ -68,7 +68,7 @@ public class SequenceHttpExporter extends HttpExporterBase implements TableHttpE
     }
 
     /**
-     * Method called to export a PagedTable object using the BioJava sequence and feature writers.
+     * Method called to export a PagedTable object as FASTA.
      * {@inheritDoc}
      */
     public void export(PagedTable pt, HttpServletRequest request,
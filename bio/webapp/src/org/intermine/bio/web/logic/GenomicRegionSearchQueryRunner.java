@@ -21,8 +21,14 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Properties;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -57,15 +63,22 @@ import org.intermine.web.logic.session.SessionMethods;
  */
 public class GenomicRegionSearchQueryRunner implements Runnable
 {
-    @SuppressWarnings("unused")
     private static final Logger LOG = Logger.getLogger(GenomicRegionSearchQueryRunner.class);
 
+    /**
+     * The default number of searches run against the database at once, across all users.
+     */
+    public static final int DEFAULT_QUERY_THREADS = 4;
+
     private HttpServletRequest request = null;
     private String spanUUIDString = null;
     private GenomicRegionSearchConstraint grsc = null;
     private Map<GenomicRegion, Query> queryMap = null;
+    private Map<Query, List<GenomicRegion>> batchedQueryMap = null;
+    private ObjectStore os = null;
 
     private static Map<String, Map<String, ChromosomeInfo>> chrInfoMap = null;
+    private static ExecutorService executor = null;
 
     /**
      * Constructor
@@ -84,6 +97,51 @@ public class GenomicRegionSearchQueryRunner implements Runnable
         this.queryMap = queryMap;
     }
 
+    /**
+     * Use queries that each cover several regions, as created by
+     * GenomicRegionSearchUtil.createBatchedQueryList(), instead of one query per region.  The
+     * results for each region are still made available in the order of the regions in the
+     * constraint, as soon as they and all the regions before them are complete.
+     *
+     * @param batchedQueryMap map of query to the regions it covers
+     */
+    public void setBatchedQueryMap(Map<Query, List<GenomicRegion>> batchedQueryMap) {
+        this.batchedQueryMap = batchedQueryMap;
+    }
+
+    /**
+     * Returns the executor that runs searches, shared by all users so that a burst of searches
+     * does not start an unbounded number of threads.  Searches wait in the queue when all the
+     * threads are busy.
+     */
+    private static synchronized ExecutorService getExecutor(Properties webProperties) {
+        if (executor == null) {
+            int threads = DEFAULT_QUERY_THREADS;
+            String threadsString = (webProperties == null ? null
+                    : webProperties.getProperty("genomicRegionSearch.queryThreads"));
+            if (threadsString != null && !"".equals(threadsString.trim())) {
+                try {
+                    threads = Integer.parseInt(threadsString.trim());
+                } catch (NumberFormatException e) {
+                    LOG.warn("Invalid genomicRegionSearch.queryThreads: " + threadsString);
+                }
+            }
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60L,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        private int count = 0;
+                        @Override
+                        public synchronized Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "GenomicRegionSearch-" + (++count));
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+        }
+        return executor;
+    }
+
     /**
      * Main body of db search
      */
@@ -114,7 +172,11 @@ public class GenomicRegionSearchQueryRunner implements Runnable
         request.getSession().setAttribute("spanConstraintMap", spanConstraintMap);
         request.setAttribute("spanQueryTotalCount", grsc.getGenomicRegionList().size());
 
-        (new Thread(this)).start();
+        // Look the objectstore up now, as the session may be gone by the time this runs
+        os = SessionMethods.getInterMineAPI(request.getSession()).getObjectStore();
+
+        getExecutor(SessionMethods.getWebProperties(request.getSession().getServletContext()))
+            .execute(this);
     }
 
     @Override
@@ -126,7 +188,6 @@ public class GenomicRegionSearchQueryRunner implements Runnable
     /**
      * The method to run all the queries.
      */
-    @SuppressWarnings("rawtypes")
     private void queryExecutor() {
 
         // Use spanOverlapFullResultMap to store the data in the session
@@ -167,8 +228,10 @@ public class GenomicRegionSearchQueryRunner implements Runnable
             request.getSession().setAttribute("spanOverlapFullStatMap", spanOverlapFullStatMap);
 
             try {
-                ObjectStore os = SessionMethods.getInterMineAPI(
-                        request.getSession()).getObjectStore();
+                if (batchedQueryMap != null) {
+                    batchedQueryExecutor(spanOverlapResultDisplayMap, spanOverlapResultStatMap);
+                    return;
+                }
 
                 for (Entry<GenomicRegion, Query> e : queryMap.entrySet()) {
                     Results results = os.execute(e.getValue());
@@ -176,9 +239,6 @@ public class GenomicRegionSearchQueryRunner implements Runnable
                     List<List<String>> spanResults = new ArrayList<List<String>>();
 
                     Map<String, Integer> spanStatMap = new HashMap<String, Integer>();
-                    ValueComparator bvc =  new ValueComparator(spanStatMap);
-                    @SuppressWarnings("unchecked")
-                    TreeMap<String, Integer> sortedStatMap = new TreeMap<String, Integer>(bvc);
 
                     if (results == null || results.isEmpty()) {
                         spanOverlapResultDisplayMap.put(e.getKey(), null);
@@ -186,35 +246,10 @@ public class GenomicRegionSearchQueryRunner implements Runnable
                     else {
                         for (Iterator<?> iter = results.iterator(); iter.hasNext();) {
                             ResultsRow<?> row = (ResultsRow<?>) iter.next();
-
-                            List<String> resultRow = new ArrayList<String>();
-
-                            for (Object o : row) {
-                                String item = new String();
-
-                                // NULL for symbol or PID
-                                o = o == null ? new String() : o;
-
-                                if (o instanceof Class) {
-                                    item = ((Class) o).getSimpleName();
-                                    // add class stat to spanStatMap
-                                    if (spanStatMap.containsKey(item)) {
-                                        spanStatMap.put(item, spanStatMap.get(item) + 1);
-                                    } else {
-                                        spanStatMap.put(item, 1);
-                                    }
-                                } else {
-                                    item = o.toString();
-                                }
-
-                                resultRow.add(item);
-                            }
-                            spanResults.add(resultRow);
+                            spanResults.add(toResultRow(row, spanStatMap));
                         }
                         spanOverlapResultDisplayMap.put(e.getKey(), spanResults);
-
-                        sortedStatMap.putAll(spanStatMap);
-                        spanOverlapResultStatMap.put(e.getKey(), sortedStatMap);
+                        spanOverlapResultStatMap.put(e.getKey(), sortStatMap(spanStatMap));
                     }
                 }
             } catch (Exception e) {
@@ -223,6 +258,112 @@ public class GenomicRegionSearchQueryRunner implements Runnable
         }
     }
 
+    /**
+     * Run the batched queries.  Each row is added to every region in its batch that it overlaps,
+     * and the results of a region are published once it and all the regions before it in the
+     * constraint are complete, because the results page shows finished regions in that order.
+     */
+    private void batchedQueryExecutor(
+            Map<GenomicRegion, List<List<String>>> spanOverlapResultDisplayMap,
+            Map<GenomicRegion, Map<String, Integer>> spanOverlapResultStatMap) {
+        int extension = grsc.getExtendedRegionSize();
+        List<GenomicRegion> regionOrder = grsc.getGenomicRegionList();
+        Map<GenomicRegion, List<List<String>>> finishedResults =
+            new HashMap<GenomicRegion, List<List<String>>>();
+        Map<GenomicRegion, Map<String, Integer>> finishedStats =
+            new HashMap<GenomicRegion, Map<String, Integer>>();
+        int published = 0;
+
+        for (Entry<Query, List<GenomicRegion>> e : batchedQueryMap.entrySet()) {
+            List<GenomicRegion> regions = new ArrayList<GenomicRegion>(e.getValue());
+            int[] maxEnds = GenomicRegionSearchUtil.sortRegions(regions, extension);
+            List<List<List<String>>> regionResults = new ArrayList<List<List<String>>>();
+            List<Map<String, Integer>> regionStats = new ArrayList<Map<String, Integer>>();
+            for (int i = 0; i < regions.size(); i++) {
+                regionResults.add(new ArrayList<List<String>>());
+                regionStats.add(new HashMap<String, Integer>());
+            }
+
+            long startTime = System.currentTimeMillis();
+            int rowCount = 0;
+            Results results = os.execute(e.getKey());
+            for (Iterator<?> iter = results.iterator(); iter.hasNext();) {
+                ResultsRow<?> row = (ResultsRow<?>) iter.next();
+                // The location start and end are the last two columns
+                Integer start = (Integer) row.get(row.size() - 2);
+                Integer end = (Integer) row.get(row.size() - 1);
+                if (start == null || end == null) {
+                    continue;
+                }
+                for (Integer index : GenomicRegionSearchUtil.assignToRegions(regions, maxEnds,
+                        start.intValue(), end.intValue(), extension)) {
+                    regionResults.get(index).add(toResultRow(row, regionStats.get(index)));
+                }
+                rowCount++;
+            }
+            LOG.info("Genomic region search batch of " + regions.size() + " regions on "
+                    + regions.get(0).getChr() + " returned " + rowCount + " rows in "
+                    + (System.currentTimeMillis() - startTime) + " ms");
+
+            for (int i = 0; i < regions.size(); i++) {
+                if (regionResults.get(i).isEmpty()) {
+                    finishedResults.put(regions.get(i), null);
+                } else {
+                    finishedResults.put(regions.get(i), regionResults.get(i));
+                    finishedStats.put(regions.get(i), sortStatMap(regionStats.get(i)));
+                }
+            }
+
+            while (published < regionOrder.size()
+                    && finishedResults.containsKey(regionOrder.get(published))) {
+                GenomicRegion region = regionOrder.get(published);
+                if (finishedStats.containsKey(region)) {
+                    spanOverlapResultStatMap.put(region, finishedStats.get(region));
+                }
+                spanOverlapResultDisplayMap.put(region, finishedResults.get(region));
+                published++;
+            }
+        }
+    }
+
+    /**
+     * Convert a row of a region query to Strings, counting the feature class in the stat map.
+     */
+    @SuppressWarnings("rawtypes")
+    private static List<String> toResultRow(ResultsRow<?> row, Map<String, Integer> spanStatMap) {
+        List<String> resultRow = new ArrayList<String>();
+
+        for (Object o : row) {
+            String item = new String();
+
+            // NULL for symbol or PID
+            o = o == null ? new String() : o;
+
+            if (o instanceof Class) {
+                item = ((Class) o).getSimpleName();
+                // add class stat to spanStatMap
+                if (spanStatMap.containsKey(item)) {
+                    spanStatMap.put(item, spanStatMap.get(item) + 1);
+                } else {
+                    spanStatMap.put(item, 1);
+                }
+            } else {
+                item = o.toString();
+            }
+
+            resultRow.add(item);
+        }
+        return resultRow;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Integer> sortStatMap(Map<String, Integer> spanStatMap) {
+        ValueComparator bvc =  new ValueComparator(spanStatMap);
+        TreeMap<String, Integer> sortedStatMap = new TreeMap<String, Integer>(bvc);
+        sortedStatMap.putAll(spanStatMap);
+        return sortedStatMap;
+    }
+
     /**
      * Query the information of all the organisms and their chromosomes' names and length. The
      * results is stored in a Map. The result data will be used to validate users' span data.
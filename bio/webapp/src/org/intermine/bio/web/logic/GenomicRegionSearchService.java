@@ -690,6 +690,21 @@ public class GenomicRegionSearchService
             grsc.getFeatureTypes());
     }
 
+    /**
+     * To prepare queries that each cover several genomic regions on the same chromosome
+     *
+     * @param regionsPerQuery the maximum number of regions in one query
+     * @return a map of prepared queries to the genomic regions they cover
+     */
+    public Map<Query, List<GenomicRegion>> createBatchedQueryList(int regionsPerQuery) {
+        return GenomicRegionSearchUtil.createBatchedQueryList(
+            grsc.getGenomicRegionList(),
+            grsc.getExtendedRegionSize(),
+            grsc.getOrgName(),
+            grsc.getFeatureTypes(),
+            regionsPerQuery);
+    }
+
     /**
      * @return the grsc
      */
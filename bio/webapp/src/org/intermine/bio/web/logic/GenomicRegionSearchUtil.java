@@ -13,7 +13,11 @@ package org.intermine.bio.web.logic;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -24,6 +28,7 @@ import javax.servlet.http.HttpServletRequest;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.tools.ant.BuildException;
+import org.intermine.bio.util.GenomicIntervalIndex;
 import org.intermine.bio.web.model.ChromosomeInfo;
 import org.intermine.bio.web.model.GenomicRegion;
 import org.intermine.bio.web.model.RegionParseException;
@@ -275,106 +280,260 @@ public final class GenomicRegionSearchUtil
         Map<GenomicRegion, Query> queryMap = new LinkedHashMap<GenomicRegion, Query>();
 
         for (GenomicRegion aSpan : genomicRegions) {
+            if (extension > 0) {
+                aSpan = extendGenomicRegion(aSpan, extension);
+            }
+            queryMap.put(aSpan, createOverlapQuery(aSpan.getChr(),
+                    Collections.singletonList(aSpan), extension, organismName, featureTypes,
+                    idOnly));
+        }
+
+        return queryMap;
+    }
+
+    /**
+     * Create queries that each find the features overlapping several user regions on the same
+     * chromosome, so that a long list of regions needs one query per chromosome rather than one
+     * per region.  The results include the location of each feature, which can be used to find
+     * which regions a row belongs to with assignToRegions().
+     *
+     * @param genomicRegions list of gr
+     * @param extension the flanking
+     * @param organismName org short name
+     * @param featureTypes ft
+     * @param regionsPerQuery the maximum number of regions in one query
+     * @return map of query to the regions it covers, in the order of the first region of each
+     */
+    public static Map<Query, List<GenomicRegion>> createBatchedQueryList(
+            Collection<GenomicRegion> genomicRegions,
+            int extension,
+            String organismName,
+            Set<Class<?>> featureTypes,
+            int regionsPerQuery) {
 
-            Integer start;
-            Integer end;
+        Map<String, List<List<GenomicRegion>>> chrBatches =
+            new LinkedHashMap<String, List<List<GenomicRegion>>>();
+        List<List<GenomicRegion>> batches = new ArrayList<List<GenomicRegion>>();
 
+        for (GenomicRegion aSpan : genomicRegions) {
             if (extension > 0) {
                 aSpan = extendGenomicRegion(aSpan, extension);
-                start = aSpan.getExtendedStart();
-                end = aSpan.getExtendedEnd();
-            } else {
-                start = aSpan.getStart();
-                end = aSpan.getEnd();
             }
+            List<List<GenomicRegion>> batchesForChr = chrBatches.get(aSpan.getChr());
+            if (batchesForChr == null) {
+                batchesForChr = new ArrayList<List<GenomicRegion>>();
+                chrBatches.put(aSpan.getChr(), batchesForChr);
+            }
+            List<GenomicRegion> batch = batchesForChr.isEmpty() ? null
+                    : batchesForChr.get(batchesForChr.size() - 1);
+            if (batch == null || batch.size() >= regionsPerQuery) {
+                batch = new ArrayList<GenomicRegion>();
+                batchesForChr.add(batch);
+                batches.add(batch);
+            }
+            batch.add(aSpan);
+        }
 
-            Query q = new Query();
-            q.setDistinct(true);
-
-            String chrPID = aSpan.getChr();
-
-
-            QueryClass qcOrg = new QueryClass(Organism.class);
-            QueryClass qcChr = new QueryClass(Chromosome.class);
-            QueryClass qcFeature = new QueryClass(SequenceFeature.class);
-            QueryClass qcLoc = new QueryClass(Location.class);
-
-            QueryField qfOrgName = new QueryField(qcOrg, "shortName");
-            QueryField qfFeatureId = new QueryField(qcFeature, "id");
-            QueryField qfFeaturePID = new QueryField(qcFeature,
-                    "primaryIdentifier");
-            QueryField qfFeatureSymbol = new QueryField(qcFeature, "symbol");
-            QueryField qfFeatureClass = new QueryField(qcFeature, "class");
-            QueryField qfChr = new QueryField(qcChr, "primaryIdentifier");
-            QueryField qfLocStart = new QueryField(qcLoc, "start");
-            QueryField qfLocEnd = new QueryField(qcLoc, "end");
-
-            q.addToSelect(qfFeatureId);
-            q.addFrom(qcFeature);
-            q.addFrom(qcChr);
-            q.addFrom(qcOrg);
-            q.addFrom(qcLoc);
-            if (!idOnly) {
-                q.addToSelect(qfFeaturePID);
-                q.addToSelect(qfFeatureSymbol);
-                q.addToSelect(qfFeatureClass);
-                q.addToSelect(qfChr);
-                q.addToSelect(qfLocStart);
-                q.addToSelect(qfLocEnd);
-                q.addToOrderBy(qfLocStart, "ascending");
+        Map<Query, List<GenomicRegion>> queryMap = new LinkedHashMap<Query, List<GenomicRegion>>();
+        for (List<GenomicRegion> batch : batches) {
+            queryMap.put(createOverlapQuery(batch.get(0).getChr(), batch, extension,
+                    organismName, featureTypes, false), batch);
+        }
+        return queryMap;
+    }
+
+    /**
+     * Find the ids of the features that overlap user regions from an in-memory index, instead
+     * of running the queries of createRegionListQueries().
+     *
+     * @param index the index of the production database
+     * @param genomicRegions list of gr
+     * @param extension the flanking
+     * @param organismName org short name
+     * @param featureTypes ft, including any subclasses wanted
+     * @return the ids of the overlapping features
+     */
+    public static Set<Integer> findRegionFeatureIds(GenomicIntervalIndex index,
+            Collection<GenomicRegion> genomicRegions, int extension, String organismName,
+            Set<Class<?>> featureTypes) {
+        Set<String> classNames = new HashSet<String>();
+        for (Class<?> featureType : featureTypes) {
+            classNames.add(featureType.getSimpleName());
+        }
+        Set<Integer> ids = new LinkedHashSet<Integer>();
+        for (GenomicRegion aSpan : genomicRegions) {
+            if (extension > 0) {
+                aSpan = extendGenomicRegion(aSpan, extension);
+            }
+            for (int id : index.findOverlappingIds(organismName, aSpan.getChr(),
+                    getQueryStart(aSpan, extension), getQueryEnd(aSpan, extension),
+                    classNames)) {
+                ids.add(Integer.valueOf(id));
             }
+        }
+        return ids;
+    }
 
-            ConstraintSet constraints = new ConstraintSet(ConstraintOp.AND);
-
-            q.setConstraint(constraints);
-
-            // SequenceFeature.organism = Organism
-            QueryObjectReference organism = new QueryObjectReference(qcFeature,
-                    "organism");
-            ContainsConstraint ccOrg = new ContainsConstraint(organism,
-                    ConstraintOp.CONTAINS, qcOrg);
-            constraints.addConstraint(ccOrg);
-
-            // Organism.name = orgName
-            SimpleConstraint scOrg = new SimpleConstraint(qfOrgName,
-                    ConstraintOp.EQUALS, new QueryValue(organismName));
-            constraints.addConstraint(scOrg);
-
-            // Location.feature = SequenceFeature
-            QueryObjectReference locSubject = new QueryObjectReference(qcLoc,
-                    "feature");
-            ContainsConstraint ccLocSubject = new ContainsConstraint(
-                    locSubject, ConstraintOp.CONTAINS, qcFeature);
-            constraints.addConstraint(ccLocSubject);
-
-            // Location.locatedOn = Chromosome
-            QueryObjectReference locObject = new QueryObjectReference(qcLoc,
-                    "locatedOn");
-            ContainsConstraint ccLocObject = new ContainsConstraint(locObject,
-                    ConstraintOp.CONTAINS, qcChr);
-            constraints.addConstraint(ccLocObject);
-
-            // Chromosome.primaryIdentifier = chrPID
-            SimpleConstraint scChr = new SimpleConstraint(qfChr,
-                    ConstraintOp.EQUALS, new QueryValue(chrPID));
-            constraints.addConstraint(scChr);
-
-            // SequenceFeature.class in a list
-            constraints.addConstraint(new BagConstraint(qfFeatureClass,
-                    ConstraintOp.IN, featureTypes));
-
-            OverlapRange overlapInput = new OverlapRange(new QueryValue(start),
-                    new QueryValue(end), locObject);
-            OverlapRange overlapFeature = new OverlapRange(new QueryField(
-                    qcLoc, "start"), new QueryField(qcLoc, "end"), locObject);
-            OverlapConstraint oc = new OverlapConstraint(overlapInput,
-                    ConstraintOp.OVERLAPS, overlapFeature);
-            constraints.addConstraint(oc);
-
-            queryMap.put(aSpan, q);
+    private static Query createOverlapQuery(String chrPID, List<GenomicRegion> regions,
+            int extension, String organismName, Set<Class<?>> featureTypes, boolean idOnly) {
+        Query q = new Query();
+        q.setDistinct(true);
+
+        QueryClass qcOrg = new QueryClass(Organism.class);
+        QueryClass qcChr = new QueryClass(Chromosome.class);
+        QueryClass qcFeature = new QueryClass(SequenceFeature.class);
+        QueryClass qcLoc = new QueryClass(Location.class);
+
+        QueryField qfOrgName = new QueryField(qcOrg, "shortName");
+        QueryField qfFeatureId = new QueryField(qcFeature, "id");
+        QueryField qfFeaturePID = new QueryField(qcFeature,
+                "primaryIdentifier");
+        QueryField qfFeatureSymbol = new QueryField(qcFeature, "symbol");
+        QueryField qfFeatureClass = new QueryField(qcFeature, "class");
+        QueryField qfChr = new QueryField(qcChr, "primaryIdentifier");
+        QueryField qfLocStart = new QueryField(qcLoc, "start");
+        QueryField qfLocEnd = new QueryField(qcLoc, "end");
+
+        q.addToSelect(qfFeatureId);
+        q.addFrom(qcFeature);
+        q.addFrom(qcChr);
+        q.addFrom(qcOrg);
+        q.addFrom(qcLoc);
+        if (!idOnly) {
+            q.addToSelect(qfFeaturePID);
+            q.addToSelect(qfFeatureSymbol);
+            q.addToSelect(qfFeatureClass);
+            q.addToSelect(qfChr);
+            q.addToSelect(qfLocStart);
+            q.addToSelect(qfLocEnd);
+            q.addToOrderBy(qfLocStart, "ascending");
         }
 
-        return queryMap;
+        ConstraintSet constraints = new ConstraintSet(ConstraintOp.AND);
+
+        q.setConstraint(constraints);
+
+        // SequenceFeature.organism = Organism
+        QueryObjectReference organism = new QueryObjectReference(qcFeature,
+                "organism");
+        ContainsConstraint ccOrg = new ContainsConstraint(organism,
+                ConstraintOp.CONTAINS, qcOrg);
+        constraints.addConstraint(ccOrg);
+
+        // Organism.name = orgName
+        SimpleConstraint scOrg = new SimpleConstraint(qfOrgName,
+                ConstraintOp.EQUALS, new QueryValue(organismName));
+        constraints.addConstraint(scOrg);
+
+        // Location.feature = SequenceFeature
+        QueryObjectReference locSubject = new QueryObjectReference(qcLoc,
+                "feature");
+        ContainsConstraint ccLocSubject = new ContainsConstraint(
+                locSubject, ConstraintOp.CONTAINS, qcFeature);
+        constraints.addConstraint(ccLocSubject);
+
+        // Location.locatedOn = Chromosome
+        QueryObjectReference locObject = new QueryObjectReference(qcLoc,
+                "locatedOn");
+        ContainsConstraint ccLocObject = new ContainsConstraint(locObject,
+                ConstraintOp.CONTAINS, qcChr);
+        constraints.addConstraint(ccLocObject);
+
+        // Chromosome.primaryIdentifier = chrPID
+        SimpleConstraint scChr = new SimpleConstraint(qfChr,
+                ConstraintOp.EQUALS, new QueryValue(chrPID));
+        constraints.addConstraint(scChr);
+
+        // SequenceFeature.class in a list
+        constraints.addConstraint(new BagConstraint(qfFeatureClass,
+                ConstraintOp.IN, featureTypes));
+
+        // Location overlaps any of the regions - each is a range constraint that the database
+        // can answer from the location index
+        ConstraintSet overlaps = constraints;
+        if (regions.size() > 1) {
+            overlaps = new ConstraintSet(ConstraintOp.OR);
+            constraints.addConstraint(overlaps);
+        }
+        OverlapRange overlapFeature = new OverlapRange(new QueryField(
+                qcLoc, "start"), new QueryField(qcLoc, "end"), locObject);
+        for (GenomicRegion aSpan : regions) {
+            OverlapRange overlapInput = new OverlapRange(
+                    new QueryValue(getQueryStart(aSpan, extension)),
+                    new QueryValue(getQueryEnd(aSpan, extension)), locObject);
+            overlaps.addConstraint(new OverlapConstraint(overlapInput,
+                    ConstraintOp.OVERLAPS, overlapFeature));
+        }
+
+        return q;
+    }
+
+    private static int getQueryStart(GenomicRegion aSpan, int extension) {
+        return extension > 0 ? aSpan.getExtendedStart() : aSpan.getStart();
+    }
+
+    private static int getQueryEnd(GenomicRegion aSpan, int extension) {
+        return extension > 0 ? aSpan.getExtendedEnd() : aSpan.getEnd();
+    }
+
+    /**
+     * Find the regions that a feature location overlaps.  The regions must be sorted by start
+     * with sortRegions() first.
+     *
+     * @param sortedRegions the regions of a batched query, sorted by start
+     * @param maxEnds the result of sortRegions() for the regions
+     * @param start the start of the feature location
+     * @param end the end of the feature location
+     * @param extension the flanking
+     * @return the indexes of the overlapping regions in sortedRegions
+     */
+    public static List<Integer> assignToRegions(List<GenomicRegion> sortedRegions,
+            int[] maxEnds, int start, int end, int extension) {
+        // Find the last region starting at or before the end of the feature
+        int low = 0;
+        int high = sortedRegions.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (getQueryStart(sortedRegions.get(mid), extension) <= end) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        List<Integer> retval = new ArrayList<Integer>();
+        // Walk back while some earlier region may still reach the start of the feature
+        for (int i = high; i >= 0 && maxEnds[i] >= start; i--) {
+            if (getQueryEnd(sortedRegions.get(i), extension) >= start) {
+                retval.add(i);
+            }
+        }
+        Collections.reverse(retval);
+        return retval;
+    }
+
+    /**
+     * Sort the regions of a batched query by start, for assignToRegions().
+     *
+     * @param regions the regions, which are sorted in place
+     * @param extension the flanking
+     * @return for each position, the greatest end of the regions up to that position
+     */
+    public static int[] sortRegions(List<GenomicRegion> regions, final int extension) {
+        Collections.sort(regions, new Comparator<GenomicRegion>() {
+            @Override
+            public int compare(GenomicRegion a, GenomicRegion b) {
+                int aStart = getQueryStart(a, extension);
+                int bStart = getQueryStart(b, extension);
+                return aStart < bStart ? -1 : (aStart == bStart ? 0 : 1);
+            }
+        });
+        int[] maxEnds = new int[regions.size()];
+        int maxEnd = Integer.MIN_VALUE;
+        for (int i = 0; i < regions.size(); i++) {
+            maxEnd = Math.max(maxEnd, getQueryEnd(regions.get(i), extension));
+            maxEnds[i] = maxEnd;
+        }
+        return maxEnds;
     }
 
     /**
@@ -211,11 +211,31 @@ public class GenomicRegionSearchAction extends InterMineAction
             request.setAttribute("errorMsg", errorMsg);
         }
 
-        // regions will be extended in this step
-        Map<GenomicRegion, Query> queryMap = grsService.createQueryList();
+        // Search for many regions on a chromosome in one query if configured
+        int regionsPerQuery = 1;
+        String regionsPerQueryString = webProperties.getProperty(
+                "genomicRegionSearch.regionsPerQuery");
+        if (regionsPerQueryString != null && !"".equals(regionsPerQueryString.trim())) {
+            try {
+                regionsPerQuery = Integer.parseInt(regionsPerQueryString.trim());
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid genomicRegionSearch.regionsPerQuery: "
+                        + regionsPerQueryString);
+            }
+        }
 
-        GenomicRegionSearchQueryRunner grsqRunner = new GenomicRegionSearchQueryRunner(
-                request, spanUUIDString, grsService.getConstraint(), queryMap);
+        GenomicRegionSearchQueryRunner grsqRunner;
+        // regions will be extended in this step
+        if (regionsPerQuery > 1) {
+            grsqRunner = new GenomicRegionSearchQueryRunner(request, spanUUIDString,
+                    grsService.getConstraint(), null);
+            grsqRunner.setBatchedQueryMap(grsService.createBatchedQueryList(regionsPerQuery));
+        } else {
+            Map<GenomicRegion, Query> queryMap = grsService.createQueryList();
+
+            grsqRunner = new GenomicRegionSearchQueryRunner(
+                    request, spanUUIDString, grsService.getConstraint(), queryMap);
+        }
 
         grsqRunner.search();
 
@@ -23,6 +23,7 @@ import org.intermine.api.bag.ClassKeysNotFoundException;
 import org.intermine.api.bag.UnknownBagTypeException;
 import org.intermine.api.profile.InterMineBag;
 import org.intermine.api.profile.Profile;
+import org.intermine.bio.util.GenomicIntervalIndex;
 import org.intermine.bio.web.logic.GenomicRegionSearchQueryRunner;
 import org.intermine.bio.web.logic.GenomicRegionSearchUtil;
 import org.intermine.bio.web.model.GenomicRegion;
@@ -102,6 +103,17 @@ public class GenomicRegionSearchService extends ListMakerService
         UnknownBagTypeException {
         final InterMineBag tempBag = profile.createBag(
                 input.getTemporaryListName(), type, input.getDescription(), im.getClassKeys());
+        GenomicIntervalIndex index = GenomicIntervalIndex.getIndex(im.getObjectStore());
+        if (index != null) {
+            GenomicRegionSearchInfo info = input.getSearchInfo();
+            Set<Integer> ids = GenomicRegionSearchUtil.findRegionFeatureIds(index,
+                    info.getGenomicRegions(), info.getExtension(), info.getOrganism(),
+                    info.getFeatureClasses());
+            if (!ids.isEmpty()) {
+                tempBag.addIdsToBag(ids, type);
+            }
+            return tempBag;
+        }
         Map<GenomicRegion, Query> queries = createQueries(input.getSearchInfo());
         for (Entry<GenomicRegion, Query> e : queries.entrySet()) {
             Query q = e.getValue();
@@ -11,6 +11,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
@@ -22,12 +23,14 @@ import org.apache.commons.collections.keyvalue.MultiKey;
 import org.apache.log4j.Logger;
 import org.intermine.api.InterMineAPI;
 import org.intermine.api.query.MainHelper;
+import org.intermine.bio.util.GenomicIntervalIndex;
 import org.intermine.metadata.ClassDescriptor;
 import org.intermine.metadata.Model;
 import org.intermine.model.FastPathObject;
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.metadata.ConstraintOp;
+import org.intermine.objectstore.query.BagConstraint;
 import org.intermine.objectstore.query.ConstraintSet;
 import org.intermine.objectstore.query.ContainsConstraint;
 import org.intermine.objectstore.query.Query;
@@ -129,7 +132,10 @@ public class Engine extends CommandRunner {
     @Override
     public void features(Command command) {
         if (command.getSegment() != Segment.NEGATIVE_SEGMENT) {
-            Query q = getFeatureQuery(command);
+            Query q = getIndexedFeatureQuery(command);
+            if (q == null) {
+                q = getFeatureQuery(command);
+            }
             Iterator<Object> it = getResults(q).iterator();
 
             while (it.hasNext()) {
@@ -178,22 +184,26 @@ public class Engine extends CommandRunner {
     @Override
     public void densities(Command command) {
         final int nSlices = getNumberOfSlices(command);
-        List<PathQuery> segmentQueries = getSliceQueries(command, nSlices);
-        List<Future<Integer>> pending = countInParallel(segmentQueries);
-        List<Integer> results = new ArrayList<Integer>();
+        List<Integer> results = countFromIndex(command, nSlices);
+        if (results == null) {
+            results = new ArrayList<Integer>();
+            List<PathQuery> segmentQueries = getSliceQueries(command, nSlices);
+            List<Future<Integer>> pending = countInParallel(segmentQueries);
+            for (Future<Integer> future: pending) {
+                try {
+                    results.add(future.get());
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                } catch (ExecutionException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
 
         int max = 0, sum = 0;
-        for (Future<Integer> future: pending) {
-            try {
-                Integer r = future.get();
-                if (r != null && r > max) max = r;
-                sum += r;
-                results.add(r);
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            } catch (ExecutionException e) {
-                throw new RuntimeException(e);
-            }
+        for (Integer r: results) {
+            if (r != null && r > max) max = r;
+            sum += r;
         }
         double mean = Double.valueOf(sum) / results.size();
 
@@ -223,6 +233,83 @@ public class Engine extends CommandRunner {
 
     //------------ PRIVATE METHODS --------------------//
 
+    /**
+     * Returns the in-memory index of feature locations and the organism to look in, if the
+     * index has been built and can answer a query for this segment. Otherwise the database
+     * must be used.
+     */
+    private GenomicIntervalIndex getIndex(Command command) {
+        Segment seg = command.getSegment();
+        if (seg == Segment.GLOBAL_SEGMENT || seg == Segment.NEGATIVE_SEGMENT
+                || seg.getSection() == null || seg.getStart() == null || seg.getEnd() == null) {
+            return null;
+        }
+        GenomicIntervalIndex index = GenomicIntervalIndex.getIndex(getAPI().getObjectStore());
+        if (index == null || getIndexedOrganism(index, command) == null) {
+            return null;
+        }
+        return index;
+    }
+
+    private String getIndexedOrganism(GenomicIntervalIndex index, Command command) {
+        try {
+            return index.getOrganismByTaxonId(Integer.valueOf(command.getDomain()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // A Query for the features in the segment by id, or null if the index cannot be used.
+    private Query getIndexedFeatureQuery(Command command) {
+        GenomicIntervalIndex index = getIndex(command);
+        if (index == null) {
+            return null;
+        }
+        String type = command.getType("SequenceFeature");
+        ClassDescriptor cld = model.getClassDescriptorByName(type);
+        if (cld == null) {
+            return null;
+        }
+        Segment seg = command.getSegment();
+        // Convert Interbase -> Base coordinates: start + 1
+        int[] ids = index.findOverlappingIds(getIndexedOrganism(index, command),
+                seg.getSection(), seg.getStart() + 1, seg.getEnd(),
+                GenomicIntervalIndex.getClassAndSubclassNames(model, cld.getUnqualifiedName()));
+        List<Integer> idList = new ArrayList<Integer>(ids.length);
+        for (int id : ids) {
+            idList.add(id);
+        }
+        Query q = new Query();
+        QueryClass features = new QueryClass(cld.getType());
+        q.addFrom(features);
+        q.addToSelect(features);
+        q.setConstraint(new BagConstraint(new QueryField(features, "id"), ConstraintOp.IN,
+                idList));
+        return q;
+    }
+
+    // The number of features in each slice, or null if the index cannot be used.
+    private List<Integer> countFromIndex(Command command, int nSlices) {
+        GenomicIntervalIndex index = getIndex(command);
+        if (index == null) {
+            return null;
+        }
+        String type = command.getType("SequenceFeature");
+        ClassDescriptor cld = model.getClassDescriptorByName(type);
+        if (cld == null) {
+            return null;
+        }
+        String organism = getIndexedOrganism(index, command);
+        Set<String> classNames =
+            GenomicIntervalIndex.getClassAndSubclassNames(model, cld.getUnqualifiedName());
+        List<Integer> results = new ArrayList<Integer>();
+        for (Segment s: sliceUp(nSlices, command.getSegment())) {
+            results.add(index.countOverlapping(organism, s.getSection(), s.getStart() + 1,
+                    s.getEnd(), classNames));
+        }
+        return results;
+    }
+
     private int getNumberOfSlices(Command command) {
         int defaultNum = 10;
         String bpb = command.getParameter("basesPerBin");
@@ -11,10 +11,15 @@ package org.intermine.task;
  */
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Properties;
 import java.util.Set;
 import java.util.Vector;
 
@@ -36,6 +41,7 @@ import org.intermine.task.project.UserProperty;
 public class Integrate extends Task
 {
     private static final String ENDL = System.getProperty("line.separator");
+    private static final String OS_PREFIX_PROPERTY = "common.os.prefix";
     
     private String [] possibleActionsArray = {
         "retrieve",
@@ -48,6 +54,8 @@ public class Integrate extends Task
     private File projectXml;
     private Project intermineProject;
     private String action, sourceAttribute;
+    private String parallelPrefixes;
+    private File modelFile, prioritiesFile;
 
     /**
      * Set the project.xml to use for this Task.
@@ -73,6 +81,34 @@ public class Integrate extends Task
         this.sourceAttribute = source;
     }
 
+    /**
+     * Set the objectstore prefixes to use for loading sources in parallel, comma separated.  Each
+     * prefix needs its own os.&lt;prefix&gt;-tgt-items-std, os.&lt;prefix&gt;-tgt-items,
+     * osw.&lt;prefix&gt;-tgt-items and os.&lt;prefix&gt;-translated objectstores, as the items
+     * databases cannot be shared.  With fewer than two prefixes the sources are integrated one
+     * at a time.
+     * @param parallelPrefixes the prefixes
+     */
+    public void setParallelPrefixes(String parallelPrefixes) {
+        this.parallelPrefixes = parallelPrefixes;
+    }
+
+    /**
+     * Set the model file used to check whether the keys of two sources overlap.
+     * @param modelFile the model XML file
+     */
+    public void setModelFile(File modelFile) {
+        this.modelFile = modelFile;
+    }
+
+    /**
+     * Set the priorities file used to check whether two sources provide the same fields.
+     * @param prioritiesFile the _priorities.properties file
+     */
+    public void setPrioritiesFile(File prioritiesFile) {
+        this.prioritiesFile = prioritiesFile;
+    }
+
 
     /**
      * Run the integration.
@@ -117,31 +153,184 @@ public class Integrate extends Task
         }
 
         for (String thisSourceName: sourceNames) {
-            Source sourceObject = intermineProject.getSources().get(thisSourceName);
-            if (sourceObject == null) {
+            if (intermineProject.getSources().get(thisSourceName) == null) {
                 throw new BuildException("can't find source in project definition file: "
                                          + thisSourceName);
             }
+        }
+
+        List<String> prefixes = new ArrayList<String>();
+        if (parallelPrefixes != null) {
+            for (String prefix : parallelPrefixes.split(",")) {
+                if (!"".equals(prefix.trim())) {
+                    prefixes.add(prefix.trim());
+                }
+            }
+        }
+
+        if ("".equals(action) && prefixes.size() > 1 && sourceNames.size() > 1) {
+            checkPrefixes(prefixes);
+            List<List<String>> waves = getWaves(sourceNames, prefixes.size());
+            if (waves != null) {
+                for (List<String> wave : waves) {
+                    performWave(wave, prefixes);
+                }
+                return;
+            }
+        }
 
+        for (String thisSourceName: sourceNames) {
+            Source sourceObject = intermineProject.getSources().get(thisSourceName);
             if ("".equals(action)) {
-                performAction(thisSourceName, sourceObject.getType());
+                performAction(thisSourceName, sourceObject.getType(), null);
             } else {
-                performAction(action, thisSourceName, sourceObject.getType());
+                performAction(action, thisSourceName, sourceObject.getType(), null);
             }
         }
     }
 
-    private void performAction(String sourceName, String sourceType) {
-        performAction("retrieve", sourceName, sourceType);
-        performAction("load", sourceName, sourceType);
+    /**
+     * Check that the mine properties configure every objectstore that retrieving and loading a
+     * source uses for each prefix, so that a missing one fails the build before any source is
+     * integrated rather than part way through a wave.
+     */
+    private void checkPrefixes(List<String> prefixes) {
+        Properties defaults = new Properties();
+        String defaultsFileName = getProject().getProperty("default.intermine.properties.file");
+        if (defaultsFileName != null) {
+            File defaultsFile = getProject().resolveFile(defaultsFileName);
+            if (defaultsFile.exists()) {
+                try {
+                    InputStream is = new FileInputStream(defaultsFile);
+                    try {
+                        defaults.load(is);
+                    } finally {
+                        is.close();
+                    }
+                } catch (IOException e) {
+                    throw new BuildException("failed to read " + defaultsFile, e);
+                }
+            }
+        }
+        List<String> missing = new ArrayList<String>();
+        for (String prefix : prefixes) {
+            for (String alias : Arrays.asList("os." + prefix + "-tgt-items-std",
+                        "os." + prefix + "-tgt-items", "osw." + prefix + "-tgt-items",
+                        "os." + prefix + "-translated")) {
+                String classProperty = alias + ".class";
+                if (getProject().getProperty(classProperty) == null
+                        && defaults.getProperty(classProperty) == null) {
+                    missing.add(alias);
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            throw new BuildException("integrate.parallel.prefixes is set to " + prefixes
+                    + " but these objectstores are not configured in the mine properties: "
+                    + missing);
+        }
     }
 
-    private void performAction(String actionName, String sourceName, String sourceType) {
+    /**
+     * Split the sources into waves of sources that can be integrated at the same time, or return
+     * null if the information needed to do so is missing.
+     */
+    private List<List<String>> getWaves(List<String> sourceNames, int maxWaveSize) {
+        if (modelFile == null || !modelFile.exists()) {
+            System.out.print("Model file " + modelFile + " not found - integrating sources"
+                    + " one at a time" + ENDL);
+            return null;
+        }
+        IntegrationScheduler scheduler = new IntegrationScheduler(sourceNames);
+        try {
+            scheduler.readModel(modelFile);
+            for (String sourceName : sourceNames) {
+                Source s = intermineProject.getSources().get(sourceName);
+                scheduler.readKeys(sourceName, s.getType(), s.getLocation());
+            }
+            if (prioritiesFile != null && prioritiesFile.exists()) {
+                Properties priorities = new Properties();
+                InputStream is = new FileInputStream(prioritiesFile);
+                try {
+                    priorities.load(is);
+                } finally {
+                    is.close();
+                }
+                scheduler.addPriorities(priorities);
+            }
+        } catch (IOException e) {
+            throw new BuildException("failed to read keys for parallel integration", e);
+        }
+        List<String> log = new ArrayList<String>();
+        List<List<String>> waves = scheduler.getWaves(maxWaveSize, log);
+        for (String message : log) {
+            System.out.print(message + ENDL);
+        }
+        System.out.print("Integrating " + sourceNames.size() + " sources in " + waves.size()
+                + " waves: " + waves + ENDL);
+        return waves;
+    }
+
+    /**
+     * Integrate the sources of a wave, each in its own thread and using its own items database
+     * prefix, and wait for them all to finish.
+     */
+    private void performWave(List<String> wave, List<String> prefixes) {
+        if (wave.size() == 1) {
+            String sourceName = wave.get(0);
+            performAction(sourceName, intermineProject.getSources().get(sourceName).getType(),
+                    null);
+            return;
+        }
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < wave.size(); i++) {
+            final String sourceName = wave.get(i);
+            final String sourceType = intermineProject.getSources().get(sourceName).getType();
+            final String prefix = prefixes.get(i);
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        performAction(sourceName, sourceType, prefix);
+                    } catch (Throwable t) {
+                        System.err.print("Integration of source \"" + sourceName + "\" failed: "
+                                + t + ENDL);
+                        errors.add(t);
+                    }
+                }
+            }, "integrate-" + sourceName);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                throw new BuildException("interrupted while waiting for sources " + wave, e);
+            }
+        }
+        if (!errors.isEmpty()) {
+            Throwable first = errors.get(0);
+            if (first instanceof BuildException) {
+                throw (BuildException) first;
+            }
+            throw new BuildException("integration of sources " + wave + " failed", first);
+        }
+    }
+
+    private void performAction(String sourceName, String sourceType, String osPrefix) {
+        performAction("retrieve", sourceName, sourceType, osPrefix);
+        performAction("load", sourceName, sourceType, osPrefix);
+    }
+
+    private void performAction(String actionName, String sourceName, String sourceType,
+            String osPrefix) {
         Source s = (Source) intermineProject.getSources().get(sourceName);
         File sourceDir = s.getLocation();
         
         System.out.print("Performing integration action \"" + actionName + "\" for source \""
-                         + sourceName + "\" (" + sourceType + ") in: " + sourceDir + ENDL);
+                         + sourceName + "\" (" + sourceType + ") in: " + sourceDir
+                         + (osPrefix == null ? "" : " using os prefix " + osPrefix) + ENDL);
 
         Ant ant = new Ant();
         ant.setDir(sourceDir);
@@ -166,6 +355,9 @@ public class Integrate extends Task
 
         // Add global properties
         for (UserProperty sp : intermineProject.getProperties()) {
+            if (osPrefix != null && OS_PREFIX_PROPERTY.equals(sp.getName())) {
+                continue;
+            }
             Property prop = ant.createProperty();
             if (sp.getName() == null) {
                 throw new BuildException("name not set for property in: " + sourceName);
@@ -220,6 +412,14 @@ public class Integrate extends Task
         }
         allSourcesProp.setValue(sb.toString());
 
+        // the items databases to use when running alongside other sources - not set on this
+        // project, as other sources are using other prefixes at the same time
+        if (osPrefix != null) {
+            Property prefixProp = ant.createProperty();
+            prefixProp.setName(OS_PREFIX_PROPERTY);
+            prefixProp.setValue(osPrefix);
+        }
+
         ant.execute();
     }
 }
@@ -0,0 +1,299 @@
+package org.intermine.task;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Works out which data sources can be loaded into the production objectstore at the same time.
+ * <p>
+ * Objects are only merged with objects already in the production database through primary keys,
+ * so two sources can only interfere with each other if they have keys for the same class, or for
+ * classes that are related by inheritance. The classes that a source has keys for are read from
+ * its _keys.properties file, and the priorities config adds the classes for which it names the
+ * source. A source whose keys cannot be found is assumed to conflict with every other source.
+ * <p>
+ * Sources are split into waves, keeping the order of the project.xml. A source joins the current
+ * wave if it conflicts with none of the sources in the wave, so that sources whose relative
+ * order matters are never loaded at the same time.
+ *
+ * @author julie
+ */
+public class IntegrationScheduler
+{
+    private final List<String> sourceNames;
+    private final Map<String, Set<String>> sourceClasses = new HashMap<String, Set<String>>();
+    private final Set<String> unknownSources = new HashSet<String>();
+    private final Map<String, Set<String>> ancestors = new HashMap<String, Set<String>>();
+    private final Map<String, Set<String>> prioritySources = new HashMap<String, Set<String>>();
+
+    /**
+     * Create a new scheduler for the given sources.
+     *
+     * @param sourceNames the names of the sources, in the order they would be loaded serially
+     */
+    public IntegrationScheduler(List<String> sourceNames) {
+        this.sourceNames = new ArrayList<String>(sourceNames);
+        for (String sourceName : sourceNames) {
+            sourceClasses.put(sourceName, new HashSet<String>());
+        }
+    }
+
+    /**
+     * Read the keys of a source from its source directory. The file is looked for as
+     * resources/&lt;name&gt;_keys.properties and then resources/&lt;type&gt;_keys.properties, the
+     * same names that the data loader uses.
+     *
+     * @param sourceName the name of the source
+     * @param sourceType the type of the source
+     * @param sourceDir the directory containing the source
+     * @throws IOException if the keys file cannot be read
+     */
+    public void readKeys(String sourceName, String sourceType, File sourceDir)
+        throws IOException {
+        File keysFile = new File(sourceDir, "resources/" + sourceName + "_keys.properties");
+        if (!keysFile.exists()) {
+            keysFile = new File(sourceDir, "resources/" + sourceType + "_keys.properties");
+        }
+        if (!keysFile.exists()) {
+            unknownSources.add(sourceName);
+            return;
+        }
+        Properties keys = new Properties();
+        InputStream is = new FileInputStream(keysFile);
+        try {
+            keys.load(is);
+        } finally {
+            is.close();
+        }
+        addKeys(sourceName, keys);
+    }
+
+    /**
+     * Add the keys of a source, in the format of a _keys.properties file. Both
+     * "Class.key_name = fields" and "Class = key_name" entries are understood.
+     *
+     * @param sourceName the name of the source
+     * @param keys the contents of the keys file
+     */
+    public void addKeys(String sourceName, Properties keys) {
+        Set<String> classes = sourceClasses.get(sourceName);
+        for (Object key : keys.keySet()) {
+            String className = (String) key;
+            int dot = className.indexOf('.');
+            if (dot != -1) {
+                className = className.substring(0, dot);
+            }
+            classes.add(className.trim());
+        }
+    }
+
+    /**
+     * Add the priorities config of the model. Each entry names the sources that provide a field
+     * of a class, so each of those sources is treated as having keys for that class, and the
+     * sources named in the same entry always conflict.
+     *
+     * @param priorities the contents of the _priorities.properties file
+     */
+    public void addPriorities(Properties priorities) {
+        for (Map.Entry<Object, Object> entry : priorities.entrySet()) {
+            String key = (String) entry.getKey();
+            int dot = key.indexOf('.');
+            String className = (dot == -1 ? key : key.substring(0, dot)).trim();
+            Set<String> named = new HashSet<String>();
+            for (String sourceName : ((String) entry.getValue()).split(",")) {
+                sourceName = sourceName.trim();
+                if (sourceClasses.containsKey(sourceName)) {
+                    sourceClasses.get(sourceName).add(className);
+                    named.add(sourceName);
+                }
+            }
+            for (String sourceName : named) {
+                Set<String> others = prioritySources.get(sourceName);
+                if (others == null) {
+                    others = new HashSet<String>();
+                    prioritySources.put(sourceName, others);
+                }
+                others.addAll(named);
+                others.remove(sourceName);
+            }
+        }
+    }
+
+    /**
+     * Read the class hierarchy from a model XML file, so that keys on a class and on one of its
+     * subclasses are recognised as conflicting.
+     *
+     * @param modelFile the model XML file
+     * @throws IOException if the file cannot be read or parsed
+     */
+    public void readModel(File modelFile) throws IOException {
+        final Map<String, Set<String>> parents = new HashMap<String, Set<String>>();
+        try {
+            SAXParserFactory.newInstance().newSAXParser().parse(modelFile, new DefaultHandler() {
+                @Override
+                public void startElement(String uri, String localName, String qName,
+                        Attributes attrs) {
+                    if ("class".equals(qName)) {
+                        Set<String> classParents = new HashSet<String>();
+                        String extendsAttr = attrs.getValue("extends");
+                        if (extendsAttr != null) {
+                            for (String parent : extendsAttr.trim().split("\\s+")) {
+                                classParents.add(unqualified(parent));
+                            }
+                        }
+                        parents.put(unqualified(attrs.getValue("name")), classParents);
+                    }
+                }
+            });
+        } catch (SAXException e) {
+            throw new IOException("Could not parse model file " + modelFile + ": " + e);
+        } catch (ParserConfigurationException e) {
+            throw new IOException("Could not parse model file " + modelFile + ": " + e);
+        }
+        for (String className : parents.keySet()) {
+            Set<String> classAncestors = new HashSet<String>();
+            List<String> toVisit = new ArrayList<String>(parents.get(className));
+            while (!toVisit.isEmpty()) {
+                String parent = toVisit.remove(toVisit.size() - 1);
+                if (classAncestors.add(parent) && parents.containsKey(parent)) {
+                    toVisit.addAll(parents.get(parent));
+                }
+            }
+            ancestors.put(className, classAncestors);
+        }
+    }
+
+    private static String unqualified(String className) {
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * Returns whether the class hierarchy has been read, without which no sources are considered
+     * safe to load together.
+     *
+     * @return true if readModel() has been called
+     */
+    public boolean hasModel() {
+        return !ancestors.isEmpty();
+    }
+
+    /**
+     * Returns a reason why two sources cannot be loaded at the same time, or null if they can.
+     *
+     * @param source1 the name of a source
+     * @param source2 the name of another source
+     * @return a description of the conflict, or null
+     */
+    public String getConflict(String source1, String source2) {
+        if (!hasModel()) {
+            return "no model class hierarchy available";
+        }
+        if (unknownSources.contains(source1)) {
+            return "no keys found for " + source1;
+        }
+        if (unknownSources.contains(source2)) {
+            return "no keys found for " + source2;
+        }
+        Set<String> others = prioritySources.get(source1);
+        if ((others != null) && others.contains(source2)) {
+            return "both named in the same priorities entry";
+        }
+        for (String class1 : sourceClasses.get(source1)) {
+            for (String class2 : sourceClasses.get(source2)) {
+                if (class1.equals(class2) || isAncestor(class1, class2)
+                        || isAncestor(class2, class1)) {
+                    return "keys on " + class1 + " and " + class2;
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean isAncestor(String ancestor, String className) {
+        Set<String> classAncestors = ancestors.get(className);
+        if (classAncestors == null) {
+            // Not in the model, so we cannot tell - assume the worst
+            return true;
+        }
+        return classAncestors.contains(ancestor);
+    }
+
+    /**
+     * Splits the sources into waves. The sources in a wave do not conflict with each other, so
+     * they can be loaded at the same time, and the waves must be loaded one after another.
+     *
+     * @param maxWaveSize the maximum number of sources in a wave, at least 1
+     * @param log a list to which a description of each decision is added, or null
+     * @return a List of waves, each a List of source names
+     * @throws IllegalArgumentException if maxWaveSize is less than 1
+     */
+    public List<List<String>> getWaves(int maxWaveSize, List<String> log) {
+        if (maxWaveSize < 1) {
+            throw new IllegalArgumentException("maxWaveSize must be at least 1, was "
+                    + maxWaveSize);
+        }
+        List<List<String>> waves = new ArrayList<List<String>>();
+        List<String> wave = new ArrayList<String>();
+        for (String sourceName : sourceNames) {
+            String conflict = null;
+            if (wave.size() >= maxWaveSize) {
+                conflict = "wave is full";
+            }
+            for (String waveSource : wave) {
+                if (conflict == null) {
+                    conflict = getConflict(waveSource, sourceName);
+                    if ((conflict != null) && (log != null)) {
+                        log.add(sourceName + " cannot be loaded with " + waveSource + ": "
+                                + conflict);
+                    }
+                }
+            }
+            if (conflict != null) {
+                waves.add(wave);
+                wave = new ArrayList<String>();
+            }
+            wave.add(sourceName);
+        }
+        if (!wave.isEmpty()) {
+            waves.add(wave);
+        }
+        return waves;
+    }
+
+    /**
+     * Returns the classes that a source is treated as having keys for.
+     *
+     * @param sourceName the name of the source
+     * @return a Set of unqualified class names
+     */
+    public Set<String> getClasses(String sourceName) {
+        return new LinkedHashSet<String>(sourceClasses.get(sourceName));
+    }
+}
@@ -0,0 +1,163 @@
+package org.intermine.task;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for IntegrationScheduler.
+ *
+ * @author julie
+ */
+public class IntegrationSchedulerTest extends TestCase
+{
+    private static final String MODEL =
+        "<model name=\"genomic\" package=\"org.intermine.model.bio\">"
+        + "<class name=\"SequenceFeature\" is-interface=\"true\"></class>"
+        + "<class name=\"Gene\" extends=\"SequenceFeature\" is-interface=\"true\"></class>"
+        + "<class name=\"Protein\" is-interface=\"true\"></class>"
+        + "<class name=\"Organism\" is-interface=\"true\"></class>"
+        + "<class name=\"Publication\" is-interface=\"true\"></class>"
+        + "</model>";
+
+    private File modelFile;
+
+    public IntegrationSchedulerTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        modelFile = File.createTempFile("genomic_model", ".xml");
+        Writer writer = new FileWriter(modelFile);
+        try {
+            writer.write(MODEL);
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Override
+    public void tearDown() {
+        modelFile.delete();
+    }
+
+    private IntegrationScheduler makeScheduler(String... sourceNames) throws Exception {
+        IntegrationScheduler scheduler = new IntegrationScheduler(Arrays.asList(sourceNames));
+        scheduler.readModel(modelFile);
+        return scheduler;
+    }
+
+    private static Properties keys(String... entries) {
+        Properties keys = new Properties();
+        for (String entry : entries) {
+            int eq = entry.indexOf('=');
+            keys.setProperty(entry.substring(0, eq).trim(), entry.substring(eq + 1).trim());
+        }
+        return keys;
+    }
+
+    public void testDisjointClasses() throws Exception {
+        IntegrationScheduler scheduler = makeScheduler("genes", "proteins");
+        scheduler.addKeys("genes", keys("Gene.key_primaryidentifier = primaryIdentifier"));
+        scheduler.addKeys("proteins", keys("Protein = key_primaryaccession"));
+        assertNull(scheduler.getConflict("genes", "proteins"));
+        assertEquals(Arrays.asList(Arrays.asList("genes", "proteins")),
+                scheduler.getWaves(4, null));
+    }
+
+    public void testSharedClass() throws Exception {
+        IntegrationScheduler scheduler = makeScheduler("genes1", "proteins", "genes2");
+        scheduler.addKeys("genes1", keys("Gene.key_primaryidentifier = primaryIdentifier"));
+        scheduler.addKeys("proteins", keys("Protein = key_primaryaccession"));
+        scheduler.addKeys("genes2", keys("Gene = key_primaryidentifier"));
+        assertEquals("keys on Gene and Gene", scheduler.getConflict("genes1", "genes2"));
+        List<String> log = new ArrayList<String>();
+        assertEquals(Arrays.asList(Arrays.asList("genes1", "proteins"),
+                    Arrays.asList("genes2")), scheduler.getWaves(4, log));
+        assertEquals(Arrays.asList("genes2 cannot be loaded with genes1: keys on Gene and Gene"),
+                log);
+    }
+
+    public void testSubclass() throws Exception {
+        IntegrationScheduler scheduler = makeScheduler("features", "genes");
+        scheduler.addKeys("features", keys("SequenceFeature = key_primaryidentifier"));
+        scheduler.addKeys("genes", keys("Gene = key_primaryidentifier"));
+        assertNotNull(scheduler.getConflict("features", "genes"));
+        assertNotNull(scheduler.getConflict("genes", "features"));
+        assertEquals(2, scheduler.getWaves(4, null).size());
+    }
+
+    public void testClassNotInModel() throws Exception {
+        IntegrationScheduler scheduler = makeScheduler("genes", "other");
+        scheduler.addKeys("genes", keys("Gene = key_primaryidentifier"));
+        scheduler.addKeys("other", keys("Unknown = key_name"));
+        assertNotNull(scheduler.getConflict("genes", "other"));
+    }
+
+    public void testPriorities() throws Exception {
+        IntegrationScheduler scheduler = makeScheduler("genes", "proteins", "publications");
+        scheduler.addKeys("genes", keys("Gene = key_primaryidentifier"));
+        scheduler.addKeys("proteins", keys("Protein = key_primaryaccession"));
+        scheduler.addKeys("publications", keys("Publication = key_pubmed"));
+        scheduler.addPriorities(keys("Organism.name = genes, proteins"));
+        assertEquals("both named in the same priorities entry",
+                scheduler.getConflict("genes", "proteins"));
+        assertEquals("both named in the same priorities entry",
+                scheduler.getConflict("proteins", "genes"));
+        assertTrue(scheduler.getClasses("genes").contains("Organism"));
+        assertNull(scheduler.getConflict("genes", "publications"));
+        // the order is kept, so publications joins the wave that proteins starts
+        assertEquals(Arrays.asList(Arrays.asList("genes"),
+                    Arrays.asList("proteins", "publications")), scheduler.getWaves(4, null));
+    }
+
+    public void testUnknownKeys() throws Exception {
+        IntegrationScheduler scheduler = makeScheduler("genes", "nokeys");
+        scheduler.addKeys("genes", keys("Gene = key_primaryidentifier"));
+        scheduler.readKeys("nokeys", "nokeys", new File(modelFile.getParentFile(),
+                    "no-such-source-" + System.nanoTime()));
+        assertEquals("no keys found for nokeys", scheduler.getConflict("genes", "nokeys"));
+    }
+
+    public void testNoModel() throws Exception {
+        IntegrationScheduler scheduler =
+            new IntegrationScheduler(Arrays.asList("genes", "proteins"));
+        scheduler.addKeys("genes", keys("Gene = key_primaryidentifier"));
+        scheduler.addKeys("proteins", keys("Protein = key_primaryaccession"));
+        assertFalse(scheduler.hasModel());
+        assertEquals(2, scheduler.getWaves(4, null).size());
+    }
+
+    public void testMaxWaveSize() throws Exception {
+        IntegrationScheduler scheduler = makeScheduler("genes", "proteins", "publications");
+        scheduler.addKeys("genes", keys("Gene = key_primaryidentifier"));
+        scheduler.addKeys("proteins", keys("Protein = key_primaryaccession"));
+        scheduler.addKeys("publications", keys("Publication = key_pubmed"));
+        assertEquals(Arrays.asList(Arrays.asList("genes", "proteins"),
+                    Arrays.asList("publications")), scheduler.getWaves(2, null));
+        assertEquals(3, scheduler.getWaves(1, null).size());
+        try {
+            scheduler.getWaves(0, null);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package org.intermine.api.bag;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.intermine.api.profile.InterMineBag;
+import org.intermine.util.PropertiesUtil;
+
+/**
+ * A cache of the contents of lists as IdBitmaps, so that list operations and sizes can be
+ * computed in memory rather than by querying the osbag_int table. Entries are keyed by the id of
+ * the ObjectStoreBag, and are removed whenever InterMineBag changes the contents of the bag, and
+ * otherwise in least recently used order when the cache grows beyond its memory limit.
+ * <p>
+ * The cache is disabled unless the list.bitmapCache.maxMemory property, in megabytes, is set to
+ * more than zero in the global properties. It only sees changes made in this JVM, so it should
+ * not be enabled where several webapps write to the same userprofile and production databases.
+ *
+ * @author julie
+ */
+public final class BagBitmapCache
+{
+    private static final Logger LOG = Logger.getLogger(BagBitmapCache.class);
+
+    /** The name of the property setting the size of the cache in megabytes. */
+    public static final String MAX_MEMORY_PROPERTY = "list.bitmapCache.maxMemory";
+
+    private static BagBitmapCache instance = null;
+
+    private final long maxMemory;
+    private final LinkedHashMap<Integer, IdBitmap> bitmaps =
+        new LinkedHashMap<Integer, IdBitmap>(16, 0.75F, true);
+    private long memory = 0;
+    private long modifications = 0;
+    private int hits = 0;
+    private int misses = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param maxMemory the approximate number of bytes the cache may use, or zero to disable it
+     */
+    public BagBitmapCache(long maxMemory) {
+        this.maxMemory = maxMemory;
+    }
+
+    /**
+     * Returns the cache shared by all the lists in this JVM, creating it from the global
+     * properties on first use.
+     *
+     * @return a BagBitmapCache, which may be disabled
+     */
+    public static synchronized BagBitmapCache getInstance() {
+        if (instance == null) {
+            String value = PropertiesUtil.getProperties().getProperty(MAX_MEMORY_PROPERTY);
+            long megabytes = 0;
+            if (!StringUtils.isBlank(value)) {
+                try {
+                    megabytes = Long.parseLong(value.trim());
+                } catch (NumberFormatException e) {
+                    LOG.warn("Invalid value for " + MAX_MEMORY_PROPERTY + ": " + value
+                            + " - the list bitmap cache is disabled");
+                }
+            }
+            instance = new BagBitmapCache(megabytes * 1024 * 1024);
+            if (instance.isEnabled()) {
+                LOG.info("List bitmap cache enabled with " + megabytes + "MB");
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Returns whether the cache holds anything at all.
+     *
+     * @return true if list contents may be cached
+     */
+    public boolean isEnabled() {
+        return maxMemory > 0;
+    }
+
+    /**
+     * Returns the cached contents of a bag.
+     *
+     * @param osbId the id of the ObjectStoreBag
+     * @return an IdBitmap, or null if the bag is not cached
+     */
+    public synchronized IdBitmap get(int osbId) {
+        IdBitmap bitmap = bitmaps.get(Integer.valueOf(osbId));
+        if (bitmap == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Returns the contents of a list, reading them from the database if they are not cached.
+     *
+     * @param bag the list
+     * @return an IdBitmap of the ids of the objects in the list
+     */
+    public IdBitmap getContents(InterMineBag bag) {
+        int osbId = bag.getOsb().getBagId();
+        long modificationsBefore;
+        synchronized (this) {
+            IdBitmap bitmap = get(osbId);
+            if (bitmap != null) {
+                return bitmap;
+            }
+            modificationsBefore = modifications;
+        }
+        IdBitmap bitmap = IdBitmap.fromIds(bag.getContentsAsIds());
+        synchronized (this) {
+            // Don't cache what we read if a list changed while we were reading it
+            if (modifications == modificationsBefore) {
+                put(osbId, bitmap);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Adds the contents of a bag to the cache. Does nothing if the cache is disabled.
+     *
+     * @param osbId the id of the ObjectStoreBag
+     * @param bitmap the ids of the objects in the bag
+     */
+    public synchronized void put(int osbId, IdBitmap bitmap) {
+        long size = bitmap.getMemoryUsage();
+        if (size > maxMemory) {
+            return;
+        }
+        IdBitmap old = bitmaps.put(Integer.valueOf(osbId), bitmap);
+        if (old != null) {
+            memory -= old.getMemoryUsage();
+        }
+        memory += size;
+        Iterator<Map.Entry<Integer, IdBitmap>> iter = bitmaps.entrySet().iterator();
+        while (memory > maxMemory && iter.hasNext()) {
+            Map.Entry<Integer, IdBitmap> eldest = iter.next();
+            memory -= eldest.getValue().getMemoryUsage();
+            iter.remove();
+        }
+    }
+
+    /**
+     * Removes a bag from the cache, because its contents have changed.
+     *
+     * @param osbId the id of the ObjectStoreBag
+     */
+    public synchronized void invalidate(int osbId) {
+        modifications++;
+        IdBitmap old = bitmaps.remove(Integer.valueOf(osbId));
+        if (old != null) {
+            memory -= old.getMemoryUsage();
+        }
+    }
+
+    /**
+     * Returns the number of bags in the cache.
+     *
+     * @return an int
+     */
+    public synchronized int size() {
+        return bitmaps.size();
+    }
+
+    /**
+     * Returns the approximate number of bytes used by the cached bags.
+     *
+     * @return a number of bytes
+     */
+    public synchronized long getMemoryUsage() {
+        return memory;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized String toString() {
+        return "BagBitmapCache(" + bitmaps.size() + " lists, " + memory + " of " + maxMemory
+            + " bytes, " + hits + " hits, " + misses + " misses)";
+    }
+}
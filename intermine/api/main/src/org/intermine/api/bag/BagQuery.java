@@ -15,6 +15,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -137,7 +138,9 @@ public class BagQuery
     }
 
     /**
-     * Return a Query to fetch bag contents for wildcards.
+     * Return a Query to fetch bag contents for wildcards. Wildcards that start with the same
+     * literal text are constrained together by an anchored LIKE on that prefix, so that the
+     * database can use an index on the lowercased field to narrow the rows it has to match.
      *
      * @param bag the Collection of strings to use to constrain the query
      * @param extraFieldValue the value used if any extra constraint is configured
@@ -167,23 +170,65 @@ public class BagQuery
             throw new IllegalArgumentException("Query " + q + " does not contain any"
                     + " BagConstraints");
         }
+        Map<String, List<String>> byPrefix = new LinkedHashMap<String, List<String>>();
         for (String string : bag) {
             String wildcardSql = string.replace('*', '%').toLowerCase();
-            for (Map.Entry<QueryEvaluable, ConstraintSet> entry : nodes.entrySet()) {
-                if (entry.getKey().getType().equals(String.class)) {
-                    entry.getValue().addConstraint(new SimpleConstraint(entry.getKey(),
-                                ConstraintOp.MATCHES, new QueryValue(wildcardSql)));
+            String prefix = getLiteralPrefix(wildcardSql);
+            List<String> group = byPrefix.get(prefix);
+            if (group == null) {
+                group = new ArrayList<String>();
+                byPrefix.put(prefix, group);
+            }
+            group.add(wildcardSql);
+        }
+        for (Map.Entry<QueryEvaluable, ConstraintSet> entry : nodes.entrySet()) {
+            QueryEvaluable node = entry.getKey();
+            if (!node.getType().equals(String.class)) {
+                node = new QueryCast(node, String.class);
+            }
+            for (Map.Entry<String, List<String>> group : byPrefix.entrySet()) {
+                String prefixSql = group.getKey() + "%";
+                if ("%".equals(prefixSql)) {
+                    for (String wildcardSql : group.getValue()) {
+                        entry.getValue().addConstraint(new SimpleConstraint(node,
+                                    ConstraintOp.MATCHES, new QueryValue(wildcardSql)));
+                    }
+                } else if (group.getValue().equals(Collections.singletonList(prefixSql))) {
+                    entry.getValue().addConstraint(new SimpleConstraint(node,
+                                ConstraintOp.MATCHES, new QueryValue(prefixSql)));
                 } else {
-                    entry.getValue().addConstraint(new SimpleConstraint(new QueryCast(
-                                    entry.getKey(), String.class), ConstraintOp.MATCHES,
-                                new QueryValue(wildcardSql)));
-
+                    ConstraintSet patterns = new ConstraintSet(ConstraintOp.OR);
+                    for (String wildcardSql : group.getValue()) {
+                        patterns.addConstraint(new SimpleConstraint(node, ConstraintOp.MATCHES,
+                                    new QueryValue(wildcardSql)));
+                    }
+                    ConstraintSet prefixed = new ConstraintSet(ConstraintOp.AND);
+                    prefixed.addConstraint(new SimpleConstraint(node, ConstraintOp.MATCHES,
+                                new QueryValue(prefixSql)));
+                    prefixed.addConstraint(patterns);
+                    entry.getValue().addConstraint(prefixed);
                 }
             }
         }
         return q;
     }
 
+    /**
+     * Returns the text of a LIKE pattern before its first wildcard character, or an empty String
+     * if it contains a character that LIKE treats specially before the first '%'.
+     *
+     * @param wildcardSql a LIKE pattern
+     * @return the literal prefix of the pattern
+     */
+    private static String getLiteralPrefix(String wildcardSql) {
+        int percent = wildcardSql.indexOf('%');
+        String prefix = (percent == -1 ? wildcardSql : wildcardSql.substring(0, percent));
+        if (prefix.indexOf('_') != -1 || prefix.indexOf('\\') != -1) {
+            return "";
+        }
+        return prefix;
+    }
+
     /**
      * Finds all BagConstraints in a Constraint, and places the QueryEvaluable and the containing
      * ConstraintSet into the given Map.
@@ -28,6 +28,7 @@ public class BagQueryConfig
     private final Map<String, List<BagQuery>> preDefaultBagQueries;
     private Map<String, Set<AdditionalConverter>> additionalConverters;
     private boolean matchOnFirst = true;
+    private boolean setBased = false;
 
     /**
      * Create a new BagQueryConfig object.
@@ -152,4 +153,24 @@ public class BagQueryConfig
     public boolean getMatchOnFirst() {
         return matchOnFirst;
     }
+
+    /**
+     * If flag is true, bagqueryrunner runs all the queries for a type at once over the whole
+     * input, instead of one after another over the input not yet resolved, and works out which
+     * matches to keep afterwards.
+     * @param setBased the flag to set
+     */
+    public void setSetBased(boolean setBased) {
+        this.setBased = setBased;
+    }
+
+    /**
+     * If flag is true, bagqueryrunner runs all the queries for a type at once over the whole
+     * input, instead of one after another over the input not yet resolved, and works out which
+     * matches to keep afterwards.
+     * @return the setBased flag
+     */
+    public boolean isSetBased() {
+        return setBased;
+    }
 }
@@ -96,6 +96,10 @@ public class BagQueryHandler extends DefaultHandler
                 matchOnFirst = ("false".equalsIgnoreCase(matchOnFirstStr) ? false : true);
             }
             bagQueryConfig.setMatchOnFirst(matchOnFirst);
+            String setBasedStr = attrs.getValue("setBased");
+            if (StringUtils.isNotEmpty(setBasedStr)) {
+                bagQueryConfig.setSetBased("true".equalsIgnoreCase(setBasedStr));
+            }
         }
         if ("query".equals(qName)) {
             message = attrs.getValue("message");
@@ -77,6 +77,8 @@ public class BagQueryResult
 
     private final Map<String, Object> unresolved = new HashMap<String, Object>();
 
+    private final Map<String, Long> timings = new LinkedHashMap<String, Long>();
+
     /**
      * Get any results that require some user input before adding to the bag.
      * [issue type -&gt; [query -&gt; [input string -&gt; List of InterMineObjects]]] or for issue
@@ -262,4 +264,23 @@ public class BagQueryResult
     public void putUnresolved(Map<String, ? extends Object> unresolved) {
         this.unresolved.putAll(unresolved);
     }
+
+    /**
+     * Add time spent on a stage of the lookup. Time added again for the same stage is added to
+     * the total for that stage.
+     * @param stage a description of the stage, such as the message of a bag query
+     * @param millis the time taken in milliseconds
+     */
+    public void addTiming(String stage, long millis) {
+        Long total = timings.get(stage);
+        timings.put(stage, Long.valueOf(total == null ? millis : total.longValue() + millis));
+    }
+
+    /**
+     * Get the time spent on each stage of the lookup, in the order the stages were first run.
+     * @return a map from stage description to milliseconds
+     */
+    public Map<String, Long> getTimings() {
+        return Collections.unmodifiableMap(timings);
+    }
 }
@@ -12,12 +12,20 @@ package org.intermine.api.bag;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang.StringUtils;
@@ -46,6 +54,23 @@ import org.intermine.util.CollectionUtil;
 public class BagQueryRunner
 {
     private static final Logger LOG = Logger.getLogger(BagQueryRunner.class);
+    private static final String STAGE_INPUT = "prepare input";
+    private static final String STAGE_ALL_QUERIES = "run all queries";
+    private static final String STAGE_QUERY = "query: ";
+    private static final String STAGE_WILDCARD_QUERY = "wildcard query: ";
+    private static final String STAGE_RESULTS = "fetch and convert objects";
+    private static final String STAGE_TOTAL = "total";
+    private static final int QUERY_THREADS = 4;
+    private static final ThreadFactory QUERY_THREAD_FACTORY = new ThreadFactory() {
+        private int count = 0;
+
+        @Override
+        public synchronized Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "BagQueryRunner query thread " + (++count));
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
     private ObjectStore os;
     private Model model;
     private Map<String, List<FieldDescriptor>> classKeys;
@@ -110,6 +135,7 @@ public class BagQueryRunner
             boolean doWildcards, boolean caseSensitive)
         throws ClassNotFoundException, InterMineException {
 
+        long startTime = System.currentTimeMillis();
         Map<String, String> lowerCaseInput = new HashMap<String, String>();
         List<String> cleanInput = new ArrayList<String>();
         List<String> wildcardInput = new ArrayList<String>();
@@ -131,6 +157,8 @@ public class BagQueryRunner
                 }
             }
         }
+        Set<String> cleanInputSet = new HashSet<String>(cleanInput);
+        WildcardMatcher wildcardMatcher = new WildcardMatcher(wildcardInput, patterns);
 
         // TODO tidy up using type String and Class
 
@@ -150,16 +178,39 @@ public class BagQueryRunner
         BagQueryResult bqr = new BagQueryResult();
         // return first record ONLY for identifier.  otherwise, run all queries and return all
         boolean matchOnFirst = bagQueryConfig.getMatchOnFirst();
+        bqr.addTiming(STAGE_INPUT, System.currentTimeMillis() - startTime);
+
+        // in set-based mode, run every query over the whole input at once, and pick out the
+        // matches for identifiers not yet resolved below
+        Map<BagQuery, List<ResultsRow<?>>> exactRows = null;
+        Map<BagQuery, List<ResultsRow<?>>> wildcardRows = null;
+        if (bagQueryConfig.isSetBased()) {
+            long time = System.currentTimeMillis();
+            exactRows = new HashMap<BagQuery, List<ResultsRow<?>>>();
+            wildcardRows = new HashMap<BagQuery, List<ResultsRow<?>>>();
+            runQueries(queries, cleanInput, wildcardInput, extraFieldValue, exactRows,
+                    wildcardRows);
+            bqr.addTiming(STAGE_ALL_QUERIES, System.currentTimeMillis() - time);
+        }
 
         for (BagQuery bq : queries) {
             // run the next query on identifiers not yet resolved
             // OR all identifiers if matchOnFirst = FALSE
             if (!unresolved.isEmpty() || !matchOnFirst) {
+                long time = System.currentTimeMillis();
                 Map<String, Set<Integer>> resMap = new HashMap<String, Set<Integer>>();
                 try {
                     Set<String> toProcess = (matchOnFirst) ? unresolved : unresolvedOriginal;
-                    Query q = bq.getQuery(toProcess, extraFieldValue);
-                    Results res = os.execute(q, 10000, true, true, false);
+                    Iterable<?> res;
+                    if (exactRows == null) {
+                        Query q = bq.getQuery(toProcess, extraFieldValue);
+                        res = os.execute(q, 10000, true, true, false);
+                    } else if (exactRows.containsKey(bq)) {
+                        res = exactRows.get(bq);
+                    } else {
+                        // Query couldn't handle extra value
+                        res = Collections.emptyList();
+                    }
                     for (Object rowObj : res) {
                         ResultsRow<?> row = (ResultsRow<?>) rowObj;
                         Integer id = (Integer) row.get(0);
@@ -169,7 +220,8 @@ public class BagQueryRunner
                                 String field = String.valueOf(fieldObject);
                                 String lowerField = field.toLowerCase();
                                 if (caseSensitive) {
-                                    if (cleanInput.contains(field)) {
+                                    if (cleanInputSet.contains(field)
+                                            && (exactRows == null || toProcess.contains(field))) {
                                         processMatch(resMap, unresolved, id, field);
                                     }
                                 } else if (lowerCaseInput.containsKey(lowerField)) {
@@ -177,7 +229,9 @@ public class BagQueryRunner
                                     // to original input so that 'h' matches 'H' and 'h' becomes
                                     // a duplicate.
                                     String originalInput = lowerCaseInput.get(lowerField);
-                                    processMatch(resMap, unresolved, id, originalInput);
+                                    if (exactRows == null || toProcess.contains(originalInput)) {
+                                        processMatch(resMap, unresolved, id, originalInput);
+                                    }
                                 }
                             }
                         }
@@ -185,36 +239,48 @@ public class BagQueryRunner
                 } catch (IllegalArgumentException e) {
                     // Query couldn't handle extra value
                 }
+                bqr.addTiming(STAGE_QUERY + bq.getMessage(), System.currentTimeMillis() - time);
+                time = System.currentTimeMillis();
                 addResults(resMap, unresolved, bqr, bq.getMessage(), typeCls, false,
                             matchOnFirst, bq.matchesAreIssues());
+                bqr.addTiming(STAGE_RESULTS, System.currentTimeMillis() - time);
             }
             if (!wildcardInput.isEmpty() && !wildcardUnresolved.isEmpty()) {
+                long time = System.currentTimeMillis();
                 Map<String, Set<Integer>> resMap = new HashMap<String, Set<Integer>>();
                 try {
-                    Query q = bq.getQueryForWildcards(wildcardInput, extraFieldValue);
-                    Results res = os.execute(q, ResultsBatches.DEFAULT_BATCH_SIZE, true, true,
-                            false);
+                    Iterable<?> res;
+                    if (wildcardRows == null) {
+                        Query q = bq.getQueryForWildcards(wildcardInput, extraFieldValue);
+                        res = os.execute(q, ResultsBatches.DEFAULT_BATCH_SIZE, true, true,
+                                false);
+                    } else if (wildcardRows.containsKey(bq)) {
+                        res = wildcardRows.get(bq);
+                    } else {
+                        throw new IllegalArgumentException("Query for " + bq.getMessage()
+                                + " could not be run for wildcards");
+                    }
                     for (Object rowObj : res) {
                         ResultsRow<?> row = (ResultsRow<?>) rowObj;
                         Integer id = (Integer) row.get(0);
                         for (int i = 1; i < row.size(); i++) {
                             String field = "" + row.get(i);
                             String lowerField = field.toLowerCase();
-                            for (String wildcard : wildcardInput) {
-                                Pattern pattern = patterns.get(wildcard);
-                                if (pattern.matcher(lowerField).matches()) {
-                                    Set<Integer> ids = resMap.get(wildcard);
-                                    if (ids == null) {
-                                        ids = new LinkedHashSet<Integer>();
-                                        resMap.put(wildcard, ids);
-                                    }
-                                    ids.add(id);
-                                    // we have matched at least once with wildcard
-                                    wildcardUnresolved.remove(wildcard);
+                            for (String wildcard : wildcardMatcher.getMatches(lowerField)) {
+                                Set<Integer> ids = resMap.get(wildcard);
+                                if (ids == null) {
+                                    ids = new LinkedHashSet<Integer>();
+                                    resMap.put(wildcard, ids);
                                 }
+                                ids.add(id);
+                                // we have matched at least once with wildcard
+                                wildcardUnresolved.remove(wildcard);
                             }
                         }
                     }
+                    bqr.addTiming(STAGE_WILDCARD_QUERY + bq.getMessage(),
+                            System.currentTimeMillis() - time);
+                    time = System.currentTimeMillis();
                     for (Map.Entry<String, Set<Integer>> entry : resMap.entrySet()) {
                         // This is a dummy issue just to give a message when running queries
                         bqr.addIssue(BagQueryResult.WILDCARD, bq.getMessage(),
@@ -228,6 +294,7 @@ public class BagQueryRunner
                         }
 
                     }
+                    bqr.addTiming(STAGE_RESULTS, System.currentTimeMillis() - time);
                 } catch (IllegalArgumentException e) {
                     LOG.error("Error running bag query lookup: ", e);
                     // Query couldn't handle extra value
@@ -241,10 +308,99 @@ public class BagQueryRunner
             unresolvedMap.put(unresolvedStr, null);
         }
         bqr.putUnresolved(unresolvedMap);
+        bqr.addTiming(STAGE_TOTAL, System.currentTimeMillis() - startTime);
+        LOG.info("Looked up " + input.size() + " identifiers of type " + type + ", timings: "
+                + bqr.getTimings());
 
         return bqr;
     }
 
+    /**
+     * Run all the bag queries at once, for the exact input and for the wildcards, and fetch all
+     * of their results. Queries that cannot be run with the extra field value are left out of the
+     * results maps. The threads only live for the duration of the call, so that nothing is left
+     * running when the webapp is redeployed.
+     */
+    private void runQueries(List<BagQuery> queries, final Collection<String> cleanInput,
+            final Collection<String> wildcardInput, final String extraFieldValue,
+            Map<BagQuery, List<ResultsRow<?>>> exactRows,
+            Map<BagQuery, List<ResultsRow<?>>> wildcardRows) throws InterMineException {
+        // the queries lowercase their input, so do it once here for all of them
+        final List<String> lowerCaseInput = new ArrayList<String>();
+        for (String inputString : cleanInput) {
+            lowerCaseInput.add(inputString.toLowerCase());
+        }
+        int taskCount = queries.size() * ((cleanInput.isEmpty() ? 0 : 1)
+                + (wildcardInput.isEmpty() ? 0 : 1));
+        if (taskCount == 0) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(QUERY_THREADS,
+                    taskCount), QUERY_THREAD_FACTORY);
+        try {
+            runQueries(executor, queries, lowerCaseInput, wildcardInput, extraFieldValue,
+                    exactRows, wildcardRows);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void runQueries(ExecutorService executor, List<BagQuery> queries,
+            final List<String> lowerCaseInput, final Collection<String> wildcardInput,
+            final String extraFieldValue, Map<BagQuery, List<ResultsRow<?>>> exactRows,
+            Map<BagQuery, List<ResultsRow<?>>> wildcardRows) throws InterMineException {
+        Map<BagQuery, Future<List<ResultsRow<?>>>> exactFutures =
+            new LinkedHashMap<BagQuery, Future<List<ResultsRow<?>>>>();
+        Map<BagQuery, Future<List<ResultsRow<?>>>> wildcardFutures =
+            new LinkedHashMap<BagQuery, Future<List<ResultsRow<?>>>>();
+        for (final BagQuery bq : queries) {
+            if (!lowerCaseInput.isEmpty()) {
+                exactFutures.put(bq, executor.submit(new Callable<List<ResultsRow<?>>>() {
+                    @Override
+                    public List<ResultsRow<?>> call() throws Exception {
+                        return fetchRows(bq.getQuery(lowerCaseInput, extraFieldValue), 10000);
+                    }
+                }));
+            }
+            if (!wildcardInput.isEmpty()) {
+                wildcardFutures.put(bq, executor.submit(new Callable<List<ResultsRow<?>>>() {
+                    @Override
+                    public List<ResultsRow<?>> call() throws Exception {
+                        return fetchRows(bq.getQueryForWildcards(wildcardInput, extraFieldValue),
+                                ResultsBatches.DEFAULT_BATCH_SIZE);
+                    }
+                }));
+            }
+        }
+        collectRows(exactFutures, exactRows);
+        collectRows(wildcardFutures, wildcardRows);
+    }
+
+    private List<ResultsRow<?>> fetchRows(Query q, int batchSize) {
+        List<ResultsRow<?>> rows = new ArrayList<ResultsRow<?>>();
+        for (Object row : os.execute(q, batchSize, true, true, false)) {
+            rows.add((ResultsRow<?>) row);
+        }
+        return rows;
+    }
+
+    private void collectRows(Map<BagQuery, Future<List<ResultsRow<?>>>> futures,
+            Map<BagQuery, List<ResultsRow<?>>> rows) throws InterMineException {
+        for (Map.Entry<BagQuery, Future<List<ResultsRow<?>>>> entry : futures.entrySet()) {
+            try {
+                rows.put(entry.getKey(), entry.getValue().get());
+            } catch (ExecutionException e) {
+                if (!(e.getCause() instanceof IllegalArgumentException)) {
+                    throw new InterMineException("Error running bag query: "
+                            + entry.getKey().getMessage(), e.getCause());
+                }
+                // Query couldn't handle extra value
+            } catch (InterruptedException e) {
+                throw new InterMineException("Interrupted while running bag queries", e);
+            }
+        }
+    }
+
     private void processMatch(Map<String, Set<Integer>> resMap, Set<String> unresolved,
         Integer id, String field) {
         Set<Integer> ids = resMap.get(field);
@@ -0,0 +1,420 @@
+package org.intermine.api.bag;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * An immutable compressed set of object ids, for combining the contents of lists in memory.
+ * <p>
+ * The ids are split into chunks by their upper 16 bits, in the manner of Roaring bitmaps. A chunk
+ * with few ids holds them as a sorted array of their lower 16 bits, and a chunk with more than
+ * 4096 ids holds a bitmap of 65536 bits, so that no chunk takes more than 8kB. Ids are ordered
+ * as unsigned ints.
+ *
+ * @author julie
+ */
+public final class IdBitmap
+{
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    /** The empty set. */
+    public static final IdBitmap EMPTY = new IdBitmap(new int[0], new Object[0], new int[0], 0);
+
+    private static final int OP_OR = 0;
+    private static final int OP_AND = 1;
+    private static final int OP_ANDNOT = 2;
+    private static final int OP_XOR = 3;
+
+    // the upper 16 bits of the ids in each chunk, in ascending order
+    private final int[] keys;
+    // each chunk is a char[] of lower bits in ascending order, or a long[] bitmap
+    private final Object[] chunks;
+    private final int[] cardinalities;
+    private final int size;
+
+    private IdBitmap(int[] keys, Object[] chunks, int[] cardinalities, int count) {
+        this.keys = keys;
+        this.chunks = chunks;
+        this.cardinalities = cardinalities;
+        this.size = count;
+    }
+
+    /**
+     * Creates a set of the given ids. Duplicates are ignored.
+     *
+     * @param ids a Collection of ids
+     * @return an IdBitmap
+     */
+    public static IdBitmap fromIds(Collection<Integer> ids) {
+        int[] values = new int[ids.size()];
+        int i = 0;
+        for (Integer id : ids) {
+            values[i++] = id.intValue();
+        }
+        return fromArray(values, i);
+    }
+
+    /**
+     * Creates a set of the given ids. The array is sorted in place, and duplicates are ignored.
+     *
+     * @param ids an array of ids
+     * @param length the number of ids in the array to use
+     * @return an IdBitmap
+     */
+    public static IdBitmap fromArray(int[] ids, int length) {
+        // sort as unsigned, by flipping the sign bit
+        for (int i = 0; i < length; i++) {
+            ids[i] ^= Integer.MIN_VALUE;
+        }
+        Arrays.sort(ids, 0, length);
+        for (int i = 0; i < length; i++) {
+            ids[i] ^= Integer.MIN_VALUE;
+        }
+        Builder builder = new Builder();
+        int start = 0;
+        while (start < length) {
+            int key = ids[start] >>> 16;
+            int end = start;
+            while (end < length && (ids[end] >>> 16) == key) {
+                end++;
+            }
+            char[] low = new char[end - start];
+            int count = 0;
+            for (int i = start; i < end; i++) {
+                char value = (char) ids[i];
+                if (count == 0 || low[count - 1] != value) {
+                    low[count++] = value;
+                }
+            }
+            builder.addArray(key, low, count);
+            start = end;
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the number of ids in the set.
+     *
+     * @return the cardinality
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns whether an id is in the set.
+     *
+     * @param id the id
+     * @return true if it is present
+     */
+    public boolean contains(int id) {
+        int index = Arrays.binarySearch(keys, id >>> 16);
+        if (index < 0) {
+            return false;
+        }
+        char low = (char) id;
+        Object chunk = chunks[index];
+        if (chunk instanceof long[]) {
+            return (((long[]) chunk)[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) chunk, low) >= 0;
+    }
+
+    /**
+     * Returns the union of this set and another.
+     *
+     * @param other another set
+     * @return a new set
+     */
+    public IdBitmap or(IdBitmap other) {
+        return combine(other, OP_OR);
+    }
+
+    /**
+     * Returns the intersection of this set and another.
+     *
+     * @param other another set
+     * @return a new set
+     */
+    public IdBitmap and(IdBitmap other) {
+        return combine(other, OP_AND);
+    }
+
+    /**
+     * Returns the ids in this set that are not in another.
+     *
+     * @param other another set
+     * @return a new set
+     */
+    public IdBitmap andNot(IdBitmap other) {
+        return combine(other, OP_ANDNOT);
+    }
+
+    /**
+     * Returns the ids in exactly one of this set and another.
+     *
+     * @param other another set
+     * @return a new set
+     */
+    public IdBitmap xor(IdBitmap other) {
+        return combine(other, OP_XOR);
+    }
+
+    private IdBitmap combine(IdBitmap other, int op) {
+        Builder builder = new Builder();
+        int i = 0;
+        int j = 0;
+        while (i < keys.length || j < other.keys.length) {
+            int key1 = (i < keys.length ? keys[i] : Integer.MAX_VALUE);
+            int key2 = (j < other.keys.length ? other.keys[j] : Integer.MAX_VALUE);
+            if (key1 < key2) {
+                if (op != OP_AND) {
+                    builder.addChunk(key1, chunks[i], cardinalities[i]);
+                }
+                i++;
+            } else if (key2 < key1) {
+                if (op == OP_OR || op == OP_XOR) {
+                    builder.addChunk(key2, other.chunks[j], other.cardinalities[j]);
+                }
+                j++;
+            } else {
+                Object chunk1 = chunks[i];
+                Object chunk2 = other.chunks[j];
+                if (chunk1 instanceof char[] && chunk2 instanceof char[]) {
+                    combineArrays(builder, key1, (char[]) chunk1, (char[]) chunk2, op);
+                } else {
+                    long[] words = toWords(chunk1);
+                    long[] words2 = toWords(chunk2);
+                    long[] result = new long[BITMAP_WORDS];
+                    for (int w = 0; w < BITMAP_WORDS; w++) {
+                        switch (op) {
+                            case OP_OR:
+                                result[w] = words[w] | words2[w];
+                                break;
+                            case OP_AND:
+                                result[w] = words[w] & words2[w];
+                                break;
+                            case OP_ANDNOT:
+                                result[w] = words[w] & ~words2[w];
+                                break;
+                            default:
+                                result[w] = words[w] ^ words2[w];
+                        }
+                    }
+                    builder.addWords(key1, result);
+                }
+                i++;
+                j++;
+            }
+        }
+        return builder.build();
+    }
+
+    private static void combineArrays(Builder builder, int key, char[] a, char[] b, int op) {
+        char[] result = new char[op == OP_AND || op == OP_ANDNOT ? a.length : a.length + b.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length) {
+            if (j >= b.length || (i < a.length && a[i] < b[j])) {
+                if (op != OP_AND) {
+                    result[count++] = a[i];
+                }
+                i++;
+            } else if (i >= a.length || b[j] < a[i]) {
+                if (op == OP_OR || op == OP_XOR) {
+                    result[count++] = b[j];
+                }
+                j++;
+            } else {
+                if (op == OP_OR || op == OP_AND) {
+                    result[count++] = a[i];
+                }
+                i++;
+                j++;
+            }
+        }
+        builder.addArray(key, result, count);
+    }
+
+    private static long[] toWords(Object chunk) {
+        if (chunk instanceof long[]) {
+            return (long[]) chunk;
+        }
+        long[] words = new long[BITMAP_WORDS];
+        for (char value : (char[]) chunk) {
+            words[value >>> 6] |= 1L << value;
+        }
+        return words;
+    }
+
+    /**
+     * Returns the ids in the set, in ascending unsigned order.
+     *
+     * @return a new array
+     */
+    public int[] toArray() {
+        int[] result = new int[size];
+        int count = 0;
+        for (int c = 0; c < keys.length; c++) {
+            int high = keys[c] << 16;
+            Object chunk = chunks[c];
+            if (chunk instanceof long[]) {
+                long[] words = (long[]) chunk;
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    long word = words[w];
+                    while (word != 0) {
+                        result[count++] = high | (w << 6) | Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                    }
+                }
+            } else {
+                for (char value : (char[]) chunk) {
+                    result[count++] = high | value;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the ids in the set as a List, in ascending unsigned order.
+     *
+     * @return an unmodifiable List of Integers
+     */
+    public List<Integer> toList() {
+        final int[] ids = toArray();
+        return new AbstractList<Integer>() {
+            @Override
+            public Integer get(int index) {
+                return Integer.valueOf(ids[index]);
+            }
+
+            @Override
+            public int size() {
+                return ids.length;
+            }
+        };
+    }
+
+    /**
+     * Returns the approximate number of bytes used by this set.
+     *
+     * @return a number of bytes
+     */
+    public long getMemoryUsage() {
+        long bytes = 64 + 12L * keys.length;
+        for (Object chunk : chunks) {
+            if (chunk instanceof long[]) {
+                bytes += 16 + 8 * BITMAP_WORDS;
+            } else {
+                bytes += 16 + 2 * ((char[]) chunk).length;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        return (o instanceof IdBitmap) && (((IdBitmap) o).size == size)
+            && Arrays.equals(((IdBitmap) o).toArray(), toArray());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(toArray());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "IdBitmap(" + size + " ids in " + keys.length + " chunks)";
+    }
+
+    /**
+     * Collects chunks in ascending order of key, choosing the representation of each.
+     */
+    private static class Builder
+    {
+        private int[] keys = new int[8];
+        private Object[] chunks = new Object[8];
+        private int[] cardinalities = new int[8];
+        private int count = 0;
+        private int total = 0;
+
+        void addArray(int key, char[] values, int cardinality) {
+            if (cardinality == 0) {
+                return;
+            }
+            if (cardinality > ARRAY_MAX) {
+                addChunk(key, toWords(Arrays.copyOf(values, cardinality)), cardinality);
+            } else {
+                addChunk(key, (values.length == cardinality ? values
+                            : Arrays.copyOf(values, cardinality)), cardinality);
+            }
+        }
+
+        void addWords(int key, long[] words) {
+            int cardinality = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+            if (cardinality == 0) {
+                return;
+            }
+            if (cardinality > ARRAY_MAX) {
+                addChunk(key, words, cardinality);
+            } else {
+                char[] values = new char[cardinality];
+                int n = 0;
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    long word = words[w];
+                    while (word != 0) {
+                        values[n++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                        word &= word - 1;
+                    }
+                }
+                addChunk(key, values, cardinality);
+            }
+        }
+
+        void addChunk(int key, Object chunk, int cardinality) {
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, count * 2);
+                chunks = Arrays.copyOf(chunks, count * 2);
+                cardinalities = Arrays.copyOf(cardinalities, count * 2);
+            }
+            keys[count] = key;
+            chunks[count] = chunk;
+            cardinalities[count] = cardinality;
+            count++;
+            total += cardinality;
+        }
+
+        IdBitmap build() {
+            return new IdBitmap(Arrays.copyOf(keys, count), Arrays.copyOf(chunks, count),
+                    Arrays.copyOf(cardinalities, count), total);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.intermine.api.bag;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Finds which of a set of wildcard input strings match a value, without trying every pattern
+ * against every value. Wildcards are grouped by the literal text before their first '*', so only
+ * the patterns whose prefix the value starts with are tried. Wildcards that start with '*', or
+ * whose prefix contains characters that the pattern treats specially, are always tried.
+ *
+ * @author julie
+ */
+public class WildcardMatcher
+{
+    private static final Pattern LITERAL = Pattern.compile("[^\\\\.\\[\\]{}()+?^$|]*");
+
+    private final Map<String, List<String>> byPrefix = new HashMap<String, List<String>>();
+    private final TreeSet<Integer> prefixLengths = new TreeSet<Integer>();
+    private final List<String> unprefixed = new ArrayList<String>();
+    private final Map<String, Pattern> patterns;
+
+    /**
+     * Constructor.
+     *
+     * @param wildcards the wildcard input strings
+     * @param patterns a map from each wildcard to the Pattern that a lowercased value must match
+     */
+    public WildcardMatcher(Collection<String> wildcards, Map<String, Pattern> patterns) {
+        this.patterns = patterns;
+        for (String wildcard : wildcards) {
+            String lower = wildcard.toLowerCase();
+            int star = lower.indexOf('*');
+            String prefix = (star == -1 ? lower : lower.substring(0, star));
+            if (prefix.length() == 0 || !LITERAL.matcher(prefix).matches()) {
+                unprefixed.add(wildcard);
+            } else {
+                List<String> group = byPrefix.get(prefix);
+                if (group == null) {
+                    group = new ArrayList<String>();
+                    byPrefix.put(prefix, group);
+                }
+                group.add(wildcard);
+                prefixLengths.add(Integer.valueOf(prefix.length()));
+            }
+        }
+    }
+
+    /**
+     * Returns the wildcards that match a value.
+     *
+     * @param lowerValue the value, in lower case
+     * @return a List of wildcard input strings, in no particular order
+     */
+    public List<String> getMatches(String lowerValue) {
+        List<String> matches = new ArrayList<String>();
+        for (Integer length : prefixLengths) {
+            if (length.intValue() > lowerValue.length()) {
+                break;
+            }
+            List<String> group = byPrefix.get(lowerValue.substring(0, length.intValue()));
+            if (group != null) {
+                addMatches(group, lowerValue, matches);
+            }
+        }
+        addMatches(unprefixed, lowerValue, matches);
+        return matches;
+    }
+
+    private void addMatches(List<String> wildcards, String lowerValue, List<String> matches) {
+        for (String wildcard : wildcards) {
+            if (patterns.get(wildcard).matcher(lowerValue).matches()) {
+                matches.add(wildcard);
+            }
+        }
+    }
+}
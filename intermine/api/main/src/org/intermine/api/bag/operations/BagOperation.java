@@ -19,7 +19,9 @@ import java.util.Map;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
+import org.intermine.api.bag.BagBitmapCache;
 import org.intermine.api.bag.ClassKeysNotFoundException;
+import org.intermine.api.bag.IdBitmap;
 import org.intermine.api.bag.UnknownBagTypeException;
 import org.intermine.api.profile.InterMineBag;
 import org.intermine.api.profile.Profile;
@@ -131,6 +133,11 @@ public abstract class BagOperation implements BagProducer {
     }
 
     private void buildBag() throws InternalBagOperationException {
+        BagBitmapCache cache = BagBitmapCache.getInstance();
+        if (cache.isEnabled()) {
+            buildBagInMemory(cache);
+            return;
+        }
         ObjectStoreBagCombination osbc = combineBags();
         Query q = new Query();
         q.addToSelect(osbc);
@@ -143,6 +150,62 @@ public abstract class BagOperation implements BagProducer {
         }
     }
 
+    /**
+     * Combine the cached contents of the lists in memory, and write the result to the new list
+     * in one batch.
+     */
+    private void buildBagInMemory(BagBitmapCache cache) throws InternalBagOperationException {
+        long start = System.currentTimeMillis();
+        IdBitmap contents = combineContents(cache);
+        try {
+            combined.addNewIdsToBag(contents);
+        } catch (ObjectStoreException e) {
+            cleanUp();
+            throw new InternalBagOperationException("Error constructing bag", e);
+        }
+        cache.put(combined.getOsb().getBagId(), contents);
+        LOG.info("Built list of " + contents.size() + " objects in memory in "
+                + (System.currentTimeMillis() - start) + "ms - " + cache);
+    }
+
+    /**
+     * Combine the contents of the lists in memory, with the same meaning as the
+     * ObjectStoreBagCombination returned by combineBags().
+     * @param cache the cache to fetch the contents of each list from
+     * @return the ids of the objects in the combined list
+     */
+    protected IdBitmap combineContents(BagBitmapCache cache) {
+        IdBitmap union = null;
+        IdBitmap intersection = null;
+        for (InterMineBag bag : getBags()) {
+            IdBitmap contents = cache.getContents(bag);
+            if (union == null) {
+                union = contents;
+                intersection = contents;
+            } else {
+                switch (getOperationCode()) {
+                    case ObjectStoreBagCombination.INTERSECT:
+                        intersection = intersection.and(contents);
+                        break;
+                    default:
+                        union = union.or(contents);
+                        intersection = intersection.and(contents);
+                }
+            }
+        }
+        if (union == null) {
+            return IdBitmap.EMPTY;
+        }
+        switch (getOperationCode()) {
+            case ObjectStoreBagCombination.INTERSECT:
+                return intersection;
+            case ObjectStoreBagCombination.ALLBUTINTERSECT:
+                return union.andNot(intersection);
+            default:
+                return union;
+        }
+    }
+
     /**
      * @return combined list
      */
@@ -12,6 +12,8 @@ package org.intermine.api.bag.operations;
 
 import java.util.Collection;
 
+import org.intermine.api.bag.BagBitmapCache;
+import org.intermine.api.bag.IdBitmap;
 import org.intermine.api.profile.InterMineBag;
 import org.intermine.api.profile.Profile;
 import org.intermine.metadata.ClassDescriptor;
@@ -71,6 +73,18 @@ public class RelativeComplement extends BagOperation
         return osbc;
     }
 
+    @Override
+    protected IdBitmap combineContents(BagBitmapCache cache) {
+        IdBitmap result = IdBitmap.EMPTY;
+        for (InterMineBag bag : getBags()) {
+            result = result.or(cache.getContents(bag));
+        }
+        for (InterMineBag bag : excluded) {
+            result = result.andNot(cache.getContents(bag));
+        }
+        return result;
+    }
+
     @Override
     protected int getOperationCode() {
         return ObjectStoreBagCombination.EXCEPT;
@@ -0,0 +1,185 @@
+package org.intermine.api.lucene;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.intermine.model.InterMineObject;
+
+/**
+ * A part of the objects to be indexed for keyword search, so that several fetchers can run at
+ * once. A partition is either a set of classes, optionally restricted to a range of ids, or the
+ * remainder: all the objects that are not of any of a set of classes.
+ *
+ * @author julie
+ */
+public class IndexPartition
+{
+    private final Set<Class<? extends InterMineObject>> classes;
+    private final boolean remainder;
+    private final Integer minId;
+    private final Integer maxId;
+    private final long size;
+
+    /**
+     * Constructor.
+     *
+     * @param classes the classes in the partition, or the classes excluded from it if remainder
+     * is true
+     * @param remainder true if the partition is everything not of the given classes
+     * @param minId the lowest id in the partition, or null for no limit
+     * @param maxId the id above the highest id in the partition, or null for no limit
+     * @param size the expected number of objects in the partition
+     */
+    public IndexPartition(Set<Class<? extends InterMineObject>> classes, boolean remainder,
+            Integer minId, Integer maxId, long size) {
+        this.classes = classes;
+        this.remainder = remainder;
+        this.minId = minId;
+        this.maxId = maxId;
+        this.size = size;
+    }
+
+    /**
+     * get the classes in the partition, or excluded from it for the remainder
+     * @return a set of classes
+     */
+    public Set<Class<? extends InterMineObject>> getClasses() {
+        return classes;
+    }
+
+    /**
+     * is this the partition of objects not of any of the classes
+     * @return true if getClasses() are excluded rather than included
+     */
+    public boolean isRemainder() {
+        return remainder;
+    }
+
+    /**
+     * get the lowest id in the partition
+     * @return an id, or null
+     */
+    public Integer getMinId() {
+        return minId;
+    }
+
+    /**
+     * get the id above the highest id in the partition
+     * @return an id, or null
+     */
+    public Integer getMaxId() {
+        return maxId;
+    }
+
+    /**
+     * get the number of objects expected in the partition
+     * @return a count
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Split the objects to index into partitions of roughly the given size. Classes with more
+     * objects than that are split into ranges of ids, and smaller classes are grouped together.
+     * Dynamic objects of more than one class may not be counted against any class, so there is
+     * always a final remainder partition for the objects of no class that was counted.
+     *
+     * @param classCounts map from class to an array of the number of objects of exactly that
+     * class, their lowest id and their highest id
+     * @param ignoredClasses classes that are not indexed at all
+     * @param partitionSize the target number of objects in each partition
+     * @return the partitions, largest first
+     */
+    public static List<IndexPartition> createPartitions(
+            Map<Class<? extends InterMineObject>, long[]> classCounts,
+            Set<Class<? extends InterMineObject>> ignoredClasses, long partitionSize) {
+        List<IndexPartition> partitions = new ArrayList<IndexPartition>();
+        Set<Class<? extends InterMineObject>> group =
+                new LinkedHashSet<Class<? extends InterMineObject>>();
+        long groupSize = 0;
+        for (Map.Entry<Class<? extends InterMineObject>, long[]> entry : classCounts.entrySet()) {
+            long count = entry.getValue()[0];
+            if (count == 0 || ignoredClasses.contains(entry.getKey())) {
+                continue;
+            }
+            if (count > partitionSize) {
+                long min = entry.getValue()[1];
+                long max = entry.getValue()[2] + 1;
+                long ranges = (count + partitionSize - 1) / partitionSize;
+                long step = (max - min + ranges - 1) / ranges;
+                for (long start = min; start < max; start += step) {
+                    long end = Math.min(start + step, max);
+                    partitions.add(new IndexPartition(
+                            Collections.<Class<? extends InterMineObject>>singleton(
+                                    entry.getKey()), false, Integer.valueOf((int) start),
+                            Integer.valueOf((int) end), count * (end - start) / (max - min)));
+                }
+            } else {
+                group.add(entry.getKey());
+                groupSize += count;
+                if (groupSize >= partitionSize) {
+                    partitions.add(new IndexPartition(group, false, null, null, groupSize));
+                    group = new LinkedHashSet<Class<? extends InterMineObject>>();
+                    groupSize = 0;
+                }
+            }
+        }
+        if (!group.isEmpty()) {
+            partitions.add(new IndexPartition(group, false, null, null, groupSize));
+        }
+        Collections.sort(partitions, new Comparator<IndexPartition>() {
+            @Override
+            public int compare(IndexPartition p1, IndexPartition p2) {
+                return Long.valueOf(p2.size).compareTo(Long.valueOf(p1.size));
+            }
+        });
+
+        Set<Class<? extends InterMineObject>> excluded =
+                new HashSet<Class<? extends InterMineObject>>(ignoredClasses);
+        excluded.addAll(classCounts.keySet());
+        partitions.add(new IndexPartition(excluded, true, null, null, 0));
+        return partitions;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (remainder) {
+            sb.append("objects not of ").append(classes.size()).append(" classes");
+        } else {
+            for (Class<?> cls : classes) {
+                if (sb.length() > 0) {
+                    sb.append(", ");
+                }
+                sb.append(cls.getSimpleName());
+            }
+        }
+        if (minId != null) {
+            sb.append(" with id >= ").append(minId);
+        }
+        if (maxId != null) {
+            sb.append(" and id < ").append(maxId);
+        }
+        return sb.append(" (").append(size).append(" objects)").toString();
+    }
+}
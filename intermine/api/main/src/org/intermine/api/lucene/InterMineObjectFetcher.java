@@ -45,8 +45,10 @@ import org.intermine.objectstore.query.QueryClass;
 import org.intermine.objectstore.query.QueryCollectionReference;
 import org.intermine.objectstore.query.QueryField;
 import org.intermine.objectstore.query.QueryObjectReference;
+import org.intermine.objectstore.query.QueryValue;
 import org.intermine.objectstore.query.Results;
 import org.intermine.objectstore.query.ResultsRow;
+import org.intermine.objectstore.query.SimpleConstraint;
 import org.intermine.pathquery.PathException;
 import org.intermine.util.DynamicUtil;
 import org.intermine.util.ObjectPipe;
@@ -76,6 +78,7 @@ public class InterMineObjectFetcher extends Thread
     final Map<Class<?>, Vector<ClassAttributes>> decomposedClassesCache =
             new HashMap<Class<?>, Vector<ClassAttributes>>();
     private Map<String, String> attributePrefixes = null;
+    private IndexPartition partition = null;
 
     Field idField = null;
     Field categoryField = null;
@@ -122,6 +125,43 @@ public class InterMineObjectFetcher extends Thread
         this.attributePrefixes = attributePrefixes;
     }
 
+    /**
+     * initialize a documentfetcher thread for one partition of the objects, so that several
+     * fetchers can run at once
+     * @param os
+     *            intermine objectstore
+     * @param classKeys
+     *            classKeys from InterMineAPI, map of classname to all key field
+     *            descriptors
+     * @param indexingQueue
+     *            queue shared with indexer
+     * @param ignoredClasses
+     *            classes that should not be indexed (as specified in config +
+     *            subclasses)
+     * @param specialReferences
+     *            map of classname to references to index in additional to
+     *            normal attributes
+     * @param classBoost
+     *            apply per-class doc boost as specified here (all other classes
+     *            get 1.0)
+     * @param facets
+     *            fields used for faceting - will be indexed untokenized in
+     *            addition to the normal indexing
+     * @param partition
+     *            the objects to fetch
+     */
+    public InterMineObjectFetcher(ObjectStore os, Map<String, List<FieldDescriptor>> classKeys,
+            ObjectPipe<Document> indexingQueue,
+            Set<Class<? extends InterMineObject>> ignoredClasses,
+            Map<Class<? extends InterMineObject>, Set<String>> ignoredFields,
+            Map<Class<? extends InterMineObject>, String[]> specialReferences,
+            Map<ClassDescriptor, Float> classBoost, Vector<KeywordSearchFacetData> facets,
+            Map<String, String> attributePrefixes, IndexPartition partition) {
+        this(os, classKeys, indexingQueue, ignoredClasses, ignoredFields, specialReferences,
+                classBoost, facets, attributePrefixes);
+        this.partition = partition;
+    }
+
     /**
      * get list of fields contained in the fetched documents
      * @return fields
@@ -139,7 +179,8 @@ public class InterMineObjectFetcher extends Thread
         try {
             long time = System.currentTimeMillis();
             long objectParseTime = 0;
-            LOG.info("Fetching all InterMineObjects...");
+            LOG.info("Fetching " + (partition == null ? "all InterMineObjects" : partition)
+                    + "...");
 
             HashSet<Class<? extends InterMineObject>> seenClasses =
                     new HashSet<Class<? extends InterMineObject>>();
@@ -154,7 +195,15 @@ public class InterMineObjectFetcher extends Thread
                 q.addToSelect(qc);
 
                 QueryField qf = new QueryField(qc, "class");
-                q.setConstraint(new BagConstraint(qf, ConstraintOp.NOT_IN, ignoredClasses));
+                if (partition == null) {
+                    q.setConstraint(new BagConstraint(qf, ConstraintOp.NOT_IN, ignoredClasses));
+                } else {
+                    ConstraintSet cs = new ConstraintSet(ConstraintOp.AND);
+                    cs.addConstraint(new BagConstraint(qf, partition.isRemainder()
+                            ? ConstraintOp.NOT_IN : ConstraintOp.IN, partition.getClasses()));
+                    addIdRange(cs, new QueryField(qc, "id"));
+                    q.setConstraint(cs);
+                }
 
                 LOG.info("QUERY: " + q.toString());
 
@@ -562,6 +611,20 @@ public class InterMineObjectFetcher extends Thread
         return attributes;
     }
 
+    /**
+     * restrict the given id field to the id range of the partition, if there is one
+     */
+    private void addIdRange(ConstraintSet constraints, QueryField id) {
+        if (partition != null && partition.getMinId() != null) {
+            constraints.addConstraint(new SimpleConstraint(id,
+                    ConstraintOp.GREATER_THAN_EQUALS, new QueryValue(partition.getMinId())));
+        }
+        if (partition != null && partition.getMaxId() != null) {
+            constraints.addConstraint(new SimpleConstraint(id, ConstraintOp.LESS_THAN,
+                    new QueryValue(partition.getMaxId())));
+        }
+    }
+
     private Query getPathQuery(String pathString) throws PathException {
         Query q = new Query();
         ConstraintSet constraints = new ConstraintSet(ConstraintOp.AND);
@@ -587,6 +650,7 @@ public class InterMineObjectFetcher extends Thread
                 QueryField topId = new QueryField(queryClass, "id");
                 q.addToSelect(topId);
                 q.addToOrderBy(topId); // important for optimization in run()
+                addIdRange(constraints, topId);
             } else {
                 String fieldName = fields.get(i - 1);
 
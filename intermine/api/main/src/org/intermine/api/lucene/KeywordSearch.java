@@ -20,6 +20,7 @@ import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -30,9 +31,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.Queue;
+import java.util.Random;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.CRC32;
 import java.util.zip.GZIPOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -56,7 +62,9 @@ import org.apache.lucene.search.Explanation;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.TermsFilter;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.MMapDirectory;
 import org.apache.lucene.store.RAMDirectory;
 import org.apache.lucene.util.Version;
 import org.intermine.api.InterMineAPI;
@@ -69,6 +77,10 @@ import org.intermine.modelproduction.MetadataManager.LargeObjectOutputStream;
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.QueryClass;
+import org.intermine.objectstore.query.QueryField;
+import org.intermine.objectstore.query.QueryFunction;
 import org.intermine.sql.Database;
 import org.intermine.util.ObjectPipe;
 
@@ -117,10 +129,16 @@ public final class KeywordSearch
     private static IndexReader reader = null;
     private static BoboIndexReader boboIndexReader = null;
     private static ObjectPipe<Document> indexingQueue = new ObjectPipe<Document>(100000);
+    private static AtomicInteger documentsIndexed = new AtomicInteger();
+    private static AtomicInteger partitionsIndexed = new AtomicInteger();
+    private static volatile int partitionCount = 0;
+    private static volatile long documentCount = 0;
     private static LuceneIndexContainer index = null;
 
     private static Properties properties = null;
     private static String tempDirectory = null;
+    private static String localDirectory = null;
+    private static boolean verifyLocalDirectory = false;
     private static Map<Class<? extends InterMineObject>, String[]> specialReferences;
     private static Set<Class<? extends InterMineObject>> ignoredClasses;
     private static Map<Class<? extends InterMineObject>, Set<String>> ignoredFields;
@@ -256,6 +274,9 @@ public final class KeywordSearch
 
                     tempDirectory = properties.getProperty("index.temp.directory", "");
                 }
+                localDirectory = properties.getProperty("index.local.directory", "").trim();
+                verifyLocalDirectory =
+                        "true".equals(properties.getProperty("index.local.verify", "").trim());
             } catch (IOException e) {
                 LOG.error("keyword_search.properties: errow while loading file '" + configFileName
                         + "'", e);
@@ -292,6 +313,7 @@ public final class KeywordSearch
 
         LOG.info("Search - Debug mode: " + debugOutput);
         LOG.info("Indexing - Temp Dir: " + tempDirectory);
+        LOG.info("Search - Local Dir: " + localDirectory);
     }
 
     private static void addAttributePrefix(String classAndAttribute, String prefix) {
@@ -314,6 +336,10 @@ public final class KeywordSearch
      */
     public static synchronized void initKeywordSearch(InterMineAPI im, String path) {
         try {
+            // the properties say where the index directory should be kept
+            if (properties == null) {
+                parseProperties(im.getObjectStore());
+            }
 
             if (index == null) {
                 // try to load index from database first
@@ -325,10 +351,6 @@ public final class KeywordSearch
                 }
             }
 
-            if (properties == null) {
-                parseProperties(im.getObjectStore());
-            }
-
             if (reader == null) {
                 reader = IndexReader.open(index.getDirectory(), true);
             }
@@ -500,6 +522,10 @@ public final class KeywordSearch
                 writeObjectToDB(os, MetadataManager.SEARCH_INDEX_DIRECTORY, index.getDirectory());
                 LOG.debug("Successfully saved RAM directory to database.");
             }
+            // Identifies this copy of the index, so that webapps can tell whether a local copy
+            // extracted from the database is still current
+            MetadataManager.store(db, MetadataManager.SEARCH_INDEX_FINGERPRINT,
+                    System.currentTimeMillis() + "-" + Long.toHexString(new Random().nextLong()));
         } catch (IOException e) {
             LOG.error(null, e);
             throw new RuntimeException("Index creation failed: ", e);
@@ -871,7 +897,9 @@ public final class KeywordSearch
                     LOG.warn("IS is null");
                 }
 
-                if (index != null) {
+                if (index != null && !StringUtils.isBlank(localDirectory)) {
+                    loadLocalDirectory(db, new File(localDirectory));
+                } else if (index != null) {
                     time = System.currentTimeMillis();
                     LOG.debug("Attempting to restore search directory from database...");
                     is = MetadataManager.readLargeBinary(
@@ -895,28 +923,7 @@ public final class KeywordSearch
                                 directoryPath.mkdir();
                             }
 
-                            ZipInputStream zis = new ZipInputStream(is);
-                            ZipEntry entry;
-                            while ((entry = zis.getNextEntry()) != null) {
-                                LOG.info("Extracting: " + entry.getName() + " (" + entry.getSize()
-                                        + " MB)");
-
-                                FileOutputStream fos =
-                                        new FileOutputStream(directoryPath.getAbsolutePath()
-                                                + File.separator + entry.getName());
-                                BufferedOutputStream bos =
-                                        new BufferedOutputStream(fos, bufferSize);
-
-                                int count;
-                                byte[] data = new byte[bufferSize];
-
-                                while ((count = zis.read(data, 0, bufferSize)) != -1) {
-                                    bos.write(data, 0, count);
-                                }
-
-                                bos.flush();
-                                bos.close();
-                            }
+                            extractDirectory(is, directoryPath, bufferSize);
 
                             FSDirectory directory = FSDirectory.open(directoryPath);
                             index.setDirectory(directory);
@@ -931,7 +938,7 @@ public final class KeywordSearch
                             try {
                                 Object object = objectInput.readObject();
 
-                                if (object instanceof FSDirectory) {
+                                if (object instanceof RAMDirectory) {
                                     RAMDirectory directory = (RAMDirectory) object;
                                     index.setDirectory(directory);
 
@@ -965,6 +972,185 @@ public final class KeywordSearch
         }
     }
 
+    private static void extractDirectory(InputStream is, File directoryPath, int bufferSize)
+        throws IOException {
+        ZipInputStream zis = new ZipInputStream(is);
+        ZipEntry entry;
+        while ((entry = zis.getNextEntry()) != null) {
+            LOG.info("Extracting: " + entry.getName() + " (" + entry.getSize() + " MB)");
+
+            FileOutputStream fos = new FileOutputStream(directoryPath.getAbsolutePath()
+                    + File.separator + entry.getName());
+            BufferedOutputStream bos = new BufferedOutputStream(fos, bufferSize);
+
+            int count;
+            byte[] data = new byte[bufferSize];
+
+            while ((count = zis.read(data, 0, bufferSize)) != -1) {
+                bos.write(data, 0, count);
+            }
+
+            bos.flush();
+            bos.close();
+        }
+    }
+
+    /**
+     * Open the index directory kept in index.local.directory, extracting it from the database
+     * first if it is missing or was extracted from a different copy of the index. The copy is
+     * identified by the fingerprint stored in the metadata each time the index is saved, or by the
+     * serial number of the build for indexes saved without one, and the name, length and CRC32 of
+     * each extracted file are recorded next to the directory. The directory is
+     * memory mapped, so it is read from the page cache rather than held on the heap.
+     */
+    private static void loadLocalDirectory(Database db, File localDir)
+        throws SQLException, IOException, ClassNotFoundException {
+        long time = System.currentTimeMillis();
+        String fingerprint = MetadataManager.retrieve(db,
+                MetadataManager.SEARCH_INDEX_FINGERPRINT);
+        if (fingerprint == null) {
+            String serialNumber = MetadataManager.retrieve(db, MetadataManager.SERIAL_NUMBER);
+            fingerprint = (serialNumber == null) ? null : "serialNumber:" + serialNumber;
+        }
+        File directoryPath = new File(localDir, LUCENE_INDEX_DIR);
+        File checksumFile = new File(localDir, LUCENE_INDEX_DIR + ".checksums");
+
+        if (isLocalDirectoryCurrent(directoryPath, checksumFile, fingerprint)) {
+            index.setDirectory(new MMapDirectory(directoryPath));
+            LOG.info("Opened search directory " + directoryPath + " in "
+                    + (System.currentTimeMillis() - time) + " ms");
+            return;
+        }
+
+        LOG.info("Extracting search directory from database to " + directoryPath);
+        InputStream is = MetadataManager.readLargeBinary(db,
+                MetadataManager.SEARCH_INDEX_DIRECTORY);
+        if (is == null) {
+            LOG.warn("No search directory found in database");
+            index = null;
+            return;
+        }
+        localDir.mkdirs();
+        File tempPath = new File(localDir, LUCENE_INDEX_DIR + ".tmp");
+        deleteDirectory(tempPath);
+        tempPath.mkdir();
+        if ("FSDirectory".equals(index.getDirectoryType())) {
+            extractDirectory(is, tempPath, 65536);
+        } else if ("RAMDirectory".equals(index.getDirectoryType())) {
+            ObjectInputStream objectInput = new ObjectInputStream(new GZIPInputStream(is));
+            try {
+                Directory ramDirectory = (Directory) objectInput.readObject();
+                Directory.copy(ramDirectory, FSDirectory.open(tempPath), true);
+            } finally {
+                objectInput.close();
+            }
+        } else {
+            LOG.warn("Unknown directory type specified: " + index.getDirectoryType());
+            index = null;
+            return;
+        }
+
+        // replace any old copy, writing the checksums last so that an interrupted extraction is
+        // never taken to be complete
+        checksumFile.delete();
+        deleteDirectory(directoryPath);
+        if (!tempPath.renameTo(directoryPath)) {
+            throw new IOException("Could not rename " + tempPath + " to " + directoryPath);
+        }
+        Properties checksums = new Properties();
+        if (fingerprint != null) {
+            checksums.setProperty("fingerprint", fingerprint);
+        }
+        for (File file : directoryPath.listFiles()) {
+            checksums.setProperty("file." + file.getName(), file.length() + ","
+                    + checksum(file));
+        }
+        FileOutputStream out = new FileOutputStream(checksumFile);
+        try {
+            checksums.store(out, "Search index directory checksums");
+        } finally {
+            out.close();
+        }
+
+        index.setDirectory(new MMapDirectory(directoryPath));
+        LOG.info("Extracted and opened search directory " + directoryPath + " in "
+                + (System.currentTimeMillis() - time) + " ms");
+    }
+
+    private static boolean isLocalDirectoryCurrent(File directoryPath, File checksumFile,
+            String fingerprint) throws IOException {
+        if (fingerprint == null || !checksumFile.exists() || !directoryPath.isDirectory()) {
+            return false;
+        }
+        Properties checksums = new Properties();
+        FileInputStream in = new FileInputStream(checksumFile);
+        try {
+            checksums.load(in);
+        } finally {
+            in.close();
+        }
+        if (!fingerprint.equals(checksums.getProperty("fingerprint"))) {
+            LOG.info("Search directory " + directoryPath + " is from a different copy of the"
+                    + " index");
+            return false;
+        }
+        String[] files = directoryPath.list();
+        int expected = 0;
+        for (String key : checksums.stringPropertyNames()) {
+            if (key.startsWith("file.")) {
+                expected++;
+            }
+        }
+        if (files.length != expected) {
+            LOG.warn("Search directory " + directoryPath + " has " + files.length
+                    + " files, expected " + expected);
+            return false;
+        }
+        for (String name : files) {
+            File file = new File(directoryPath, name);
+            String value = checksums.getProperty("file." + name);
+            if (value == null) {
+                LOG.warn("Unexpected file in search directory: " + file);
+                return false;
+            }
+            String[] lengthAndChecksum = value.split(",");
+            if (file.length() != Long.parseLong(lengthAndChecksum[0])) {
+                LOG.warn("Search directory file has the wrong length: " + file);
+                return false;
+            }
+            if (verifyLocalDirectory && !lengthAndChecksum[1].equals(checksum(file))) {
+                LOG.warn("Search directory file has the wrong checksum: " + file);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String checksum(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] data = new byte[65536];
+        InputStream in = new FileInputStream(file);
+        try {
+            int count;
+            while ((count = in.read(data)) != -1) {
+                crc.update(data, 0, count);
+            }
+        } finally {
+            in.close();
+        }
+        return Long.toHexString(crc.getValue());
+    }
+
+    private static void deleteDirectory(File directoryPath) {
+        if (directoryPath.exists()) {
+            for (File file : directoryPath.listFiles()) {
+                LOG.debug("Deleting old file: " + file);
+                file.delete();
+            }
+            directoryPath.delete();
+        }
+    }
+
     private static File createIndex(ObjectStore os, Map<String, List<FieldDescriptor>> classKeys)
         throws IOException {
         long time = System.currentTimeMillis();
@@ -973,11 +1159,19 @@ public final class KeywordSearch
 
         parseProperties(os);
 
-        LOG.info("Starting fetcher thread...");
-        InterMineObjectFetcher fetchThread =
-                new InterMineObjectFetcher(os, classKeys, indexingQueue, ignoredClasses,
-                        ignoredFields, specialReferences, classBoost, facets, attributePrefixes);
-        fetchThread.start();
+        documentsIndexed.set(0);
+        partitionsIndexed.set(0);
+        partitionCount = 0;
+        documentCount = 0;
+        int fetcherThreads = getIntProperty("index.fetcher.threads", 1);
+        List<IndexPartition> partitions = null;
+        if (fetcherThreads > 1) {
+            try {
+                partitions = getIndexPartitions(os, fetcherThreads);
+            } catch (ObjectStoreException e) {
+                LOG.warn("Could not count the objects to index - indexing in one thread", e);
+            }
+        }
 
         // index the docs queued by the fetchers
         LOG.info("Preparing indexer...");
@@ -1004,12 +1198,47 @@ public final class KeywordSearch
         writer.setMergeFactor(10); //10 default, higher values = more parts
         writer.setRAMBufferSizeMB(64); //flush to disk when docs take up X MB
 
+        if (partitions == null) {
+            LOG.info("Starting fetcher thread...");
+            InterMineObjectFetcher fetchThread =
+                    new InterMineObjectFetcher(os, classKeys, indexingQueue, ignoredClasses,
+                            ignoredFields, specialReferences, classBoost, facets,
+                            attributePrefixes);
+            fetchThread.start();
+            indexDocuments(indexingQueue, writer, fetchThread, time);
+            index.getFieldNames().addAll(fetchThread.getFieldNames());
+        } else {
+            indexPartitions(os, classKeys, partitions, fetcherThreads, tempFile, writer, time);
+        }
+        LOG.debug("Indexing done, optimizing index files...");
+        try {
+            writer.optimize();
+            writer.close();
+        } catch (IOException e) {
+            LOG.error("IOException while optimizing and closing IndexWriter", e);
+        }
+        int indexed = documentsIndexed.get();
+
+        time = System.currentTimeMillis() - time;
+        int seconds = (int) Math.floor(time / 1000);
+        LOG.info("Indexing of " + indexed + " documents finished in "
+                + String.format("%02d:%02d.%03d", (int) Math.floor(seconds / 60), seconds % 60,
+                        time % 1000) + " minutes");
+        return tempFile;
+    }
+
+    /**
+     * add the docs in the queue to the index until the fetcher is finished
+     * @return the number of docs added
+     */
+    private static int indexDocuments(ObjectPipe<Document> queue, IndexWriter writer,
+            Thread fetchThread, long time) {
         int indexed = 0;
 
         // loop and index while we still have fetchers running
         LOG.debug("Starting to index...");
-        while (indexingQueue.hasNext()) {
-            Document doc = indexingQueue.next();
+        while (queue.hasNext()) {
+            Document doc = queue.next();
 
             // nothing in the queue?
             if (doc != null) {
@@ -1021,9 +1250,10 @@ public final class KeywordSearch
                             e);
                 }
 
-                if (indexed % 10000 == 1) {
-                    LOG.info("docs indexed=" + indexed + "; thread state="
-                            + fetchThread.getState() + "; docs/ms=" + indexed * 1.0F
+                int total = documentsIndexed.incrementAndGet();
+                if (total % 10000 == 1) {
+                    LOG.info("docs indexed=" + total + "; thread state="
+                            + fetchThread.getState() + "; docs/ms=" + total * 1.0F
                             / (System.currentTimeMillis() - time) + "; memory="
                             + Runtime.getRuntime().freeMemory() / 1024 + "k/"
                             + Runtime.getRuntime().maxMemory() / 1024 + "k" + "; time="
@@ -1031,21 +1261,186 @@ public final class KeywordSearch
                 }
             }
         }
-        index.getFieldNames().addAll(fetchThread.getFieldNames());
-        LOG.debug("Indexing done, optimizing index files...");
+        return indexed;
+    }
+
+    /**
+     * Index the partitions with several fetchers at once. Each indexing thread takes the next
+     * partition, starts a fetcher for it and writes its docs into its own index directory, and
+     * the directories are merged into the main index once all the partitions are done.
+     */
+    private static void indexPartitions(final ObjectStore os,
+            final Map<String, List<FieldDescriptor>> classKeys, List<IndexPartition> partitions,
+            int threadCount, File tempFile, IndexWriter writer, final long time)
+        throws IOException {
+        final Queue<IndexPartition> toDo = new ConcurrentLinkedQueue<IndexPartition>(partitions);
+        final Set<String> fieldNames = Collections.synchronizedSet(new HashSet<String>());
+        final List<Exception> failures = Collections.synchronizedList(new ArrayList<Exception>());
+        List<Thread> threads = new ArrayList<Thread>();
+        Directory[] segments = new Directory[threadCount];
+        File[] segmentFiles = new File[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            segmentFiles[i] = new File(tempFile.getParentFile(), tempFile.getName() + "_" + i);
+            deleteDirectory(segmentFiles[i]);
+            segmentFiles[i].mkdir();
+            segments[i] = FSDirectory.open(segmentFiles[i]);
+            final Directory segment = segments[i];
+            Thread thread = new Thread("KeywordSearchIndexer" + i) {
+                @Override
+                public void run() {
+                    try {
+                        IndexWriter segmentWriter = new IndexWriter(segment,
+                                new WhitespaceAnalyzer(), true,
+                                IndexWriter.MaxFieldLength.UNLIMITED);
+                        segmentWriter.setRAMBufferSizeMB(64);
+                        IndexPartition partition;
+                        while ((partition = toDo.poll()) != null) {
+                            ObjectPipe<Document> queue = new ObjectPipe<Document>(10000);
+                            InterMineObjectFetcher fetchThread = new InterMineObjectFetcher(os,
+                                    classKeys, queue, ignoredClasses, ignoredFields,
+                                    specialReferences, classBoost, facets, attributePrefixes,
+                                    partition);
+                            fetchThread.start();
+                            int indexed = indexDocuments(queue, segmentWriter, fetchThread, time);
+                            fetchThread.join();
+                            fieldNames.addAll(fetchThread.getFieldNames());
+                            LOG.info("Indexed " + indexed + " docs for " + partition + " ("
+                                    + partitionsIndexed.incrementAndGet() + " of "
+                                    + partitionCount + " partitions done)");
+                        }
+                        segmentWriter.close();
+                    } catch (Exception e) {
+                        LOG.error("Indexing thread failed", e);
+                        failures.add(e);
+                        // stop the other threads taking more partitions
+                        toDo.clear();
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
         try {
-            writer.optimize();
-            writer.close();
-        } catch (IOException e) {
-            LOG.error("IOException while optimizing and closing IndexWriter", e);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Interrupted while indexing", e);
+        }
+        if (!failures.isEmpty()) {
+            throw new RuntimeException("Index creation failed", failures.get(0));
         }
+        index.getFieldNames().addAll(fieldNames);
 
-        time = System.currentTimeMillis() - time;
-        int seconds = (int) Math.floor(time / 1000);
-        LOG.info("Indexing of " + indexed + " documents finished in "
-                + String.format("%02d:%02d.%03d", (int) Math.floor(seconds / 60), seconds % 60,
-                        time % 1000) + " minutes");
-        return tempFile;
+        LOG.info("Merging " + threadCount + " index directories...");
+        writer.addIndexesNoOptimize(segments);
+        for (int i = 0; i < threadCount; i++) {
+            segments[i].close();
+            deleteDirectory(segmentFiles[i]);
+        }
+    }
+
+    /**
+     * Split the objects to index into partitions, counting the objects of each class in the
+     * model. The size of the partitions is index.partition.size, or enough to give each fetcher
+     * thread four partitions.
+     */
+    @SuppressWarnings("unchecked")
+    private static List<IndexPartition> getIndexPartitions(ObjectStore os, int threadCount)
+        throws ObjectStoreException {
+        long time = System.currentTimeMillis();
+        Map<Class<? extends InterMineObject>, long[]> classCounts =
+                new LinkedHashMap<Class<? extends InterMineObject>, long[]>();
+        // One scan of the intermineobject table, grouped by class
+        Query q = new Query();
+        QueryClass qc = new QueryClass(InterMineObject.class);
+        q.addFrom(qc);
+        QueryField classField = new QueryField(qc, "class");
+        QueryField id = new QueryField(qc, "id");
+        q.addToSelect(classField);
+        q.addToSelect(new QueryFunction());
+        q.addToSelect(new QueryFunction(id, QueryFunction.MIN));
+        q.addToSelect(new QueryFunction(id, QueryFunction.MAX));
+        q.addToGroupBy(classField);
+        Map<Class<?>, List<?>> rowsByClass = new HashMap<Class<?>, List<?>>();
+        for (Object row : os.execute(q, 0, Integer.MAX_VALUE, false, false,
+                    ObjectStore.SEQUENCE_IGNORE)) {
+            rowsByClass.put((Class<?>) ((List<?>) row).get(0), (List<?>) row);
+        }
+        long total = 0;
+        for (ClassDescriptor cld : os.getModel().getClassDescriptors()) {
+            Class<?> type = cld.getType();
+            if (!InterMineObject.class.isAssignableFrom(type) || InterMineObject.class == type
+                    || ignoredClasses.contains(type)) {
+                continue;
+            }
+            List<?> row = rowsByClass.get(type);
+            if (row != null) {
+                long count = ((Number) row.get(1)).longValue();
+                classCounts.put((Class<? extends InterMineObject>) type, new long[] {count,
+                    ((Number) row.get(2)).longValue(), ((Number) row.get(3)).longValue()});
+                total += count;
+            }
+        }
+        long partitionSize = getIntProperty("index.partition.size", 0);
+        if (partitionSize <= 0) {
+            partitionSize = Math.max(1, total / (threadCount * 4));
+        }
+        List<IndexPartition> partitions =
+                IndexPartition.createPartitions(classCounts, ignoredClasses, partitionSize);
+        partitionCount = partitions.size();
+        documentCount = total;
+        LOG.info("Counted " + total + " objects to index in " + classCounts.size()
+                + " classes, split into " + partitions.size() + " partitions in "
+                + (System.currentTimeMillis() - time) + " ms");
+        return partitions;
+    }
+
+    private static int getIntProperty(String key, int defaultValue) {
+        String value = (properties == null ? null : properties.getProperty(key));
+        if (StringUtils.isBlank(value)) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            LOG.warn("keyword_search.properties: " + key + " is not a number: " + value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * get the number of documents added to the index so far by the current or last index build
+     * @return a count of documents
+     */
+    public static int getDocumentsIndexed() {
+        return documentsIndexed.get();
+    }
+
+    /**
+     * get the number of objects counted for the current or last index build, if the objects
+     * were split into partitions
+     * @return a count of objects, or 0 if they were not counted
+     */
+    public static long getDocumentCount() {
+        return documentCount;
+    }
+
+    /**
+     * get the number of partitions indexed so far by the current or last index build
+     * @return a count of partitions
+     */
+    public static int getPartitionsIndexed() {
+        return partitionsIndexed.get();
+    }
+
+    /**
+     * get the number of partitions that the objects were split into for the current or last
+     * index build
+     * @return a count of partitions, or 0 if they were indexed in one thread
+     */
+    public static int getPartitionCount() {
+        return partitionCount;
     }
 
     private static File makeTempFile(String tempDir) throws IOException {
@@ -22,7 +22,9 @@ import java.util.Set;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
+import org.intermine.api.bag.BagBitmapCache;
 import org.intermine.api.bag.ClassKeysNotFoundException;
+import org.intermine.api.bag.IdBitmap;
 import org.intermine.api.bag.IncompatibleTypesException;
 import org.intermine.api.bag.UnknownBagTypeException;
 import org.intermine.api.search.PropertyChangeEvent;
@@ -228,14 +230,18 @@ public class InterMineBag extends StorableBag implements WebSearchable, Cloneabl
     @Override
     public void delete() throws ObjectStoreException {
         super.delete();
-        if (profileId != null) {
-            SavedBag savedBag = (SavedBag) uosw.getObjectStore().getObjectById(savedBagId,
-                    SavedBag.class);
-            uosw.delete(savedBag);
-            removeIdsFromBag(getContentsAsIds(), false);
-            deleteAllBagValues();
-            this.profileId = null;
-            this.savedBagId = null;
+        try {
+            if (profileId != null) {
+                SavedBag savedBag = (SavedBag) uosw.getObjectStore().getObjectById(savedBagId,
+                        SavedBag.class);
+                uosw.delete(savedBag);
+                removeIdsFromBag(getContentsAsIds(), false);
+                deleteAllBagValues();
+                this.profileId = null;
+                this.savedBagId = null;
+            }
+        } finally {
+            invalidateContents();
         }
     }
 
@@ -435,6 +441,13 @@ public class InterMineBag extends StorableBag implements WebSearchable, Cloneabl
 
     @Override
     public int getSize() throws ObjectStoreException {
+        BagBitmapCache cache = BagBitmapCache.getInstance();
+        if (cache.isEnabled()) {
+            IdBitmap contents = cache.get(osb.getBagId());
+            if (contents != null) {
+                return contents.size();
+            }
+        }
         Query q = new Query();
         q.addToSelect(osb);
         q.setDistinct(false);
@@ -735,10 +748,44 @@ public class InterMineBag extends StorableBag implements WebSearchable, Cloneabl
             oswProduction = os.getNewWriter();
             oswProduction.addAllToBag(osb, ids);
         } finally {
+            invalidateContents();
+            if (oswProduction != null) {
+                oswProduction.close();
+            }
+        }
+    }
+
+    /**
+     * Add the ids of a set of objects to a bag that contains none of them, such as a newly created
+     * bag. The ids are written in one batch without checking which of them the bag already
+     * contains, and the bagvalues table is then updated.
+     * @param ids the ids to add
+     * @throws ObjectStoreException if problem storing
+     */
+    public void addNewIdsToBag(IdBitmap ids) throws ObjectStoreException {
+        ObjectStoreWriter oswProduction = null;
+        try {
+            oswProduction = os.getNewWriter();
+            oswProduction.addAllToBag(osb, ids.toList());
+        } finally {
+            invalidateContents();
             if (oswProduction != null) {
                 oswProduction.close();
             }
         }
+        if (profileId != null) {
+            updateBagValues();
+        }
+    }
+
+    /**
+     * Remove the contents of this bag from the BagBitmapCache, because they have changed.
+     */
+    private void invalidateContents() {
+        BagBitmapCache cache = BagBitmapCache.getInstance();
+        if (cache.isEnabled()) {
+            cache.invalidate(osb.getBagId());
+        }
     }
 
     /**
@@ -779,6 +826,7 @@ public class InterMineBag extends StorableBag implements WebSearchable, Cloneabl
             oswProduction = os.getNewWriter();
             oswProduction.addToBagFromQuery(osb, query);
         } finally {
+            invalidateContents();
             if (oswProduction != null) {
                 oswProduction.close();
             }
@@ -810,6 +858,7 @@ public class InterMineBag extends StorableBag implements WebSearchable, Cloneabl
             oswProduction = os.getNewWriter();
             oswProduction.removeAllFromBag(osb, ids);
         } finally {
+            invalidateContents();
             if (oswProduction != null) {
                 oswProduction.close();
             }
@@ -13,6 +13,7 @@ package org.intermine.api.query;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -30,6 +31,7 @@ import org.intermine.metadata.FieldDescriptor;
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.objectstore.intermine.ObjectStoreInterMineImpl;
+import org.intermine.objectstore.query.KeysetResultsIterator;
 import org.intermine.objectstore.query.Query;
 import org.intermine.objectstore.query.QuerySelectable;
 import org.intermine.objectstore.query.Results;
@@ -107,14 +109,39 @@ public class PathQueryExecutor extends QueryExecutor
      * results from database from index 0 and just throws away all before start index.
      * @param limit maximum number of results
      * @return results
+     * @throws ObjectStoreException if something goes wrong executing the query
      */
-
     public ExportResultsIterator execute(PathQuery pathQuery, final int start,
             final int limit) throws ObjectStoreException {
+        return execute(pathQuery, start, limit, false);
+    }
+
+    /**
+     * Executes object store query and returns results as iterator over rows, optionally fetching
+     * the batches of results by seeking past the ORDER BY values of the previous batch rather than
+     * with an OFFSET. Then each batch costs the same however deep into the results it is, which is
+     * worthwhile for exports that read through a large number of rows. Queries whose ORDER BY
+     * values cannot be read back from the results are still paged with an OFFSET. See
+     * KeysetResultsIterator.
+     *
+     * @param pathQuery path query to be executed
+     * @param start index of first result which will be retrieved. All the results before it are
+     * still fetched from the database and thrown away.
+     * @param limit maximum number of results
+     * @param keysetPagination true to page by ORDER BY values where possible
+     * @return results
+     * @throws ObjectStoreException if something goes wrong executing the query
+     */
+    public ExportResultsIterator execute(PathQuery pathQuery, final int start,
+            final int limit, boolean keysetPagination) throws ObjectStoreException {
         Map<String, QuerySelectable> pathToQueryNode = new HashMap<String, QuerySelectable>();
         Map<String, BagQueryResult> returnBagQueryResults = new HashMap<String, BagQueryResult>();
 
         Query q = makeQuery(pathQuery, returnBagQueryResults, pathToQueryNode);
+        if (keysetPagination && KeysetResultsIterator.isApplicable(q)) {
+            return new ResultIterator(pathQuery, q, makeKeysetIterator(q), pathToQueryNode,
+                    start, limit);
+        }
         Results results = os.execute(q, batchSize, true, true, false);
         // Prime the results -- although lazy, ExportResults are always fetched to be
         // evaluated, and we want errors thrown here, not later when they are swallowed
@@ -128,6 +155,20 @@ public class PathQueryExecutor extends QueryExecutor
         return new ResultIterator(pathQuery, q, results, pathToQueryNode, start, limit);
     }
 
+    private KeysetResultsIterator makeKeysetIterator(Query q) throws ObjectStoreException {
+        KeysetResultsIterator rows = new KeysetResultsIterator(os, q, batchSize);
+        // Fetch the first batch now, so that errors are thrown here rather than while iterating
+        try {
+            rows.hasNext();
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof ObjectStoreException) {
+                throw (ObjectStoreException) e.getCause();
+            }
+            throw e;
+        }
+        return rows;
+    }
+
     private Query makeQuery(PathQuery pathQuery, Map<String, BagQueryResult> pathToBagQueryResult,
             Map<String, QuerySelectable> pathToQueryNode) throws ObjectStoreException {
 
@@ -259,6 +300,24 @@ class ResultIterator extends ExportResultsIterator
         this.start = start;
     }
 
+    /**
+     * Constructor for a ResultIterator over rows that are not held in a Results object.
+     *
+     * @param pathQuery a PathQuery to run.
+     * @param q The object-store query this path-query corresponds to.
+     * @param rows an Iterator over the rows of the object-store query
+     * @param pathToQueryNode a map from path in pathQuery to QuerySelectable in the generated
+     * ObjectStore query
+     * @param start the first row of results to be returned
+     * @param limit the number of result rows to return
+     */
+    public ResultIterator(PathQuery pathQuery, Query q, Iterator<? extends List> rows,
+            Map<String, QuerySelectable> pathToQueryNode, int start, int limit) {
+        super(pathQuery, q, rows, pathToQueryNode);
+        this.limit = limit;
+        this.start = start;
+    }
+
     /**
      * {@inheritDoc}
      */
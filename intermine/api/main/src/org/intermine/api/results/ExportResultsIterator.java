@@ -68,7 +68,25 @@ public class ExportResultsIterator implements Iterator<List<ResultElement>>
         this.results = results;
         this.originatingQuery = pathQuery;
         this.query = q;
-        init(pathQuery, pathToQueryNode);
+        init(pathQuery, pathToQueryNode, ((List) results).iterator());
+    }
+
+    /**
+     * Constructor for ExportResultsIterator over rows that are not held in a Results object, for
+     * example from a KeysetResultsIterator. goFaster() does nothing for such an iterator.
+     *
+     * @param pathQuery a PathQuery to run
+     * @param q the ObjectStore query the rows come from
+     * @param rows an Iterator over the rows of the ObjectStore query
+     * @param pathToQueryNode a map from path in pathQuery to QuerySelectable in the generated
+     * ObjectStore query
+     */
+    public ExportResultsIterator(PathQuery pathQuery, Query q, Iterator<? extends List> rows,
+            Map<String, QuerySelectable> pathToQueryNode) {
+        this.results = null;
+        this.originatingQuery = pathQuery;
+        this.query = q;
+        init(pathQuery, pathToQueryNode, rows);
     }
 
     public PathQuery getQuery() {
@@ -79,8 +97,9 @@ public class ExportResultsIterator implements Iterator<List<ResultElement>>
         return Collections.unmodifiableList(paths);
     }
 
-    private void init(PathQuery pq, Map<String, QuerySelectable> pathToQueryNode) {
-        osIter = ((List) results).iterator();
+    private void init(PathQuery pq, Map<String, QuerySelectable> pathToQueryNode,
+            Iterator<? extends List> rows) {
+        osIter = (Iterator<List>) rows;
       
         List<List<ResultElement>> empty = Collections.emptyList();
         subIter = empty.iterator();
@@ -136,7 +155,7 @@ public class ExportResultsIterator implements Iterator<List<ResultElement>>
      */
     public void goFaster()  {
         try {
-            if ((!results.isSingleBatch()) && (!isGoingFaster)) {
+            if ((results != null) && (!results.isSingleBatch()) && (!isGoingFaster)) {
                 ((ObjectStoreInterMineImpl) results.getObjectStore()).goFaster(results.getQuery());
                 isGoingFaster = true;
             }
@@ -0,0 +1,141 @@
+package org.intermine.api.tracker;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.intermine.api.tracker.track.Track;
+
+/**
+ * The queue where the trackers leave their tracks for the TrackerLogger to write to the
+ * database. It is safe to use from several threads, and it is bounded: when it is full, adding
+ * a track drops the oldest one rather than blocking the request that made it or failing, so a
+ * burst of traffic that the database cannot keep up with costs some tracks and not memory.
+ *
+ * @author julie
+ */
+public class TrackQueue extends AbstractQueue<Track>
+{
+    /** The default number of tracks to hold. **/
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    private final ArrayDeque<Track> tracks = new ArrayDeque<Track>();
+    private final int capacity;
+    private long droppedCount = 0;
+
+    /**
+     * Create a queue holding DEFAULT_CAPACITY tracks.
+     */
+    public TrackQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a queue holding a given number of tracks.
+     * @param capacity the maximum number of tracks to hold
+     */
+    public TrackQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Add a track to the end of the queue, dropping the track at the head if the queue is full.
+     * @param track the track to add
+     * @return true
+     */
+    @Override
+    public synchronized boolean offer(Track track) {
+        if (track == null) {
+            throw new NullPointerException("track must not be null");
+        }
+        if (tracks.size() >= capacity) {
+            tracks.pollFirst();
+            droppedCount++;
+        }
+        tracks.addLast(track);
+        return true;
+    }
+
+    @Override
+    public synchronized Track poll() {
+        return tracks.pollFirst();
+    }
+
+    @Override
+    public synchronized Track peek() {
+        return tracks.peekFirst();
+    }
+
+    @Override
+    public synchronized int size() {
+        return tracks.size();
+    }
+
+    /**
+     * Return an iterator over a snapshot of the queue.
+     * @return an iterator, which does not support remove()
+     */
+    @Override
+    public synchronized Iterator<Track> iterator() {
+        final Iterator<Track> snapshot = new ArrayList<Track>(tracks).iterator();
+        return new Iterator<Track>() {
+            @Override
+            public boolean hasNext() {
+                return snapshot.hasNext();
+            }
+
+            @Override
+            public Track next() {
+                return snapshot.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Remove up to a given number of tracks from the head of the queue.
+     * @param max the maximum number of tracks to remove
+     * @return the tracks removed, oldest first
+     */
+    public synchronized List<Track> poll(int max) {
+        List<Track> batch = new ArrayList<Track>(Math.min(max, tracks.size()));
+        while (batch.size() < max && !tracks.isEmpty()) {
+            batch.add(tracks.pollFirst());
+        }
+        return batch;
+    }
+
+    /**
+     * Return the number of tracks dropped because the queue was full.
+     * @return the number of tracks dropped
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * Return the maximum number of tracks the queue holds.
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+}
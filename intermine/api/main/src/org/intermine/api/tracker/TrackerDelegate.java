@@ -12,16 +12,13 @@ package org.intermine.api.tracker;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 
 import org.apache.log4j.Logger;
 import org.intermine.api.profile.Profile;
 import org.intermine.api.tracker.factory.TrackerFactory;
 import org.intermine.api.tracker.track.ListTrack;
-import org.intermine.api.tracker.track.Track;
 import org.intermine.api.tracker.util.ListBuildMode;
 import org.intermine.api.tracker.util.ListTrackerEvent;
 import org.intermine.api.tracker.util.TrackerUtil;
@@ -41,6 +38,8 @@ public class TrackerDelegate
     protected ObjectStoreWriter osw;
     protected Connection connection = null;
     protected Thread trackerLoggerThread;
+    protected TrackQueue trackQueue = new TrackQueue();
+    protected TrackerLogger trackerLogger;
 
     /**
      * Create the tracker manager managing the trackers specified in input
@@ -48,7 +47,6 @@ public class TrackerDelegate
      * @param osw the object store witer used to retrieve the connections
      */
     public TrackerDelegate(String[] trackerClassNames, ObjectStoreWriter osw) {
-        Queue<Track> trackQueue = new LinkedList<Track>();
         this.osw = osw;
         try {
             connection = getConnection();
@@ -67,12 +65,29 @@ public class TrackerDelegate
                       + " hasn't been instatiated", sqle);
         }
 
-        TrackerLogger trackerLogger = new TrackerLogger(connection, trackQueue);
+        trackerLogger = new TrackerLogger(connection, trackQueue);
         trackerLoggerThread = new Thread(trackerLogger);
         trackerLoggerThread.setDaemon(true);
         trackerLoggerThread.start();
     }
 
+    /**
+     * Return the number of tracks written to the database so far.
+     * @return the number of tracks written
+     */
+    public long getFlushedTrackCount() {
+        return trackerLogger.getFlushedCount();
+    }
+
+    /**
+     * Return the number of tracks dropped so far because they were made faster than they could
+     * be written to the database.
+     * @return the number of tracks dropped
+     */
+    public long getDroppedTrackCount() {
+        return trackQueue.getDroppedCount();
+    }
+
     /**
      * Return the trackers saved in the TrackerManager
      * @return map containing names and trackers
@@ -330,7 +345,19 @@ public class TrackerDelegate
         return uosw.getDatabase().getConnection();
     }
 
+    /**
+     * Write any tracks still queued and release the database connection.
+     */
     public void close() {
+        // the logger flushes the queue when interrupted, so wait for it before releasing
+        trackerLoggerThread.interrupt();
+        try {
+            trackerLoggerThread.join(10000);
+        } catch (InterruptedException ie) {
+            LOG.error(ie);
+        }
+        LOG.info("Tracks written: " + trackerLogger.getFlushedCount() + ", failed: "
+                + trackerLogger.getFailedCount() + ", dropped: " + trackQueue.getDroppedCount());
         releaseConnection(connection);
     }
 
@@ -10,44 +10,177 @@ package org.intermine.api.tracker;
  *
  */
 import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 
 import org.apache.log4j.Logger;
 import org.intermine.api.tracker.track.Track;
+import org.intermine.api.tracker.track.TrackAbstract;
 
 /**
  * Runnable object providing insertion into the database. TrackerLogger is created
  * for a specific connection and table.
+ *
+ * Every flush interval the logger empties the queue, writing the tracks for each table with one
+ * multi-row INSERT per batch, so a burst of tracks costs a few statements rather than one per
+ * track. If a batch fails the tracks in it are written one at a time, so that one bad track
+ * does not lose the others.
  * @author dbutano
  *
  */
 public class TrackerLogger implements Runnable
 {
+    /** The default number of tracks to write in one statement. **/
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    /** The default time to wait between flushes, in milliseconds. **/
+    public static final long DEFAULT_FLUSH_INTERVAL = 3000;
+
     private static final Logger LOG = Logger.getLogger(TrackerLogger.class);
     private Connection connection;
     private Queue<Track> trackQueue;
+    private final int batchSize;
+    private final long flushInterval;
+    private volatile long flushedCount = 0;
+    private volatile long failedCount = 0;
 
     /**
      * Construct a TrackerLogger for a specific connection and table
      * @param connection the connection to the database
+     * @param trackQueue the queue to take the tracks from
      */
     public TrackerLogger(Connection connection, Queue<Track> trackQueue) {
+        this(connection, trackQueue, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL);
+    }
+
+    /**
+     * Construct a TrackerLogger for a specific connection and table
+     * @param connection the connection to the database
+     * @param trackQueue the queue to take the tracks from
+     * @param batchSize the maximum number of tracks to write in one statement
+     * @param flushInterval the time to wait between flushes, in milliseconds
+     */
+    public TrackerLogger(Connection connection, Queue<Track> trackQueue, int batchSize,
+            long flushInterval) {
         this.connection = connection;
         this.trackQueue = trackQueue;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
     }
 
+    /**
+     * Flush the queue every flush interval until interrupted, when the queue is flushed a last
+     * time.
+     */
     public void run() {
         for (;;) {
-            Track track = trackQueue.poll();
-            if (track != null) {
-                track.store(connection);
-            } else {
+            flush();
+            try {
+                Thread.sleep(flushInterval);
+            } catch (InterruptedException ie) {
+                flush();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Write all the tracks in the queue to the database.
+     */
+    public void flush() {
+        List<Track> batch;
+        while (!(batch = pollBatch()).isEmpty()) {
+            Map<String, List<Track>> byTable = new LinkedHashMap<String, List<Track>>();
+            for (Track track : batch) {
+                List<Track> tracks = byTable.get(track.getTableName());
+                if (tracks == null) {
+                    tracks = new ArrayList<Track>();
+                    byTable.put(track.getTableName(), tracks);
+                }
+                tracks.add(track);
+            }
+            for (Map.Entry<String, List<Track>> entry : byTable.entrySet()) {
+                storeBatch(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private List<Track> pollBatch() {
+        if (trackQueue instanceof TrackQueue) {
+            return ((TrackQueue) trackQueue).poll(batchSize);
+        }
+        List<Track> batch = new ArrayList<Track>();
+        Track track;
+        while (batch.size() < batchSize && (track = trackQueue.poll()) != null) {
+            batch.add(track);
+        }
+        return batch;
+    }
+
+    private void storeBatch(String tableName, List<Track> tracks) {
+        if (insert(tableName, tracks)) {
+            flushedCount += tracks.size();
+        } else if (tracks.size() > 1) {
+            LOG.warn("Problem writing " + tracks.size() + " tracks to " + tableName
+                    + ", writing them one at a time");
+            for (Track track : tracks) {
+                storeBatch(tableName, Collections.singletonList(track));
+            }
+        } else {
+            failedCount++;
+        }
+    }
+
+    private boolean insert(String tableName, List<Track> tracks) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(tableName)
+            .append(" VALUES ");
+        boolean needComma = false;
+        for (Track track : tracks) {
+            if (needComma) {
+                sql.append(", ");
+            }
+            needComma = true;
+            sql.append(TrackAbstract.formatValues(track.getFormattedTrack()));
+        }
+        Statement stm = null;
+        try {
+            stm = connection.createStatement();
+            stm.executeUpdate(sql.toString());
+            return true;
+        } catch (SQLException e) {
+            if (tracks.size() == 1) {
+                LOG.error("Problem executing the statement: " + sql, e);
+            }
+            return false;
+        } finally {
+            if (stm != null) {
                 try {
-                    Thread.sleep(3000);
-                } catch (InterruptedException ie) {
-                    return;
+                    stm.close();
+                } catch (SQLException e) {
+                    LOG.error("Problem closing resources in TrackerLogger", e);
                 }
             }
         }
     }
+
+    /**
+     * Return the number of tracks written to the database.
+     * @return the number of tracks written
+     */
+    public long getFlushedCount() {
+        return flushedCount;
+    }
+
+    /**
+     * Return the number of tracks that could not be written to the database.
+     * @return the number of tracks that failed
+     */
+    public long getFailedCount() {
+        return failedCount;
+    }
 }
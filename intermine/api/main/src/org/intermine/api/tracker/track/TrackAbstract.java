@@ -33,16 +33,10 @@ public abstract class TrackAbstract implements Track
     public void store(Connection con) {
         String sql = "";
         Statement stm = null;
-        StringBuffer valuesBuffer = new StringBuffer();
-        Object[] values = getFormattedTrack();
-        for (int index = 0; index < values.length; index++) {
-            valuesBuffer = valuesBuffer.append("'" + values[index] + "',");
-        }
-        valuesBuffer = valuesBuffer.deleteCharAt(valuesBuffer.length() - 1);
         try {
             stm = con.createStatement();
             sql = "INSERT INTO " + getTableName()
-                + " VALUES ( " + valuesBuffer + ")";
+                + " VALUES " + formatValues(getFormattedTrack());
             stm.executeUpdate(sql);
         } catch (SQLException sqe) {
             LOG.error("Problem executing the statement: " + sql, sqe);
@@ -56,6 +50,24 @@ public abstract class TrackAbstract implements Track
         }
     }
 
+    /**
+     * Format the values of a track as a row of an SQL INSERT statement, with each value quoted
+     * as a string literal.
+     * @param values the values returned by getFormattedTrack()
+     * @return a String such as ( 'a','b' )
+     */
+    public static String formatValues(Object[] values) {
+        StringBuffer valuesBuffer = new StringBuffer("( ");
+        for (int index = 0; index < values.length; index++) {
+            if (index > 0) {
+                valuesBuffer.append(",");
+            }
+            valuesBuffer.append("'").append(String.valueOf(values[index]).replace("'", "''"))
+                .append("'");
+        }
+        return valuesBuffer.append(")").toString();
+    }
+
     /**
      * Return the timestamp of the event
      * @return Timestamp the timestamp
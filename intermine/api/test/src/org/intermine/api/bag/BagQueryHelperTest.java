@@ -70,4 +70,19 @@ public class BagQueryHelperTest extends TestCase {
         String expected = "SELECT DISTINCT a1_.id AS a2_, a1_.name AS a3_, a1_.title AS a4_ FROM org.intermine.model.testmodel.Manager AS a1_ WHERE (LOWER(a1_.name), LOWER(a1_.title)) IN ? 1: [employeea1, employeeb1]";
         assertEquals(expected, q.toString());
     }
+
+    public void testGetQueryForWildcards() throws Exception {
+        BagQuery bq = new BagQuery(bagQueryConfig, model, classKeys,
+                model.getPackageName() + ".Employee");
+        List input = new ArrayList(Arrays.asList(new Object[] {"EmployeeA*", "Emp*B1", "*1",
+                "EmployeeA1*", "Emp*A2"}));
+        // wildcards with the same literal prefix are grouped under an anchored LIKE
+        String expected = "SELECT DISTINCT a1_.id AS a2_, a1_.name AS a3_"
+            + " FROM org.intermine.model.testmodel.Employee AS a1_"
+            + " WHERE (LOWER(a1_.name) LIKE 'employeea%'"
+            + " OR (LOWER(a1_.name) LIKE 'emp%'"
+            + " AND (LOWER(a1_.name) LIKE 'emp%b1' OR LOWER(a1_.name) LIKE 'emp%a2'))"
+            + " OR LOWER(a1_.name) LIKE '%1' OR LOWER(a1_.name) LIKE 'employeea1%')";
+        assertEquals(expected, bq.getQueryForWildcards(input, null).toString());
+    }
 }
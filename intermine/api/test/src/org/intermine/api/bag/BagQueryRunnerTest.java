@@ -41,7 +41,7 @@ public class BagQueryRunnerTest extends StoreDataTestCase {
 
     private ObjectStore os;
     private Map<String, Employee> eIds;
-    private TestingBagQueryRunner runner, runnerMatchAll;
+    private TestingBagQueryRunner runner, runnerMatchAll, runnerSetBased;
     Map<String, List<FieldDescriptor>> classKeys;
 
     public BagQueryRunnerTest(String arg0) {
@@ -52,9 +52,15 @@ public class BagQueryRunnerTest extends StoreDataTestCase {
         super.setUp();
         runner = getRunner(true);
         runnerMatchAll = getRunner(false);
+        runnerSetBased = getRunner(true, true);
     }
 
     private TestingBagQueryRunner getRunner(boolean matchOnFirst) throws Exception {
+        return getRunner(matchOnFirst, false);
+    }
+
+    private TestingBagQueryRunner getRunner(boolean matchOnFirst, boolean setBased)
+        throws Exception {
         os = ObjectStoreFactory.getObjectStore("os.unittest");
         Properties props = new Properties();
         props.load(getClass().getClassLoader().getResourceAsStream("class_keys.properties"));
@@ -64,6 +70,7 @@ public class BagQueryRunnerTest extends StoreDataTestCase {
         InputStream is = getClass().getClassLoader().getResourceAsStream("bag-queries.xml");
         BagQueryConfig bagQueryConfig = BagQueryHelper.readBagQueryConfig(os.getModel(), is);
         bagQueryConfig.setMatchOnFirst(matchOnFirst);
+        bagQueryConfig.setSetBased(setBased);
         TemplateQueryBinding tqb = new TemplateQueryBinding();
         Map<String, TemplateQuery> tqs = tqb.unmarshalTemplates(new InputStreamReader(getClass().getClassLoader().getResourceAsStream("BagQueryRunnerTest_templates.xml")), PathQuery.USERPROFILE_VERSION);
 
@@ -296,6 +303,20 @@ public class BagQueryRunnerTest extends StoreDataTestCase {
     }
 
 
+    // set-based lookups should give the same results as running the queries in turn
+    public void testSetBasedMatches() throws Exception {
+        List input = Arrays.asList(new Object[] {"EmployeeA1", "EmployeeA2", "1", "EmployeeA*",
+            "non_matching_string"});
+        BagQueryResult expected = runner.searchForBag("Employee", input, null, true);
+        BagQueryResult res = runnerSetBased.searchForBag("Employee", input, null, true);
+        assertEquals(expected.getMatches(), res.getMatches());
+        assertEquals(expected.getIssues(), res.getIssues());
+        assertEquals(expected.getUnresolved(), res.getUnresolved());
+        assertTrue(res.getTimings().containsKey("run all queries"));
+        assertTrue(res.getTimings().containsKey("total"));
+        assertFalse(expected.getTimings().containsKey("run all queries"));
+    }
+
     // we need to test a query that matches a different type.  Probably
     // need to add another query to: testmodel/webapp/main/resources/webapp/WEB-INF/bag-queries.xml
 
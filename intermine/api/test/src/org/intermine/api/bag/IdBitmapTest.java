@@ -0,0 +1,132 @@
+package org.intermine.api.bag;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for IdBitmap and BagBitmapCache.
+ * @author julie
+ */
+public class IdBitmapTest extends TestCase
+{
+    private static IdBitmap bitmap(TreeSet<Integer> ids) {
+        return IdBitmap.fromIds(ids);
+    }
+
+    private static int[] toArray(TreeSet<Integer> ids) {
+        int[] result = new int[ids.size()];
+        int i = 0;
+        for (Integer id : ids) {
+            result[i++] = id.intValue();
+        }
+        return result;
+    }
+
+    // Ids in a few chunks, with both sparse and dense chunks
+    private static TreeSet<Integer> randomIds(Random random, int count) {
+        TreeSet<Integer> ids = new TreeSet<Integer>();
+        for (int i = 0; i < count; i++) {
+            int chunk = random.nextInt(4);
+            int low = (chunk < 2 ? random.nextInt(65536) : random.nextInt(200));
+            ids.add(Integer.valueOf((chunk << 16) | low));
+        }
+        return ids;
+    }
+
+    public void testFromIds() {
+        IdBitmap ids = IdBitmap.fromIds(Arrays.asList(5, 70000, 3, 5, 65536));
+        assertEquals(4, ids.size());
+        assertTrue(Arrays.equals(new int[] {3, 5, 65536, 70000}, ids.toArray()));
+        assertTrue(ids.contains(65536));
+        assertFalse(ids.contains(4));
+        assertFalse(ids.contains(131072));
+        assertEquals(Arrays.asList(3, 5, 65536, 70000), ids.toList());
+        assertEquals(0, IdBitmap.EMPTY.size());
+    }
+
+    public void testDenseChunk() {
+        TreeSet<Integer> expected = new TreeSet<Integer>();
+        for (int i = 0; i < 20000; i += 2) {
+            expected.add(Integer.valueOf(i));
+        }
+        IdBitmap ids = bitmap(expected);
+        assertEquals(10000, ids.size());
+        assertTrue(ids.contains(19998));
+        assertFalse(ids.contains(19999));
+        assertTrue(Arrays.equals(toArray(expected), ids.toArray()));
+        // A bitmap chunk is 8kB, rather than 20kB as an array
+        assertTrue(ids.getMemoryUsage() < 10000);
+    }
+
+    public void testOperations() {
+        Random random = new Random(42);
+        for (int round = 0; round < 20; round++) {
+            TreeSet<Integer> a = randomIds(random, random.nextInt(20000));
+            TreeSet<Integer> b = randomIds(random, random.nextInt(20000));
+            IdBitmap bitmapA = bitmap(a);
+            IdBitmap bitmapB = bitmap(b);
+
+            TreeSet<Integer> union = new TreeSet<Integer>(a);
+            union.addAll(b);
+            TreeSet<Integer> intersection = new TreeSet<Integer>(a);
+            intersection.retainAll(b);
+            TreeSet<Integer> difference = new TreeSet<Integer>(a);
+            difference.removeAll(b);
+            TreeSet<Integer> symmetric = new TreeSet<Integer>(union);
+            symmetric.removeAll(intersection);
+
+            assertTrue(Arrays.equals(toArray(union), bitmapA.or(bitmapB).toArray()));
+            assertTrue(Arrays.equals(toArray(intersection), bitmapA.and(bitmapB).toArray()));
+            assertTrue(Arrays.equals(toArray(difference), bitmapA.andNot(bitmapB).toArray()));
+            assertTrue(Arrays.equals(toArray(symmetric), bitmapA.xor(bitmapB).toArray()));
+            assertEquals(union.size(), bitmapA.or(bitmapB).size());
+            assertEquals(intersection.size(), bitmapA.and(bitmapB).size());
+        }
+    }
+
+    public void testNegativeIds() {
+        IdBitmap ids = IdBitmap.fromIds(Arrays.asList(-1, 1, Integer.MIN_VALUE));
+        assertTrue(Arrays.equals(new int[] {1, Integer.MIN_VALUE, -1}, ids.toArray()));
+        assertTrue(ids.contains(-1));
+        assertEquals(2, ids.andNot(IdBitmap.fromIds(Arrays.asList(1))).size());
+    }
+
+    public void testCache() {
+        IdBitmap small = IdBitmap.fromIds(Arrays.asList(1, 2, 3));
+        BagBitmapCache cache = new BagBitmapCache(small.getMemoryUsage() * 2);
+        assertTrue(cache.isEnabled());
+        cache.put(1, small);
+        cache.put(2, small);
+        assertEquals(2, cache.size());
+        assertSame(small, cache.get(1));
+
+        // Bag 2 is now the least recently used
+        cache.put(3, small);
+        assertSame(small, cache.get(1));
+        assertNull(cache.get(2));
+        assertSame(small, cache.get(3));
+        assertEquals(small.getMemoryUsage() * 2, cache.getMemoryUsage());
+
+        cache.invalidate(1);
+        assertNull(cache.get(1));
+        assertEquals(small.getMemoryUsage(), cache.getMemoryUsage());
+
+        BagBitmapCache disabled = new BagBitmapCache(0);
+        assertFalse(disabled.isEnabled());
+        disabled.put(1, small);
+        assertNull(disabled.get(1));
+    }
+}
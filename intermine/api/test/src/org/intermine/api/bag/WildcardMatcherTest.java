@@ -0,0 +1,51 @@
+package org.intermine.api.bag;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for WildcardMatcher.
+ * @author julie
+ */
+public class WildcardMatcherTest extends TestCase
+{
+    private WildcardMatcher getMatcher(List<String> wildcards) {
+        Map<String, Pattern> patterns = new HashMap<String, Pattern>();
+        for (String wildcard : wildcards) {
+            patterns.put(wildcard, Pattern.compile(wildcard.toLowerCase()
+                    .replaceAll("\\*", "\\.\\*")));
+        }
+        return new WildcardMatcher(wildcards, patterns);
+    }
+
+    public void testMatches() {
+        WildcardMatcher matcher = getMatcher(Arrays.asList("Employee*", "EmployeeA*", "*B3",
+                    "Emp*3", "Emp.oyee*", "x*"));
+        assertEquals(new HashSet<String>(Arrays.asList("Employee*", "EmployeeA*", "Emp*3",
+                        "Emp.oyee*")),
+                new HashSet<String>(matcher.getMatches("employeea3")));
+        assertEquals(new HashSet<String>(Arrays.asList("Employee*", "*B3", "Emp*3",
+                        "Emp.oyee*")),
+                new HashSet<String>(matcher.getMatches("employeeb3")));
+        assertEquals(Collections.singletonList("*B3"), matcher.getMatches("b3"));
+        assertEquals(Collections.emptyList(), matcher.getMatches("em"));
+        assertEquals(Collections.singletonList("x*"), matcher.getMatches("x"));
+    }
+}
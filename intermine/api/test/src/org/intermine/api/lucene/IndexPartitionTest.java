@@ -0,0 +1,78 @@
+package org.intermine.api.lucene;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.intermine.model.InterMineObject;
+import org.intermine.model.testmodel.Address;
+import org.intermine.model.testmodel.Company;
+import org.intermine.model.testmodel.Department;
+import org.intermine.model.testmodel.Employee;
+
+/**
+ * Tests for IndexPartition.
+ * @author julie
+ */
+public class IndexPartitionTest extends TestCase
+{
+    public void testCreatePartitions() {
+        Map<Class<? extends InterMineObject>, long[]> classCounts =
+            new LinkedHashMap<Class<? extends InterMineObject>, long[]>();
+        classCounts.put(Employee.class, new long[] {250, 1, 1000});
+        classCounts.put(Company.class, new long[] {40, 2000, 2100});
+        classCounts.put(Department.class, new long[] {70, 3000, 3100});
+        classCounts.put(Address.class, new long[] {10, 4000, 4010});
+        Set<Class<? extends InterMineObject>> ignored =
+            Collections.<Class<? extends InterMineObject>>singleton(Address.class);
+
+        List<IndexPartition> partitions =
+            IndexPartition.createPartitions(classCounts, ignored, 100);
+
+        // Employee split into three id ranges, Company and Department together, and the remainder
+        assertEquals(5, partitions.size());
+        Set<Integer> starts = new HashSet<Integer>();
+        int covered = 0;
+        for (IndexPartition partition : partitions.subList(0, 4)) {
+            assertFalse(partition.isRemainder());
+            if (partition.getClasses().contains(Employee.class)) {
+                assertEquals(1, partition.getClasses().size());
+                starts.add(partition.getMinId());
+                covered += partition.getMaxId() - partition.getMinId();
+            } else {
+                assertEquals(2, partition.getClasses().size());
+                assertTrue(partition.getClasses().contains(Company.class));
+                assertTrue(partition.getClasses().contains(Department.class));
+                assertNull(partition.getMinId());
+                assertEquals(110, partition.getSize());
+            }
+        }
+        assertEquals(3, starts.size());
+        assertTrue(starts.contains(1));
+        assertEquals(1000, covered);
+
+        // Largest first
+        for (int i = 1; i < 4; i++) {
+            assertTrue(partitions.get(i - 1).getSize() >= partitions.get(i).getSize());
+        }
+
+        IndexPartition remainder = partitions.get(4);
+        assertTrue(remainder.isRemainder());
+        assertEquals(classCounts.keySet(), remainder.getClasses());
+    }
+}
@@ -0,0 +1,46 @@
+package org.intermine.api.tracker;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+import java.util.List;
+
+import org.intermine.api.tracker.track.LoginTrack;
+import org.intermine.api.tracker.track.Track;
+
+import junit.framework.TestCase;
+
+public class TrackQueueTest extends TestCase {
+
+    public void testDropOldest() {
+        TrackQueue queue = new TrackQueue(3);
+        for (int index = 0; index < 5; index++) {
+            assertTrue(queue.offer(new LoginTrack("user" + index, null)));
+        }
+        assertEquals(3, queue.size());
+        assertEquals(2, queue.getDroppedCount());
+        assertEquals("user2", queue.poll().getFormattedTrack()[0]);
+        assertEquals("user3", queue.peek().getFormattedTrack()[0]);
+    }
+
+    public void testPollBatch() {
+        TrackQueue queue = new TrackQueue();
+        for (int index = 0; index < 7; index++) {
+            queue.add(new LoginTrack("user" + index, null));
+        }
+        List<Track> batch = queue.poll(5);
+        assertEquals(5, batch.size());
+        assertEquals("user0", batch.get(0).getFormattedTrack()[0]);
+        batch = queue.poll(5);
+        assertEquals(2, batch.size());
+        assertEquals("user6", batch.get(1).getFormattedTrack()[0]);
+        assertTrue(queue.poll(5).isEmpty());
+        assertEquals(0, queue.getDroppedCount());
+    }
+}
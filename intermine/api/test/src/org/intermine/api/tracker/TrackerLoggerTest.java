@@ -70,6 +70,26 @@ public class TrackerLoggerTest extends TestCase {
         stm.close();
     }
 
+    public void testFlush() throws SQLException {
+        TrackQueue queue = new TrackQueue();
+        for (int index = 0; index < count; index++) {
+            queue.add(new LoginTrack("user'" + index,
+                          new Timestamp(System.currentTimeMillis())));
+        }
+        trackerLogger = new TrackerLogger(con, queue, 30, 1000);
+        trackerLogger.flush();
+        assertTrue(queue.isEmpty());
+        assertEquals(count, trackerLogger.getFlushedCount());
+        assertEquals(0, trackerLogger.getFailedCount());
+        String sql = "SELECT COUNT(*) FROM logintrack WHERE username LIKE 'user''%'";
+        Statement stm = con.createStatement();
+        ResultSet rs = stm.executeQuery(sql);
+        rs.next();
+        assertEquals(count, rs.getInt(1));
+        rs.close();
+        stm.close();
+    }
+
     private void removeTracks() throws SQLException {
         String sql = "DELETE FROM logintrack";
         Statement stm = con.createStatement();
@@ -0,0 +1,52 @@
+package org.intermine.benchmark;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+/**
+ * A microbenchmark of one operation, run many times by the BenchmarkRunner. Everything the
+ * operation needs should be made in setUp(), so that run() measures only the operation itself.
+ * run() must return something computed by the operation, which the runner consumes so that the
+ * JIT cannot remove the work as dead code.
+ *
+ * @author julie
+ */
+public abstract class Benchmark
+{
+    /**
+     * Returns the name of the benchmark, used to match results against the baseline.
+     *
+     * @return a name
+     */
+    public String getName() {
+        String name = getClass().getSimpleName();
+        if (name.endsWith("Benchmark")) {
+            name = name.substring(0, name.length() - 9);
+        }
+        return name;
+    }
+
+    /**
+     * Prepares the inputs to the operation. Called once, before any calls to run().
+     *
+     * @throws Exception if anything goes wrong
+     */
+    public void setUp() throws Exception {
+        // Nothing to do by default
+    }
+
+    /**
+     * Performs the operation once.
+     *
+     * @return the result of the operation
+     * @throws Exception if anything goes wrong
+     */
+    public abstract Object run() throws Exception;
+}
@@ -0,0 +1,226 @@
+package org.intermine.benchmark;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.intermine.objectstore.intermine.NotXmlParserBenchmark;
+import org.intermine.objectstore.intermine.ResultsConverterBenchmark;
+import org.intermine.objectstore.intermine.SqlGeneratorBenchmark;
+import org.intermine.objectstore.intermine.SqlTemplateBenchmark;
+
+/**
+ * Runs the microbenchmarks of the objectstore hot paths, and compares the results with a baseline
+ * so that regressions show up. All the benchmarks use the testmodel and need no database.
+ * <p>
+ * Each benchmark is run for a warmup period to let the JIT compile it, then for a number of
+ * measurement iterations of fixed length. The score is the mean time per operation over the
+ * measurement iterations, and the error is their standard deviation.
+ * <p>
+ * Usage: BenchmarkRunner [-baseline file] [-output file] [-tolerance fraction] [-iterations n]
+ * [-time ms] [-warmup ms] [-check] [benchmark names...]
+ * <br>
+ * -output writes the scores in the baseline format, to record a new baseline. -check makes the
+ * runner exit with status 1 if any benchmark is slower than the baseline by more than the
+ * tolerance (by default 0.25, that is 25%). Scores are absolute timings, so a baseline is only
+ * meaningful on the machine that recorded it - record one on each machine before using -check.
+ *
+ * @author julie
+ */
+public final class BenchmarkRunner
+{
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private long warmupMillis = 2000;
+    private long iterationMillis = 1000;
+    private int iterations = 5;
+    private double tolerance = 0.25;
+
+    // Results of the benchmarks are folded into this, so that they are not dead code
+    private volatile int sink;
+
+    private BenchmarkRunner() {
+        // Hidden constructor.
+    }
+
+    /**
+     * Returns all the benchmarks.
+     *
+     * @return a List of Benchmarks
+     */
+    public static List<Benchmark> getBenchmarks() {
+        return Arrays.asList(
+                new NotXmlParserBenchmark(false),
+                new NotXmlParserBenchmark(true),
+                new SqlGeneratorBenchmark(),
+                new SqlTemplateBenchmark(),
+                new IqlQueryParserBenchmark(),
+                new DynamicUtilBenchmark(),
+                new MakeQueryBenchmark(),
+                new ResultsConverterBenchmark());
+    }
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args the command line arguments
+     * @throws Exception if a benchmark fails
+     */
+    public static void main(String[] args) throws Exception {
+        BenchmarkRunner runner = new BenchmarkRunner();
+        File baselineFile = null;
+        File outputFile = null;
+        boolean check = false;
+        Set<String> names = new HashSet<String>();
+        for (int i = 0; i < args.length; i++) {
+            if ("-baseline".equals(args[i])) {
+                baselineFile = new File(args[++i]);
+            } else if ("-output".equals(args[i])) {
+                outputFile = new File(args[++i]);
+            } else if ("-tolerance".equals(args[i])) {
+                runner.tolerance = Double.parseDouble(args[++i]);
+            } else if ("-iterations".equals(args[i])) {
+                runner.iterations = Integer.parseInt(args[++i]);
+            } else if ("-time".equals(args[i])) {
+                runner.iterationMillis = Long.parseLong(args[++i]);
+            } else if ("-warmup".equals(args[i])) {
+                runner.warmupMillis = Long.parseLong(args[++i]);
+            } else if ("-check".equals(args[i])) {
+                check = true;
+            } else {
+                names.add(args[i]);
+            }
+        }
+        Properties baseline = new Properties();
+        if (baselineFile != null) {
+            InputStream in = new FileInputStream(baselineFile);
+            try {
+                baseline.load(in);
+            } finally {
+                in.close();
+            }
+        }
+
+        Properties scores = new Properties();
+        List<String> regressions = new ArrayList<String>();
+        System.out.println(String.format("%-24s %14s %10s %14s %8s", "Benchmark", "ns/op", "error",
+                    "baseline", "ratio"));
+        for (Benchmark benchmark : getBenchmarks()) {
+            if (!names.isEmpty() && !names.contains(benchmark.getName())) {
+                continue;
+            }
+            double[] score = runner.measure(benchmark);
+            scores.setProperty(benchmark.getName(), String.format("%.1f", score[0]));
+            String base = baseline.getProperty(benchmark.getName());
+            if (base == null) {
+                System.out.println(String.format("%-24s %14.1f %10.1f", benchmark.getName(),
+                            score[0], score[1]));
+            } else {
+                double ratio = score[0] / Double.parseDouble(base);
+                boolean regressed = ratio > 1.0 + runner.tolerance;
+                if (regressed) {
+                    regressions.add(benchmark.getName());
+                }
+                System.out.println(String.format("%-24s %14.1f %10.1f %14s %8.2f%s",
+                            benchmark.getName(), score[0], score[1], base, ratio,
+                            regressed ? " REGRESSION" : ""));
+            }
+        }
+        if (outputFile != null) {
+            writeScores(scores, outputFile);
+        }
+        if (!regressions.isEmpty()) {
+            System.out.println("Slower than the baseline: " + regressions);
+            if (check) {
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * Runs a benchmark, returning the mean time per operation in nanoseconds and its standard
+     * deviation.
+     */
+    private double[] measure(Benchmark benchmark) throws Exception {
+        benchmark.setUp();
+        // Warm up, and find a number of operations that takes long enough between reads of the
+        // clock that reading it does not matter.
+        int batch = 1;
+        long warmupEnd = System.nanoTime() + warmupMillis * NANOS_PER_MILLI;
+        while (System.nanoTime() < warmupEnd) {
+            long start = System.nanoTime();
+            runBatch(benchmark, batch);
+            if ((System.nanoTime() - start < NANOS_PER_MILLI) && (batch < Integer.MAX_VALUE / 2)) {
+                batch *= 2;
+            }
+        }
+        double[] nanosPerOp = new double[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            long end = start + iterationMillis * NANOS_PER_MILLI;
+            long ops = 0;
+            long now;
+            do {
+                runBatch(benchmark, batch);
+                ops += batch;
+                now = System.nanoTime();
+            } while (now < end);
+            nanosPerOp[i] = ((double) (now - start)) / ops;
+        }
+        double mean = 0.0;
+        for (double n : nanosPerOp) {
+            mean += n;
+        }
+        mean /= iterations;
+        double variance = 0.0;
+        for (double n : nanosPerOp) {
+            variance += (n - mean) * (n - mean);
+        }
+        double error = iterations > 1 ? Math.sqrt(variance / (iterations - 1)) : 0.0;
+        return new double[] {mean, error};
+    }
+
+    private void runBatch(Benchmark benchmark, int batch) throws Exception {
+        int hash = 0;
+        for (int i = 0; i < batch; i++) {
+            hash ^= System.identityHashCode(benchmark.run());
+        }
+        sink ^= hash;
+    }
+
+    /**
+     * Writes the scores sorted by name, so that successive baselines can be diffed.
+     */
+    private static void writeScores(Properties scores, File file) throws IOException {
+        PrintWriter out = new PrintWriter(new FileWriter(file));
+        try {
+            out.println("# Benchmark scores in nanoseconds per operation, written by"
+                    + " BenchmarkRunner -output");
+            for (String name : new TreeSet<String>(scores.stringPropertyNames())) {
+                out.println(name + "=" + scores.getProperty(name));
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.intermine.benchmark;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.intermine.model.testmodel.Broke;
+import org.intermine.model.testmodel.Employee;
+import org.intermine.util.DynamicUtil;
+
+/**
+ * Benchmark of DynamicUtil.createObject() for a class composed of a class and an interface, as
+ * happens when objects of more than one class are read from the database.
+ *
+ * @author julie
+ */
+public class DynamicUtilBenchmark extends Benchmark
+{
+    private Set<Class<?>> classes;
+
+    @Override
+    public void setUp() {
+        classes = new HashSet<Class<?>>(Arrays.<Class<?>>asList(Employee.class, Broke.class));
+    }
+
+    @Override
+    public Object run() {
+        return DynamicUtil.createObject(classes);
+    }
+}
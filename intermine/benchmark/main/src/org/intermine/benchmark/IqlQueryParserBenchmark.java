@@ -0,0 +1,36 @@
+package org.intermine.benchmark;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import org.intermine.objectstore.query.iql.IqlQuery;
+import org.intermine.objectstore.query.iql.IqlQueryParser;
+
+/**
+ * Benchmark of parsing a three-class IQL query with attribute constraints.
+ *
+ * @author julie
+ */
+public class IqlQueryParserBenchmark extends Benchmark
+{
+    /** The query parsed, which is also the query used by the SqlGenerator benchmark. **/
+    public static final String IQL = "SELECT DISTINCT a1_, a2_.name AS a4_"
+        + " FROM org.intermine.model.testmodel.Company AS a1_,"
+        + " org.intermine.model.testmodel.Department AS a2_,"
+        + " org.intermine.model.testmodel.Employee AS a3_"
+        + " WHERE (a1_.departments CONTAINS a2_ AND a2_.employees CONTAINS a3_"
+        + " AND a3_.age > 30 AND LOWER(a3_.name) LIKE 'emp%')"
+        + " ORDER BY a1_.name, a2_.name";
+
+    @Override
+    public Object run() {
+        return IqlQueryParser.parse(new IqlQuery(IQL, null));
+    }
+}
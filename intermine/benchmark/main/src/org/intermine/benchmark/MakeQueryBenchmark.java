@@ -0,0 +1,59 @@
+package org.intermine.benchmark;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.HashMap;
+
+import org.intermine.api.bag.BagQueryResult;
+import org.intermine.api.profile.InterMineBag;
+import org.intermine.api.query.MainHelper;
+import org.intermine.metadata.ConstraintOp;
+import org.intermine.metadata.Model;
+import org.intermine.objectstore.query.QuerySelectable;
+import org.intermine.pathquery.OrderDirection;
+import org.intermine.pathquery.OuterJoinStatus;
+import org.intermine.pathquery.PathConstraintAttribute;
+import org.intermine.pathquery.PathQuery;
+
+/**
+ * Benchmark of MainHelper.makeQuery(), which turns a PathQuery into a Query, on a query with an
+ * outer join, constraint logic and an ORDER BY.
+ *
+ * @author julie
+ */
+public class MakeQueryBenchmark extends Benchmark
+{
+    private PathQuery pathQuery;
+
+    @Override
+    public void setUp() {
+        pathQuery = new PathQuery(Model.getInstanceByName("testmodel"));
+        pathQuery.addViews("Company.name", "Company.vatNumber", "Company.departments.name",
+                "Company.departments.employees.name", "Company.departments.employees.age",
+                "Company.departments.manager.name");
+        pathQuery.setOuterJoinStatus("Company.departments.manager", OuterJoinStatus.OUTER);
+        pathQuery.addConstraint(new PathConstraintAttribute("Company.name", ConstraintOp.MATCHES,
+                    "Company*"), "A");
+        pathQuery.addConstraint(new PathConstraintAttribute("Company.departments.employees.age",
+                    ConstraintOp.GREATER_THAN, "30"), "B");
+        pathQuery.addConstraint(new PathConstraintAttribute("Company.vatNumber",
+                    ConstraintOp.LESS_THAN, "10000"), "C");
+        pathQuery.setConstraintLogic("A and (B or C)");
+        pathQuery.addOrderBy("Company.departments.employees.age", OrderDirection.DESC);
+    }
+
+    @Override
+    public Object run() throws Exception {
+        return MainHelper.makeQuery(pathQuery, new HashMap<String, InterMineBag>(),
+                new HashMap<String, QuerySelectable>(), null,
+                new HashMap<String, BagQueryResult>());
+    }
+}
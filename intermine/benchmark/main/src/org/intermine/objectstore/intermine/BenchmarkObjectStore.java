@@ -0,0 +1,49 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Collections;
+
+import org.intermine.metadata.ClassDescriptor;
+import org.intermine.metadata.Model;
+
+/**
+ * Makes an ObjectStoreInterMineImpl for the testmodel that is not connected to a database, for
+ * benchmarks of the parts of the objectstore that do not need one.
+ *
+ * @author julie
+ */
+public final class BenchmarkObjectStore
+{
+    private BenchmarkObjectStore() {
+        // Hidden constructor.
+    }
+
+    /**
+     * Returns the DatabaseSchema of a normal (not truncated or flat mode) testmodel database.
+     *
+     * @return a DatabaseSchema
+     */
+    public static DatabaseSchema getSchema() {
+        Model model = Model.getInstanceByName("testmodel");
+        return new DatabaseSchema(model, Collections.<ClassDescriptor>emptyList(), false,
+                Collections.<String>emptySet(), 1, false);
+    }
+
+    /**
+     * Returns a new ObjectStore without a database.
+     *
+     * @return an ObjectStoreInterMineImpl
+     */
+    public static ObjectStoreInterMineImpl getObjectStore() {
+        return new ObjectStoreInterMineImpl(null, getSchema());
+    }
+}
@@ -0,0 +1,63 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import org.intermine.benchmark.Benchmark;
+import org.intermine.model.testmodel.Department;
+import org.intermine.model.testmodel.Employee;
+
+/**
+ * Benchmark of NotXmlParser.parse() on an Employee with a reference, in either the original or
+ * the compact encoding.
+ *
+ * @author julie
+ */
+public class NotXmlParserBenchmark extends Benchmark
+{
+    private final boolean compact;
+    private ObjectStoreInterMineImpl os;
+    private String notXml;
+
+    /**
+     * Constructor.
+     *
+     * @param compact true to parse the compact encoding
+     */
+    public NotXmlParserBenchmark(boolean compact) {
+        this.compact = compact;
+    }
+
+    @Override
+    public String getName() {
+        return compact ? "NotXmlParserCompact" : "NotXmlParser";
+    }
+
+    @Override
+    public void setUp() {
+        os = BenchmarkObjectStore.getObjectStore();
+        Department d = new Department();
+        d.setId(new Integer(5678));
+        Employee e = new Employee();
+        e.setId(new Integer(1234));
+        e.setName("Employee Number 1234, of the Department of Benchmarks");
+        e.setAge(42);
+        e.setFullTime(true);
+        e.setEnd("4");
+        e.setDepartment(d);
+        notXml = (compact ? CompactNotXmlRenderer.render(e) : NotXmlRenderer.render(e))
+            .toString();
+    }
+
+    @Override
+    public Object run() throws Exception {
+        return NotXmlParser.parse(notXml, os);
+    }
+}
@@ -0,0 +1,107 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.util.Collections;
+
+import org.intermine.benchmark.Benchmark;
+import org.intermine.model.testmodel.Employee;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.QueryClass;
+import org.intermine.objectstore.query.QueryField;
+import org.intermine.objectstore.query.QuerySelectable;
+import org.intermine.sql.DatabaseUtil;
+
+/**
+ * Benchmark of ResultsConverter.convert() turning a batch of rows of an object and an attribute
+ * into ResultsRows. The rows come from an in-memory ResultSet, and the ObjectStore's object
+ * cache is flushed before each batch so that every object is parsed.
+ *
+ * @author julie
+ */
+public class ResultsConverterBenchmark extends Benchmark
+{
+    private static final int ROWS = 100;
+
+    private ObjectStoreInterMineImpl os;
+    private Query query;
+    private String objectAlias;
+    private String nameAlias;
+    private String[] notXml = new String[ROWS];
+    private String[] names = new String[ROWS];
+
+    @Override
+    public void setUp() {
+        os = BenchmarkObjectStore.getObjectStore();
+        QueryClass qc = new QueryClass(Employee.class);
+        QueryField qf = new QueryField(qc, "name");
+        query = new Query();
+        query.addFrom(qc);
+        query.addToSelect(qc);
+        query.addToSelect(qf);
+        objectAlias = getAlias(qc);
+        nameAlias = getAlias(qf);
+        for (int i = 0; i < ROWS; i++) {
+            Employee e = new Employee();
+            e.setId(new Integer(1000 + i));
+            e.setName("Employee" + i);
+            e.setAge(20 + i % 40);
+            e.setFullTime(i % 2 == 0);
+            notXml[i] = NotXmlRenderer.render(e).toString();
+            names[i] = e.getName();
+        }
+    }
+
+    private String getAlias(QuerySelectable node) {
+        return DatabaseUtil.generateSqlCompatibleName(query.getAliases().get(node));
+    }
+
+    @Override
+    public Object run() throws Exception {
+        os.flushObjectById();
+        return ResultsConverter.convert(newResultSet(), query, os, null,
+                Collections.<Object, Integer>emptyMap(), false, null, null, null);
+    }
+
+    /**
+     * Returns a ResultSet over the rows, implementing just the methods that ResultsConverter
+     * uses.
+     */
+    private ResultSet newResultSet() {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                new Class<?>[] {ResultSet.class}, new InvocationHandler() {
+                    private int row = -1;
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String name = method.getName();
+                        if ("next".equals(name)) {
+                            row++;
+                            return Boolean.valueOf(row < ROWS);
+                        } else if ("getInt".equals(name)
+                                && (objectAlias + "id").equals(args[0])) {
+                            return new Integer(1000 + row);
+                        } else if ("getString".equals(name) && objectAlias.equals(args[0])) {
+                            return notXml[row];
+                        } else if ("getObject".equals(name) && nameAlias.equals(args[0])) {
+                            return names[row];
+                        } else if ("close".equals(name)) {
+                            return null;
+                        }
+                        throw new UnsupportedOperationException(name + " " + args[0]);
+                    }
+                });
+    }
+}
@@ -0,0 +1,44 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Collections;
+
+import org.intermine.benchmark.Benchmark;
+import org.intermine.benchmark.IqlQueryParserBenchmark;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.iql.IqlQuery;
+import org.intermine.objectstore.query.iql.IqlQueryParser;
+
+/**
+ * Benchmark of the generation of SQL for a three-class query with attribute constraints. This
+ * calls the uncached SqlGenerator.generate(), because the public method would fill in a cached
+ * template for the shape of the query, which SqlTemplateBenchmark measures.
+ *
+ * @author julie
+ */
+public class SqlGeneratorBenchmark extends Benchmark
+{
+    private DatabaseSchema schema;
+    private Query query;
+
+    @Override
+    public void setUp() {
+        schema = BenchmarkObjectStore.getSchema();
+        query = IqlQueryParser.parse(new IqlQuery(IqlQueryParserBenchmark.IQL, null));
+    }
+
+    @Override
+    public Object run() throws Exception {
+        return SqlGenerator.generate(query, schema, null, null, SqlGenerator.QUERY_NORMAL,
+                Collections.<Object, String>emptyMap());
+    }
+}
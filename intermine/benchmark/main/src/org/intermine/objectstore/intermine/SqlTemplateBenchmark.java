@@ -0,0 +1,44 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+import java.util.Collections;
+
+import org.intermine.benchmark.Benchmark;
+import org.intermine.benchmark.IqlQueryParserBenchmark;
+import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.iql.IqlQuery;
+import org.intermine.objectstore.query.iql.IqlQueryParser;
+
+/**
+ * Benchmark of the generation of SQL for the same query as SqlGeneratorBenchmark, when a template
+ * for its shape is already cached. This is the cost of working out the shape of the query and
+ * filling its values into the template.
+ *
+ * @author julie
+ */
+public class SqlTemplateBenchmark extends Benchmark
+{
+    private DatabaseSchema schema;
+    private Query query;
+
+    @Override
+    public void setUp() throws Exception {
+        schema = BenchmarkObjectStore.getSchema();
+        query = IqlQueryParser.parse(new IqlQuery(IqlQueryParserBenchmark.IQL, null));
+        run();
+    }
+
+    @Override
+    public Object run() throws Exception {
+        return SqlGenerator.generateFromTemplate(query, schema, null,
+                Collections.<Object, String>emptyMap());
+    }
+}
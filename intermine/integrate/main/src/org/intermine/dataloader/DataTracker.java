@@ -18,15 +18,24 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.log4j.Logger;
 import org.intermine.sql.Database;
+import org.intermine.util.IntLinkedHashMap;
 
 /**
  * Interface providing access to data tracking.
@@ -40,39 +49,49 @@ public class DataTracker
 {
     private static final Logger LOG = Logger.getLogger(DataTracker.class);
 
+    /**
+     * The default number of threads writing cache entries back to the database.
+     */
+    public static final int DEFAULT_WRITER_THREADS = 2;
+    private static final int MAX_SHARDS = 16;
+    private static final int MIN_SHARD_SIZE = 1000;
+
     /* We need a Map or two to store the entries. Each entry can be in several states:
      * 1. Recently-used and new - must be written to the database eventually.
      * 2. Recently-used and dirty - must be written back to the database eventually.
      * 3. Recently-used and clean - need not be written, but should be kept in memory.
      * 4. Not recently-used, and clean. These can be thrown away whenever the GC fancies it.
      *
-     * This class will store types 1, 2 and 3 in a LinkedHashMap, ordered by access, and type 4 in a
-     * WeakHashMap or CacheMap, or may not even store them at all.
+     * The entries are split by object id between a number of shards, each with its own lock, so
+     * that threads working on different objects do not contend. Each shard stores types 1, 2 and
+     * 3 in an access-ordered map keyed by primitive int, and does not store type 4 at all.
      *
-     * The LinkedHashMap has a threshold size. When it grows bigger than maxSize, a database write
-     * occurs, which stores commitSize least-recently-used entries in the database, which then
-     * become type 4.
+     * When a shard grows bigger than its share of maxSize, a writer thread stores its share of
+     * commitSize least-recently-used entries in the database, which then become type 4. While
+     * that happens, the dirty entries are kept in the shard's write-back map. Only one batch per
+     * shard is written at a time, so that batches of the same object are written in order.
      */
-    private int maxSize;
-    private int commitSize;
-    private LinkedHashMap<Integer, ObjectDescription> cache;
-    private HashMap<Integer, ObjectDescription> writeBack =
-        new HashMap<Integer, ObjectDescription>();
-    private HashMap<String, Source> nameToSource = new HashMap<String, Source>();
-    private HashMap<Source, String> sourceToName = new HashMap<Source, String>();
+    private final int shardMaxSize;
+    private final int shardCommitSize;
+    private final Shard[] shards;
+    private final HashMap<String, Source> nameToSource = new HashMap<String, Source>();
+    private final HashMap<Source, String> sourceToName = new HashMap<Source, String>();
     private Connection conn;
-    private Connection storeConn;
-    protected Exception broken = null;
-    private CacheStorer cacheStorer;
-    private int version = 0;
+    private final Object connLock = new Object();
+    protected volatile Exception broken = null;
+    private final ThreadPoolExecutor writers;
+    private final AtomicInteger version = new AtomicInteger(0);
     // This reference is here so that the Database doesn't get garbage collected.
     private Database db;
 
-    private int ops = 0;
-    private int misses = 0;
-    private int batched = 0;
-    private long timeSpentReading = 0;
-    private long timeSpentPrefetching = 0;
+    private final AtomicLong ops = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong batched = new AtomicLong(0);
+    private final AtomicLong batchesWritten = new AtomicLong(0);
+    private final AtomicLong rowsWritten = new AtomicLong(0);
+    private final AtomicLong timeSpentReading = new AtomicLong(0);
+    private final AtomicLong timeSpentPrefetching = new AtomicLong(0);
+    private final AtomicLong timeSpentWriting = new AtomicLong(0);
 
     /**
      * Constructor for DataTracker.
@@ -82,15 +101,20 @@ public class DataTracker
      * @param commitSize number of entries to write to the database at a time
      */
     public DataTracker(Database db, int maxSize, int commitSize) {
-        this.maxSize = maxSize;
-        this.commitSize = commitSize;
         this.db = db;
-        cache = new LinkedHashMap<Integer, ObjectDescription>(maxSize * 14 / 10, 0.75F, true);
+        int shardCount = 1;
+        while ((shardCount < MAX_SHARDS) && (maxSize / (shardCount * 2) >= MIN_SHARD_SIZE)) {
+            shardCount *= 2;
+        }
+        shardMaxSize = Math.max(1, maxSize / shardCount);
+        shardCommitSize = Math.max(1, commitSize / shardCount);
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(shardMaxSize * 14 / 10);
+        }
         try {
             conn = db.getConnection();
             conn.setAutoCommit(true);
-            storeConn = db.getConnection();
-            storeConn.setAutoCommit(false);
             Statement s = conn.createStatement();
             try {
                 s.executeQuery("SELECT * FROM tracker LIMIT 1");
@@ -103,10 +127,37 @@ public class DataTracker
             e2.initCause(e);
             throw e2;
         }
-        cacheStorer = new CacheStorer();
-        Thread cacheStorerThread = new Thread(cacheStorer, "DataTracker CacheStorer");
-        cacheStorerThread.setDaemon(true);
-        cacheStorerThread.start();
+        writers = new ThreadPoolExecutor(DEFAULT_WRITER_THREADS, DEFAULT_WRITER_THREADS, 60L,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private int count = 0;
+                    @Override
+                    public synchronized Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "DataTracker writer " + (++count));
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        writers.allowCoreThreadTimeOut(true);
+        LOG.info("Created DataTracker with " + shardCount + " shards of " + shardMaxSize
+                + " entries");
+    }
+
+    /**
+     * Sets the number of threads that write cache entries back to the database concurrently.
+     *
+     * @param threads the number of threads
+     */
+    public void setWriterThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive, got " + threads);
+        }
+        if (threads > writers.getMaximumPoolSize()) {
+            writers.setMaximumPoolSize(threads);
+            writers.setCorePoolSize(threads);
+        } else {
+            writers.setCorePoolSize(threads);
+            writers.setMaximumPoolSize(threads);
+        }
     }
 
     /**
@@ -116,15 +167,17 @@ public class DataTracker
      * @throws SQLException sometimes
      */
     public void clear() throws SQLException {
-        Statement s = conn.createStatement();
-        try {
-            s.executeQuery("drop table tracker");
-        } catch (SQLException e) {
+        synchronized (connLock) {
+            Statement s = conn.createStatement();
+            try {
+                s.executeQuery("drop table tracker");
+            } catch (SQLException e) {
+            }
+            s = conn.createStatement();
+            s.execute("create table tracker (objectid int, fieldname text, sourcename text,"
+                    + " version int)");
+            s.execute("create index tracker_objectid on tracker (objectid)");
         }
-        s = conn.createStatement();
-        s.execute("create table tracker (objectid int, fieldname text, sourcename text,"
-                + " version int)");
-        s.execute("create index tracker_objectid on tracker (objectid)");
     }
 
     /**
@@ -133,28 +186,23 @@ public class DataTracker
      * @param ids a Set of Integers
      */
     public void prefetchIds(Set<Integer> ids) {
+        checkBroken();
         Connection prefetchConn = null;
         try {
             prefetchConn = db.getConnection();
             prefetchConn.setAutoCommit(true);
             prefetchConn.createStatement().execute("SET enable_seqscan = off;");
             long startTime = System.currentTimeMillis();
-            Set<Integer> toFetch = new HashSet<Integer>();
-            synchronized (this) {
-                if (broken != null) {
-                    IllegalArgumentException e = new IllegalArgumentException();
-                    e.initCause(broken);
-                    throw e;
-                }
-                for (Integer id : ids) {
-                    ObjectDescription desc = cache.get(id);
-                    if (desc == null) {
-                        desc = writeBack.get(id);
-                        cache.put(id, desc);
-                    }
-                    if (desc == null) {
+            List<Integer> toFetch = new ArrayList<Integer>();
+            for (Integer id : ids) {
+                Shard shard = shardFor(id.intValue());
+                shard.lock.lock();
+                try {
+                    if (findDesc(shard, id.intValue()) == null) {
                         toFetch.add(id);
                     }
+                } finally {
+                    shard.lock.unlock();
                 }
             }
             Map<Integer, ObjectDescription> idsFetched = new HashMap<Integer, ObjectDescription>();
@@ -180,11 +228,7 @@ public class DataTracker
                         sql.append(") ORDER BY version");
                         try {
                             Statement s = prefetchConn.createStatement();
-                            //long beforeExecute = System.currentTimeMillis();
                             ResultSet r = s.executeQuery(sql.toString());
-                            //LOG.info("Prefetching " + (((count + 499) % 500) + 1)
-                            //        + " tracks took " + (System.currentTimeMillis()
-                            //            - beforeExecute) + " ms");
                             while (r.next()) {
                                 ObjectDescription objectDescription =
                                     idsFetched.get(new Integer(r.getInt(1)));
@@ -193,30 +237,32 @@ public class DataTracker
                                                            stringToSource(r.getString(3)));
                             }
                         } catch (SQLException e) {
-                            broken = e;
-                            IllegalArgumentException e2 = new IllegalArgumentException();
-                            e2.initCause(broken);
-                            throw e2;
+                            throw fail(e);
                         }
                         needComma = false;
                         sql = new StringBuffer();
                     }
                 }
             }
-            synchronized (this) {
-                if (version <= highestVersionSeen) {
-                    version = highestVersionSeen + 1;
+            noteVersion(highestVersionSeen);
+            for (Map.Entry<Integer, ObjectDescription> entry : idsFetched.entrySet()) {
+                int id = entry.getKey().intValue();
+                Shard shard = shardFor(id);
+                shard.lock.lock();
+                try {
+                    // Another thread may have created or loaded the entry in the meantime
+                    if (!(shard.cache.containsKey(id) || shard.writeBack.containsKey(id))) {
+                        shard.cache.put(id, entry.getValue());
+                    }
+                    maybeWrite(shard);
+                } finally {
+                    shard.lock.unlock();
                 }
-                cache.putAll(idsFetched);
-                maybePoke();
-                batched += idsFetched.size();
             }
-            timeSpentPrefetching += System.currentTimeMillis() - startTime;
+            batched.addAndGet(idsFetched.size());
+            timeSpentPrefetching.addAndGet(System.currentTimeMillis() - startTime);
         } catch (SQLException e) {
-            broken = e;
-            IllegalArgumentException e2 = new IllegalArgumentException();
-            e2.initCause(broken);
-            throw e2;
+            throw fail(e);
         } finally {
             if (prefetchConn != null) {
                 try {
@@ -235,72 +281,85 @@ public class DataTracker
      * @param field the name of the field
      * @return the Source
      */
-    public synchronized Source getSource(Integer id, String field) {
+    public Source getSource(Integer id, String field) {
         if (id == null) {
             throw new NullPointerException("id cannot be null");
         }
-        if (broken != null) {
-            IllegalArgumentException e = new IllegalArgumentException();
-            e.initCause(broken);
-            throw e;
+        checkBroken();
+        Shard shard = shardFor(id.intValue());
+        shard.lock.lock();
+        try {
+            ObjectDescription desc = getDesc(shard, id.intValue());
+            maybeWrite(shard);
+            return desc.getSource(field);
+        } finally {
+            shard.lock.unlock();
         }
-        ObjectDescription desc = getDesc(id, false);
-        return desc.getSource(field);
     }
 
     /**
-     * Gets the object descriptor for a given object id
+     * Looks up the object description for a given object id in the cache and the write-back
+     * cache of a shard. The caller must hold the lock of the shard.
      *
+     * @param shard the Shard that the id belongs to
      * @param id the ID
-     * @param forWrite true if the returned value is going to be modified
-     * @return an ObjectDescriptor
+     * @return an ObjectDescription, or null if it is not in memory
      */
-    private ObjectDescription getDesc(Integer id, boolean forWrite) {
-        long startTime = System.currentTimeMillis();
-        ObjectDescription desc = cache.get(id);
+    private ObjectDescription findDesc(Shard shard, int id) {
+        ObjectDescription desc = shard.cache.get(id);
         if (desc == null) {
-            desc = writeBack.get(id);
-            if (forWrite && (desc != null)) {
+            desc = shard.writeBack.peek(id);
+            if (desc != null) {
+                // Copy-on-write, because the writer thread may be reading the original
                 desc = new ObjectDescription(desc);
+                shard.cache.put(id, desc);
             }
-            cache.put(id, desc);
         }
+        return desc;
+    }
+
+    /**
+     * Gets the object descriptor for a given object id, reading it from the database if it is
+     * not in memory. The caller must hold the lock of the shard.
+     *
+     * @param shard the Shard that the id belongs to
+     * @param id the ID
+     * @return an ObjectDescriptor, which the caller may modify
+     */
+    private ObjectDescription getDesc(Shard shard, int id) {
+        long startTime = System.currentTimeMillis();
+        ObjectDescription desc = findDesc(shard, id);
         if (desc == null) {
             desc = new ObjectDescription();
             try {
-                long start = System.currentTimeMillis();
-                Statement s = conn.createStatement();
-                ResultSet r = s.executeQuery("select fieldname, sourcename, version from tracker"
-                        + " where objectid = " + id + " ORDER BY version");
-                while (r.next()) {
-                    desc.putClean(r.getString(1).intern(), stringToSource(r.getString(2)));
-                    int rowVersion = r.getInt(3);
-                    if (version <= rowVersion) {
-                        version = rowVersion + 1;
+                synchronized (connLock) {
+                    long start = System.currentTimeMillis();
+                    Statement s = conn.createStatement();
+                    ResultSet r = s.executeQuery("select fieldname, sourcename, version"
+                            + " from tracker where objectid = " + id + " ORDER BY version");
+                    while (r.next()) {
+                        desc.putClean(r.getString(1).intern(), stringToSource(r.getString(2)));
+                        noteVersion(r.getInt(3));
+                    }
+                    long now = System.currentTimeMillis();
+                    if (now - start > 2000) {
+                        LOG.warn("Query on tracker table took too long (" + (now - start)
+                                + " ms) - switching off sequential scans. You should analyse the"
+                                + " database");
+                        conn.createStatement().execute("SET enable_seqscan = off;");
                     }
-                }
-                long now = System.currentTimeMillis();
-                //LOG.debug("Fetched entry from DB (time = " + (now - start) + " ms)");
-                if (now - start > 2000) {
-                    LOG.warn("Query on tracker table took too long (" + (now - start) + " ms) "
-                            + "- switching off sequential scans. You should analyse the database");
-                    conn.createStatement().execute("SET enable_seqscan = off;");
                 }
             } catch (SQLException e) {
-                broken = e;
-                IllegalArgumentException e2 = new IllegalArgumentException();
-                e2.initCause(broken);
-                throw e2;
+                throw fail(e);
             }
-            cache.put(id, desc);
-            maybePoke();
-            misses++;
+            shard.cache.put(id, desc);
+            misses.incrementAndGet();
         }
-        timeSpentReading += System.currentTimeMillis() - startTime;
-        ops++;
-        if (ops % 1000000 == 0) {
-            LOG.info("Operations: " + ops + ", cache misses: " + misses + ", time spent reading: "
-                    + timeSpentReading);
+        timeSpentReading.addAndGet(System.currentTimeMillis() - startTime);
+        long opCount = ops.incrementAndGet();
+        if (opCount % 1000000 == 0) {
+            LOG.info("Operations: " + opCount + ", cache misses: " + misses.get()
+                    + ", time spent reading: " + timeSpentReading.get());
         }
         return desc;
     }
@@ -312,26 +371,26 @@ public class DataTracker
      * @param field the name of the field
      * @param source the Source of the field
      */
-    public synchronized void setSource(Integer id, String field, Source source) {
+    public void setSource(Integer id, String field, Source source) {
         if (id == null) {
             throw new NullPointerException("id cannot be null");
         }
-        if (!sourceToName.containsKey(source)) {
-            throw new NullPointerException("Could not find given source (" + source
-                    + ") in tracker. sourceToName = " + sourceToName);
+        synchronized (nameToSource) {
+            if (!sourceToName.containsKey(source)) {
+                throw new NullPointerException("Could not find given source (" + source
+                        + ") in tracker. sourceToName = " + sourceToName);
+            }
         }
-        if (broken != null) {
-            IllegalArgumentException e = new IllegalArgumentException();
-            e.initCause(broken);
-            throw e;
+        checkBroken();
+        Shard shard = shardFor(id.intValue());
+        shard.lock.lock();
+        try {
+            ObjectDescription desc = getDesc(shard, id.intValue());
+            desc.put(field.intern(), source);
+            maybeWrite(shard);
+        } finally {
+            shard.lock.unlock();
         }
-        ObjectDescription desc = getDesc(id, true);
-        desc.put(field.intern(), source);
-        // Lastly, we put the description into the cache, just in case we got it out of the
-        // write-back cache. This guarantees that we won't lose data by forgetting to write it to
-        // the database.
-        cache.put(id, desc);
-        maybePoke();
     }
 
     /**
@@ -342,70 +401,115 @@ public class DataTracker
      *
      * @param id the ID of the object
      */
-    public synchronized void clearObj(Integer id) {
-        if (broken != null) {
-            IllegalArgumentException e = new IllegalArgumentException();
-            e.initCause(broken);
-            throw e;
+    public void clearObj(Integer id) {
+        checkBroken();
+        Shard shard = shardFor(id.intValue());
+        shard.lock.lock();
+        try {
+            shard.cache.put(id.intValue(), new ObjectDescription());
+            maybeWrite(shard);
+        } finally {
+            shard.lock.unlock();
         }
-        ObjectDescription desc = new ObjectDescription();
-        cache.put(id, desc);
-        maybePoke();
     }
 
     /**
-     * Performs maintenance of the cache, writing stuff to the backing database.
+     * Performs maintenance of the cache in the calling thread, writing a batch of entries to the
+     * backing database from every shard that is too big and is not already being written.
      *
      * @return true if some action was performed
      */
     public boolean doWrite() {
-        if (broken != null) {
-            IllegalArgumentException e = new IllegalArgumentException();
-            e.initCause(broken);
-            throw e;
-        }
-        synchronized (writeBack) {
-            int cacheSize = cache.size();
-            Map<Integer, ObjectDescription> writeBatch = getWriteBatch();
-            if (writeBatch != null) {
-                LOG.info("Writing cache batch - batch size: " + writeBatch.size()
-                        + ", cache size: " + cacheSize + "->" + cache.size());
-                try {
-                    writeMap(writeBatch, false);
-                } catch (SQLException e) {
-                    broken = e;
-                    IllegalArgumentException e2 = new IllegalArgumentException();
-                    e2.initCause(broken);
-                    throw e2;
+        checkBroken();
+        boolean retval = false;
+        for (Shard shard : shards) {
+            boolean needWrite;
+            shard.lock.lock();
+            try {
+                needWrite = (!shard.writePending) && (shard.cache.size() > shardMaxSize);
+                if (needWrite) {
+                    shard.writePending = true;
                 }
-                clearWriteBack();
-                return true;
-            } else {
-                LOG.debug("Not writing cache batch - no dirty entries");
-                return false;
+            } finally {
+                shard.lock.unlock();
+            }
+            if (needWrite) {
+                retval = writeBatch(shard) || retval;
             }
         }
+        return retval;
     }
 
     /**
      * Flushes everything to the backing database.
      */
     public void flush() {
-        if (broken != null) {
-            IllegalArgumentException e = new IllegalArgumentException();
-            e.initCause(broken);
-            throw e;
+        checkBroken();
+        // Lock the shards in order, waiting for each one's write to finish. This cannot deadlock,
+        // as a pending write only ever needs the lock of its own shard, which await() releases.
+        int locked = 0;
+        try {
+            int size = 0;
+            for (Shard shard : shards) {
+                shard.lock.lock();
+                locked++;
+                while (shard.writePending) {
+                    shard.writeFinished.awaitUninterruptibly();
+                }
+                size += shard.cache.size();
+            }
+            checkBroken();
+            LOG.info("Flushing cache - size: " + size);
+            int[] ids = new int[size];
+            ObjectDescription[] descs = new ObjectDescription[size];
+            int count = 0;
+            for (Shard shard : shards) {
+                for (int id : shard.cache.keys()) {
+                    ObjectDescription desc = shard.cache.peek(id);
+                    if (desc.isDirty()) {
+                        ids[count] = id;
+                        descs[count] = desc;
+                        count++;
+                    }
+                }
+            }
+            try {
+                writeEntries(ids, descs, count);
+            } catch (SQLException e) {
+                throw fail(e);
+            }
+            for (int i = 0; i < count; i++) {
+                descs[i].clean();
+            }
+        } finally {
+            for (int i = 0; i < locked; i++) {
+                shards[i].lock.unlock();
+            }
         }
-        LOG.info("Flushing cache - size: " + cache.size());
-        // Synchronise in this order to prevent deadlocks.
-        synchronized (writeBack) {
-            synchronized (this) {
+    }
+
+    /**
+     * Closes this DataTracker, releasing its connection to the database and stopping the writer
+     * threads. No further operations can be performed on the tracker.
+     */
+    public void close() {
+        LOG.info("Closing DataTracker. " + getStatistics());
+        try {
+            flush();
+        } finally {
+            writers.shutdown();
+            try {
+                writers.awaitTermination(1, TimeUnit.HOURS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (connLock) {
                 try {
-                    writeMap(cache, true);
+                    conn.close();
+                    conn = null;
                 } catch (SQLException e) {
-                    broken = e;
                     IllegalArgumentException e2 = new IllegalArgumentException();
-                    e2.initCause(broken);
+                    e2.initCause(e);
                     throw e2;
                 }
             }
@@ -413,85 +517,116 @@ public class DataTracker
     }
 
     /**
-     * Closes this DataTracker, releasing both connections to the database. No further operations
-     * can be performed on the tracker.
+     * Returns a snapshot of the counters of this DataTracker.
+     *
+     * @return a Statistics object
      */
-    public void close() {
-        LOG.info("Closing DataTracker. Operations: " + ops + ", cache misses: " + misses
-                + ", time spent reading: " + timeSpentReading + ", prefetched: " + batched
-                + ", time spent prefetching: " + timeSpentPrefetching);
-        cacheStorer.die();
-        flush();
-        synchronized (this) {
-            try {
-                conn.close();
-                storeConn.close();
-                conn = null;
-                storeConn = null;
-            } catch (SQLException e) {
-                IllegalArgumentException e2 = new IllegalArgumentException();
-                e2.initCause(e);
-                throw e2;
-            }
-        }
+    public Statistics getStatistics() {
+        return new Statistics(ops.get(), misses.get(), batched.get(), batchesWritten.get(),
+                rowsWritten.get(), timeSpentReading.get(), timeSpentPrefetching.get(),
+                timeSpentWriting.get());
     }
 
     /**
-     * Returns a Map created from cache, containing the entries that should be flushed to the
-     * backing database. The entries are removed from the cache and put in a special write-back
-     * cache before this method terminates. Once you have finished storing the entries, you should
-     * call clearWriteBack() to clear this write-back cache.
-     * This method will return null if it does not recommend flushing any entries to the backing
-     * database. The Map will probably only contain those entries that are dirty, however the method
-     * that uses this method should not rely on this fact, because such a method may be passed the
-     * cache instead in the instance of a flush().
+     * Starts a background write of the given shard if it has grown too big. The caller must hold
+     * the lock of the shard.
      *
-     * @return a Map from Integer to ObjectDescription
+     * @param shard the Shard
      */
-    private synchronized Map<Integer, ObjectDescription> getWriteBatch() {
-        if (cache.size() > maxSize) {
-            Map<Integer, ObjectDescription> retval = new HashMap<Integer, ObjectDescription>();
-            int count = 0;
-            Iterator<Map.Entry<Integer, ObjectDescription>> iter = cache.entrySet().iterator();
-            while ((count < commitSize) && iter.hasNext()) {
-                Map.Entry<Integer, ObjectDescription> iterEntry = iter.next();
-                Integer id = iterEntry.getKey();
-                ObjectDescription desc = iterEntry.getValue();
-                if (desc.isDirty()) {
-                    retval.put(id, desc);
-                    writeBack.put(id, desc);
+    private void maybeWrite(final Shard shard) {
+        if ((!shard.writePending) && (shard.cache.size() > shardMaxSize) && (broken == null)
+                && (!writers.isShutdown())) {
+            shard.writePending = true;
+            writers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        writeBatch(shard);
+                    } catch (Exception e) {
+                        LOG.error("DataTracker writer received exception: " + e);
+                    }
                 }
-                iter.remove();
-                count++;
-            }
-            return retval;
-        } else {
-            return null;
+            });
         }
     }
 
     /**
-     * Clears the write-back cache. This should be called after the data has been committed to the
-     * database. Note that some of the entries may have been altered since they were put in the
-     * write-back cache. Data loss is avoided by the fact that such entries are placed back in the
-     * main cache.
+     * Writes the commitSize share of least-recently-used entries of a shard to the backing
+     * database. The caller must have set the writePending flag of the shard, and this method
+     * clears it. Dirty entries are kept in the write-back cache of the shard until they have been
+     * committed, so that they can still be read.
+     *
+     * @param shard the Shard
+     * @return true if a batch was written
      */
-    private synchronized void clearWriteBack() {
-        writeBack.clear();
+    private boolean writeBatch(Shard shard) {
+        boolean success = false;
+        int count = 0;
+        try {
+            int[] ids = new int[shardCommitSize];
+            ObjectDescription[] descs = new ObjectDescription[shardCommitSize];
+            int cacheSize;
+            shard.lock.lock();
+            try {
+                cacheSize = shard.cache.size();
+                int taken = 0;
+                while ((taken < shardCommitSize) && (!shard.cache.isEmpty())) {
+                    int id = shard.cache.firstKey();
+                    ObjectDescription desc = shard.cache.remove(id);
+                    if (desc.isDirty()) {
+                        ids[count] = id;
+                        descs[count] = desc;
+                        shard.writeBack.put(id, desc);
+                        count++;
+                    }
+                    taken++;
+                }
+            } finally {
+                shard.lock.unlock();
+            }
+            if (count > 0) {
+                LOG.debug("Writing cache batch - batch size: " + count + ", shard size: "
+                        + cacheSize);
+                try {
+                    writeEntries(ids, descs, count);
+                } catch (SQLException e) {
+                    throw fail(e);
+                }
+            }
+            success = true;
+            return count > 0;
+        } finally {
+            shard.lock.lock();
+            try {
+                if (success) {
+                    shard.writeBack.clear();
+                }
+                shard.writePending = false;
+                shard.writeFinished.signalAll();
+                maybeWrite(shard);
+            } finally {
+                shard.lock.unlock();
+            }
+        }
     }
 
     /**
-     * Writes the contents of the given Map to the backing database. Attempts to make use of all the
-     * SQL tricks to speed this operation up.
+     * Writes the given entries to the backing database in a transaction of their own, using a
+     * new version number. Attempts to make use of all the SQL tricks to speed this operation up.
      *
-     * @param map a Map from Integer to ObjectDesciption
-     * @param clean true if this method should call clean() on all the entries in the given Map, or
-     * false if the given Map is going to be thrown away.
+     * @param ids an array of object ids
+     * @param descs an array of ObjectDescriptions matching the ids
+     * @param count the number of entries to write from the arrays
      * @throws SQLException on any error with the backing database
      */
-    private void writeMap(Map<Integer, ObjectDescription> map, boolean clean) throws SQLException {
+    private void writeEntries(int[] ids, ObjectDescription[] descs, int count)
+        throws SQLException {
         long start = System.currentTimeMillis();
+        int batchVersion = version.getAndIncrement();
+        long rows = 0;
+        Connection storeConn = db.getConnection();
         try {
+            storeConn.setAutoCommit(false);
             org.postgresql.copy.CopyManager copyManager = null;
             ByteArrayOutputStream baos = null;
             DataOutputStream dos = null;
@@ -511,9 +646,9 @@ public class DataTracker
                 s = storeConn.createStatement();
                 LOG.warn("Using slow portable writing method");
             }
-            for (Map.Entry<Integer, ObjectDescription> entry : map.entrySet()) {
-                Integer id = entry.getKey();
-                ObjectDescription desc = entry.getValue();
+            for (int i = 0; i < count; i++) {
+                int id = ids[i];
+                ObjectDescription desc = descs[i];
                 if (desc.isDirty()) {
                     Map<String, Source> orig = desc.getOrig();
                     Map<String, Source> newData = desc.getNewData();
@@ -522,27 +657,25 @@ public class DataTracker
                         Source source = fieldEntry.getValue();
                         if (!orig.containsKey(field) || (!orig.get(field).equals(source))) {
                             // Insert required
+                            rows++;
                             if (s == null) {
                                 dos.writeShort(4); // Number of fields
                                 dos.writeInt(4); // Length of an integer
-                                dos.writeInt(id.intValue()); // objectid
+                                dos.writeInt(id); // objectid
                                 dos.writeInt(field.length()); // Length of fieldname
                                 dos.writeBytes(field); // Field name
                                 String sourceName = sourceToString(source);
                                 dos.writeInt(sourceName.length()); // Length of source name
                                 dos.writeBytes(sourceName); // Source name
                                 dos.writeInt(4); // Length of an integer
-                                dos.writeInt(version); // version
+                                dos.writeInt(batchVersion); // version
                             } else {
                                 s.addBatch("INSERT INTO tracker (objectid, fieldname, sourcename,"
                                         + " version) VALUES (" + id + ", '" + field + "', '"
-                                        + sourceToString(source) + "', " + version + ")");
+                                        + sourceToString(source) + "', " + batchVersion + ")");
                             }
                         }
                     }
-                    if (clean) {
-                        desc.clean();
-                    }
                 }
             }
             if (s == null) {
@@ -553,31 +686,61 @@ public class DataTracker
             } else {
                 s.executeBatch();
             }
-            version++;
             storeConn.commit();
         } catch (IOException e) {
             throw new SQLException(e.toString());
+        } finally {
+            storeConn.close();
         }
         long now = System.currentTimeMillis();
+        batchesWritten.incrementAndGet();
+        rowsWritten.addAndGet(rows);
+        timeSpentWriting.addAndGet(now - start);
         LOG.debug("Finished storing batch (time = " + (now - start) + " ms)");
     }
 
     /**
-     * Pokes the CacheStorer thread if there are too many entries in the cache.
+     * Makes sure that the version used for the next write is higher than a version that has been
+     * read from the database.
+     *
+     * @param rowVersion a version read from the database
      */
-    private void maybePoke() {
-        if (cache.size() > maxSize) {
-            cacheStorer.poke();
+    private void noteVersion(int rowVersion) {
+        while (true) {
+            int current = version.get();
+            if ((current > rowVersion) || version.compareAndSet(current, rowVersion + 1)) {
+                return;
+            }
+        }
+    }
+
+    private Shard shardFor(int id) {
+        int h = id * 0x9E3779B9;
+        return shards[(h ^ (h >>> 16)) & (shards.length - 1)];
+    }
+
+    private void checkBroken() {
+        if (broken != null) {
+            IllegalArgumentException e = new IllegalArgumentException();
+            e.initCause(broken);
+            throw e;
         }
     }
 
+    private IllegalArgumentException fail(SQLException e) {
+        broken = e;
+        IllegalArgumentException e2 = new IllegalArgumentException();
+        e2.initCause(e);
+        return e2;
+    }
+
     /**
      * Converts a string sourcename to a Source.
      *
      * @param name a string source name
      * @return a Source
      */
-    public synchronized Source stringToSource(String name) {
+    public Source stringToSource(String name) {
         return stringToSource(name, null);
     }
 
@@ -588,18 +751,20 @@ public class DataTracker
      * @param type the source type
      * @return a Source
      */
-    public synchronized Source stringToSource(String name, String type) {
-        Source retval = nameToSource.get(name);
-        if (retval == null) {
-            if (name.startsWith("skel_")) {
-                retval = new Source(name.substring(5), type, true);
-            } else {
-                retval = new Source(name, type, false);
+    public Source stringToSource(String name, String type) {
+        synchronized (nameToSource) {
+            Source retval = nameToSource.get(name);
+            if (retval == null) {
+                if (name.startsWith("skel_")) {
+                    retval = new Source(name.substring(5), type, true);
+                } else {
+                    retval = new Source(name, type, false);
+                }
+                nameToSource.put(name, retval);
+                sourceToName.put(retval, name);
             }
-            nameToSource.put(name, retval);
-            sourceToName.put(retval, name);
+            return retval;
         }
-        return retval;
     }
 
     /**
@@ -608,72 +773,136 @@ public class DataTracker
      * @param source a Source
      * @return the name
      */
-    public synchronized String sourceToString(Source source) {
-        String retval = sourceToName.get(source);
-        if (retval == null) {
-            throw new NullPointerException("Could not find given source in tracker");
+    public String sourceToString(Source source) {
+        synchronized (nameToSource) {
+            String retval = sourceToName.get(source);
+            if (retval == null) {
+                throw new NullPointerException("Could not find given source in tracker");
+            }
+            return retval;
         }
-        return retval;
     }
 
-    private class CacheStorer implements Runnable
+    /**
+     * A part of the cache, holding the entries for a subset of object ids.
+     */
+    private static class Shard
     {
-        private boolean needAction = false;
-        private boolean dontQuit = true;
-        private boolean notDead = true;
+        final ReentrantLock lock = new ReentrantLock();
+        final Condition writeFinished = lock.newCondition();
+        final IntLinkedHashMap<ObjectDescription> cache;
+        final IntLinkedHashMap<ObjectDescription> writeBack =
+            new IntLinkedHashMap<ObjectDescription>();
+        boolean writePending = false;
 
-        public CacheStorer() {
+        Shard(int capacity) {
+            cache = new IntLinkedHashMap<ObjectDescription>(capacity, true);
         }
+    }
+
+    /**
+     * A snapshot of the counters of a DataTracker. Statistics for the loading of a single source
+     * can be obtained by subtracting a snapshot taken before the source was loaded.
+     */
+    public static final class Statistics
+    {
+        private final long operations, misses, prefetched, batchesWritten, rowsWritten;
+        private final long timeSpentReading, timeSpentPrefetching, timeSpentWriting;
 
-        public synchronized void poke() {
-            needAction = true;
-            notify();
+        Statistics(long operations, long misses, long prefetched, long batchesWritten,
+                long rowsWritten, long timeSpentReading, long timeSpentPrefetching,
+                long timeSpentWriting) {
+            this.operations = operations;
+            this.misses = misses;
+            this.prefetched = prefetched;
+            this.batchesWritten = batchesWritten;
+            this.rowsWritten = rowsWritten;
+            this.timeSpentReading = timeSpentReading;
+            this.timeSpentPrefetching = timeSpentPrefetching;
+            this.timeSpentWriting = timeSpentWriting;
         }
 
-        public synchronized void die() {
-            needAction = true;
-            dontQuit = false;
-            notify();
-            while (notDead) {
-                try {
-                    wait(100000L);
-                } catch (InterruptedException e) {
-                }
-            }
+        /**
+         * Returns the difference between this snapshot and an earlier one.
+         *
+         * @param earlier a Statistics object taken earlier from the same DataTracker
+         * @return a Statistics object covering the time between the two snapshots
+         */
+        public Statistics since(Statistics earlier) {
+            return new Statistics(operations - earlier.operations, misses - earlier.misses,
+                    prefetched - earlier.prefetched, batchesWritten - earlier.batchesWritten,
+                    rowsWritten - earlier.rowsWritten,
+                    timeSpentReading - earlier.timeSpentReading,
+                    timeSpentPrefetching - earlier.timeSpentPrefetching,
+                    timeSpentWriting - earlier.timeSpentWriting);
         }
 
-        private synchronized boolean dontQuitNow() {
-            return needAction || dontQuit;
+        /**
+         * @return the number of reads and writes of tracking data
+         */
+        public long getOperations() {
+            return operations;
         }
 
-        public void run() {
-            while (dontQuitNow()) {
-                synchronized (this) {
-                    while (!needAction) {
-                        try {
-                            wait(100000L);
-                        } catch (InterruptedException e) {
-                        }
-                    }
-                }
-                while (needAction) {
-                    try {
-                        synchronized (this) {
-                            needAction = false;
-                        }
-                        boolean tempNeedAction = doWrite();
-                        synchronized (this) {
-                            needAction = needAction || tempNeedAction;
-                        }
-                    } catch (Exception e) {
-                        LOG.error("CacheStorer received exception: " + e);
-                    }
-                }
-            }
-            synchronized (this) {
-                notDead = false;
-                notifyAll();
-            }
+        /**
+         * @return the number of operations that had to read from the database
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * @return the number of objects whose tracking data was prefetched in batches
+         */
+        public long getPrefetched() {
+            return prefetched;
+        }
+
+        /**
+         * @return the number of batches written to the database
+         */
+        public long getBatchesWritten() {
+            return batchesWritten;
+        }
+
+        /**
+         * @return the number of rows written to the database
+         */
+        public long getRowsWritten() {
+            return rowsWritten;
+        }
+
+        /**
+         * @return the time in milliseconds spent in operations, including cache misses
+         */
+        public long getTimeSpentReading() {
+            return timeSpentReading;
+        }
+
+        /**
+         * @return the time in milliseconds spent prefetching
+         */
+        public long getTimeSpentPrefetching() {
+            return timeSpentPrefetching;
+        }
+
+        /**
+         * @return the time in milliseconds spent writing, summed over all writer threads
+         */
+        public long getTimeSpentWriting() {
+            return timeSpentWriting;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return "Operations: " + operations + ", cache misses: " + misses
+                + ", time spent reading: " + timeSpentReading + ", prefetched: " + prefetched
+                + ", time spent prefetching: " + timeSpentPrefetching + ", batches written: "
+                + batchesWritten + ", rows written: " + rowsWritten + ", time spent writing: "
+                + timeSpentWriting;
         }
     }
 }
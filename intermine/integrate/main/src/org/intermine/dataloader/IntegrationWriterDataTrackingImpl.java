@@ -136,6 +136,10 @@ public class IntegrationWriterDataTrackingImpl extends IntegrationWriterAbstract
                     new Class[] {Database.class, Integer.TYPE, Integer.TYPE});
             DataTracker newDataTracker = con.newInstance(new Object[] {db,
                 new Integer(maxSize), new Integer(commitSize)});
+            String trackerWriterThreadsString = props.getProperty("datatrackerWriterThreads");
+            if (trackerWriterThreadsString != null) {
+                newDataTracker.setWriterThreads(Integer.parseInt(trackerWriterThreadsString));
+            }
 
             Constructor<? extends IntegrationWriterDataTrackingImpl> con2 =
                 iwClass.getConstructor(new Class[] {ObjectStoreWriter.class, DataTracker.class,
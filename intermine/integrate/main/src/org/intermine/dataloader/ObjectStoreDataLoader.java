@@ -76,11 +76,16 @@ public class ObjectStoreDataLoader extends DataLoader
             Class<? extends FastPathObject> queryClass) throws ObjectStoreException {
         int errorCount = 0;
         ObjectStore origOs = os;
+        DataTracker dataTracker = null;
+        DataTracker.Statistics trackerStart = null;
         try {
             if (os instanceof ObjectStoreFastCollectionsForTranslatorImpl) {
                 ((ObjectStoreFastCollectionsForTranslatorImpl) os).setSource(source);
             }
             if (getIntegrationWriter() instanceof IntegrationWriterDataTrackingImpl) {
+                dataTracker = ((IntegrationWriterDataTrackingImpl) getIntegrationWriter())
+                    .getDataTracker();
+                trackerStart = dataTracker.getStatistics();
                 Properties props = PropertiesUtil.getPropertiesStartingWith(
                         "equivalentObjectFetcher");
                 if (!("false".equals(props.getProperty("equivalentObjectFetcher.useParallel")))) {
@@ -207,6 +212,10 @@ public class ObjectStoreDataLoader extends DataLoader
                     + " ms total) for source " + source.getName());
             LOG.info("Time spent: Reading: " + (timeSpentRead + timeSpentLoop) + ", Writing: "
                     + timeSpentWrite + ", Committing: " + timeSpentCommit);
+            if (dataTracker != null) {
+                LOG.info("Data tracking for source " + source.getName() + ": "
+                        + dataTracker.getStatistics().since(trackerStart));
+            }
         } catch (RuntimeException e) {
             if (origOs instanceof ObjectStoreFastCollectionsForTranslatorImpl) {
                 IntPresentSet doneAlready = ((ObjectStoreFastCollectionsForTranslatorImpl) origOs)
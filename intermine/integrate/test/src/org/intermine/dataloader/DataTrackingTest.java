@@ -83,4 +83,37 @@ public class DataTrackingTest extends TestCase {
         dt2 = new DataTracker(DatabaseFactory.getDatabase("db.unittest"), 30, 10);
         assertEquals(source2.getName(), dt2.getSource(new Integer(14), "name").getName());
     }
+
+    public void testConcurrentShards() throws Exception {
+        // Big enough to be split into shards, and small enough to force background writes
+        final DataTracker sharded = new DataTracker(DatabaseFactory.getDatabase("db.unittest"),
+                4000, 2000);
+        sharded.setWriterThreads(3);
+        final Source shardSource = sharded.stringToSource("Source1");
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t * 5000;
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = offset; i < offset + 5000; i++) {
+                        sharded.clearObj(new Integer(i));
+                        sharded.setSource(new Integer(i), "name", shardSource);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(20000, sharded.getStatistics().getOperations());
+        sharded.close();
+
+        DataTracker reader = new DataTracker(DatabaseFactory.getDatabase("db.unittest"), 4000,
+                2000);
+        for (int i = 0; i < 20000; i += 997) {
+            assertEquals("Source1", reader.getSource(new Integer(i), "name").getName());
+        }
+        reader.close();
+    }
 }
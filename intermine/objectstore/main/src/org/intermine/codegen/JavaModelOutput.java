@@ -122,6 +122,7 @@ public class JavaModelOutput
                 }
             }
             sb.append("import org.intermine.objectstore.ObjectStore;" + ENDL);
+            sb.append("import org.intermine.objectstore.intermine.CompactNotXmlReader;" + ENDL);
             sb.append("import org.intermine.objectstore.intermine.NotXmlParser;" + ENDL);
             sb.append("import org.intermine.objectstore.intermine.NotXmlRenderer;" + ENDL);
             if (hasCollections) {
@@ -201,6 +202,7 @@ public class JavaModelOutput
             if (cld.getSuperDescriptors().size() > 0) {
                 sb.append(generateGetObject(cld))
                     .append(generateSetObject(cld))
+                    .append(generateSetCompactObject(cld))
                     .append(generateAddCollectionElement(cld))
                     .append(generateGetElementType(cld));
             }
@@ -777,6 +779,123 @@ public class JavaModelOutput
         return sb.toString();
     }
 
+    /**
+     * Generates the setoBJECT method for deserialising objects from the compact encoding. Numeric
+     * values are parsed directly from the encoded String.
+     *
+     * @param cld a ClassDescriptor
+     * @return a String containing the method
+     */
+    public String generateSetCompactObject(ClassDescriptor cld) {
+        StringBuffer sb = new StringBuffer();
+        sb.append(INDENT)
+            .append("public void setoBJECT(final CompactNotXmlReader reader, final ObjectStore os)"
+                    + " {\n")
+            .append(INDENT + INDENT)
+            .append("if (!" + cld.getName() + (cld.isInterface() ? "Shadow" : "")
+                    + ".class.equals(getClass())) {\n")
+            .append(INDENT + INDENT + INDENT)
+            .append("throw new IllegalStateException(\"Class \" + getClass().getName() + \""
+                    + " does not match code (" + cld.getName() + ")\");\n")
+            .append(INDENT + INDENT)
+            .append("}\n")
+            .append(INDENT + INDENT)
+            .append("while (reader.hasNext()) {\n")
+            .append(INDENT + INDENT + INDENT)
+            .append("int startPos = reader.getPosition();\n");
+        for (FieldDescriptor field : cld.getAllFieldDescriptors()) {
+            String fieldName = field.getName();
+            if ("reader".equals(fieldName)) {
+                fieldName = "this.reader";
+            } else if ("os".equals(fieldName)) {
+                fieldName = "this.os";
+            }
+            if (field instanceof AttributeDescriptor) {
+                AttributeDescriptor attribute = (AttributeDescriptor) field;
+                sb.append(INDENT + INDENT + INDENT)
+                    .append("if (reader.nextTagIs(\"a" + field.getName() + "\")) {\n")
+                    .append(INDENT + INDENT + INDENT + INDENT);
+                String type = attribute.getType();
+                if ("boolean".equals(type)) {
+                    sb.append(fieldName + " = Boolean.parseBoolean(reader.readString());\n");
+                } else if ("short".equals(type)) {
+                    sb.append(fieldName + " = (short) reader.readInt();\n");
+                } else if ("int".equals(type)) {
+                    sb.append(fieldName + " = reader.readInt();\n");
+                } else if ("long".equals(type)) {
+                    sb.append(fieldName + " = reader.readLong();\n");
+                } else if ("float".equals(type)) {
+                    sb.append(fieldName + " = Float.parseFloat(reader.readString());\n");
+                } else if ("double".equals(type)) {
+                    sb.append(fieldName + " = Double.parseDouble(reader.readString());\n");
+                } else if ("java.lang.Boolean".equals(type)) {
+                    sb.append(fieldName + " = Boolean.valueOf(reader.readString());\n");
+                } else if ("java.lang.Short".equals(type)) {
+                    sb.append(fieldName + " = Short.valueOf((short) reader.readInt());\n");
+                } else if ("java.lang.Integer".equals(type)) {
+                    sb.append(fieldName + " = reader.readInteger();\n");
+                } else if ("java.lang.Long".equals(type)) {
+                    sb.append(fieldName + " = Long.valueOf(reader.readLong());\n");
+                } else if ("java.lang.Float".equals(type)) {
+                    sb.append(fieldName + " = Float.valueOf(reader.readString());\n");
+                } else if ("java.lang.Double".equals(type)) {
+                    sb.append(fieldName + " = Double.valueOf(reader.readString());\n");
+                } else if ("java.util.Date".equals(type)) {
+                    sb.append(fieldName + " = new java.util.Date(reader.readLong());\n");
+                } else if ("java.math.BigDecimal".equals(type)) {
+                    sb.append(fieldName + " = new java.math.BigDecimal(reader.readString());\n");
+                } else if ("org.intermine.objectstore.query.ClobAccess".equals(type)) {
+                    sb.append(fieldName + " = org.intermine.objectstore.query.ClobAccess"
+                            + ".decodeDbDescription(os, reader.readString());\n");
+                } else if ("java.util.UUID".equals(type)) {
+                    sb.append(fieldName + " = java.util.UUID.fromString(reader.readString());\n");
+                } else if ("java.lang.String".equals(type)) {
+                    sb.append(fieldName + " = reader.readString();\n");
+                } else {
+                    throw new IllegalArgumentException("Unknown type " + type);
+                }
+                sb.append(INDENT + INDENT + INDENT)
+                    .append("}\n");
+            } else if (field.isReference()) {
+                ReferenceDescriptor reference = (ReferenceDescriptor) field;
+                sb.append(INDENT + INDENT + INDENT)
+                    .append("if (reader.nextTagIs(\"r" + field.getName() + "\")) {\n")
+                    .append(INDENT + INDENT + INDENT + INDENT)
+                    .append(fieldName + " = new ProxyReference(os, reader.readInteger(), "
+                            + reference.getReferencedClassName() + ".class);\n")
+                    .append(INDENT + INDENT + INDENT)
+                    .append("}\n");
+            }
+        }
+        sb.append(INDENT + INDENT + INDENT)
+            .append("if (startPos == reader.getPosition()) {\n")
+            .append(INDENT + INDENT + INDENT + INDENT)
+            .append("throw new IllegalArgumentException(\"Unknown field \" + reader.readString()"
+                    + ");\n")
+            .append(INDENT + INDENT + INDENT)
+            .append("}\n")
+            .append(INDENT + INDENT)
+            .append("}\n");
+        for (FieldDescriptor field : cld.getAllFieldDescriptors()) {
+            String fieldName = field.getName();
+            if ("reader".equals(fieldName)) {
+                fieldName = "this.reader";
+            } else if ("os".equals(fieldName)) {
+                fieldName = "this.os";
+            }
+            if (field instanceof CollectionDescriptor) {
+                CollectionDescriptor coll = (CollectionDescriptor) field;
+                sb.append(INDENT + INDENT)
+                    .append(fieldName + " = new ProxyCollection<" + coll.getReferencedClassName()
+                            + ">(os, this, \"" + field.getName() + "\", "
+                            + coll.getReferencedClassName() + ".class);\n");
+            }
+        }
+        sb.append(INDENT)
+            .append("}\n");
+        return sb.toString();
+    }
+
     /**
      * Generates the getFieldValue method.
      *
@@ -1,6 +1,7 @@
 package org.intermine.model;
 
 import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.intermine.CompactNotXmlReader;
 
 /*
  * Copyright (C) 2002-2014 FlyMine
@@ -57,6 +58,15 @@ public interface InterMineObject extends InterMineFastPathObject
      * @param os an ObjectStore from which to create proxies
      */
     void setoBJECT(String[] notXml, ObjectStore os);
+
+    /**
+     * Sets the values of the fields to the values read from the given compact encoded OBJECT
+     * field.
+     *
+     * @param reader a CompactNotXmlReader positioned after the class names
+     * @param os an ObjectStore from which to create proxies
+     */
+    void setoBJECT(CompactNotXmlReader reader, ObjectStore os);
   
     
     /**
@@ -82,6 +82,12 @@ public final class MetadataManager
      * The name of the key to use to store the search Directory.
      */
     public static final String SEARCH_INDEX_DIRECTORY = "search_directory";
+
+    /**
+     * The name of the key used to store a value that changes each time the search index is saved.
+     */
+    public static final String SEARCH_INDEX_FINGERPRINT = "search_fingerprint";
+
     /**
      * Name of the key under which to store the serialized version of the class descriptions
      */
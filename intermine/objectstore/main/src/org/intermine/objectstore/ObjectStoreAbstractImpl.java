@@ -33,6 +33,8 @@ import org.intermine.objectstore.query.QueryCreator;
 import org.intermine.objectstore.query.Results;
 import org.intermine.objectstore.query.ResultsRow;
 import org.intermine.objectstore.query.SingletonResults;
+import org.intermine.metadata.TypeUtil;
+import org.intermine.util.BoundedCacheMap;
 import org.intermine.util.CacheMap;
 import org.intermine.util.PropertiesUtil;
 
@@ -55,7 +57,7 @@ public abstract class ObjectStoreAbstractImpl implements ObjectStore
     protected long maxTime = Long.MAX_VALUE;
     // Optimiser will use a default query parse time if none is provided from properties
     protected Long maxQueryParseTime = null;
-    protected CacheMap<Integer, InterMineObject> cache;
+    protected volatile Map<Integer, InterMineObject> cache;
 
     protected int getObjectOps = 0;
     protected int getObjectHits = 0;
@@ -193,10 +195,11 @@ public abstract class ObjectStoreAbstractImpl implements ObjectStore
         }
         boolean contains = true;
         InterMineObject cached = null;
-        synchronized (cache) {
-            cached = cache.get(id);
+        Map<Integer, InterMineObject> currentCache = cache;
+        synchronized (currentCache) {
+            cached = currentCache.get(id);
             if (cached == null) {
-                contains = cache.containsKey(id);
+                contains = currentCache.containsKey(id);
             }
         }
         if (contains) {
@@ -204,10 +207,11 @@ public abstract class ObjectStoreAbstractImpl implements ObjectStore
             return cached;
         }
         InterMineObject fromDb = internalGetObjectById(id, clazz);
-        synchronized (cache) {
-            cached = cache.get(id);
+        currentCache = cache;
+        synchronized (currentCache) {
+            cached = currentCache.get(id);
             if (cached == null) {
-                contains = cache.containsKey(id);
+                contains = currentCache.containsKey(id);
             }
             if (contains) {
                 fromDb = cached;
@@ -296,8 +300,9 @@ public abstract class ObjectStoreAbstractImpl implements ObjectStore
      * {@inheritDoc}
      */
     public void invalidateObjectById(Integer id) {
-        synchronized (cache) {
-            cache.remove(id);
+        Map<Integer, InterMineObject> currentCache = cache;
+        synchronized (currentCache) {
+            currentCache.remove(id);
         }
     }
 
@@ -305,8 +310,9 @@ public abstract class ObjectStoreAbstractImpl implements ObjectStore
      * {@inheritDoc}
      */
     public Object cacheObjectById(Integer id, InterMineObject obj) {
-        synchronized (cache) {
-            cache.put(id, obj);
+        Map<Integer, InterMineObject> currentCache = cache;
+        synchronized (currentCache) {
+            currentCache.put(id, obj);
         }
         return obj;
     }
@@ -315,8 +321,49 @@ public abstract class ObjectStoreAbstractImpl implements ObjectStore
      * {@inheritDoc}
      */
     public void flushObjectById() {
-        synchronized (cache) {
-            cache.clear();
+        Map<Integer, InterMineObject> currentCache = cache;
+        synchronized (currentCache) {
+            currentCache.clear();
+        }
+    }
+
+    /**
+     * Replaces the getObjectById cache with a BoundedCacheMap of the given size, which is
+     * registered with JMX under the name of this ObjectStore. By default, the cache is a CacheMap,
+     * which is only bounded by the garbage collector.
+     *
+     * @param maxEntries the maximum number of objects to cache
+     * @param maxBytes the maximum estimated size of the cached objects in bytes, or zero for no
+     * limit
+     */
+    public void setObjectCacheSize(int maxEntries, long maxBytes) {
+        BoundedCacheMap<Integer, InterMineObject> newCache
+            = new BoundedCacheMap<Integer, InterMineObject>(this + " getObjectById cache",
+                    maxEntries, maxBytes, maxBytes > 0 ? new ObjectSizeEstimator() : null);
+        newCache.register();
+        Map<Integer, InterMineObject> oldCache = cache;
+        cache = newCache;
+        if (oldCache instanceof BoundedCacheMap<?, ?>) {
+            ((BoundedCacheMap<?, ?>) oldCache).unregister();
+        }
+    }
+
+    /**
+     * Estimates the memory used by a cached object, from the number of fields in its class. This
+     * is deliberately crude, as it is calculated for every object placed in the cache.
+     */
+    private static class ObjectSizeEstimator
+        implements BoundedCacheMap.Weigher<Integer, InterMineObject>
+    {
+        private static final long OBJECT_OVERHEAD = 64;
+        private static final long FIELD_OVERHEAD = 32;
+
+        public long weigh(Integer id, InterMineObject obj) {
+            if (obj == null) {
+                return OBJECT_OVERHEAD;
+            }
+            return OBJECT_OVERHEAD + FIELD_OVERHEAD * TypeUtil.getFieldInfos(obj.getClass())
+                .size();
         }
     }
 
@@ -324,8 +371,9 @@ public abstract class ObjectStoreAbstractImpl implements ObjectStore
      * {@inheritDoc}
      */
     public InterMineObject pilferObjectById(Integer id) {
-        synchronized (cache) {
-            return cache.get(id);
+        Map<Integer, InterMineObject> currentCache = cache;
+        synchronized (currentCache) {
+            return currentCache.get(id);
         }
     }
 
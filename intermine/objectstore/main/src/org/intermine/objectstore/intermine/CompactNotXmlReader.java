@@ -0,0 +1,206 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+/**
+ * Reads the compact encoding of the OBJECT field of database tables, as produced by
+ * CompactNotXmlRenderer. The encoding consists of a versioned header followed by a sequence of
+ * length-prefixed tokens, each written as the decimal length, a colon, and then the characters
+ * of the token. The first token is the space-separated list of class names, and the rest are
+ * pairs of field tag (a type character followed by the field name) and field value.
+ * <p>
+ * Unlike the original NotXml format, no splitting or delimiter escaping is necessary, so tokens
+ * can be compared and integers parsed in place without allocating intermediate Strings.
+ *
+ * @author julie
+ */
+public final class CompactNotXmlReader
+{
+    /**
+     * The version of the encoding written by this code.
+     */
+    public static final char VERSION = '1';
+    /**
+     * The header that starts every compact encoded OBJECT field. It can never start an old NotXml
+     * String, as they always start with NotXmlParser.DELIM.
+     */
+    public static final String HEADER = "#C" + VERSION;
+    /**
+     * The character separating the length of a token from the token itself.
+     */
+    public static final char LENGTH_SEPARATOR = ':';
+
+    private final String data;
+    private int pos;
+
+    /**
+     * Constructs a reader for the given compact encoded String, positioned at the first token.
+     *
+     * @param data the compact encoded String
+     * @throws IllegalArgumentException if the String does not start with a supported header
+     */
+    public CompactNotXmlReader(String data) {
+        if (!isCompact(data)) {
+            throw new IllegalArgumentException("Unsupported compact NotXml header in: "
+                    + (data == null ? null : data.substring(0, Math.min(data.length(), 20))));
+        }
+        this.data = data;
+        this.pos = HEADER.length();
+    }
+
+    /**
+     * Returns whether the given OBJECT field value is in the compact encoding.
+     *
+     * @param data the value of the OBJECT field
+     * @return true if the value starts with the compact header
+     */
+    public static boolean isCompact(String data) {
+        return (data != null) && data.startsWith(HEADER);
+    }
+
+    /**
+     * Returns whether there are more tokens to be read.
+     *
+     * @return a boolean
+     */
+    public boolean hasNext() {
+        return pos < data.length();
+    }
+
+    /**
+     * Returns the current position in the underlying String, for use in detecting whether a
+     * decoder made progress.
+     *
+     * @return the offset of the next token
+     */
+    public int getPosition() {
+        return pos;
+    }
+
+    /**
+     * Compares the next token with the given tag, and consumes it if it matches.
+     *
+     * @param tag the expected token, for example "aname"
+     * @return true if the token matched and was consumed
+     */
+    public boolean nextTagIs(String tag) {
+        int start = pos;
+        int length = 0;
+        while (start < data.length()) {
+            char c = data.charAt(start++);
+            if (c == LENGTH_SEPARATOR) {
+                if ((length == tag.length()) && data.regionMatches(start, tag, 0, length)) {
+                    pos = start + length;
+                    return true;
+                }
+                return false;
+            }
+            length = length * 10 + (c - '0');
+        }
+        return false;
+    }
+
+    /**
+     * Returns the type character of the next tag ('a' for an attribute, 'r' for a reference),
+     * without consuming it.
+     *
+     * @return the first character of the next token
+     */
+    public char peekTagType() {
+        return data.charAt(data.indexOf(LENGTH_SEPARATOR, pos) + 1);
+    }
+
+    /**
+     * Reads the next token as a String.
+     *
+     * @return a String
+     */
+    public String readString() {
+        int length = readLength();
+        String retval = data.substring(pos, pos + length);
+        pos += length;
+        return retval;
+    }
+
+    /**
+     * Reads the next token as an int, without creating a String.
+     *
+     * @return an int
+     */
+    public int readInt() {
+        long retval = readLong();
+        if ((retval < Integer.MIN_VALUE) || (retval > Integer.MAX_VALUE)) {
+            throw new NumberFormatException("Value out of range for int: " + retval);
+        }
+        return (int) retval;
+    }
+
+    /**
+     * Reads the next token as a long, without creating a String.
+     *
+     * @return a long
+     */
+    public long readLong() {
+        int length = readLength();
+        int end = pos + length;
+        if (length == 0) {
+            throw new NumberFormatException("Empty numeric token at offset " + pos);
+        }
+        boolean negative = false;
+        if (data.charAt(pos) == '-') {
+            negative = true;
+            pos++;
+        }
+        long retval = 0;
+        while (pos < end) {
+            char c = data.charAt(pos++);
+            if ((c < '0') || (c > '9')) {
+                throw new NumberFormatException("Invalid character '" + c + "' in numeric token");
+            }
+            retval = retval * 10 + (c - '0');
+        }
+        return negative ? -retval : retval;
+    }
+
+    /**
+     * Reads the next token as an Integer.
+     *
+     * @return an Integer
+     */
+    public Integer readInteger() {
+        return Integer.valueOf(readInt());
+    }
+
+    private int readLength() {
+        int length = 0;
+        while (true) {
+            char c = data.charAt(pos++);
+            if (c == LENGTH_SEPARATOR) {
+                return length;
+            }
+            if ((c < '0') || (c > '9')) {
+                throw new IllegalArgumentException("Corrupt compact NotXml at offset " + (pos - 1)
+                        + ": " + data);
+            }
+            length = length * 10 + (c - '0');
+        }
+    }
+
+    /**
+     * Returns the whole encoded String, for error messages.
+     *
+     * @return the String being read
+     */
+    @Override
+    public String toString() {
+        return data;
+    }
+}
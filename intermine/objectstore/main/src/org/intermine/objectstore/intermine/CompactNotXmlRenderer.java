@@ -0,0 +1,99 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import static org.intermine.objectstore.intermine.CompactNotXmlReader.HEADER;
+import static org.intermine.objectstore.intermine.CompactNotXmlReader.LENGTH_SEPARATOR;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+import org.intermine.metadata.TypeUtil;
+import org.intermine.metadata.TypeUtil.FieldInfo;
+import org.intermine.metadata.Util;
+import org.intermine.model.InterMineObject;
+import org.intermine.model.StringConstructor;
+import org.intermine.objectstore.query.ClobAccess;
+
+/**
+ * Render an object into the compact encoding of the OBJECT field of database tables. See
+ * CompactNotXmlReader for a description of the format.
+ *
+ * @author julie
+ */
+public final class CompactNotXmlRenderer
+{
+    private CompactNotXmlRenderer() {
+    }
+
+    /**
+     * Render the given object in the compact encoding.
+     *
+     * @param obj the object to render
+     * @return the encoded String
+     */
+    public static StringConstructor render(Object obj) {
+        try {
+            StringConstructor sb = new StringConstructor();
+            sb.append(HEADER);
+            StringBuilder classes = new StringBuilder();
+            boolean needComma = false;
+            for (Class<?> clazz : Util.decomposeClass(obj.getClass())) {
+                if (needComma) {
+                    classes.append(" ");
+                }
+                needComma = true;
+                classes.append(clazz.getName());
+            }
+            appendToken(sb, classes.toString());
+
+            Map<String, FieldInfo> infos = TypeUtil.getFieldInfos(obj.getClass());
+            for (String fieldName : infos.keySet()) {
+                // As for NotXml, collections and null values are not output
+                Object value = TypeUtil.getFieldProxy(obj, fieldName);
+
+                if ((value != null) && (!Collection.class.isAssignableFrom(value.getClass()))) {
+                    if (value instanceof InterMineObject) {
+                        appendToken(sb, "r" + fieldName);
+                        appendToken(sb, ((InterMineObject) value).getId().toString());
+                    } else {
+                        appendToken(sb, "a" + fieldName);
+                        if (value instanceof Date) {
+                            appendToken(sb, Long.toString(((Date) value).getTime()));
+                        } else if (value instanceof ClobAccess) {
+                            appendToken(sb, ((ClobAccess) value).getDbDescription());
+                        } else {
+                            appendToken(sb, value.toString());
+                        }
+                    }
+                }
+            }
+            return sb;
+        } catch (IllegalAccessException e) {
+            IllegalArgumentException e2 = new IllegalArgumentException();
+            e2.initCause(e);
+            throw e2;
+        }
+    }
+
+    /**
+     * Appends a length-prefixed token to the given StringConstructor. The token itself is not
+     * copied.
+     *
+     * @param sb the StringConstructor to append to
+     * @param token the token
+     */
+    public static void appendToken(StringConstructor sb, String token) {
+        sb.append(Integer.toString(token.length()) + LENGTH_SEPARATOR);
+        sb.append(token);
+    }
+}
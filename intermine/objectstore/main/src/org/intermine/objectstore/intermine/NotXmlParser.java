@@ -66,7 +66,8 @@ public final class NotXmlParser
         = Collections.synchronizedMap(new HashMap<String, Class<? extends FastPathObject>>());
 
     /**
-     * Parse the given NotXml String into an Object.
+     * Parse the given NotXml String into an Object. Strings in the compact encoding (see
+     * CompactNotXmlReader) are also accepted, so both formats can coexist in one database.
      *
      * @param xml the NotXml String
      * @param os the ObjectStore from which to create lazy objects
@@ -80,6 +81,9 @@ public final class NotXmlParser
             e.fillInStackTrace();
             LOG.warn("Parsing " + xml, e);
         }
+        if (CompactNotXmlReader.isCompact(xml)) {
+            return parseCompact(xml, os);
+        }
         long time1 = System.currentTimeMillis();
         String[] a = SPLITTER.split(xml);
         long time2 = System.currentTimeMillis();
@@ -251,4 +255,131 @@ public final class NotXmlParser
             }
         }
     }
+
+    /**
+     * Parse the given String in the compact encoding (see CompactNotXmlReader) into an Object.
+     *
+     * @param data the compact encoded String
+     * @param os the ObjectStore from which to create lazy objects
+     * @return an InterMineObject
+     * @throws ClassNotFoundException if a class cannot be found
+     */
+    protected static InterMineObject parseCompact(String data,
+            ObjectStoreInterMineImpl os) throws ClassNotFoundException {
+        long time1 = System.currentTimeMillis();
+        CompactNotXmlReader reader = new CompactNotXmlReader(data);
+        String classNames = reader.readString();
+        long time2 = System.currentTimeMillis();
+        splitTime += time2 - time1;
+
+        InterMineObject retval;
+
+        Class<? extends FastPathObject> clazz = classCache.get(classNames);
+        if (clazz == null) {
+            Set<Class<?>> classes = new HashSet<Class<?>>();
+            if (!"".equals(classNames)) {
+                String[] b = SPACE_SPLITTER.split(classNames);
+                for (int i = 0; i < b.length; i++) {
+                    classes.add(Class.forName(b[i]));
+                }
+            }
+            time1 = System.currentTimeMillis();
+            classTime += time1 - time2;
+
+            retval = (InterMineObject) DynamicUtil.createObject(classes);
+            clazz = retval.getClass();
+            classCache.put(classNames, clazz);
+        } else {
+            time1 = System.currentTimeMillis();
+            classTime += time1 - time2;
+            retval = (InterMineObject) DynamicUtil.createObject(clazz);
+        }
+        time2 = System.currentTimeMillis();
+        createTime += time2 - time1;
+
+        if (!(retval instanceof Factory)) {
+            try {
+                retval.setoBJECT(reader, os);
+                time1 = System.currentTimeMillis();
+                parseTime += time1 - time2;
+                opCount++;
+                if (opCount >= 100000) {
+                    LOG.info("(Compact Class) Split: " + splitTime + " ms, Class: " + classTime
+                            + " ms, Create: " + createTime + " ms, Parse: " + parseTime + " ms");
+                    opCount = 0;
+                }
+                return retval;
+            } catch (IllegalStateException e) {
+                // The generated decoder does not match this class - use the generic method.
+                // The decoder checks the class before reading anything, so restarting the reader
+                // is only defensive.
+                reader = new CompactNotXmlReader(data);
+                reader.readString();
+            }
+        }
+
+        Map<String, Object> valueMap = null;
+        if (retval instanceof Factory) {
+            valueMap = ((DynamicBean) ((Factory) retval).getCallback(0)).getMap();
+        }
+        Map<String, FieldDescriptor> fields = os.getModel()
+            .getFieldDescriptorsForClass(retval.getClass());
+        Map<String, TypeUtil.FieldInfo> fieldInfos = TypeUtil.getFieldInfos(clazz);
+        boolean fetchFromInterMineObject = os.getSchema().isFetchFromInterMineObject();
+        while (reader.hasNext()) {
+            String tag = reader.readString();
+            String fieldName = tag.substring(1).intern();
+            Object value;
+            if (tag.charAt(0) == 'a') {
+                Class<?> fieldClass = fieldInfos.get(fieldName).getType();
+                if (ClobAccess.class.equals(fieldClass)) {
+                    value = ClobAccess.decodeDbDescription(os, reader.readString());
+                } else {
+                    value = TypeUtil.stringToObject(fieldClass, reader.readString());
+                }
+            } else if (tag.charAt(0) == 'r') {
+                Integer id = reader.readInteger();
+                if (fetchFromInterMineObject && (valueMap != null)) {
+                    value = new ProxyReference(os, id, InterMineObject.class);
+                } else {
+                    ReferenceDescriptor ref = (ReferenceDescriptor) fields.get(fieldName);
+                    if (ref == null) {
+                        throw new RuntimeException("failed to get field " + fieldName
+                                + " for object from compact NotXml: " + data);
+                    }
+                    @SuppressWarnings("unchecked") Class<? extends InterMineObject> tmpType =
+                        (Class) ref.getReferencedClassDescriptor().getType();
+                    value = new ProxyReference(os, id, tmpType);
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown field tag " + tag
+                        + " in compact NotXml: " + data);
+            }
+            if (valueMap != null) {
+                valueMap.put(fieldName, value);
+            } else {
+                retval.setFieldValue(fieldName, value);
+            }
+        }
+
+        for (Map.Entry<String, Class<?>> collEntry : os.getModel().getCollectionsForClass(clazz)
+                .entrySet()) {
+            Collection<Object> lazyColl = new ProxyCollection<Object>(os, retval,
+                    collEntry.getKey(), collEntry.getValue());
+            if (valueMap != null) {
+                valueMap.put(collEntry.getKey(), lazyColl);
+            } else {
+                retval.setFieldValue(collEntry.getKey(), lazyColl);
+            }
+        }
+        time1 = System.currentTimeMillis();
+        parseTime += time1 - time2;
+        opCount++;
+        if (opCount >= 100000) {
+            LOG.info("(Compact Fallback) Split: " + splitTime + " ms, Class: " + classTime
+                    + " ms, Create: " + createTime + " ms, Parse: " + parseTime + " ms");
+            opCount = 0;
+        }
+        return retval;
+    }
 }
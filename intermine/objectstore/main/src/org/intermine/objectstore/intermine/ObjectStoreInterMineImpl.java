@@ -60,6 +60,7 @@ import org.intermine.objectstore.query.ConstraintWithBag;
 import org.intermine.objectstore.query.FromElement;
 import org.intermine.objectstore.query.MultipleInBagConstraint;
 import org.intermine.objectstore.query.OrderDescending;
+import org.intermine.objectstore.query.PrefetchManager;
 import org.intermine.objectstore.query.Query;
 import org.intermine.objectstore.query.QueryClass;
 import org.intermine.objectstore.query.QueryClassBag;
@@ -89,6 +90,7 @@ import org.intermine.sql.query.ExplainResult;
 import org.intermine.sql.query.PostgresExplainResult;
 import org.intermine.sql.writebatch.Batch;
 import org.intermine.sql.writebatch.BatchWriterPostgresCopyImpl;
+import org.intermine.util.BoundedCacheMap;
 import org.intermine.util.CacheMap;
 import org.intermine.util.ShutdownHook;
 import org.intermine.util.Shutdownable;
@@ -132,6 +134,8 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
     protected static final int SEQUENCE_MULTIPLE = 1000000;
     protected boolean logExplains = false;
     protected boolean disableResultsCache = false;
+    protected boolean compactNotXml = false;
+    protected boolean persistOptimiserCache = false;
 
     // don't use a table to represent bags if the bag is smaller than this value
     protected int minBagTableSize = -1;
@@ -146,10 +150,12 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
     protected Map<Query, Integer> goFasterCountMap = new IdentityHashMap<Query, Integer>();
     protected ReferenceQueue<String> bagTablesToRemove = new ReferenceQueue<String>();
     protected String description;
-    protected Map<String, Results> resultsCache = new CacheMap<String, Results>();
-    protected Map<String, SingletonResults> singletonResultsCache
+    // The caches are replaced by setResultsCacheSize(), so users read each field once and
+    // synchronize on the map they read
+    protected volatile Map<String, Results> resultsCache = new CacheMap<String, Results>();
+    protected volatile Map<String, SingletonResults> singletonResultsCache
         = new CacheMap<String, SingletonResults>();
-    protected Map<String, Map<Integer, ResultsBatches>> batchesCache
+    protected volatile Map<String, Map<Integer, ResultsBatches>> batchesCache
         = new CacheMap<String, Map<Integer, ResultsBatches>>();
 
     private static final String[] LOG_TABLE_COLUMNS = new String[] {"timestamp", "optimise",
@@ -343,6 +349,14 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
         String logExplainsString = props.getProperty("logExplains");
         String logBeforeExecuteString = props.getProperty("logBeforeExecute");
         String disableResultsCacheString = props.getProperty("disableResultsCache");
+        String compactNotXmlString = props.getProperty("compactNotXml");
+        String prefetchThreadsString = props.getProperty("prefetchThreads");
+        String objectCacheSizeString = props.getProperty("objectCacheSize");
+        String objectCacheBytesString = props.getProperty("objectCacheBytes");
+        String resultsCacheSizeString = props.getProperty("resultsCacheSize");
+        String prefetchQueueLengthString = props.getProperty("prefetchQueueLength");
+        String optimiserCacheSizeString = props.getProperty("optimiserCacheSize");
+        String persistOptimiserCacheString = props.getProperty("persistOptimiserCache");
 
         synchronized (instances) {
             ObjectStoreInterMineImpl os = instances.get(osAlias);
@@ -499,6 +513,48 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
                 if ("true".equals(disableResultsCacheString)) {
                     os.setDisableResultsCache(true);
                 }
+                if ("true".equals(compactNotXmlString)) {
+                    os.setCompactNotXml(true);
+                }
+                if (objectCacheSizeString != null) {
+                    try {
+                        os.setObjectCacheSize(Integer.parseInt(objectCacheSizeString),
+                                objectCacheBytesString == null ? 0
+                                : Long.parseLong(objectCacheBytesString));
+                    } catch (IllegalArgumentException e) {
+                        LOG.warn("Error setting objectCacheSize or objectCacheBytes: " + e);
+                    }
+                }
+                if (resultsCacheSizeString != null) {
+                    try {
+                        os.setResultsCacheSize(Integer.parseInt(resultsCacheSizeString));
+                    } catch (IllegalArgumentException e) {
+                        LOG.warn("Error setting resultsCacheSize: " + e);
+                    }
+                }
+                if ((prefetchThreadsString != null) || (prefetchQueueLengthString != null)) {
+                    try {
+                        PrefetchManager.configure(os, prefetchThreadsString == null
+                                ? PrefetchManager.DEFAULT_THREADS
+                                : Integer.parseInt(prefetchThreadsString),
+                                prefetchQueueLengthString == null
+                                ? PrefetchManager.DEFAULT_QUEUE_LENGTH
+                                : Integer.parseInt(prefetchQueueLengthString));
+                    } catch (IllegalArgumentException e) {
+                        LOG.warn("Error setting prefetchThreads or prefetchQueueLength: " + e);
+                    }
+                }
+                if (optimiserCacheSizeString != null) {
+                    try {
+                        OptimiserCache.getInstance(database).setMaxLinesets(
+                                Integer.parseInt(optimiserCacheSizeString));
+                    } catch (IllegalArgumentException e) {
+                        LOG.warn("Error setting optimiserCacheSize: " + e);
+                    }
+                }
+                if ("true".equals(persistOptimiserCacheString)) {
+                    os.setPersistOptimiserCache(true);
+                }
                 instances.put(osAlias, os);
             }
             return os;
@@ -647,6 +703,170 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
         return disableResultsCache;
     }
 
+    /**
+     * Sets whether the optimiser cache is saved to the database when this objectstore is closed.
+     * Turning it on loads the cache saved last time, if it was saved for the same release of the
+     * database with the same precomputed tables, so that queries are optimised from the start.
+     *
+     * @param persistOptimiserCache a boolean
+     */
+    public void setPersistOptimiserCache(boolean persistOptimiserCache) {
+        this.persistOptimiserCache = persistOptimiserCache;
+        if (persistOptimiserCache) {
+            Connection c = null;
+            try {
+                c = getConnection();
+                long start = System.currentTimeMillis();
+                int count = OptimiserCache.getInstance(db).load(c, getOptimiserCacheTag());
+                LOG.info("Loaded " + count + " optimised queries into the optimiser cache in "
+                        + (System.currentTimeMillis() - start) + " ms");
+            } catch (SQLException e) {
+                LOG.warn("Failed to load the optimiser cache: " + e);
+            } finally {
+                if (c != null) {
+                    releaseConnection(c);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the persistOptimiserCache configuration option.
+     *
+     * @return a boolean
+     */
+    public boolean getPersistOptimiserCache() {
+        return persistOptimiserCache;
+    }
+
+    /**
+     * Returns the tag under which the optimiser cache is saved, made from the serial number of the
+     * database and its precomputed tables.
+     *
+     * @return a String
+     * @throws SQLException if something goes wrong
+     */
+    protected String getOptimiserCacheTag() throws SQLException {
+        String serialNumber = MetadataManager.retrieve(db, MetadataManager.SERIAL_NUMBER);
+        return OptimiserCache.getTag(serialNumber,
+                PrecomputedTableManager.getInstance(db).getPrecomputedTables());
+    }
+
+    /**
+     * Sets the compactNotXml configuration option. If true, writers will store objects in the
+     * OBJECT column using the compact encoding (see CompactNotXmlReader) instead of NotXml. Both
+     * encodings are always readable, so this can be changed on an existing database.
+     *
+     * @param compactNotXml a boolean
+     */
+    public void setCompactNotXml(boolean compactNotXml) {
+        this.compactNotXml = compactNotXml;
+    }
+
+    /**
+     * Gets the compactNotXml configuration option.
+     *
+     * @return a boolean
+     */
+    public boolean getCompactNotXml() {
+        return compactNotXml;
+    }
+
+    /**
+     * Replaces the Results caches with BoundedCacheMaps of the given size, which are registered
+     * with JMX until the ObjectStore is closed. By default, these caches are CacheMaps, which are
+     * only bounded by the garbage collector.
+     *
+     * @param maxEntries the maximum number of Results objects to cache in each of the caches
+     */
+    public void setResultsCacheSize(int maxEntries) {
+        BoundedCacheMap<String, Results> newResultsCache = new BoundedCacheMap<String, Results>(
+                description + " Results cache", maxEntries);
+        BoundedCacheMap<String, SingletonResults> newSingletonResultsCache
+            = new BoundedCacheMap<String, SingletonResults>(description
+                    + " SingletonResults cache", maxEntries);
+        BoundedCacheMap<String, Map<Integer, ResultsBatches>> newBatchesCache
+            = new BoundedCacheMap<String, Map<Integer, ResultsBatches>>(description
+                    + " ResultsBatches cache", maxEntries);
+        newResultsCache.register();
+        newSingletonResultsCache.register();
+        newBatchesCache.register();
+        Map<?, ?> oldResultsCache = resultsCache;
+        Map<?, ?> oldSingletonResultsCache = singletonResultsCache;
+        Map<?, ?> oldBatchesCache = batchesCache;
+        resultsCache = newResultsCache;
+        singletonResultsCache = newSingletonResultsCache;
+        batchesCache = newBatchesCache;
+        unregisterCache(oldResultsCache);
+        unregisterCache(oldSingletonResultsCache);
+        unregisterCache(oldBatchesCache);
+    }
+
+    private static void unregisterCache(Map<?, ?> cache) {
+        if (cache instanceof BoundedCacheMap<?, ?>) {
+            ((BoundedCacheMap<?, ?>) cache).unregister();
+        }
+    }
+
+    /**
+     * Removes Results from the Results caches that can no longer be used because the data they
+     * were fetched from has changed. This is only possible with BoundedCacheMaps - CacheMaps
+     * cannot be iterated over, and are left to discover stale entries when they are next used.
+     */
+    protected void removeStaleResults() {
+        Map<String, Results> currentResultsCache = resultsCache;
+        Map<String, SingletonResults> currentSingletonResultsCache = singletonResultsCache;
+        Map<String, Map<Integer, ResultsBatches>> currentBatchesCache = batchesCache;
+        if (currentResultsCache instanceof BoundedCacheMap<?, ?>) {
+            synchronized (currentResultsCache) {
+                for (Map.Entry<String, Results> entry : currentResultsCache.entrySet()) {
+                    if (isStale(entry.getValue().getSequence())) {
+                        currentResultsCache.remove(entry.getKey());
+                    }
+                }
+            }
+        }
+        if (currentSingletonResultsCache instanceof BoundedCacheMap<?, ?>) {
+            synchronized (currentSingletonResultsCache) {
+                for (Map.Entry<String, SingletonResults> entry
+                        : currentSingletonResultsCache.entrySet()) {
+                    if (isStale(entry.getValue().getSequence())) {
+                        currentSingletonResultsCache.remove(entry.getKey());
+                    }
+                }
+            }
+        }
+        if (currentBatchesCache instanceof BoundedCacheMap<?, ?>) {
+            synchronized (currentBatchesCache) {
+                for (Map.Entry<String, Map<Integer, ResultsBatches>> entry
+                        : currentBatchesCache.entrySet()) {
+                    boolean stale = true;
+                    synchronized (entry.getValue()) {
+                        for (Integer batchSize : new ArrayList<Integer>(entry.getValue()
+                                    .keySet())) {
+                            ResultsBatches batches = entry.getValue().get(batchSize);
+                            if ((batches != null) && (!isStale(batches.getSequence()))) {
+                                stale = false;
+                            }
+                        }
+                    }
+                    if (stale) {
+                        currentBatchesCache.remove(entry.getKey());
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean isStale(Map<Object, Integer> sequence) {
+        try {
+            checkSequence(sequence, null, null);
+            return false;
+        } catch (DataChangedException e) {
+            return true;
+        }
+    }
+
     /**
      * Allows the log table to be flushed, guaranteeing that all log entries are committed to the
      * database.
@@ -721,9 +941,11 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
             boolean prefetch) {
         String cacheKey = "Batchsize: " + batchSize + ", optimise: " + optimise + ", explain: "
             + explain + ", prefetch: " + prefetch + ", query: " + q;
-        synchronized (resultsCache) {
+        Map<String, Results> currentResultsCache = resultsCache;
+        Map<String, Map<Integer, ResultsBatches>> currentBatchesCache = batchesCache;
+        synchronized (currentResultsCache) {
             // if this query has been executed before return a cached copy of the Results
-            Results retval = resultsCache.get(cacheKey);
+            Results retval = currentResultsCache.get(cacheKey);
             if (retval != null) {
                 try {
                     checkSequence(retval.getSequence(), null, null);
@@ -733,11 +955,11 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
             }
             if (retval == null) {
                 String batchesKey = q.toString();
-                synchronized (batchesCache) {
-                    Map<Integer, ResultsBatches> batches = batchesCache.get(batchesKey);
+                synchronized (currentBatchesCache) {
+                    Map<Integer, ResultsBatches> batches = currentBatchesCache.get(batchesKey);
                     if (batches == null) {
                         batches = new CacheMap<Integer, ResultsBatches>();
-                        batchesCache.put(batchesKey, batches);
+                        currentBatchesCache.put(batchesKey, batches);
                     }
                     ResultsBatches batch = getResultsBatches(batches, batchSize);
                     if (batch != null) {
@@ -751,7 +973,7 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
                         retval = super.execute(q, batchSize, optimise, explain, prefetch);
                         batches.put(new Integer(batchSize), retval.getResultsBatches());
                     }
-                    resultsCache.put(cacheKey, retval);
+                    currentResultsCache.put(cacheKey, retval);
                 }
                 //LOG.error("Results cache miss for " + q);
             //} else {
@@ -777,8 +999,10 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
             boolean explain, boolean prefetch) {
         String cacheKey = "Batchsize: " + batchSize + ", optimise: " + optimise + ", explain: "
             + explain + ", prefetch: " + prefetch + ", query: " + q;
-        synchronized (singletonResultsCache) {
-            SingletonResults retval = singletonResultsCache.get(cacheKey);
+        Map<String, SingletonResults> currentSingletonResultsCache = singletonResultsCache;
+        Map<String, Map<Integer, ResultsBatches>> currentBatchesCache = batchesCache;
+        synchronized (currentSingletonResultsCache) {
+            SingletonResults retval = currentSingletonResultsCache.get(cacheKey);
             if (retval != null) {
                 try {
                     checkSequence(retval.getSequence(), null, null);
@@ -788,11 +1012,11 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
             }
             if (retval == null) {
                 String batchesKey = q.toString();
-                synchronized (batchesCache) {
-                    Map<Integer, ResultsBatches> batches = batchesCache.get(batchesKey);
+                synchronized (currentBatchesCache) {
+                    Map<Integer, ResultsBatches> batches = currentBatchesCache.get(batchesKey);
                     if (batches == null) {
                         batches = new CacheMap<Integer, ResultsBatches>();
-                        batchesCache.put(batchesKey, batches);
+                        currentBatchesCache.put(batchesKey, batches);
                     }
                     ResultsBatches batch = getResultsBatches(batches, batchSize);
                     if (batch != null) {
@@ -801,7 +1025,7 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
                         retval = super.executeSingleton(q, batchSize, optimise, explain, prefetch);
                         batches.put(new Integer(batchSize), retval.getResultsBatches());
                     }
-                    singletonResultsCache.put(cacheKey, retval);
+                    currentSingletonResultsCache.put(cacheKey, retval);
                 }
                 //LOG.error("Results cache miss for " + q);
             //} else {
@@ -1032,7 +1256,7 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
     }
 
     /**
-     * Closes this ObjectStore's DB log connection.
+     * Closes this ObjectStore's DB log connection, and removes its caches from JMX.
      *
      * @throws ObjectStoreException in subclasses
      */
@@ -1042,10 +1266,22 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
                 + ", SQL Optimise: " + statsOptTime + ", Estimate: "
                 + statsEstTime + ", Execute: " + statsExeTime + ", Results Convert: "
                 + statsConTime);
+        unregisterCache(resultsCache);
+        unregisterCache(singletonResultsCache);
+        unregisterCache(batchesCache);
+        unregisterCache(cache);
         flushLogTable();
         Connection c = null;
         try {
             c = getConnection();
+            if (persistOptimiserCache) {
+                try {
+                    int count = OptimiserCache.getInstance(db).save(c, getOptimiserCacheTag());
+                    LOG.info("Saved " + count + " optimised queries from the optimiser cache");
+                } catch (SQLException e) {
+                    LOG.warn("Failed to save the optimiser cache: " + e);
+                }
+            }
             LOG.info("Temporary tables to drop: " + bagTablesInDatabase);
             Iterator<BagTableToRemove> iter = bagTablesInDatabase.iterator();
             while (iter.hasNext()) {
@@ -1688,6 +1924,7 @@ public class ObjectStoreInterMineImpl extends ObjectStoreAbstractImpl implements
             if ((tablesAltered.size() > 1) || (!tablesAltered.contains(INT_BAG_TABLE_NAME))) {
                 flushObjectById();
             }
+            removeStaleResults();
             try {
                 PrecomputedTableManager ptm = PrecomputedTableManager.getInstance(db);
                 ptm.dropAffected(tableNames);
@@ -49,6 +49,7 @@ import org.intermine.objectstore.query.Clob;
 import org.intermine.objectstore.query.ClobAccess;
 import org.intermine.objectstore.query.Constraint;
 import org.intermine.objectstore.query.ObjectStoreBag;
+import org.intermine.objectstore.query.PackedSequenceCodec;
 import org.intermine.objectstore.query.PendingClob;
 import org.intermine.objectstore.query.Query;
 import org.intermine.objectstore.query.QueryClass;
@@ -345,6 +346,22 @@ public class ObjectStoreWriterInterMineImpl extends ObjectStoreInterMineImpl
         return os.getDisableResultsCache();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setCompactNotXml(boolean compactNotXml) {
+        throw new UnsupportedOperationException("Cannot change compactNotXml on a writer");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean getCompactNotXml() {
+        return os.getCompactNotXml();
+    }
+
     /**
      * Allows the changing of the BatchWriter that this ObjectStoreWriter uses.
      *
@@ -676,7 +693,9 @@ public class ObjectStoreWriterInterMineImpl extends ObjectStoreInterMineImpl
                             value = objectClass;
                         } else if ("OBJECT".equals(tableInfo.colNames[colNo])) {
                             if (xml == null) {
-                                if (o instanceof InterMineObject) {
+                                if (os.getCompactNotXml()) {
+                                    xml = CompactNotXmlRenderer.render(o);
+                                } else if (o instanceof InterMineObject) {
                                     xml = ((InterMineObject) o).getoBJECT();
                                 } else {
                                     xml = NotXmlRenderer.render(o);
@@ -1045,9 +1064,12 @@ public class ObjectStoreWriterInterMineImpl extends ObjectStoreInterMineImpl
                     // We can't call createClob here - we already have a connection, and
                     // we must use that one.
                     Clob clob = new Clob(getSerialWithConnection(c));
-                    replaceClobWithConnection(c, clob, ((PendingClob) ca)
-                            .toString());
-                    DynamicUtil.setFieldValue(o, fieldInfo.getName(), new ClobAccess(this, clob));
+                    String text = ((PendingClob) ca).toString();
+                    boolean packed = ca.isPacked() && PackedSequenceCodec.isWorthPacking(text);
+                    replaceClobWithConnection(c, clob, text, packed);
+                    // Record the length, so that it is stored with the object
+                    DynamicUtil.setFieldValue(o, fieldInfo.getName(),
+                            new ClobAccess(this, clob, text.length(), packed));
                 }
             }
         }
@@ -1307,6 +1329,21 @@ public class ObjectStoreWriterInterMineImpl extends ObjectStoreInterMineImpl
      * @throws ObjectStoreException if something goes wrong
      */
     public void replaceClobWithConnection(Connection c, Clob clob, String text)
+        throws ObjectStoreException {
+        replaceClobWithConnection(c, clob, text, false);
+    }
+
+    /**
+     * Replaces the contents of the given Clob with the given String, which may be packed by the
+     * PackedSequenceCodec. Each page holds CLOB_PAGE_SIZE characters of the text either way.
+     *
+     * @param c a Connection
+     * @param clob the Clob to write to
+     * @param text the text to write to the Clob
+     * @param packed true to pack each page
+     * @throws ObjectStoreException if something goes wrong
+     */
+    public void replaceClobWithConnection(Connection c, Clob clob, String text, boolean packed)
         throws ObjectStoreException {
         boolean wasInTransaction = isInTransactionWithConnection(c);
         if (!wasInTransaction) {
@@ -1318,9 +1355,11 @@ public class ObjectStoreWriterInterMineImpl extends ObjectStoreInterMineImpl
             batch.deleteRow(c, CLOB_TABLE_NAME, CLOBID_COLUMN, clobId);
             int length = text.length();
             for (int i = 0; i < length; i += CLOB_PAGE_SIZE) {
+                int end = Math.min(i + CLOB_PAGE_SIZE, length);
+                String page = packed ? PackedSequenceCodec.encode(text, i, end)
+                    : text.substring(i, end);
                 batch.addRow(c, CLOB_TABLE_NAME, clobId, CLOB_COLUMNS, new Object[] {clobId,
-                    new Integer(i / CLOB_PAGE_SIZE), text.substring(i, Math.min(i + CLOB_PAGE_SIZE,
-                            length))});
+                    new Integer(i / CLOB_PAGE_SIZE), page});
             }
             tablesAltered.add(clob);
             tablesAltered.add(CLOB_TABLE_NAME);
@@ -1556,6 +1595,106 @@ public class ObjectStoreWriterInterMineImpl extends ObjectStoreInterMineImpl
         }
     }
 
+    /**
+     * Writes out everything in the batch without committing the transaction, so that any error
+     * in the data is found before a commit.
+     *
+     * @throws ObjectStoreException if an error occurs
+     */
+    public void flushBatch() throws ObjectStoreException {
+        Connection c = null;
+        try {
+            c = getConnection();
+            batch.flush(c);
+        } catch (SQLException e) {
+            throw new ObjectStoreException("Error flushing batch", e);
+        } finally {
+            releaseConnection(c);
+        }
+    }
+
+    /**
+     * Prepares the transaction for a two-phase commit, using the PostgreSQL PREPARE TRANSACTION
+     * command. The transaction is then no longer associated with this writer, and must be finished
+     * with commitPreparedTransaction() or rollbackPreparedTransaction(). The server must have
+     * max_prepared_transactions set above zero.
+     *
+     * @param transactionId an identifier for the transaction, unique in the database
+     * @throws ObjectStoreException if we are not in a transaction, or an error occurs
+     */
+    public void prepareTransaction(String transactionId) throws ObjectStoreException {
+        Connection c = null;
+        try {
+            c = getConnection();
+            batch.flush(c);
+            if (c.getAutoCommit()) {
+                throw new ObjectStoreException("prepareTransaction called, but not in"
+                        + " transaction");
+            }
+            Statement s = c.createStatement();
+            try {
+                s.execute("PREPARE TRANSACTION '" + transactionId + "'");
+            } finally {
+                s.close();
+            }
+            c.setAutoCommit(true);
+        } catch (SQLException e) {
+            throw new ObjectStoreException("Error preparing transaction", e);
+        } finally {
+            releaseConnection(c);
+        }
+    }
+
+    /**
+     * Commits a transaction prepared with prepareTransaction().
+     *
+     * @param transactionId the identifier passed to prepareTransaction()
+     * @throws ObjectStoreException if an error occurs
+     */
+    public void commitPreparedTransaction(String transactionId) throws ObjectStoreException {
+        Connection c = null;
+        try {
+            c = getConnection();
+            Statement s = c.createStatement();
+            try {
+                s.execute("COMMIT PREPARED '" + transactionId + "'");
+            } finally {
+                s.close();
+            }
+            os.databaseAltered(tablesAltered);
+            tablesAltered.clear();
+        } catch (SQLException e) {
+            throw new ObjectStoreException("Error committing prepared transaction", e);
+        } finally {
+            releaseConnection(c);
+        }
+    }
+
+    /**
+     * Rolls back a transaction prepared with prepareTransaction().
+     *
+     * @param transactionId the identifier passed to prepareTransaction()
+     * @throws ObjectStoreException if an error occurs
+     */
+    public void rollbackPreparedTransaction(String transactionId) throws ObjectStoreException {
+        Connection c = null;
+        try {
+            c = getConnection();
+            Statement s = c.createStatement();
+            try {
+                s.execute("ROLLBACK PREPARED '" + transactionId + "'");
+            } finally {
+                s.close();
+            }
+            os.flushObjectById();
+            tablesAltered.clear();
+        } catch (SQLException e) {
+            throw new ObjectStoreException("Error rolling back prepared transaction", e);
+        } finally {
+            releaseConnection(c);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
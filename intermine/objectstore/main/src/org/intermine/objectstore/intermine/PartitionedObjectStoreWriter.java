@@ -0,0 +1,304 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.log4j.Logger;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.ObjectStoreWriter;
+import org.intermine.util.SynchronisedIterator;
+
+/**
+ * A set of ObjectStoreWriters for the same database, each with its own Connection and Batch, so
+ * that bulk writes can be spread over several threads and database backends. The child writers
+ * share a transaction boundary: beginTransaction(), commitTransaction() and abortTransaction()
+ * apply to all of them together.
+ * <p>
+ * A commit first flushes the batches of all the children, so that errors in the data abort all
+ * of them before anything is committed. If twoPhaseCommit is set, the children's transactions
+ * are then prepared with PREPARE TRANSACTION and committed with COMMIT PREPARED, so that either
+ * all or none of them are committed even if the database fails part way through. This requires
+ * max_prepared_transactions to be set in the PostgreSQL configuration. Otherwise the children are
+ * committed one after another.
+ * <p>
+ * Each child writer should only be used by one thread at a time, as the Connection of an
+ * ObjectStoreWriterInterMineImpl is its concurrency control.
+ *
+ * @author julie
+ */
+public class PartitionedObjectStoreWriter
+{
+    private static final Logger LOG = Logger.getLogger(PartitionedObjectStoreWriter.class);
+
+    private final List<ObjectStoreWriterInterMineImpl> writers =
+        new ArrayList<ObjectStoreWriterInterMineImpl>();
+    private boolean twoPhaseCommit = false;
+    private int transactionCount = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param os an ObjectStoreInterMineImpl to write to
+     * @param partitions the number of child writers
+     * @throws ObjectStoreException if the connections cannot be obtained
+     */
+    public PartitionedObjectStoreWriter(ObjectStore os, int partitions)
+        throws ObjectStoreException {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("partitions must be at least 1, was "
+                    + partitions);
+        }
+        try {
+            for (int i = 0; i < partitions; i++) {
+                writers.add(new ObjectStoreWriterInterMineImpl(os));
+            }
+        } catch (ObjectStoreException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Set whether to commit with PostgreSQL two-phase commit.
+     *
+     * @param twoPhaseCommit true to use PREPARE TRANSACTION and COMMIT PREPARED
+     */
+    public void setTwoPhaseCommit(boolean twoPhaseCommit) {
+        this.twoPhaseCommit = twoPhaseCommit;
+    }
+
+    /**
+     * Returns the number of child writers.
+     *
+     * @return an int
+     */
+    public int size() {
+        return writers.size();
+    }
+
+    /**
+     * Returns a child writer.
+     *
+     * @param partition the number of the writer, from 0 to size() - 1
+     * @return an ObjectStoreWriter
+     */
+    public ObjectStoreWriterInterMineImpl getWriter(int partition) {
+        return writers.get(partition);
+    }
+
+    /**
+     * Returns the child writer for a key, such as a chromosome or organism, so that all the
+     * writes for one key go through the same writer.
+     *
+     * @param key an Object
+     * @return an ObjectStoreWriter
+     */
+    public ObjectStoreWriterInterMineImpl getWriter(Object key) {
+        int hash = key.hashCode();
+        return writers.get(((hash % writers.size()) + writers.size()) % writers.size());
+    }
+
+    /**
+     * Begins a transaction on every child writer.
+     *
+     * @throws ObjectStoreException if any of them is already in a transaction
+     */
+    public void beginTransaction() throws ObjectStoreException {
+        for (ObjectStoreWriterInterMineImpl writer : writers) {
+            writer.beginTransaction();
+        }
+    }
+
+    /**
+     * Commits the transactions of all the child writers. If any of them cannot be flushed or
+     * prepared, all the transactions are aborted and an exception is thrown. If a prepared
+     * transaction cannot be committed, the others are still committed, and the ids of those that
+     * failed are logged and given in the exception.
+     *
+     * @throws ObjectStoreException if the transactions could not be committed
+     */
+    public void commitTransaction() throws ObjectStoreException {
+        try {
+            for (ObjectStoreWriterInterMineImpl writer : writers) {
+                writer.flushBatch();
+            }
+        } catch (ObjectStoreException e) {
+            abortTransaction();
+            throw e;
+        }
+        if (twoPhaseCommit) {
+            String prefix = "osw_" + System.identityHashCode(this) + "_"
+                + System.currentTimeMillis() + "_" + (transactionCount++) + "_";
+            int prepared = 0;
+            try {
+                for (ObjectStoreWriterInterMineImpl writer : writers) {
+                    writer.prepareTransaction(prefix + prepared);
+                    prepared++;
+                }
+            } catch (ObjectStoreException e) {
+                LOG.error("Failed to prepare transaction - rolling back", e);
+                for (int i = 0; i < writers.size(); i++) {
+                    try {
+                        if (i < prepared) {
+                            writers.get(i).rollbackPreparedTransaction(prefix + i);
+                        } else if (writers.get(i).isInTransaction()) {
+                            writers.get(i).abortTransaction();
+                        }
+                    } catch (ObjectStoreException e2) {
+                        LOG.error("Failed to roll back transaction " + prefix + i, e2);
+                    }
+                }
+                throw e;
+            }
+            // Every prepared transaction must be committed, even if one of them fails, or the rest
+            // would hold their locks until removed from pg_prepared_xacts by hand
+            ObjectStoreException failure = null;
+            List<String> leftOver = new ArrayList<String>();
+            for (int i = 0; i < writers.size(); i++) {
+                try {
+                    writers.get(i).commitPreparedTransaction(prefix + i);
+                } catch (ObjectStoreException e) {
+                    LOG.error("Failed to commit prepared transaction " + prefix + i, e);
+                    leftOver.add(prefix + i);
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+            if (failure != null) {
+                LOG.error("Prepared transactions " + leftOver + " could not be committed and may"
+                        + " need to be committed or rolled back by hand");
+                throw new ObjectStoreException("Failed to commit prepared transactions "
+                        + leftOver, failure);
+            }
+        } else {
+            for (ObjectStoreWriterInterMineImpl writer : writers) {
+                writer.commitTransaction();
+            }
+        }
+    }
+
+    /**
+     * Aborts the transactions of all the child writers that are in one.
+     *
+     * @throws ObjectStoreException if an error occurs
+     */
+    public void abortTransaction() throws ObjectStoreException {
+        ObjectStoreException failure = null;
+        for (ObjectStoreWriterInterMineImpl writer : writers) {
+            try {
+                if (writer.isInTransaction()) {
+                    writer.abortTransaction();
+                }
+            } catch (ObjectStoreException e) {
+                LOG.error("Failed to abort transaction", e);
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Performs a job for each of a collection of keys, spreading them over the child writers with
+     * one thread per writer. Each job is given a writer to itself while it runs. If any job
+     * throws an exception, no more jobs are started and the first exception is rethrown once the
+     * running jobs have finished.
+     *
+     * @param keys the keys, for example chromosome ids
+     * @param job the job to perform for each key
+     * @param <T> the type of the keys
+     * @throws ObjectStoreException if a job fails
+     */
+    public <T> void process(Collection<T> keys, final Job<T> job) throws ObjectStoreException {
+        final Iterator<T> keyIter = new SynchronisedIterator<T>(keys.iterator());
+        final List<Exception> exceptions =
+            Collections.synchronizedList(new ArrayList<Exception>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < writers.size(); i++) {
+            final ObjectStoreWriter writer = writers.get(i);
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (exceptions.isEmpty() && keyIter.hasNext()) {
+                            job.process(keyIter.next(), writer);
+                        }
+                    } catch (NoSuchElementException e) {
+                        // Another thread took the last key
+                    } catch (Exception e) {
+                        LOG.error("Exception while processing in worker thread", e);
+                        exceptions.add(e);
+                    }
+                }
+            });
+            worker.setName("PartitionedObjectStoreWriter thread " + i);
+            threads.add(worker);
+            worker.start();
+        }
+        for (Thread worker : threads) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                throw new ObjectStoreException("Interrupted while waiting for worker threads", e);
+            }
+        }
+        if (!exceptions.isEmpty()) {
+            throw new ObjectStoreException("Exception while executing in worker thread",
+                    exceptions.get(0));
+        }
+    }
+
+    /**
+     * Closes all the child writers. Any open transactions are aborted.
+     *
+     * @throws ObjectStoreException if an error occurs
+     */
+    public void close() throws ObjectStoreException {
+        ObjectStoreException failure = null;
+        for (ObjectStoreWriterInterMineImpl writer : writers) {
+            try {
+                writer.close();
+            } catch (ObjectStoreException e) {
+                failure = e;
+            }
+        }
+        writers.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * A piece of work to be done for one key with a child writer.
+     *
+     * @param <T> the type of the keys
+     */
+    public interface Job<T>
+    {
+        /**
+         * Perform the work for a key.
+         *
+         * @param key the key
+         * @param osw the writer to use, which no other thread is using
+         * @throws Exception if anything goes wrong
+         */
+        void process(T key, ObjectStoreWriter osw) throws Exception;
+    }
+}
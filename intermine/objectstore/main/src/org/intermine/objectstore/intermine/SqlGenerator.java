@@ -24,6 +24,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
@@ -96,6 +97,7 @@ import org.intermine.objectstore.query.iql.IqlQuery;
 import org.intermine.sql.Database;
 import org.intermine.sql.DatabaseUtil;
 import org.intermine.util.AlwaysMap;
+import org.intermine.util.BoundedCacheMap;
 import org.intermine.util.CombinedIterator;
 import org.intermine.util.DynamicUtil;
 
@@ -125,6 +127,12 @@ public final class SqlGenerator
         = new WeakHashMap<DatabaseSchema, Map<Query, CacheEntry>>();
     protected static Map<DatabaseSchema, Map<Query, Set<Object>>> tablenamesCache
         = new WeakHashMap<DatabaseSchema, Map<Query, Set<Object>>>();
+    protected static Map<DatabaseSchema, Map<String, SqlTemplate>> templateCache
+        = new WeakHashMap<DatabaseSchema, Map<String, SqlTemplate>>();
+
+    private static final int TEMPLATE_CACHE_SIZE = 1000;
+    // Marks the position of a value in SQL generated for a template
+    private static final char SLOT_MARKER = '\u0000';
 
     /**
      * Generates a query to retrieve a single object from the database, by id.
@@ -392,7 +400,7 @@ public final class SqlGenerator
                     }
                 }
             }
-            String sql = generate(q, schema, db, null, QUERY_NORMAL, bagTableNames);
+            String sql = generateFromTemplate(q, schema, db, bagTableNames);
             /*if (cached == null) {
                 cached = new TreeMap();
                 schemaCache.put(q, cached);
@@ -421,6 +429,66 @@ public final class SqlGenerator
         }
     }
 
+    /**
+     * Converts a Query object into an SQL String, filling in a template cached from an earlier
+     * query of the same shape if there is one. The shape of a query is its IQL with the
+     * QueryValues replaced by placeholders, so queries that differ only in the values they
+     * constrain against, like runs of the same template query by different users, share a
+     * template. Queries with bags or objects as parameters are always generated from scratch.
+     *
+     * @param q the Query to convert
+     * @param schema the DatabaseSchema in which to look up metadata
+     * @param db the Database that the ObjectStore uses
+     * @param bagTableNames a Map from BagConstraints to table names, where the table contains the
+     *        contents of the bag that are relevant for the BagConstraint
+     * @return a String suitable for passing to an SQL server
+     * @throws ObjectStoreException if something goes wrong
+     */
+    protected static String generateFromTemplate(Query q, DatabaseSchema schema, Database db,
+            Map<Object, String> bagTableNames) throws ObjectStoreException {
+        List<QueryValue> values = new ArrayList<QueryValue>();
+        String shape = IqlQuery.queryShape(q, values);
+        if (shape == null) {
+            return generate(q, schema, db, null, QUERY_NORMAL, bagTableNames);
+        }
+        Map<String, SqlTemplate> templates = getTemplateCacheForSchema(schema);
+        SqlTemplate template = templates.get(shape);
+        if ((template != null) && (template.getDb() == db)) {
+            return template.fill(values);
+        }
+        Map<QueryValue, Integer> valueSlots = new IdentityHashMap<QueryValue, Integer>();
+        for (int i = 0; i < values.size(); i++) {
+            valueSlots.put(values.get(i), new Integer(i));
+        }
+        String marked = generate(q, schema, db, null, QUERY_NORMAL, bagTableNames, valueSlots);
+        template = SqlTemplate.parse(marked, db);
+        if (template == null) {
+            // A marker character turned up in the text of the query itself
+            return generate(q, schema, db, null, QUERY_NORMAL, bagTableNames);
+        }
+        templates.put(shape, template);
+        return template.fill(values);
+    }
+
+    /**
+     * Returns a cache of SQL templates specific to a particular DatabaseSchema.
+     *
+     * @param schema the DatabaseSchema
+     * @return a Map from query shape to SqlTemplate
+     */
+    private static Map<String, SqlTemplate> getTemplateCacheForSchema(DatabaseSchema schema) {
+        synchronized (templateCache) {
+            Map<String, SqlTemplate> retval = templateCache.get(schema);
+            if (retval == null) {
+                retval = new BoundedCacheMap<String, SqlTemplate>(SqlGenerator.class.getName()
+                        + " templates for model " + schema.getModel().getName(),
+                        TEMPLATE_CACHE_SIZE);
+                templateCache.put(schema, retval);
+            }
+            return retval;
+        }
+    }
+
     /**
      * Converts a Query object into an SQL String.
      *
@@ -437,6 +505,28 @@ public final class SqlGenerator
     public static String generate(Query q, DatabaseSchema schema, Database db,
             Constraint offsetCon, int kind,
             Map<Object, String> bagTableNames) throws ObjectStoreException {
+        return generate(q, schema, db, offsetCon, kind, bagTableNames, null);
+    }
+
+    /**
+     * Converts a Query object into an SQL String, optionally marking where QueryValues appear.
+     *
+     * @param q the Query to convert
+     * @param schema the DatabaseSchema in which to look up metadata
+     * @param db the Database that the ObjectStore uses
+     * @param offsetCon an additional constraint for improving the speed of large offsets
+     * @param kind Query type
+     * @param bagTableNames a Map from BagConstraints to table names, where the table contains the
+     *        contents of the bag that are relevant for the BagConstraint
+     * @param valueSlots a Map from QueryValue objects in the top level of the query to slot
+     *        numbers, which are written into the SQL between SLOT_MARKERs instead of the values,
+     *        or null to write all values
+     * @return a String suitable for passing to an SQL server
+     * @throws ObjectStoreException if something goes wrong
+     */
+    private static String generate(Query q, DatabaseSchema schema, Database db,
+            Constraint offsetCon, int kind, Map<Object, String> bagTableNames,
+            Map<QueryValue, Integer> valueSlots) throws ObjectStoreException {
         State state = new State();
         List<QuerySelectable> selectList = q.getSelect();
         if ((selectList.size() == 1) && (selectList.get(0) instanceof ObjectStoreBag)) {
@@ -473,6 +563,7 @@ public final class SqlGenerator
         }
         state.setDb(db);
         state.setBagTableNames(bagTableNames);
+        state.setValueSlots(valueSlots);
         buildFromComponent(state, q, schema, bagTableNames);
         buildWhereClause(state, q, q.getConstraint(), schema);
         buildWhereClause(state, q, offsetCon, schema);
@@ -2389,9 +2480,14 @@ public final class SqlGenerator
             }
         } else if (node instanceof QueryValue) {
             QueryValue nodeV = (QueryValue) node;
-            Object value = nodeV.getValue();
+            Integer slot = state.getValueSlot(nodeV);
+            if (slot != null) {
+                buffer.append(SLOT_MARKER).append(slot).append(SLOT_MARKER);
+            } else {
+                Object value = nodeV.getValue();
 
-            objectToString(buffer, value);
+                objectToString(buffer, value);
+            }
         } else if (node instanceof QueryCast) {
             buffer.append("(");
             queryEvaluableToString(buffer, ((QueryCast) node).getValue(), q, state);
@@ -2650,6 +2746,9 @@ public final class SqlGenerator
         // bag that are relevant for the BagConstraint
         private Map<Object, String> bagTableNames = new HashMap<Object, String>();
 
+        // a Map from QueryValues to the slots in an SqlTemplate that they fill, or null
+        private Map<QueryValue, Integer> valueSlots = null;
+
         public State() {
             // empty
         }
@@ -2739,6 +2838,78 @@ public final class SqlGenerator
         public Database getDb() {
             return db;
         }
+
+        public void setValueSlots(Map<QueryValue, Integer> valueSlots) {
+            this.valueSlots = valueSlots;
+        }
+
+        public Integer getValueSlot(QueryValue value) {
+            return (valueSlots == null ? null : valueSlots.get(value));
+        }
+    }
+
+    /**
+     * The SQL for a shape of query, split around the places where the values go.
+     */
+    private static class SqlTemplate
+    {
+        private String[] fragments;
+        private int[] slots;
+        private Database db;
+
+        public SqlTemplate(String[] fragments, int[] slots, Database db) {
+            this.fragments = fragments;
+            this.slots = slots;
+            this.db = db;
+        }
+
+        /**
+         * Splits SQL written with SLOT_MARKERs around slot numbers into a template.
+         *
+         * @param marked the SQL
+         * @param db the Database the SQL was generated for
+         * @return an SqlTemplate, or null if the markers are not paired up
+         */
+        public static SqlTemplate parse(String marked, Database db) {
+            String[] parts = marked.split(String.valueOf(SLOT_MARKER), -1);
+            if (parts.length % 2 == 0) {
+                return null;
+            }
+            String[] fragments = new String[parts.length / 2 + 1];
+            int[] slots = new int[parts.length / 2];
+            for (int i = 0; i < parts.length; i++) {
+                if (i % 2 == 0) {
+                    fragments[i / 2] = parts[i];
+                } else {
+                    try {
+                        slots[i / 2] = Integer.parseInt(parts[i]);
+                    } catch (NumberFormatException e) {
+                        return null;
+                    }
+                }
+            }
+            return new SqlTemplate(fragments, slots, db);
+        }
+
+        public Database getDb() {
+            return db;
+        }
+
+        /**
+         * Writes the SQL for a query with the given values.
+         *
+         * @param values the QueryValues of the query, in the order of its shape placeholders
+         * @return the SQL
+         * @throws ObjectStoreException if a value cannot be written as SQL
+         */
+        public String fill(List<QueryValue> values) throws ObjectStoreException {
+            StringBuffer retval = new StringBuffer(fragments[0]);
+            for (int i = 0; i < slots.length; i++) {
+                objectToString(retval, values.get(slots[i]).getValue());
+                retval.append(fragments[i + 1]);
+            }
+            return retval.toString();
+        }
     }
 
     private static class CacheEntry
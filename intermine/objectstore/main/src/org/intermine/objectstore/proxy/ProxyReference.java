@@ -15,6 +15,7 @@ import org.intermine.model.InterMineObject;
 import org.intermine.model.StringConstructor;
 import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.intermine.CompactNotXmlReader;
 import org.intermine.objectstore.translating.ObjectStoreTranslatingImpl;
 import org.intermine.objectstore.translating.Translator;
 
@@ -126,6 +127,14 @@ public class ProxyReference implements InterMineObject, Lazy
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public void setoBJECT(@SuppressWarnings("unused") CompactNotXmlReader reader,
+            @SuppressWarnings("unused") ObjectStore os) {
+        throw new UnsupportedOperationException();
+    }
+
     /**
      * {@inheritDoc}
      */
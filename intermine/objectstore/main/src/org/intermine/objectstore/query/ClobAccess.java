@@ -15,25 +15,46 @@ import static org.intermine.objectstore.query.Clob.CLOB_PAGE_SIZE;
 import java.io.PrintStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.objectstore.proxy.Lazy;
 
 /**
  * Class used to read a Clob from the ObjectStore.
+ * <p>
+ * If the length of the Clob is known when this object is created, which it is for Clobs written
+ * by this version of the ObjectStoreWriter and for all subsequences, then this object only ever
+ * fetches the clob pages that cover the characters from offset to offset + length, a window of
+ * pages at a time. Otherwise, the length is discovered from the database the first time it is
+ * needed, and the pages are read through a SingletonResults over the whole Clob.
+ * <p>
+ * A Clob holding a nucleotide sequence may be stored packed by the PackedSequenceCodec, in which
+ * case each page is unpacked as it is read. The description of a packed Clob starts with the
+ * PACKED_PREFIX.
  *
  * @author Matthew Wakeling
  */
 public class ClobAccess implements CharSequence, Lazy
 {
+    /** The number of pages to fetch from the database at once when reading a range. */
+    public static final int PAGE_WINDOW = 20;
+    /** The prefix of the database description of a packed Clob. */
+    public static final String PACKED_PREFIX = "P";
+
     protected ObjectStore os;
     protected SingletonResults results;
     protected Clob clob;
     protected int offset;
     protected int length;
+    protected boolean lengthKnown;
+    protected boolean packed;
     protected boolean subSequence;
+    private PageWindow window;
 
     /**
      * Protected constructor for use by PendingClob only.
@@ -52,44 +73,141 @@ public class ClobAccess implements CharSequence, Lazy
         this.os = os;
         this.clob = clob;
         offset = 0;
+        lengthKnown = false;
+        subSequence = false;
+    }
+
+    /**
+     * Construct a ClobAccess object from an ObjectStore and a Clob of known length. The database
+     * is not asked for the size of the Clob.
+     *
+     * @param os the ObjectStore that the Clob is stored in
+     * @param clob the Clob to access
+     * @param length the number of characters in the Clob
+     */
+    public ClobAccess(ObjectStore os, Clob clob, int length) {
+        this(os, clob, length, false);
+    }
+
+    /**
+     * Construct a ClobAccess object from an ObjectStore and a Clob of known length, which may be
+     * stored packed.
+     *
+     * @param os the ObjectStore that the Clob is stored in
+     * @param clob the Clob to access
+     * @param length the number of characters in the Clob
+     * @param packed true if the pages of the Clob are packed by the PackedSequenceCodec
+     */
+    public ClobAccess(ObjectStore os, Clob clob, int length, boolean packed) {
+        this.os = os;
+        this.clob = clob;
+        this.length = length;
+        this.packed = packed;
+        offset = 0;
+        lengthKnown = true;
         subSequence = false;
     }
 
     /**
-     * Construct a ClobAccess object representing a subsequence of an existing ClobAccess object.
+     * Construct a ClobAccess object representing a subsequence of a Clob.
      *
-     * @param results the SingletonResults object backing the object
+     * @param os the ObjectStore that the Clob is stored in
+     * @param results the SingletonResults object backing the parent object, or null
      * @param clob the Clob to access
      * @param offset the offset
      * @param length the length
+     * @param packed true if the pages of the Clob are packed
      */
-    private ClobAccess(SingletonResults results, Clob clob, int offset, int length) {
+    private ClobAccess(ObjectStore os, SingletonResults results, Clob clob, int offset,
+            int length, boolean packed) {
+        this.os = os;
+        this.packed = packed;
         this.results = results;
         this.clob = clob;
         this.offset = offset;
         this.length = length;
-        os = results.getObjectStore();
+        lengthKnown = true;
         subSequence = true;
     }
 
     /**
      * Initialises the state of this object. This is done lazily, because it requires the use of a
      * database connection to discover the length of the clob, and that cannot be done while inside
-     * the ObjectStoreWriter while it has exclusive use of the connection.
+     * the ObjectStoreWriter while it has exclusive use of the connection. If the length is already
+     * known, this does nothing.
      */
     protected void init() {
-        if (results == null) {
+        if (!lengthKnown) {
             Query q = new Query();
             q.addToSelect(clob);
-            results = os.executeSingleton(q, 20, false, false, true);
+            results = os.executeSingleton(q, PAGE_WINDOW, false, false, true);
             int pageCount = results.size();
             if (pageCount == 0) {
                 length = 0;
             } else {
-                String lastPage = (String) results.get(pageCount - 1);
+                String lastPage = unpack((String) results.get(pageCount - 1));
                 length = CLOB_PAGE_SIZE * (pageCount - 1) + lastPage.length();
             }
+            lengthKnown = true;
+        }
+    }
+
+    /**
+     * Returns the text of a page of the underlying clob, which must be one of the pages covering
+     * this object. Pages are read from the database a window at a time, and only pages that
+     * overlap this object are read.
+     *
+     * @param page the page number in the underlying clob
+     * @return the text of the page
+     */
+    protected String getPage(int page) {
+        if (results != null) {
+            return unpack((String) results.get(page));
+        }
+        PageWindow w = window;
+        if ((w == null) || (page < w.start) || (page >= w.start + w.pages.size())) {
+            // Windows are aligned to the first page, so that reading the pages backwards does
+            // not fetch each page many times.
+            int lowestPage = offset / CLOB_PAGE_SIZE;
+            int highestPage = (offset + length - 1) / CLOB_PAGE_SIZE;
+            int start = lowestPage + ((page - lowestPage) / PAGE_WINDOW) * PAGE_WINDOW;
+            int limit = Math.min(PAGE_WINDOW, highestPage - start + 1);
+            w = new PageWindow(start, fetchPages(start, limit));
+            if (page >= w.start + w.pages.size()) {
+                throw new IndexOutOfBoundsException("Clob " + clob.getClobId() + " has no page "
+                        + page);
+            }
+            window = w;
         }
+        return w.pages.get(page - w.start);
+    }
+
+    /**
+     * Fetches a range of pages of the underlying clob from the database.
+     *
+     * @param start the first page to fetch
+     * @param limit the number of pages to fetch
+     * @return a List of the text of the pages, which is shorter than limit if the clob ends
+     */
+    protected List<String> fetchPages(int start, int limit) {
+        Query q = new Query();
+        q.addToSelect(clob);
+        List<ResultsRow<Object>> rows;
+        try {
+            rows = os.execute(q, start, limit, false, false, ObjectStore.SEQUENCE_IGNORE);
+        } catch (ObjectStoreException e) {
+            throw new RuntimeException("ObjectStore error has occurred reading pages " + start
+                    + " to " + (start + limit - 1) + " of Clob " + clob.getClobId(), e);
+        }
+        List<String> pages = new ArrayList<String>(rows.size());
+        for (ResultsRow<Object> row : rows) {
+            pages.add(unpack((String) row.get(0)));
+        }
+        return pages;
+    }
+
+    private String unpack(String page) {
+        return packed ? PackedSequenceCodec.decode(page) : page;
     }
 
     /**
@@ -125,9 +243,9 @@ public class ClobAccess implements CharSequence, Lazy
         if (index >= length) {
             throw new IndexOutOfBoundsException("index is not less than length");
         }
-        int page = index / CLOB_PAGE_SIZE;
-        String pageText = (String) results.get(page);
-        return pageText.charAt(index - page * CLOB_PAGE_SIZE);
+        int page = (offset + index) / CLOB_PAGE_SIZE;
+        String pageText = getPage(page);
+        return pageText.charAt(offset + index - page * CLOB_PAGE_SIZE);
     }
 
     /**
@@ -164,7 +282,7 @@ public class ClobAccess implements CharSequence, Lazy
         if ((start == 0) && (end == length)) {
             return this;
         }
-        return new ClobAccess(results, clob, start + offset, end - start);
+        return new ClobAccess(os, results, clob, start + offset, end - start, packed);
     }
 
     /**
@@ -190,7 +308,7 @@ public class ClobAccess implements CharSequence, Lazy
             int lowestPage = offset / CLOB_PAGE_SIZE;
             int highestPage = (offset + length - 1) / CLOB_PAGE_SIZE;
             for (int page = lowestPage; page <= highestPage; page++) {
-                String pageText = (String) results.get(page);
+                String pageText = getPage(page);
                 if (page == highestPage) {
                     pageText = pageText.substring(0, offset + length - page * CLOB_PAGE_SIZE);
                 }
@@ -211,10 +329,13 @@ public class ClobAccess implements CharSequence, Lazy
      */
     public void drainToPrintStream(PrintStream out) {
         init();
+        if (length == 0) {
+            return;
+        }
         int lowestPage = offset / CLOB_PAGE_SIZE;
         int highestPage = (offset + length - 1) / CLOB_PAGE_SIZE;
         for (int page = lowestPage; page <= highestPage; page++) {
-            String pageText = (String) results.get(page);
+            String pageText = getPage(page);
             if (page == highestPage) {
                 pageText = pageText.substring(0, offset + length - page * CLOB_PAGE_SIZE);
             }
@@ -227,15 +348,17 @@ public class ClobAccess implements CharSequence, Lazy
 
     /**
      * Returns a String that describes this object sufficiently for it to be recreated given an
-     * ObjectStore. This format is stored in the database.
+     * ObjectStore. This format is stored in the database. The length is included whenever it is
+     * known, so that the object read back from the database does not have to discover it.
      *
      * @return a String
      */
     public String getDbDescription() {
-        if (subSequence) {
-            return clob.getClobId() + "," + offset + "," + length();
+        String id = (packed ? PACKED_PREFIX : "") + clob.getClobId();
+        if (subSequence || lengthKnown) {
+            return id + "," + offset + "," + length;
         } else {
-            return clob.getClobId() + "";
+            return id;
         }
     }
 
@@ -258,6 +381,25 @@ public class ClobAccess implements CharSequence, Lazy
         return length;
     }
 
+    /**
+     * Returns true if the length of this object is known without asking the database, for use by
+     * subclass constructors.
+     *
+     * @return a boolean
+     */
+    public boolean isLengthKnown() {
+        return lengthKnown;
+    }
+
+    /**
+     * Returns true if the pages of the Clob are packed by the PackedSequenceCodec.
+     *
+     * @return a boolean
+     */
+    public boolean isPacked() {
+        return packed;
+    }
+
     /**
      * Returns the (possibly uninitialised) results object used internally by this object, for use
      * by subclass constructors.
@@ -293,11 +435,18 @@ public class ClobAccess implements CharSequence, Lazy
      */
     public static ClobAccess decodeDbDescription(ObjectStore os, String description) {
         String[] parts = description.split(",");
-        ClobAccess clob = new ClobAccess(os, new Clob(Integer.parseInt(parts[0])));
+        boolean packed = parts[0].startsWith(PACKED_PREFIX);
+        int clobId = Integer.parseInt(packed ? parts[0].substring(PACKED_PREFIX.length())
+                : parts[0]);
+        ClobAccess clob;
         if (parts.length >= 3) {
+            // The length is stored, so there is no need to ask the database for it
             int offset = Integer.parseInt(parts[1]);
             int length = Integer.parseInt(parts[2]);
-            clob = clob.subSequence(offset, offset + length);
+            clob = new ClobAccess(os, null, new Clob(clobId), offset, length, packed);
+        } else {
+            clob = new ClobAccess(os, new Clob(clobId));
+            clob.packed = packed;
         }
         String className = null;
         if (parts.length == 2) {
@@ -336,6 +485,20 @@ public class ClobAccess implements CharSequence, Lazy
         return clob;
     }
 
+    /**
+     * A run of consecutive pages read from the database.
+     */
+    private static class PageWindow
+    {
+        final int start;
+        final List<String> pages;
+
+        PageWindow(int start, List<String> pages) {
+            this.start = start;
+            this.pages = pages;
+        }
+    }
+
     /**
      * Class to provide fast access to the constructor of plugin subclasses of ClobAccess.
      *
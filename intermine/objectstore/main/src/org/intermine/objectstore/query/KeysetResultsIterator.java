@@ -0,0 +1,302 @@
+package org.intermine.objectstore.query;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.log4j.Logger;
+import org.intermine.metadata.ConstraintOp;
+import org.intermine.model.FastPathObject;
+import org.intermine.model.InterMineObject;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreException;
+
+/**
+ * An Iterator over the rows of a Query that fetches each batch by seeking past the last row of
+ * the previous batch, rather than with an OFFSET. Each batch is a copy of the query with an extra
+ * constraint that the ORDER BY columns come after their values in the last row, so fetching a
+ * batch costs the same however far through the results it is.
+ * <p>
+ * The values of the ORDER BY columns are read from the objects in the SELECT list, so this only
+ * works for DISTINCT queries whose effective ORDER BY consists of classes and attributes of
+ * classes in the SELECT list, which is the case for queries made from PathQueries. Use
+ * isApplicable() to check a query first. NULLs are assumed to sort as in PostgreSQL, that is
+ * after all other values in ascending order.
+ *
+ * @author julie
+ */
+public class KeysetResultsIterator implements Iterator<ResultsRow<Object>>
+{
+    private static final Logger LOG = Logger.getLogger(KeysetResultsIterator.class);
+
+    private final ObjectStore os;
+    private final Query query;
+    private final int batchSize;
+    private final List<KeyPart> keyParts;
+    private List<ResultsRow<Object>> batch = Collections.emptyList();
+    private int position = 0;
+    private boolean finished = false;
+    private boolean started = false;
+    private int batchCount = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param os the ObjectStore to run the query in
+     * @param query the Query, which must be applicable
+     * @param batchSize the number of rows to fetch at once
+     * @throws IllegalArgumentException if the query cannot be paged by its ORDER BY values
+     */
+    public KeysetResultsIterator(ObjectStore os, Query query, int batchSize) {
+        this.os = os;
+        this.query = query;
+        this.batchSize = batchSize;
+        this.keyParts = getKeyParts(query);
+        if (keyParts == null) {
+            throw new IllegalArgumentException("Cannot page by ORDER BY values for query "
+                    + query);
+        }
+    }
+
+    /**
+     * Returns whether a query can be paged by the values of its ORDER BY columns.
+     *
+     * @param q a Query
+     * @return true if a KeysetResultsIterator can be created for the query
+     */
+    public static boolean isApplicable(Query q) {
+        return getKeyParts(q) != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasNext() {
+        if (position < batch.size()) {
+            return true;
+        }
+        if (finished) {
+            return false;
+        }
+        fetchBatch();
+        return position < batch.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ResultsRow<Object> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return batch.get(position++);
+    }
+
+    /**
+     * This method is not supported.
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Returns the number of batches fetched so far.
+     *
+     * @return an int
+     */
+    public int getBatchCount() {
+        return batchCount;
+    }
+
+    private void fetchBatch() {
+        Query q = query;
+        // The first batch is run with EXPLAIN, like a Results, so that a query that would take
+        // too long throws an ObjectStoreQueryDurationException before anything is fetched. The
+        // later batches only seek further through the same query.
+        boolean explain = !started;
+        if (started) {
+            Constraint after = getAfterConstraint(batch.get(batch.size() - 1));
+            if (after == null) {
+                finished = true;
+                batch = Collections.emptyList();
+                position = 0;
+                return;
+            }
+            q = QueryCloner.cloneQuery(query);
+            Constraint existing = q.getConstraint();
+            if (existing == null) {
+                q.setConstraint(after);
+            } else if ((existing instanceof ConstraintSet)
+                    && ConstraintOp.AND.equals(existing.getOp())) {
+                ((ConstraintSet) existing).addConstraint(after);
+            } else {
+                ConstraintSet cs = new ConstraintSet(ConstraintOp.AND);
+                cs.addConstraint(existing);
+                cs.addConstraint(after);
+                q.setConstraint(cs);
+            }
+        }
+        started = true;
+        try {
+            batch = os.execute(q, 0, batchSize, true, explain, ObjectStore.SEQUENCE_IGNORE);
+        } catch (ObjectStoreException e) {
+            throw new RuntimeException("Error fetching batch " + batchCount + " of " + query, e);
+        }
+        batchCount++;
+        position = 0;
+        if (batch.size() < batchSize) {
+            finished = true;
+        }
+        LOG.debug("Fetched batch " + batchCount + " of " + batch.size() + " rows");
+    }
+
+    /**
+     * Builds the constraint that a row comes after the given row in the ORDER BY: for some
+     * column, all the earlier columns are equal and that column comes after.
+     */
+    private Constraint getAfterConstraint(ResultsRow<Object> row) {
+        ConstraintSet or = new ConstraintSet(ConstraintOp.OR);
+        List<Constraint> equalSoFar = new ArrayList<Constraint>();
+        for (KeyPart part : keyParts) {
+            Object value = part.getValue(row);
+            Constraint after = part.after(value);
+            if (after != null) {
+                ConstraintSet and = new ConstraintSet(ConstraintOp.AND);
+                for (Constraint equal : equalSoFar) {
+                    and.addConstraint(equal);
+                }
+                and.addConstraint(after);
+                or.addConstraint(and);
+            }
+            equalSoFar.add(part.equalTo(value));
+        }
+        return or.getConstraints().isEmpty() ? null : or;
+    }
+
+    private static List<KeyPart> getKeyParts(Query q) {
+        if (!q.isDistinct() || !q.getGroupBy().isEmpty() || (q.getLimit() != Integer.MAX_VALUE)) {
+            return null;
+        }
+        List<QuerySelectable> select = q.getSelect();
+        List<KeyPart> parts = new ArrayList<KeyPart>();
+        for (Object node : q.getEffectiveOrderBy()) {
+            boolean desc = false;
+            if (node instanceof OrderDescending) {
+                desc = true;
+                node = ((OrderDescending) node).getQueryOrderable();
+            }
+            if (node instanceof QueryClass) {
+                QueryClass qc = (QueryClass) node;
+                int column = select.indexOf(qc);
+                if ((column == -1) || !InterMineObject.class.isAssignableFrom(qc.getType())) {
+                    return null;
+                }
+                parts.add(new KeyPart(new QueryField(qc, "id"), desc, column, "id", false));
+            } else if (node instanceof QueryField) {
+                QueryField qf = (QueryField) node;
+                if (!(qf.getFromElement() instanceof QueryClass)
+                        || (qf.getSecondFieldName() != null) || !isOrderable(qf.getType())) {
+                    return null;
+                }
+                int column = select.indexOf(qf);
+                if (column != -1) {
+                    parts.add(new KeyPart(qf, desc, column, null, true));
+                } else {
+                    column = select.indexOf(qf.getFromElement());
+                    if (column == -1) {
+                        return null;
+                    }
+                    parts.add(new KeyPart(qf, desc, column, qf.getFieldName(), true));
+                }
+            } else if (!(node instanceof QueryPathExpression)) {
+                // Path expressions are not part of the SQL ORDER BY, and depend only on the rest
+                // of the row. Anything else we can't read back from the results.
+                return null;
+            }
+        }
+        return parts.isEmpty() ? null : parts;
+    }
+
+    private static boolean isOrderable(Class<?> type) {
+        return String.class.equals(type) || Date.class.equals(type)
+            || Short.class.equals(type) || Integer.class.equals(type) || Long.class.equals(type)
+            || Float.class.equals(type) || Double.class.equals(type)
+            || BigDecimal.class.equals(type);
+    }
+
+    /**
+     * One column of the ORDER BY, and where to find its value in a row.
+     */
+    private static class KeyPart
+    {
+        private final QueryField field;
+        private final boolean desc;
+        private final int column;
+        private final String fieldName;
+        private final boolean nullable;
+
+        KeyPart(QueryField field, boolean desc, int column, String fieldName, boolean nullable) {
+            this.field = field;
+            this.desc = desc;
+            this.column = column;
+            this.fieldName = fieldName;
+            this.nullable = nullable;
+        }
+
+        Object getValue(ResultsRow<Object> row) {
+            Object o = row.get(column);
+            if (fieldName == null) {
+                return o;
+            }
+            try {
+                return ((FastPathObject) o).getFieldValue(fieldName);
+            } catch (IllegalAccessException e) {
+                throw new RuntimeException("Cannot read " + fieldName + " from " + o, e);
+            }
+        }
+
+        Constraint equalTo(Object value) {
+            if (value == null) {
+                return new SimpleConstraint(field, ConstraintOp.IS_NULL);
+            }
+            return new SimpleConstraint(field, ConstraintOp.EQUALS, new QueryValue(value));
+        }
+
+        /**
+         * Returns the constraint that the column comes after the value, or null if nothing can.
+         */
+        Constraint after(Object value) {
+            if (value == null) {
+                // NULLs come last ascending and first descending
+                return desc ? new SimpleConstraint(field, ConstraintOp.IS_NOT_NULL) : null;
+            }
+            SimpleConstraint beyond = new SimpleConstraint(field, desc ? ConstraintOp.LESS_THAN
+                    : ConstraintOp.GREATER_THAN, new QueryValue(value));
+            if (desc || !nullable) {
+                return beyond;
+            }
+            ConstraintSet cs = new ConstraintSet(ConstraintOp.OR);
+            cs.addConstraint(beyond);
+            cs.addConstraint(new SimpleConstraint(field, ConstraintOp.IS_NULL));
+            return cs;
+        }
+    }
+}
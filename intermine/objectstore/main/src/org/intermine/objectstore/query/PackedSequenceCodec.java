@@ -0,0 +1,218 @@
+package org.intermine.objectstore.query;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+/**
+ * Encodes and decodes the pages of a nucleotide sequence Clob in a packed form. Each of A, C, G
+ * and T takes two bits, and three bases are written as one character of the base64 alphabet, so
+ * that the page is still plain ASCII text that fits in the clob table. Anything else, such as
+ * runs of N or other IUPAC codes, is recorded in a list of exceptions, and lower case is recorded
+ * as a list of lower case runs, so that decoding gives back exactly the original text.
+ * <p>
+ * A packed page has the form <code>count;lower;exceptions;bases</code>, where count is the number
+ * of characters in the page, lower is a comma-separated list of <code>start+length</code> runs of
+ * lower case, and exceptions is a comma-separated list of <code>start+length+char</code> runs of
+ * the same character (given as a decimal char code) that is not A, C, G or T.
+ *
+ * @author julie
+ */
+public final class PackedSequenceCodec
+{
+    private static final String BASES = "ACGT";
+    private static final String ALPHABET =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+    private static final int BASES_PER_CHAR = 3;
+    // Roughly the number of characters that one run costs in the exception lists
+    private static final int RUN_COST = 12;
+    private static final int[] CODES = new int[128];
+    private static final int[] VALUES = new int[128];
+
+    static {
+        for (int i = 0; i < CODES.length; i++) {
+            CODES[i] = -1;
+            VALUES[i] = -1;
+        }
+        for (int i = 0; i < BASES.length(); i++) {
+            CODES[BASES.charAt(i)] = i;
+        }
+        for (int i = 0; i < ALPHABET.length(); i++) {
+            VALUES[ALPHABET.charAt(i)] = i;
+        }
+    }
+
+    private PackedSequenceCodec() {
+        // Hidden constructor.
+    }
+
+    /**
+     * Returns true if packing the given text would make it substantially smaller, which is the
+     * case for nucleotide sequences and not for proteins or other text.
+     *
+     * @param text the text that would be packed
+     * @return a boolean
+     */
+    public static boolean isWorthPacking(CharSequence text) {
+        int length = text.length();
+        if (length == 0) {
+            return false;
+        }
+        long cost = 0;
+        boolean lastLower = false;
+        char lastException = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            boolean lower = isLower(c);
+            char upper = lower ? Character.toUpperCase(c) : c;
+            if (lower && !lastLower) {
+                cost += RUN_COST;
+            }
+            if (code(upper) < 0) {
+                if (upper != lastException) {
+                    cost += RUN_COST;
+                }
+                lastException = upper;
+            } else {
+                lastException = 0;
+            }
+            lastLower = lower;
+        }
+        // Packing makes the bases a third of the size, so require it to save at least half
+        return cost + length / BASES_PER_CHAR < length / 2;
+    }
+
+    /**
+     * Packs part of a sequence.
+     *
+     * @param text the sequence
+     * @param start the index of the first character to pack
+     * @param end the index after the last character to pack
+     * @return the packed text
+     */
+    public static String encode(CharSequence text, int start, int end) {
+        int count = end - start;
+        StringBuilder lower = new StringBuilder();
+        StringBuilder exceptions = new StringBuilder();
+        StringBuilder bases = new StringBuilder((count + BASES_PER_CHAR - 1) / BASES_PER_CHAR);
+        int lowerStart = -1;
+        int exceptionStart = -1;
+        char exceptionChar = 0;
+        int packed = 0;
+        for (int i = 0; i < count; i++) {
+            char c = text.charAt(start + i);
+            boolean isLower = isLower(c);
+            char upper = isLower ? Character.toUpperCase(c) : c;
+            if (isLower && (lowerStart < 0)) {
+                lowerStart = i;
+            } else if (!isLower && (lowerStart >= 0)) {
+                appendRun(lower, lowerStart, i - lowerStart);
+                lowerStart = -1;
+            }
+            int code = code(upper);
+            if ((exceptionStart >= 0) && ((code >= 0) || (upper != exceptionChar))) {
+                appendRun(exceptions, exceptionStart, i - exceptionStart);
+                exceptions.append('+').append((int) exceptionChar);
+                exceptionStart = -1;
+            }
+            if (code < 0) {
+                if (exceptionStart < 0) {
+                    exceptionStart = i;
+                    exceptionChar = upper;
+                }
+                code = 0;
+            }
+            packed = (packed << 2) | code;
+            if (i % BASES_PER_CHAR == BASES_PER_CHAR - 1) {
+                bases.append(ALPHABET.charAt(packed));
+                packed = 0;
+            }
+        }
+        if (lowerStart >= 0) {
+            appendRun(lower, lowerStart, count - lowerStart);
+        }
+        if (exceptionStart >= 0) {
+            appendRun(exceptions, exceptionStart, count - exceptionStart);
+            exceptions.append('+').append((int) exceptionChar);
+        }
+        int remainder = count % BASES_PER_CHAR;
+        if (remainder > 0) {
+            bases.append(ALPHABET.charAt(packed << (2 * (BASES_PER_CHAR - remainder))));
+        }
+        return count + ";" + lower + ";" + exceptions + ";" + bases;
+    }
+
+    /**
+     * Unpacks a page packed by encode().
+     *
+     * @param packed the packed text
+     * @return the original text
+     * @throws IllegalArgumentException if the text is not a packed sequence
+     */
+    public static String decode(String packed) {
+        int first = packed.indexOf(';');
+        int second = packed.indexOf(';', first + 1);
+        int third = packed.indexOf(';', second + 1);
+        if ((first < 0) || (second < 0) || (third < 0)) {
+            throw new IllegalArgumentException("Not a packed sequence: "
+                    + packed.substring(0, Math.min(40, packed.length())));
+        }
+        int count = Integer.parseInt(packed.substring(0, first));
+        char[] retval = new char[count];
+        int index = 0;
+        for (int i = third + 1; (i < packed.length()) && (index < count); i++) {
+            int value = VALUES[packed.charAt(i)];
+            for (int shift = 2 * (BASES_PER_CHAR - 1); (shift >= 0) && (index < count);
+                    shift -= 2) {
+                retval[index++] = BASES.charAt((value >> shift) & 3);
+            }
+        }
+        if (second > first + 1) {
+            for (String run : packed.substring(first + 1, second).split(",")) {
+                String[] parts = run.split("\\+");
+                int start = Integer.parseInt(parts[0]);
+                int end = start + Integer.parseInt(parts[1]);
+                for (int i = start; i < end; i++) {
+                    // Exceptions are applied afterwards, so only the bases are lower case here
+                    retval[i] = Character.toLowerCase(retval[i]);
+                }
+            }
+        }
+        if (third > second + 1) {
+            for (String run : packed.substring(second + 1, third).split(",")) {
+                String[] parts = run.split("\\+");
+                int start = Integer.parseInt(parts[0]);
+                int end = start + Integer.parseInt(parts[1]);
+                char c = (char) Integer.parseInt(parts[2]);
+                for (int i = start; i < end; i++) {
+                    retval[i] = Character.isLowerCase(retval[i]) ? Character.toLowerCase(c) : c;
+                }
+            }
+        }
+        return new String(retval);
+    }
+
+    /**
+     * Returns true for lower case characters that survive a round trip through upper case.
+     */
+    private static boolean isLower(char c) {
+        return Character.isLowerCase(c) && (Character.toLowerCase(Character.toUpperCase(c)) == c);
+    }
+
+    private static int code(char c) {
+        return c < CODES.length ? CODES[c] : -1;
+    }
+
+    private static void appendRun(StringBuilder runs, int start, int length) {
+        if (runs.length() > 0) {
+            runs.append(',');
+        }
+        runs.append(start).append('+').append(length);
+    }
+}
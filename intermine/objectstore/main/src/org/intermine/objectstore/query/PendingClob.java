@@ -10,6 +10,8 @@ package org.intermine.objectstore.query;
  *
  */
 
+import java.io.PrintStream;
+
 import org.intermine.objectstore.ObjectStore;
 
 /**
@@ -32,6 +34,20 @@ public class PendingClob extends ClobAccess
         this.text = text;
     }
 
+    /**
+     * Construct a PendingClob from a String, which may be written packed. A nucleotide sequence
+     * asked to be packed is written packed by the PackedSequenceCodec, unless it has so many
+     * characters other than A, C, G and T that packing would not save space.
+     *
+     * @param text the String
+     * @param packed true to write the text packed if that makes it smaller
+     */
+    public PendingClob(String text, boolean packed) {
+        super();
+        this.text = text;
+        this.packed = packed;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -73,7 +89,7 @@ public class PendingClob extends ClobAccess
      */
     @Override
     public PendingClob subSequence(int start, int end) {
-        return new PendingClob(text.subSequence(start, end).toString());
+        return new PendingClob(text.subSequence(start, end).toString(), packed);
     }
 
     /**
@@ -92,6 +108,14 @@ public class PendingClob extends ClobAccess
         return text;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void drainToPrintStream(PrintStream out) {
+        out.print(text);
+    }
+
     /**
      * {@inheritDoc}
      */
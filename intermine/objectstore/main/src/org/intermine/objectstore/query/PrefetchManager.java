@@ -10,16 +10,37 @@ package org.intermine.objectstore.query;
  *
  */
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Logger;
+import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.ObjectStoreException;
 
 /**
  * A manager for the prefetch mechanism for the Results object.
+ * <p>
+ * Each ObjectStore has its own Scheduler, which owns a bounded pool of service threads and a
+ * bounded queue of prefetch requests. Threads that are idle for longer than a keep-alive time are
+ * shut down, so the pool shrinks again after a burst of load. If the queue is full, prefetch
+ * requests are dropped, as they are only a hint. A thread that actually needs a batch that is
+ * still queued takes the request out of the queue and fetches it immediately, so blocked iterators
+ * never wait behind speculative prefetches. Queued requests only weakly reference their
+ * ResultsBatches, so if the ResultsBatches is garbage collected the request is cancelled.
  *
  * @author Matthew Wakeling
  */
@@ -29,15 +50,67 @@ public final class PrefetchManager
     }
 
     private static final Logger LOG = Logger.getLogger(PrefetchManager.class);
-    /** Pending set of requests - always accessed inside a synchronise on sync. */
-    protected static Set<Request> pending = new HashSet<Request>();
-    /** Set of requests currently being serviced. This Set is not accessed inside a block
-     * synchronised on any global object, so it must be able to handle concurrent access. */
-    protected static Set<Request> serviced = Collections.synchronizedSet(new HashSet<Request>());
-    protected static int serviceThreads = 0;
-    private static Object sync = new Object();
 
-    protected static final int LOADING = 3;
+    /** The default maximum number of service threads per ObjectStore. */
+    public static final int DEFAULT_THREADS = 4;
+    /** The default maximum number of queued prefetch requests per ObjectStore. */
+    public static final int DEFAULT_QUEUE_LENGTH = 100;
+    /** The number of seconds a service thread will wait for work before exiting. */
+    protected static final long KEEP_ALIVE_SECONDS = 60;
+
+    private static Map<ObjectStore, Scheduler> schedulers = new WeakHashMap<ObjectStore,
+            Scheduler>();
+
+    /**
+     * Sets the number of service threads and the queue length used for prefetching from the given
+     * ObjectStore. This replaces any existing Scheduler for the ObjectStore - requests already
+     * queued in the old Scheduler will still be serviced.
+     *
+     * @param os the ObjectStore
+     * @param threads the maximum number of service threads
+     * @param queueLength the maximum number of queued prefetch requests
+     */
+    public static void configure(ObjectStore os, int threads, int queueLength) {
+        if ((threads < 1) || (queueLength < 1)) {
+            throw new IllegalArgumentException("Prefetch threads and queue length must be positive"
+                    + ", got " + threads + " and " + queueLength);
+        }
+        synchronized (schedulers) {
+            Scheduler old = schedulers.put(os, new Scheduler(String.valueOf(os), threads,
+                        queueLength));
+            if (old != null) {
+                old.executor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Returns the statistics for prefetching from the given ObjectStore.
+     *
+     * @param os the ObjectStore
+     * @return a Statistics object, which is updated live
+     */
+    public static Statistics getStatistics(ObjectStore os) {
+        return getScheduler(os).stats;
+    }
+
+    /**
+     * Returns the Scheduler for the given ObjectStore, creating one with the default settings if
+     * necessary.
+     *
+     * @param os the ObjectStore
+     * @return a Scheduler
+     */
+    protected static Scheduler getScheduler(ObjectStore os) {
+        synchronized (schedulers) {
+            Scheduler retval = schedulers.get(os);
+            if (retval == null) {
+                retval = new Scheduler(String.valueOf(os), DEFAULT_THREADS, DEFAULT_QUEUE_LENGTH);
+                schedulers.put(os, retval);
+            }
+            return retval;
+        }
+    }
 
     /*
      * This class provides methods for cancelling requests, so here is an explanation of how this
@@ -82,7 +155,8 @@ public final class PrefetchManager
      */
 
     /**
-     * Adds a request to the Set of pending requests, and wakes up a Thread to handle it.
+     * Adds a request to the queue of pending requests for the ObjectStore of the given
+     * ResultsBatches, to be serviced by a service thread.
      *
      * @param result a ResultsBatches object that is making the request
      * @param batchNo the batch number to be fetched
@@ -91,42 +165,7 @@ public final class PrefetchManager
      */
     public static void addRequest(ResultsBatches result, int batchNo, boolean optimise,
             boolean explain) {
-        Request request = new Request(result, batchNo, optimise, explain);
-        synchronized (sync) {
-            synchronized (result) {
-                // Synchronise on BOTH locks, so we can muck about with anything.
-                if (!result.batches.containsKey(new Integer(batchNo))) {
-                    // The request has not been done.
-                    if (!serviced.contains(request)) {
-                        // And it isn't currently being serviced.
-                        //if (!pending.contains(request)) {
-                        //    LOG.debug("addRequest - adding request:                          "
-                        //            + request);
-                        //}
-                        pending.add(request);
-                        if ((pending.size() + serviced.size()) > (serviceThreads * LOADING)) {
-                            // There are too many requests for the servicing threads.
-                            Thread newThread = new ServiceThread();
-                            newThread.setDaemon(true);
-                            newThread.setName("PrefetchManager ServiceThread");
-                            newThread.start();
-                            serviceThreads++;
-                            LOG.info("addRequest - creating new ServiceThread. We now have "
-                                    + serviceThreads);
-                        } else {
-                            // There may or may not be a service thread waiting. If not, a service
-                            // thread will soon finish a request.
-                            sync.notify();
-                        }
-                    //} else {
-                        //LOG.debug("addRequest - the request is currently being serviced: "
-                        //        + request);
-                    }
-                //} else {
-                    //LOG.debug("addRequest - the request has already been done:       " + request);
-                }
-            }
-        }
+        getScheduler(result.getObjectStore()).addRequest(result, batchNo, optimise, explain);
     }
 
     /**
@@ -143,239 +182,438 @@ public final class PrefetchManager
      */
     public static List<Object> doRequest(ResultsBatches result, int batchNo, boolean optimise,
             boolean explain) throws ObjectStoreException {
-        return doRequest(new Request(result, batchNo, optimise, explain));
+        return getScheduler(result.getObjectStore()).doRequest(result,
+                new Request(result, batchNo, optimise, explain, null));
     }
 
     /**
-     * Returns the batch described by the request. If the batch is not already available, then the
-     * current thread fetches it.
-     *
-     * @param request a Request object
-     * @return a List containing the contents of the batch
-     * @throws ObjectStoreException if an error occurs in the underlying ObjectStore
-     * @throws IndexOutOfBoundsException if the batch is off the end of the results
+     * The prefetch state for a single ObjectStore.
      */
-    protected static List<Object> doRequest(Request request) throws ObjectStoreException {
-        boolean needToWait = false;
-        List<Object> retval = null;
-
-        synchronized (sync) {
-            synchronized (request.result) {
-                // Synchronise on BOTH locks, so we can muck about with anything.
-                // Note, that to avoid deadlocks, we should never lock these two in the opposite
-                // order, or call wait on either of these locks where a notify needs to obtain
-                // the other one. We shouldn't call wait in here anyway really.
-                // We need both locks, because we need to exclude the possibility that someone
-                // finishes a request between us checking to see if it is already fetched, and
-                // checking if we need to wait for someone to finish fetching it.
-                retval = request.result.batches.get(new Integer(request.batchNo));
-                if (retval != null) {
-                    // The batch has already been fetched.
-                    //LOG.debug("doRequest - the request has already been done:        " + request);
-                    return retval;
+    protected static class Scheduler
+    {
+        /** Pending requests, mapped onto their queued task - always accessed inside a synchronise
+         * on sync. */
+        protected Map<Request, Runnable> pending = new HashMap<Request, Runnable>();
+        /** Set of requests currently being serviced. This Set is not accessed inside a block
+         * synchronised on any global object, so it must be able to handle concurrent access. */
+        protected Set<Request> serviced = Collections.synchronizedSet(new HashSet<Request>());
+        protected ThreadPoolExecutor executor;
+        protected Statistics stats;
+        private String name;
+        private Object sync = new Object();
+        private ReferenceQueue<ResultsBatches> collected = new ReferenceQueue<ResultsBatches>();
+
+        /**
+         * Constructs a Scheduler.
+         *
+         * @param name a description of the ObjectStore, used in the names of threads
+         * @param threads the maximum number of service threads
+         * @param queueLength the maximum number of queued prefetch requests
+         */
+        protected Scheduler(final String name, int threads, int queueLength) {
+            this.name = name;
+            final AtomicInteger threadNo = new AtomicInteger();
+            executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS,
+                    TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueLength),
+                    new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "PrefetchManager ServiceThread "
+                                    + threadNo.incrementAndGet() + " for " + name);
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            stats = new Statistics(executor);
+        }
+
+        /**
+         * Adds a request to the queue of pending requests. If the queue is full, the request is
+         * dropped.
+         *
+         * @param result a ResultsBatches object that is making the request
+         * @param batchNo the batch number to be fetched
+         * @param optimise true if queries should be optimised
+         * @param explain true if this method should explain each query first
+         */
+        protected void addRequest(ResultsBatches result, int batchNo, boolean optimise,
+                boolean explain) {
+            cancelCollected();
+            if (stats.requested.incrementAndGet() % 10000 == 0) {
+                LOG.info(name + " - " + stats);
+            }
+            Request request = new Request(result, batchNo, optimise, explain, collected);
+            synchronized (sync) {
+                synchronized (result) {
+                    // Synchronise on BOTH locks, so we can muck about with anything.
+                    if (result.batches.containsKey(new Integer(batchNo))
+                            || serviced.contains(request) || pending.containsKey(request)) {
+                        // The request has been done, is being done, or is already queued.
+                        return;
+                    }
+                    Runnable task = new ServiceTask(this, request);
+                    try {
+                        executor.execute(task);
+                        pending.put(request, task);
+                    } catch (RejectedExecutionException e) {
+                        // The queue is full. Prefetching is only a hint, so just drop it.
+                        stats.dropped.incrementAndGet();
+                    }
                 }
-                if (pending.contains(request)) {
-                    // The request is pending.
-                    // If it is pending, then we wish it to be serviced by US. Therefore, we
-                    // need to move it to serviced state and do it.
-                    // The request is not being serviced. We take over.
-                    serviced.add(request);
-                    pending.remove(request);
-                    //LOG.debug("doRequest - the request was pending:                  " + request);
-                } else if (serviced.contains(request)) {
-                    // The request is being serviced. We just need to wait.
-                    needToWait = true;
-                    //LOG.debug("doRequest - the request is currently being serviced:  " + request);
-                } else {
-                    // The request has never been seen before. Therefore, we should add it to the
-                    // serviced set, and handle it.
-                    serviced.add(request);
-                    //LOG.debug("doRequest - new request:                              " + request);
+            }
+        }
+
+        /**
+         * Removes queued requests whose ResultsBatches has been garbage collected.
+         */
+        protected void cancelCollected() {
+            Request request;
+            while ((request = (Request) collected.poll()) != null) {
+                synchronized (sync) {
+                    Runnable task = pending.remove(request);
+                    if (task != null) {
+                        executor.remove(task);
+                        stats.cancelled.incrementAndGet();
+                    }
                 }
             }
         }
 
-        // At this stage, there is a limited set of states that we can be in. Either
-        // 1. We need to wait for another thread to finish servicing the request. In this case, we
-        //     know for sure that our request was in serviced when we left the synchronised block.
-        //     However, since this is a GAP between synchronising, another thread could finish the
-        //     request before we synchronise again. Therefore, we should check after we have
-        //     synchronised again.
-        // 2. We need to do the request ourselves. In this case, we set the PrefetchManager state
-        //     so that anything else to do with this request waits for us rather than changing the
-        //     state while we were in the synchronised block.
-
-        if (needToWait) {
-            synchronized (request.result) {
-                // We are synchronised. Now, no thread can report that the request is finished until
-                // we release the lock.
-                // First, check that someone didn't finish during the GAP.
-                if (serviced.contains(request)) {
-                    // Noone finished, so we can wait for that to happen.
-                    //LOG.debug("doRequest - waiting for another thread to finish:     " + request);
-                    try {
-                        request.result.wait();
-                    } catch (InterruptedException e) {
-                        // Ignore interruption.
+        /**
+         * Returns the batch described by the request. If the batch is not already available, then
+         * the current thread fetches it.
+         *
+         * @param result the ResultsBatches object that the request refers to
+         * @param request a Request object
+         * @return a List containing the contents of the batch
+         * @throws ObjectStoreException if an error occurs in the underlying ObjectStore
+         * @throws IndexOutOfBoundsException if the batch is off the end of the results
+         */
+        protected List<Object> doRequest(ResultsBatches result, Request request)
+            throws ObjectStoreException {
+            boolean needToWait = false;
+            List<Object> retval = null;
+
+            synchronized (sync) {
+                synchronized (result) {
+                    // Synchronise on BOTH locks, so we can muck about with anything.
+                    // Note, that to avoid deadlocks, we should never lock these two in the
+                    // opposite order, or call wait on either of these locks where a notify needs
+                    // to obtain the other one. We shouldn't call wait in here anyway really.
+                    // We need both locks, because we need to exclude the possibility that someone
+                    // finishes a request between us checking to see if it is already fetched, and
+                    // checking if we need to wait for someone to finish fetching it.
+                    retval = result.batches.get(new Integer(request.batchNo));
+                    if (retval != null) {
+                        // The batch has already been fetched.
+                        return retval;
+                    }
+                    Runnable task = pending.remove(request);
+                    if (task != null) {
+                        // The request is queued. A thread is blocked on it, so rather than wait
+                        // for a service thread to reach it, we take it out of the queue and do it
+                        // ourselves.
+                        executor.remove(task);
+                        serviced.add(request);
+                        stats.takenOver.incrementAndGet();
+                    } else if (serviced.contains(request)) {
+                        // The request is being serviced. We just need to wait.
+                        needToWait = true;
+                    } else {
+                        // The request has never been seen before. Therefore, we should add it to
+                        // the serviced set, and handle it.
+                        serviced.add(request);
+                    }
+                }
+            }
+
+            // At this stage, there is a limited set of states that we can be in. Either
+            // 1. We need to wait for another thread to finish servicing the request. In this case,
+            //     we know for sure that our request was in serviced when we left the synchronised
+            //     block. However, since this is a GAP between synchronising, another thread could
+            //     finish the request before we synchronise again. Therefore, we should check
+            //     after we have synchronised again.
+            // 2. We need to do the request ourselves. In this case, we set the PrefetchManager
+            //     state so that anything else to do with this request waits for us rather than
+            //     changing the state while we were in the synchronised block.
+
+            if (needToWait) {
+                synchronized (result) {
+                    // We are synchronised. Now, no thread can report that the request is finished
+                    // until we release the lock.
+                    // First, check that someone didn't finish during the GAP.
+                    if (serviced.contains(request)) {
+                        // Noone finished, so we can wait for that to happen.
+                        stats.waited.incrementAndGet();
+                        try {
+                            result.wait();
+                        } catch (InterruptedException e) {
+                            // Ignore interruption.
+                        }
+                    }
+                    // At this point, either our wait was interrupted by notifyAll(), or someone
+                    // has removed the request from serviced. Either way, we can't be absolutely
+                    // sure that result.batches contains the batch we want, for several reasons.
+                    // So we recurse.
+                    // Reasons:
+                    // 1. result.batches may be a WeakHashMap, in which case the batch may have
+                    //     been removed from it by the garbage collector since it was added.
+                    // 2. The object we are waiting for is a result. A notify that we might have
+                    //     received could have been for a different request.
+                    // 3. The request is a dud, so the thread that was servicing the request
+                    //     received an exception. Under this circumstance, that thread should still
+                    //     remove the request from the serviced set, and notify other threads
+                    //     waiting for the request. This allows threads waiting to do the operation
+                    //     themselves, and therefore return back the correct exception.
+                }
+                retval = doRequest(result, request);
+            } else {
+                try {
+                    // Now, we can service this request in a normal manner, outside all locks.
+                    retval = result.fetchBatchFromObjectStore(request.batchNo, request.optimise,
+                            request.explain);
+                } finally {
+                    // And then report that it is finished, inside a lock, even if we did get an
+                    // exception.
+                    reportDone(result, request);
+                }
+            }
+
+            return retval;
+        }
+
+        /**
+         * Allows a system to report that it has finished servicing a particular request.
+         *
+         * @param result the ResultsBatches object that the request refers to
+         * @param request the request that has been done
+         */
+        protected void reportDone(ResultsBatches result, Request request) {
+            synchronized (result) {
+                serviced.remove(request);
+                result.notifyAll();
+            }
+        }
+
+        /**
+         * Services a queued request in a service thread.
+         *
+         * @param request the request
+         */
+        protected void service(Request request) {
+            ResultsBatches result = request.get();
+            if (result == null) {
+                // The ResultsBatches has been garbage collected, so nobody wants this batch.
+                synchronized (sync) {
+                    if (pending.remove(request) != null) {
+                        stats.cancelled.incrementAndGet();
                     }
                 }
-                // At this point, either our wait was interrupted by notifyAll(), or someone has
-                // removed the request from serviced. Either way, we can't be absolutely sure that
-                // result.batches contains the batch we want, for several reasons. So we recurse.
-                // Reasons:
-                // 1. request.result.batches may be a WeakHashMap, in which case the batch may have
-                //     been removed from it by the garbage collector since it was added.
-                // 2. The object we are waiting for is a result. A notify that we might have
-                //     received could have been for a different request.
-                // 3. The request is a dud, so the thread that was servicing the request received
-                //     an exception. Under this circumstance, that thread should still remove the
-                //     request from the serviced set, and notify other threads waiting for the
-                //     request. This allows threads waiting to do the operation themselves, and
-                //     therefore return back the correct exception.
+                return;
+            }
+            synchronized (sync) {
+                synchronized (result) {
+                    if (pending.remove(request) == null) {
+                        // Another thread has taken over this request.
+                        return;
+                    }
+                    if (result.batches.containsKey(new Integer(request.batchNo))) {
+                        // Someone fetched this batch without going through the queue.
+                        stats.wasted.incrementAndGet();
+                        return;
+                    }
+                    serviced.add(request);
+                }
             }
-            retval = doRequest(request);
-        } else {
             try {
-                //LOG.debug("doRequest - servicing request:                        " + request);
                 // Now, we can service this request in a normal manner, outside all locks.
-                retval = request.result.fetchBatchFromObjectStore(request.batchNo, request.optimise,
+                result.fetchBatchFromObjectStore(request.batchNo, request.optimise,
                         request.explain);
+                stats.prefetched.incrementAndGet();
+            } catch (Exception e) {
+                // We don't care about any exception - whoever needs the batch will try again and
+                // receive the exception themselves.
+                stats.failed.incrementAndGet();
+                LOG.warn("Prefetch received exception " + request + " " + e);
             } finally {
                 // And then report that it is finished, inside a lock, even if we did get an
                 // exception.
-                reportDone(request);
+                reportDone(result, request);
             }
         }
-
-        return retval;
     }
 
     /**
-     * Allows a system to report that it has finished servicing a particular request.
-     *
-     * @param request the request that has been done
+     * Counters describing the behaviour of the prefetch mechanism for one ObjectStore.
      */
-    protected static void reportDone(Request request) {
-        synchronized (request.result) {
-            //LOG.debug("reportDone - finished request:                        " + request);
-            serviced.remove(request);
-            request.result.notifyAll();
+    public static class Statistics
+    {
+        protected AtomicLong requested = new AtomicLong();
+        protected AtomicLong dropped = new AtomicLong();
+        protected AtomicLong cancelled = new AtomicLong();
+        protected AtomicLong wasted = new AtomicLong();
+        protected AtomicLong prefetched = new AtomicLong();
+        protected AtomicLong failed = new AtomicLong();
+        protected AtomicLong takenOver = new AtomicLong();
+        protected AtomicLong waited = new AtomicLong();
+        private ThreadPoolExecutor executor;
+
+        /**
+         * Constructs a Statistics object.
+         *
+         * @param executor the executor of the Scheduler, for queue and pool sizes
+         */
+        protected Statistics(ThreadPoolExecutor executor) {
+            this.executor = executor;
         }
-    }
 
-    /**
-     * Returns a request for a thread to service.
-     *
-     * @return a request to service
-     */
-    protected static Request getRequest() {
-        Request retval;
-        synchronized (sync) {
-            while (pending.isEmpty()) {
-                // There are no requests to get - wait for a notify.
-                //LOG.debug("getRequest - waiting for a request");
-                try {
-                    sync.wait();
-                } catch (InterruptedException e) {
-                    // Ignore interruption.
-                }
-            }
-            // Get a request from the pending set. We know there is something in there, because we
-            // just got false from pending.isEmpty, and we have the lock on sync, and nothing
-            // touches pending unless they have that lock.
-            retval = pending.iterator().next();
-            //LOG.debug("getRequest - got request:                             " + retval);
-            // Now we have a request, we could synchronise by its result - other things look
-            // for the request in serviced - namely:
-            // 1. addRequest doesn't add a request to pending if it already in serviced. However,
-            //     that doesn't matter, because it is already synchronised on sync. Otherwise, you
-            //     might have had the situation where a request appears in both pending and serviced
-            //     sets.
-            // 2. doRequest also moves items from pending to serviced, but that doesn't matter
-            //     because it is also synchronised on sync. Otherwise you could have two threads
-            //     servicing the same request, which could possibly leave other requests not being
-            //     serviced while a service thread sleeps.
-            // 3. doRequest decides whether to wait on whether there is a request in serviced, but
-            //     this also does not matter, as it can only be broken by a thread removing a
-            //     request from serviced outside a synchronised block.
-            // 4. reportDone removes an entry from serviced, which does not matter, because it will
-            //     only break something that is broken by things being removed from serviced outside
-            //     a sync lock.
-            // Basically, we never check to see if the batch has already been fetched before
-            // checking to see if anyone is fetching it - we only put the request in serviced.
-            // Therefore, we do not need to synchronise by request.result here.
-
-            serviced.add(retval);
-            pending.remove(retval);
+        /**
+         * @return the number of prefetch requests received
+         */
+        public long getRequested() {
+            return requested.get();
+        }
+
+        /**
+         * @return the number of prefetch requests dropped because the queue was full
+         */
+        public long getDropped() {
+            return dropped.get();
+        }
+
+        /**
+         * @return the number of queued requests cancelled because the results were garbage
+         * collected
+         */
+        public long getCancelled() {
+            return cancelled.get();
+        }
+
+        /**
+         * @return the number of queued requests found to be already fetched when serviced
+         */
+        public long getWasted() {
+            return wasted.get();
+        }
+
+        /**
+         * @return the number of batches fetched by service threads
+         */
+        public long getPrefetched() {
+            return prefetched.get();
+        }
+
+        /**
+         * @return the number of prefetches that failed with an exception
+         */
+        public long getFailed() {
+            return failed.get();
+        }
+
+        /**
+         * @return the number of queued requests taken over by a thread blocked on the batch
+         */
+        public long getTakenOver() {
+            return takenOver.get();
+        }
+
+        /**
+         * @return the number of times a thread waited for a batch being fetched by another thread
+         */
+        public long getWaited() {
+            return waited.get();
+        }
+
+        /**
+         * @return the number of requests currently queued
+         */
+        public int getQueueDepth() {
+            return executor.getQueue().size();
+        }
+
+        /**
+         * @return the number of service threads currently alive
+         */
+        public int getPoolSize() {
+            return executor.getPoolSize();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString() {
+            return "Prefetch queue depth: " + getQueueDepth() + ", threads: " + getPoolSize()
+                + ", requested: " + getRequested() + ", prefetched: " + getPrefetched()
+                + ", dropped: " + getDropped() + ", cancelled: " + getCancelled() + ", wasted: "
+                + getWasted() + ", failed: " + getFailed() + ", taken over: " + getTakenOver()
+                + ", waited: " + getWaited();
         }
-        return retval;
     }
 
-    private static class Request
+    /**
+     * A request for a batch. Requests only weakly reference their ResultsBatches, so that queued
+     * requests do not keep the results alive.
+     */
+    private static class Request extends WeakReference<ResultsBatches>
     {
-        private ResultsBatches result;
         private int batchNo;
         private boolean optimise;
         private boolean explain;
+        private int hashCode;
+        private int queryHashCode;
 
-        public Request(ResultsBatches result, int batchNo, boolean optimise, boolean explain) {
-            this.result = result;
+        public Request(ResultsBatches result, int batchNo, boolean optimise, boolean explain,
+                ReferenceQueue<ResultsBatches> queue) {
+            super(result, queue);
             this.batchNo = batchNo;
             this.optimise = optimise;
             this.explain = explain;
+            this.queryHashCode = result.query.hashCode();
+            this.hashCode = 2 * System.identityHashCode(result) + 3 * batchNo;
         }
 
         @Override
         public int hashCode() {
-            return 2 * result.query.hashCode() + 3 * batchNo;
+            return hashCode;
         }
 
         @Override
         public boolean equals(Object obj) {
-            return (result == ((Request) obj).result) && (((Request) obj).batchNo == batchNo);
+            if (this == obj) {
+                return true;
+            }
+            if (obj instanceof Request) {
+                ResultsBatches result = get();
+                return (result != null) && (result == ((Request) obj).get())
+                    && (((Request) obj).batchNo == batchNo);
+            }
+            return false;
         }
 
         @Override
         public String toString() {
-            return "Result " + result.query.hashCode() + ", batch " + batchNo;
+            return "Result " + queryHashCode + ", batch " + batchNo;
         }
     }
 
-    private static class ServiceThread extends Thread
+    private static class ServiceTask implements Runnable
     {
-        @Override
+        private Scheduler scheduler;
+        private Request request;
+
+        public ServiceTask(Scheduler scheduler, Request request) {
+            this.scheduler = scheduler;
+            this.request = request;
+        }
+
         public void run() {
             try {
-                while (true) {
-                    Request request = PrefetchManager.getRequest();
-                    //LOG.debug("ServiceThread.run - servicing request                 " + request);
-                    try {
-                        // Now, we can service this request in a normal manner, outside all locks.
-                        @SuppressWarnings("unused")
-                        List<Object> batch = request.result.fetchBatchFromObjectStore(request
-                                .batchNo, request.optimise, request.explain);
-                    } catch (Exception e) {
-                        LOG.warn("ServiceThread.run - Received exception                " + request
-                                + " " + e);
-                        // We don't care about any exception - we NEED this thread to keep running.
-                        // Otherwise, things go pear-shaped.
-                    } finally {
-                        // And then report that it is finished, inside a lock, even if we did get an
-                        // exception.
-                        reportDone(request);
-                    }
-                }
+                scheduler.service(request);
             } catch (Error e) {
                 LOG.error("Failure of PrefetchManager service thread with error", e);
                 throw e;
-            } finally {
-                // Like I said, we REALLY NEED to know if something has gone wrong here, as it is a
-                // BIG BAD BUG.
-                LOG.error("ServiceThread died unexpectedly. PrefetchManager may stop working");
-                // And decrement the count of available ServiceThreads.
-                PrefetchManager.serviceThreads--;
             }
         }
     }
 }
-
@@ -130,7 +130,36 @@ public class IqlQuery
         if (q == null) {
             throw new NullPointerException("query should not be null");
         }
+        queryString = queryToString(q, newParameters);
+        parameters = newParameters;
+    }
+
+    /**
+     * Returns the shape of a Query, which is its IQL with each QueryValue replaced by a numbered
+     * placeholder that carries the type of the value. Two queries that differ only in the values
+     * they constrain against have the same shape. QueryValues inside subqueries are not replaced.
+     *
+     * @param q the Query
+     * @param values an empty List, to which this method will add the QueryValues in the order of
+     * their placeholder numbers, each QueryValue object appearing once however often it is used
+     * @return the shape, or null if the query has parameters other than QueryValues, for example
+     * bags or objects
+     */
+    public static String queryShape(Query q, List<QueryValue> values) {
+        ShapeParameters newParameters = new ShapeParameters(values);
+        String shape = queryToString(q, newParameters);
+        return newParameters.isEmpty() ? shape : null;
+    }
 
+    /**
+     * Converts a Query into IQL text.
+     *
+     * @param q the Query
+     * @param newParameters a List, in which this method will place objects corresponding to the
+     * question marks in the resulting String
+     * @return a String
+     */
+    private static String queryToString(Query q, List<Object> newParameters) {
         boolean needComma = false;
         StringBuffer retval = new StringBuffer(q.isDistinct() ? "SELECT DISTINCT " : "SELECT ");
         Set<QueryObjectPathExpression> pathList = new HashSet<QueryObjectPathExpression>();
@@ -203,8 +232,7 @@ public class IqlQuery
                 .append(" AS ")
                 .append(q.getAliases().get(qope));
         }
-        parameters = newParameters;
-        queryString = retval.toString();
+        return retval.toString();
     }
 
     /**
@@ -229,6 +257,9 @@ public class IqlQuery
                 + escapeReservedWord(qf.getFieldName()) + (qf.getSecondFieldName() == null ? ""
                         : "." + escapeReservedWord(qf.getSecondFieldName()));
         } else if (qn instanceof QueryValue) {
+            if (parameters instanceof ShapeParameters) {
+                return ((ShapeParameters) parameters).placeholder((QueryValue) qn);
+            }
             Object obj = ((QueryValue) qn).getValue();
             if (obj instanceof String) {
                 return "'" + obj + "'";
@@ -932,4 +963,31 @@ public class IqlQuery
         }
         return word;
     }
+
+    /**
+     * The parameter List used while rendering the shape of a query. It collects the QueryValues
+     * separately, so that the List itself only receives the other parameters.
+     */
+    private static class ShapeParameters extends ArrayList<Object>
+    {
+        private List<QueryValue> values;
+
+        public ShapeParameters(List<QueryValue> values) {
+            this.values = values;
+        }
+
+        public String placeholder(QueryValue value) {
+            int index = -1;
+            for (int i = 0; (i < values.size()) && (index == -1); i++) {
+                if (values.get(i) == value) {
+                    index = i;
+                }
+            }
+            if (index == -1) {
+                index = values.size();
+                values.add(value);
+            }
+            return "?" + index + ":" + value.getValue().getClass().getName();
+        }
+    }
 }
@@ -10,29 +10,56 @@ package org.intermine.sql.precompute;
  *
  */
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.intermine.sql.Database;
-import org.intermine.util.CacheMap;
+import org.intermine.sql.DatabaseUtil;
 
 /**
  * A class that provides an implementation of a cache for String-based SQL query optimisation.
+ * <p>
+ * Lookups and additions take no locks, so many threads can use the cache at once. The cache
+ * holds a bounded number of linesets (one per original query), and when it grows past the bound
+ * the least recently used linesets are thrown away. The contents can be saved to a table in the
+ * database and loaded again when the webapp restarts, tagged so that they are only loaded into a
+ * database with the same release and precomputed tables.
  *
  * @author Matthew Wakeling
  */
 public class OptimiserCache
 {
-    /** Maximum number of cache linesets in the cache. */
+    /** Default maximum number of cache linesets in the cache. */
     public static final int MAX_LINESETS = 1000;
     /** Number of events to happen before an expiration run. */
     public static final int EXPIRE_INTERVAL = 100;
+    /** The name of the table in which the cache is saved. */
+    public static final String TABLE_NAME = "optimiser_cache";
+
+    private static final int SAVE_BATCH_SIZE = 500;
 
     // Caches need to be per-database, so we will provide a static method to retrieve a cache object
-    // given a database. We need to be careful about synchronisation in this whole class.
-    private static Map<Database, OptimiserCache> caches = new HashMap<Database, OptimiserCache>();
+    // given a database. QueryOptimiser asks for the cache of a null Database when it is given a
+    // Connection, which a ConcurrentHashMap cannot hold as a key.
+    private static ConcurrentMap<Database, OptimiserCache> caches
+        = new ConcurrentHashMap<Database, OptimiserCache>();
+    private static final OptimiserCache NULL_DATABASE_CACHE = new OptimiserCache();
 
     /**
      * Returns an OptimiserCache object relevant to the database given.
@@ -40,31 +67,118 @@ public class OptimiserCache
      * @param db a Database object to find a cache for
      * @return an OptimiserCache object
      */
-    public static synchronized OptimiserCache getInstance(Database db) {
-        if (!caches.containsKey(db)) {
-            caches.put(db, new OptimiserCache());
+    public static OptimiserCache getInstance(Database db) {
+        if (db == null) {
+            return NULL_DATABASE_CACHE;
+        }
+        OptimiserCache cache = caches.get(db);
+        if (cache == null) {
+            OptimiserCache newCache = new OptimiserCache();
+            cache = caches.putIfAbsent(db, newCache);
+            if (cache == null) {
+                cache = newCache;
+            }
         }
-        return caches.get(db);
+        return cache;
     }
 
+    /**
+     * Returns the tag under which a cache is saved, which identifies the release of the database
+     * and the precomputed tables that the optimised queries use.
+     *
+     * @param release a String identifying the release of the database, for example its serial
+     * number
+     * @param precomputedTables the precomputed tables in the database
+     * @return a String
+     */
+    public static String getTag(String release, Collection<PrecomputedTable> precomputedTables) {
+        Map<String, String> sorted = new TreeMap<String, String>();
+        for (PrecomputedTable pt : precomputedTables) {
+            sorted.put(pt.getName(), pt.getOriginalSql());
+        }
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("MD5");
+            for (Map.Entry<String, String> entry : sorted.entrySet()) {
+                md.update(entry.getKey().getBytes("UTF-8"));
+                md.update((byte) 0);
+                md.update(entry.getValue().getBytes("UTF-8"));
+                md.update((byte) 0);
+            }
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+        StringBuilder retval = new StringBuilder(String.valueOf(release)).append(":");
+        for (byte b : md.digest()) {
+            retval.append(Character.forDigit((b >> 4) & 15, 16))
+                .append(Character.forDigit(b & 15, 16));
+        }
+        return retval.toString();
+    }
 
     /**
      * A Map that holds a mapping from unoptimised query string (with LIMIT and OFFSET stripped off)
-     * to a Set of OptimiserCacheLine objects.
+     * to a LineSet of OptimiserCacheLine objects.
      */
-    protected Map<String, Set<OptimiserCacheLine>> cacheLines;
+    protected ConcurrentMap<String, LineSet> cacheLines = new ConcurrentHashMap<String, LineSet>();
+
+    private volatile int maxLinesets;
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicBoolean evicting = new AtomicBoolean(false);
 
     /**
-     * Constructor for this object.
+     * Constructor for this object, holding up to MAX_LINESETS linesets.
      */
     public OptimiserCache() {
-        cacheLines = new CacheMap<String, Set<OptimiserCacheLine>>();
+        this(MAX_LINESETS);
+    }
+
+    /**
+     * Constructor for this object.
+     *
+     * @param maxLinesets the maximum number of linesets to hold
+     */
+    public OptimiserCache(int maxLinesets) {
+        setMaxLinesets(maxLinesets);
+    }
+
+    /**
+     * Sets the maximum number of linesets to hold, evicting some if there are more already.
+     *
+     * @param maxLinesets the maximum number of linesets
+     */
+    public void setMaxLinesets(int maxLinesets) {
+        if (maxLinesets < 1) {
+            throw new IllegalArgumentException("maxLinesets must be positive, got " + maxLinesets);
+        }
+        this.maxLinesets = maxLinesets;
+        evict();
+    }
+
+    /**
+     * Returns the maximum number of linesets held.
+     *
+     * @return the maximum number of linesets
+     */
+    public int getMaxLinesets() {
+        return maxLinesets;
+    }
+
+    /**
+     * Returns the number of linesets in the cache.
+     *
+     * @return the number of linesets
+     */
+    public int size() {
+        return cacheLines.size();
     }
 
     /**
      * Removes all entries from the cache.
      */
-    public synchronized void flush() {
+    public void flush() {
         cacheLines.clear();
     }
 
@@ -75,22 +189,29 @@ public class OptimiserCache
      * @param optimised the optimised SQL string (stripped of LIMIT and OFFSET)
      * @param limit the limit that was used during the optimisation
      */
-    public synchronized void addCacheLine(String original, String optimised, int limit) {
+    public void addCacheLine(String original, String optimised, int limit) {
         if (original.toUpperCase().startsWith("EXPLAIN ")) {
             original = original.substring(8);
         }
         if (optimised.toUpperCase().startsWith("EXPLAIN ")) {
             optimised = optimised.substring(8);
         }
-        Set<OptimiserCacheLine> lines = cacheLines.get(original);
-        if (lines == null) {
-            lines = new HashSet<OptimiserCacheLine>();
-            cacheLines.put(original, lines);
-        }
-
         OptimiserCacheLine line = new OptimiserCacheLine(optimised, limit, original);
-
-        lines.add(line);
+        boolean done = false;
+        while (!done) {
+            LineSet lines = cacheLines.get(original);
+            if (lines == null) {
+                done = cacheLines.putIfAbsent(original,
+                        new LineSet(new OptimiserCacheLine[] {line}, clock.incrementAndGet()))
+                    == null;
+            } else {
+                LineSet newLines = lines.with(line, clock.incrementAndGet());
+                done = (newLines == lines) || cacheLines.replace(original, lines, newLines);
+            }
+        }
+        if (cacheLines.size() > maxLinesets) {
+            evict();
+        }
     }
 
     /**
@@ -100,7 +221,7 @@ public class OptimiserCache
      * @param limit the limit required
      * @return a possible optimised SQL string (minus LIMIT and OFFSET)
      */
-    public synchronized String lookup(String original, int limit) {
+    public String lookup(String original, int limit) {
         //LOG.debug("Looking up query \"" + original + "\" with limit " + limit
         //        + " and offset " + offset + " - ");
         boolean originalWasExplain = false;
@@ -108,15 +229,16 @@ public class OptimiserCache
             original = original.substring(8);
             originalWasExplain = true;
         }
-        Set<OptimiserCacheLine> lines = cacheLines.get(original);
+        LineSet lines = cacheLines.get(original);
         if (lines == null) {
             // Couldn't find anything.
             //LOG.debug("Complete cache miss");
             return null;
         }
+        lines.setLastUsed(clock.incrementAndGet());
         double bestScore = Double.POSITIVE_INFINITY;
         OptimiserCacheLine bestLine = null;
-        for (OptimiserCacheLine line : lines) {
+        for (OptimiserCacheLine line : lines.getLines()) {
             double score = line.score(limit);
             if (score < bestScore) {
                 bestScore = score;
@@ -130,4 +252,178 @@ public class OptimiserCache
         //LOG.debug("Cache hit");
         return (originalWasExplain ? "EXPLAIN " : "") + bestLine.getOptimised();
     }
+
+    /**
+     * Saves the contents of the cache to the TABLE_NAME table, creating it if necessary and
+     * replacing whatever was saved there before.
+     *
+     * @param con a Connection to the database
+     * @param tag the tag to save the lines under, from getTag()
+     * @return the number of lines saved
+     * @throws SQLException if there is a problem in the underlying database
+     */
+    public int save(Connection con, String tag) throws SQLException {
+        int count = 0;
+        Statement stmt = con.createStatement();
+        try {
+            if (!DatabaseUtil.tableExists(con, TABLE_NAME)) {
+                stmt.execute("CREATE TABLE " + TABLE_NAME
+                        + " (tag text, original text, optimised text, querylimit integer)");
+            }
+            boolean autoCommit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try {
+                stmt.execute("DELETE FROM " + TABLE_NAME);
+                PreparedStatement insert = con.prepareStatement("INSERT INTO " + TABLE_NAME
+                        + " (tag, original, optimised, querylimit) VALUES (?, ?, ?, ?)");
+                try {
+                    for (LineSet lines : cacheLines.values()) {
+                        for (OptimiserCacheLine line : lines.getLines()) {
+                            insert.setString(1, tag);
+                            insert.setString(2, line.getOriginal());
+                            insert.setString(3, line.getOptimised());
+                            insert.setInt(4, line.getLimit());
+                            insert.addBatch();
+                            count++;
+                            if (count % SAVE_BATCH_SIZE == 0) {
+                                insert.executeBatch();
+                            }
+                        }
+                    }
+                    insert.executeBatch();
+                } finally {
+                    insert.close();
+                }
+                con.commit();
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(autoCommit);
+            }
+        } finally {
+            stmt.close();
+        }
+        return count;
+    }
+
+    /**
+     * Adds the lines saved in the TABLE_NAME table under a tag to the cache. Lines saved under
+     * other tags were optimised for a different release or set of precomputed tables, so they are
+     * ignored.
+     *
+     * @param con a Connection to the database
+     * @param tag the tag to load lines for, from getTag()
+     * @return the number of lines loaded
+     * @throws SQLException if there is a problem in the underlying database
+     */
+    public int load(Connection con, String tag) throws SQLException {
+        if (!DatabaseUtil.tableExists(con, TABLE_NAME)) {
+            return 0;
+        }
+        PreparedStatement select = con.prepareStatement("SELECT original, optimised, querylimit"
+                + " FROM " + TABLE_NAME + " WHERE tag = ?");
+        int count = 0;
+        try {
+            select.setString(1, tag);
+            ResultSet res = select.executeQuery();
+            try {
+                while (res.next()) {
+                    addCacheLine(res.getString(1), res.getString(2), res.getInt(3));
+                    count++;
+                }
+            } finally {
+                res.close();
+            }
+        } finally {
+            select.close();
+        }
+        return count;
+    }
+
+    /**
+     * Removes the least recently used linesets until the cache holds 90% of its maximum, so that
+     * this does not run on every addition. Only one thread evicts at a time, and the others carry
+     * on without waiting for it.
+     */
+    private void evict() {
+        if ((cacheLines.size() <= maxLinesets) || (!evicting.compareAndSet(false, true))) {
+            return;
+        }
+        try {
+            int target = maxLinesets - maxLinesets / 10;
+            List<String> keys = new ArrayList<String>();
+            List<LineSet> values = new ArrayList<LineSet>();
+            for (Map.Entry<String, LineSet> entry : cacheLines.entrySet()) {
+                keys.add(entry.getKey());
+                values.add(entry.getValue());
+            }
+            int toRemove = keys.size() - target;
+            if (toRemove > 0) {
+                // Take a copy of the times, as they change while we look at them
+                long[] lastUsed = new long[values.size()];
+                for (int i = 0; i < lastUsed.length; i++) {
+                    lastUsed[i] = values.get(i).getLastUsed();
+                }
+                long[] sorted = lastUsed.clone();
+                Arrays.sort(sorted);
+                long threshold = sorted[toRemove - 1];
+                for (int i = 0; i < lastUsed.length; i++) {
+                    if (lastUsed[i] <= threshold) {
+                        cacheLines.remove(keys.get(i), values.get(i));
+                    }
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * The cache lines for one original query. The array of lines is never changed once the
+     * LineSet is in the cache; adding a line replaces the LineSet with a new one.
+     */
+    protected static class LineSet
+    {
+        private final OptimiserCacheLine[] lines;
+        private volatile long lastUsed;
+
+        LineSet(OptimiserCacheLine[] lines, long lastUsed) {
+            this.lines = lines;
+            this.lastUsed = lastUsed;
+        }
+
+        OptimiserCacheLine[] getLines() {
+            return lines;
+        }
+
+        long getLastUsed() {
+            return lastUsed;
+        }
+
+        void setLastUsed(long lastUsed) {
+            this.lastUsed = lastUsed;
+        }
+
+        /**
+         * Returns a LineSet with a line added, replacing any line for the same limit, or this
+         * LineSet if it already has the line.
+         */
+        LineSet with(OptimiserCacheLine line, long now) {
+            for (int i = 0; i < lines.length; i++) {
+                if (lines[i].getLimit() == line.getLimit()) {
+                    if (lines[i].getOptimised().equals(line.getOptimised())) {
+                        lastUsed = now;
+                        return this;
+                    }
+                    OptimiserCacheLine[] newLines = lines.clone();
+                    newLines[i] = line;
+                    return new LineSet(newLines, now);
+                }
+            }
+            OptimiserCacheLine[] newLines = Arrays.copyOf(lines, lines.length + 1);
+            newLines[lines.length] = line;
+            return new LineSet(newLines, now);
+        }
+    }
 }
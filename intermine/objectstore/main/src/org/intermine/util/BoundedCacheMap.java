@@ -0,0 +1,451 @@
+package org.intermine.util;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A Map implementation for caches that holds its values strongly, but is bounded by a maximum
+ * number of entries and optionally a maximum total weight. Unlike CacheMap, the contents do not
+ * disappear wholesale when the garbage collector is under pressure.
+ * <p>
+ * Eviction follows the W-TinyLFU scheme. New entries go into a small LRU admission window. When
+ * an entry falls out of the window it is only admitted to the main LRU region if it has been used
+ * more often recently than the entry that would be evicted to make room for it. Frequencies are
+ * estimated from lookups with a count-min sketch that is periodically halved, so that the cache
+ * adapts when the workload changes. This stops one-off scans from flushing out the
+ * frequently-used entries.
+ * <p>
+ * All methods are synchronized on the map, so callers may also synchronize on the map to make
+ * compound operations atomic, as they do with CacheMap. Hits, misses, evictions and rejected
+ * admissions are counted, and can be exposed through JMX with the register method.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @author julie
+ */
+public class BoundedCacheMap<K, V> extends AbstractMap<K, V> implements BoundedCacheMapMBean
+{
+    private static final Logger LOG = Logger.getLogger(BoundedCacheMap.class);
+
+    /** The maximum value of a frequency counter in the sketch. */
+    private static final int MAX_FREQUENCY = 15;
+    /** The number of hash functions (rows) in the sketch. */
+    private static final int SKETCH_DEPTH = 4;
+    private static final int[] SEEDS = new int[] {0x97cb3127, 0x5f356495, 0x1b873593,
+        0x85ebca6b};
+
+    /**
+     * Calculates the weight of a cache entry, for caches bounded by total weight.
+     *
+     * @param <K> the type of keys
+     * @param <V> the type of values
+     */
+    public interface Weigher<K, V>
+    {
+        /**
+         * Returns the weight of an entry, for example its approximate size in bytes.
+         *
+         * @param key the key
+         * @param value the value, which may be null
+         * @return a non-negative weight
+         */
+        long weigh(K key, V value);
+    }
+
+    private final String name;
+    private final int maxEntries;
+    private final long maxWeight;
+    private final Weigher<? super K, ? super V> weigher;
+    private final int windowSize;
+
+    private final LinkedHashMap<K, V> window = new LinkedHashMap<K, V>(16, 0.75F, true);
+    private final LinkedHashMap<K, V> main = new LinkedHashMap<K, V>(16, 0.75F, true);
+    private final Map<K, Long> weights;
+    private long totalWeight = 0;
+
+    private final byte[] sketch;
+    private final int sketchMask;
+    private final int sketchShift;
+    private final int sampleSize;
+    private int additions = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long rejections = 0;
+    private ObjectName objectName = null;
+
+    /**
+     * Constructs a BoundedCacheMap bounded only by the number of entries.
+     *
+     * @param name the name of the cache, used in log messages and JMX
+     * @param maxEntries the maximum number of entries
+     */
+    public BoundedCacheMap(String name, int maxEntries) {
+        this(name, maxEntries, Long.MAX_VALUE, null);
+    }
+
+    /**
+     * Constructs a BoundedCacheMap bounded by the number of entries and their total weight.
+     *
+     * @param name the name of the cache, used in log messages and JMX
+     * @param maxEntries the maximum number of entries
+     * @param maxWeight the maximum total weight of entries, as calculated by the weigher
+     * @param weigher the Weigher, or null if the cache is not bounded by weight
+     */
+    public BoundedCacheMap(String name, int maxEntries, long maxWeight,
+            Weigher<? super K, ? super V> weigher) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be positive for cache " + name
+                    + ", got " + maxEntries);
+        }
+        if ((weigher != null) && (maxWeight < 1)) {
+            throw new IllegalArgumentException("maxWeight must be positive for cache " + name
+                    + ", got " + maxWeight);
+        }
+        this.name = name;
+        this.maxEntries = maxEntries;
+        this.weigher = weigher;
+        this.maxWeight = (weigher == null ? Long.MAX_VALUE : maxWeight);
+        this.weights = (weigher == null ? null : new HashMap<K, Long>());
+        this.windowSize = Math.max(1, maxEntries / 100);
+        int width = Integer.highestOneBit(Math.max(16, Math.min(maxEntries, 1 << 18))) * 8;
+        this.sketch = new byte[width * SKETCH_DEPTH];
+        this.sketchMask = width - 1;
+        this.sketchShift = 32 - Integer.numberOfTrailingZeros(width);
+        this.sampleSize = 10 * Math.max(maxEntries, 16);
+    }
+
+    /**
+     * Registers this cache with the platform MBeanServer, so that its statistics are visible in
+     * JMX consoles under org.intermine:type=Cache.
+     */
+    public synchronized void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName newName = new ObjectName("org.intermine:type=Cache,name="
+                    + ObjectName.quote(name));
+            if (server.isRegistered(newName)) {
+                server.unregisterMBean(newName);
+            }
+            server.registerMBean(this, newName);
+            objectName = newName;
+        } catch (JMException e) {
+            LOG.warn("Could not register cache " + name + " with JMX", e);
+        }
+    }
+
+    /**
+     * Removes this cache from the platform MBeanServer, if it was registered.
+     */
+    public synchronized void unregister() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                LOG.warn("Could not unregister cache " + name + " from JMX", e);
+            }
+            objectName = null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized V get(Object key) {
+        V retval = window.get(key);
+        if ((retval != null) || window.containsKey(key)) {
+            hits++;
+            increment(key);
+            return retval;
+        }
+        retval = main.get(key);
+        if ((retval != null) || main.containsKey(key)) {
+            hits++;
+        } else {
+            misses++;
+        }
+        increment(key);
+        return retval;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean containsKey(Object key) {
+        return window.containsKey(key) || main.containsKey(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized V put(K key, V value) {
+        V retval;
+        if (main.containsKey(key)) {
+            retval = main.put(key, value);
+        } else {
+            retval = window.put(key, value);
+        }
+        if (weigher != null) {
+            long weight = weigher.weigh(key, value);
+            Long oldWeight = weights.put(key, new Long(weight));
+            totalWeight += weight - (oldWeight == null ? 0 : oldWeight.longValue());
+        }
+        evict();
+        return retval;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized V remove(Object key) {
+        V retval;
+        if (window.containsKey(key)) {
+            retval = window.remove(key);
+        } else if (main.containsKey(key)) {
+            retval = main.remove(key);
+        } else {
+            return null;
+        }
+        if (weigher != null) {
+            Long oldWeight = weights.remove(key);
+            totalWeight -= (oldWeight == null ? 0 : oldWeight.longValue());
+        }
+        return retval;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void clear() {
+        window.clear();
+        main.clear();
+        if (weights != null) {
+            weights.clear();
+        }
+        totalWeight = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized int size() {
+        return window.size() + main.size();
+    }
+
+    /**
+     * Returns a snapshot of the entries in this map. Changes to the returned Set are not
+     * reflected in the map, so to remove entries, iterate over the snapshot and call remove on
+     * this map.
+     *
+     * @return a Set of entries
+     */
+    @Override
+    public synchronized Set<Map.Entry<K, V>> entrySet() {
+        LinkedHashMap<K, V> snapshot = new LinkedHashMap<K, V>(main);
+        snapshot.putAll(window);
+        return snapshot.entrySet();
+    }
+
+    private void evict() {
+        while (window.size() > windowSize) {
+            Iterator<Map.Entry<K, V>> windowIter = window.entrySet().iterator();
+            Map.Entry<K, V> candidate = windowIter.next();
+            windowIter.remove();
+            if (window.size() + main.size() < maxEntries) {
+                main.put(candidate.getKey(), candidate.getValue());
+            } else if (main.isEmpty()) {
+                discardWeight(candidate.getKey());
+                rejections++;
+            } else {
+                Iterator<Map.Entry<K, V>> mainIter = main.entrySet().iterator();
+                Map.Entry<K, V> victim = mainIter.next();
+                if (frequency(candidate.getKey()) > frequency(victim.getKey())) {
+                    mainIter.remove();
+                    discardWeight(victim.getKey());
+                    evictions++;
+                    main.put(candidate.getKey(), candidate.getValue());
+                } else {
+                    discardWeight(candidate.getKey());
+                    rejections++;
+                }
+            }
+        }
+        while ((totalWeight > maxWeight) && (size() > 0)) {
+            Map<K, V> region = (main.isEmpty() ? window : main);
+            Iterator<Map.Entry<K, V>> iter = region.entrySet().iterator();
+            K victim = iter.next().getKey();
+            iter.remove();
+            discardWeight(victim);
+            evictions++;
+        }
+    }
+
+    private void discardWeight(K key) {
+        if (weigher != null) {
+            Long oldWeight = weights.remove(key);
+            totalWeight -= (oldWeight == null ? 0 : oldWeight.longValue());
+        }
+    }
+
+    private int index(Object key, int row) {
+        // Murmur3 finaliser, so that sequential keys such as ids are spread out, and then the
+        // top bits of a different multiplication for each row.
+        int hash = (key == null ? 0 : key.hashCode());
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        hash *= SEEDS[row];
+        return row * (sketchMask + 1) + ((hash >>> sketchShift) & sketchMask);
+    }
+
+    private void increment(Object key) {
+        // Conservative update - only the smallest counters are incremented, which reduces the
+        // overestimation caused by collisions.
+        int min = frequency(key);
+        if (min < MAX_FREQUENCY) {
+            for (int row = 0; row < SKETCH_DEPTH; row++) {
+                int i = index(key, row);
+                if (sketch[i] == min) {
+                    sketch[i]++;
+                }
+            }
+        }
+        if (++additions >= sampleSize) {
+            // Age the sketch, so that old popularity fades away.
+            for (int i = 0; i < sketch.length; i++) {
+                sketch[i] >>>= 1;
+            }
+            additions = 0;
+        }
+    }
+
+    private int frequency(Object key) {
+        int retval = MAX_FREQUENCY;
+        for (int row = 0; row < SKETCH_DEPTH; row++) {
+            retval = Math.min(retval, sketch[index(key, row)]);
+        }
+        return retval;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized long getRejections() {
+        return rejections;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized double getHitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0.0 : ((double) hits) / requests;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized int getSize() {
+        return size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized long getWeight() {
+        return totalWeight;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void resetStatistics() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+        rejections = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized String toString() {
+        return "BoundedCacheMap " + name + " (size: " + size() + "/" + maxEntries
+            + (weigher == null ? "" : ", weight: " + totalWeight + "/" + maxWeight)
+            + ", hits: " + hits + ", misses: " + misses + ", evictions: " + evictions
+            + ", rejections: " + rejections + ")";
+    }
+}
@@ -0,0 +1,80 @@
+package org.intermine.util;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+/**
+ * The JMX management interface of BoundedCacheMap.
+ *
+ * @author julie
+ */
+public interface BoundedCacheMapMBean
+{
+    /**
+     * @return the name of the cache
+     */
+    String getName();
+
+    /**
+     * @return the number of lookups that found an entry
+     */
+    long getHits();
+
+    /**
+     * @return the number of lookups that did not find an entry
+     */
+    long getMisses();
+
+    /**
+     * @return the number of entries evicted to stay within the bounds of the cache
+     */
+    long getEvictions();
+
+    /**
+     * @return the number of new entries that were not admitted to the cache, because they were
+     * used less often than the entries already present
+     */
+    long getRejections();
+
+    /**
+     * @return the proportion of lookups that found an entry
+     */
+    double getHitRate();
+
+    /**
+     * @return the current number of entries
+     */
+    int getSize();
+
+    /**
+     * @return the maximum number of entries
+     */
+    int getMaxEntries();
+
+    /**
+     * @return the current total weight of the entries
+     */
+    long getWeight();
+
+    /**
+     * @return the maximum total weight of the entries
+     */
+    long getMaxWeight();
+
+    /**
+     * Removes all entries from the cache.
+     */
+    void clear();
+
+    /**
+     * Sets all the counters back to zero.
+     */
+    void resetStatistics();
+}
@@ -0,0 +1,346 @@
+package org.intermine.util;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A map from primitive int keys to Objects, which remembers the order of its entries like
+ * LinkedHashMap. The order is either insertion order, or access order where get() and put() move
+ * an entry to the end, which makes this class suitable for an LRU cache.
+ * <p>
+ * Unlike LinkedHashMap, no Integer or entry object is created per mapping. Entries are stored in
+ * parallel arrays, with an open-addressed index using linear probing. This class is not
+ * synchronised.
+ *
+ * @param <V> the type of the values
+ * @author julie
+ */
+public class IntLinkedHashMap<V>
+{
+    private static final int NONE = -1;
+
+    private final boolean accessOrder;
+
+    // Entry storage - free slots are chained through after[]
+    private int[] keys;
+    private Object[] values;
+    private int[] before;
+    private int[] after;
+    private int head = NONE;
+    private int tail = NONE;
+    private int free = NONE;
+    private int used = 0;
+    private int size = 0;
+
+    // Open-addressed index from key to entry slot plus one, so that zero means empty
+    private int[] table;
+    private int mask;
+
+    /**
+     * Creates an empty map in insertion order.
+     */
+    public IntLinkedHashMap() {
+        this(16, false);
+    }
+
+    /**
+     * Creates an empty map.
+     *
+     * @param initialCapacity the number of entries to allocate room for
+     * @param accessOrder true for access order, false for insertion order
+     */
+    public IntLinkedHashMap(int initialCapacity, boolean accessOrder) {
+        this.accessOrder = accessOrder;
+        int capacity = Math.max(4, initialCapacity);
+        keys = new int[capacity];
+        values = new Object[capacity];
+        before = new int[capacity];
+        after = new int[capacity];
+        table = new int[tableSizeFor(capacity)];
+        mask = table.length - 1;
+    }
+
+    private static int tableSizeFor(int capacity) {
+        // Keep the index at most half full, so that probe sequences stay short
+        return Integer.highestOneBit(capacity * 2 - 1) * 2;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the index position holding the given key, or the empty position where it would be
+     * inserted, as minus one minus the position.
+     */
+    private int find(int key) {
+        int pos = hash(key) & mask;
+        while (true) {
+            int slot = table[pos] - 1;
+            if (slot == NONE) {
+                return -1 - pos;
+            }
+            if (keys[slot] == key) {
+                return pos;
+            }
+            pos = (pos + 1) & mask;
+        }
+    }
+
+    /**
+     * Returns the value mapped to the given key, and moves the entry to the end if this map is
+     * in access order.
+     *
+     * @param key the key
+     * @return the value, or null if there is no mapping
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int pos = find(key);
+        if (pos < 0) {
+            return null;
+        }
+        int slot = table[pos] - 1;
+        if (accessOrder) {
+            moveToEnd(slot);
+        }
+        return (V) values[slot];
+    }
+
+    /**
+     * Returns the value mapped to the given key, without changing the order of entries.
+     *
+     * @param key the key
+     * @return the value, or null if there is no mapping
+     */
+    @SuppressWarnings("unchecked")
+    public V peek(int key) {
+        int pos = find(key);
+        return (pos < 0 ? null : (V) values[table[pos] - 1]);
+    }
+
+    /**
+     * Returns whether there is a mapping for the given key.
+     *
+     * @param key the key
+     * @return true if there is a mapping
+     */
+    public boolean containsKey(int key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Maps the given key onto the given value. A new entry goes at the end. An existing entry
+     * moves to the end if this map is in access order.
+     *
+     * @param key the key
+     * @param value the value, which may be null
+     * @return the previous value, or null if there was no mapping
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        int pos = find(key);
+        if (pos >= 0) {
+            int slot = table[pos] - 1;
+            V retval = (V) values[slot];
+            values[slot] = value;
+            if (accessOrder) {
+                moveToEnd(slot);
+            }
+            return retval;
+        }
+        if ((free == NONE) && (used == keys.length)) {
+            grow();
+            pos = find(key);
+        }
+        int slot;
+        if (free != NONE) {
+            slot = free;
+            free = after[slot];
+        } else {
+            slot = used++;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        linkLast(slot);
+        table[-1 - pos] = slot + 1;
+        size++;
+        return null;
+    }
+
+    /**
+     * Removes the mapping for the given key.
+     *
+     * @param key the key
+     * @return the value that was removed, or null if there was no mapping
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int pos = find(key);
+        if (pos < 0) {
+            return null;
+        }
+        int slot = table[pos] - 1;
+        V retval = (V) values[slot];
+        deleteIndex(pos);
+        unlink(slot);
+        values[slot] = null;
+        after[slot] = free;
+        free = slot;
+        size--;
+        return retval;
+    }
+
+    /**
+     * Returns the key of the first entry, which is the least recently used in an access-ordered
+     * map.
+     *
+     * @return the key
+     * @throws NoSuchElementException if the map is empty
+     */
+    public int firstKey() {
+        if (head == NONE) {
+            throw new NoSuchElementException();
+        }
+        return keys[head];
+    }
+
+    /**
+     * Returns the keys of all entries, in order.
+     *
+     * @return a new array of keys
+     */
+    public int[] keys() {
+        int[] retval = new int[size];
+        int i = 0;
+        for (int slot = head; slot != NONE; slot = after[slot]) {
+            retval[i++] = keys[slot];
+        }
+        return retval;
+    }
+
+    /**
+     * Returns the number of mappings.
+     *
+     * @return the size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns whether the map is empty.
+     *
+     * @return true if there are no mappings
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all mappings.
+     */
+    public void clear() {
+        Arrays.fill(table, 0);
+        Arrays.fill(values, null);
+        head = NONE;
+        tail = NONE;
+        free = NONE;
+        used = 0;
+        size = 0;
+    }
+
+    private void linkLast(int slot) {
+        before[slot] = tail;
+        after[slot] = NONE;
+        if (tail == NONE) {
+            head = slot;
+        } else {
+            after[tail] = slot;
+        }
+        tail = slot;
+    }
+
+    private void unlink(int slot) {
+        if (before[slot] == NONE) {
+            head = after[slot];
+        } else {
+            after[before[slot]] = after[slot];
+        }
+        if (after[slot] == NONE) {
+            tail = before[slot];
+        } else {
+            before[after[slot]] = before[slot];
+        }
+    }
+
+    private void moveToEnd(int slot) {
+        if (tail != slot) {
+            unlink(slot);
+            linkLast(slot);
+        }
+    }
+
+    /**
+     * Empties the given index position, shifting back any later entries of the same probe
+     * sequence so that lookups do not need tombstones.
+     */
+    private void deleteIndex(int pos) {
+        int gap = pos;
+        int next = (gap + 1) & mask;
+        while (table[next] != 0) {
+            int home = hash(keys[table[next] - 1]) & mask;
+            // Move the entry back if its home position is not between the gap and its position
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                table[gap] = table[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        table[gap] = 0;
+    }
+
+    private void grow() {
+        int capacity = keys.length * 2;
+        int[] newKeys = new int[capacity];
+        Object[] newValues = new Object[capacity];
+        int[] newBefore = new int[capacity];
+        int[] newAfter = new int[capacity];
+        // Compact the entries into order, so that the new arrays have no holes
+        int i = 0;
+        for (int slot = head; slot != NONE; slot = after[slot]) {
+            newKeys[i] = keys[slot];
+            newValues[i] = values[slot];
+            newBefore[i] = i - 1;
+            newAfter[i] = i + 1;
+            i++;
+        }
+        if (i > 0) {
+            newAfter[i - 1] = NONE;
+        }
+        keys = newKeys;
+        values = newValues;
+        before = newBefore;
+        after = newAfter;
+        head = (i == 0 ? NONE : 0);
+        tail = i - 1;
+        free = NONE;
+        used = i;
+        table = new int[tableSizeFor(capacity)];
+        mask = table.length - 1;
+        for (int slot = 0; slot < used; slot++) {
+            table[-1 - find(keys[slot])] = slot + 1;
+        }
+    }
+}
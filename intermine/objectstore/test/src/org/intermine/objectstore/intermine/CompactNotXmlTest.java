@@ -0,0 +1,110 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Collections;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.intermine.model.testmodel.Company;
+import org.intermine.model.testmodel.Department;
+import org.intermine.model.testmodel.Employee;
+import org.intermine.objectstore.ObjectStoreFactory;
+import org.intermine.objectstore.proxy.ProxyReference;
+import org.intermine.util.DynamicBean;
+import org.intermine.util.DynamicUtil;
+
+public class CompactNotXmlTest extends TestCase
+{
+    ObjectStoreInterMineImpl os;
+
+    public void setUp() throws Exception {
+        os = (ObjectStoreInterMineImpl) ObjectStoreFactory.getObjectStore("os.unittest");
+    }
+
+    public void testRender() throws Exception {
+        Employee e = new Employee();
+        Department d = new Department();
+        e.setId(new Integer(1234));
+        e.setName("Employee1");
+        d.setId(new Integer(5678));
+        e.setDepartment(d);
+
+        String expected = CompactNotXmlReader.HEADER + "38:org.intermine.model.testmodel.Employee"
+            + "4:aage1:0" + "11:rdepartment4:5678" + "9:afullTime5:false" + "3:aid4:1234"
+            + "5:aname9:Employee1";
+
+        String got = CompactNotXmlRenderer.render(e).toString();
+        assertEquals(got, expected, got);
+    }
+
+    public void testRoundTrip() throws Exception {
+        Employee e = new Employee();
+        Department d = new Department();
+        e.setId(new Integer(1234));
+        e.setName("Flibble $_^ Wotsit 12:34");
+        e.setAge(-42);
+        d.setId(new Integer(5678));
+        e.setDepartment(d);
+
+        String data = CompactNotXmlRenderer.render(e).toString();
+        Employee obj1 = (Employee) NotXmlParser.parse(data, os);
+
+        assertEquals(e.getName(), obj1.getName());
+        assertEquals(-42, obj1.getAge());
+        assertEquals(new Integer(1234), obj1.getId());
+        java.lang.reflect.Field f = Employee.class.getDeclaredField("department");
+        f.setAccessible(true);
+        ProxyReference o = (ProxyReference) f.get(obj1);
+        assertNotNull(o);
+        assertEquals(new Integer(5678), o.getId());
+    }
+
+    public void testRoundTripDynamic() throws Exception {
+        Company c = (Company) DynamicUtil.createObject(Collections.singleton(Company.class));
+        c.setId(new Integer(74350));
+        c.setName("CompanyC");
+        c.setVatNumber(100);
+
+        String data = CompactNotXmlRenderer.render(c).toString();
+        Company obj1 = (Company) NotXmlParser.parse(data, os);
+
+        assertEquals("CompanyC", obj1.getName());
+        assertEquals(100, obj1.getVatNumber());
+        assertEquals(new Integer(74350), obj1.getId());
+        Map fieldMap = ((DynamicBean) ((net.sf.cglib.proxy.Factory) obj1).getCallback(0)).getMap();
+        assertNull(fieldMap.get("address"));
+    }
+
+    public void testOldFormatStillParses() throws Exception {
+        Employee e = new Employee();
+        e.setId(new Integer(2874));
+        e.setName("Employee2");
+
+        Employee reparsed = (Employee) NotXmlParser.parse(NotXmlRenderer.render(e).toString(), os);
+
+        assertEquals(e.getName(), reparsed.getName());
+        assertEquals(e.getId(), reparsed.getId());
+    }
+
+    public void testReader() throws Exception {
+        CompactNotXmlReader reader = new CompactNotXmlReader(CompactNotXmlReader.HEADER
+                + "3:abc5:aname2:-70:");
+        assertEquals("abc", reader.readString());
+        assertFalse(reader.nextTagIs("anam"));
+        assertTrue(reader.nextTagIs("aname"));
+        assertEquals(-7, reader.readInt());
+        assertTrue(reader.hasNext());
+        assertEquals("", reader.readString());
+        assertFalse(reader.hasNext());
+    }
+}
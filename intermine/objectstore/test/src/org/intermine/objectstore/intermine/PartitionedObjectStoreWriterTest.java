@@ -0,0 +1,116 @@
+package org.intermine.objectstore.intermine;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.intermine.model.testmodel.Employee;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.ObjectStoreFactory;
+import org.intermine.objectstore.ObjectStoreWriter;
+
+/**
+ * Tests for PartitionedObjectStoreWriter.
+ * @author julie
+ */
+public class PartitionedObjectStoreWriterTest extends TestCase
+{
+    private ObjectStore os;
+    private PartitionedObjectStoreWriter writer;
+    private List<Employee> stored = new ArrayList<Employee>();
+
+    public void setUp() throws Exception {
+        os = ObjectStoreFactory.getObjectStore("os.unittest");
+        writer = new PartitionedObjectStoreWriter(os, 3);
+    }
+
+    public void tearDown() throws Exception {
+        writer.close();
+        ObjectStoreWriter cleaner = new ObjectStoreWriterInterMineImpl(os);
+        try {
+            for (Employee employee : stored) {
+                if (employee.getId() != null) {
+                    cleaner.delete(employee);
+                }
+            }
+        } finally {
+            cleaner.close();
+        }
+    }
+
+    private List<String> names(int count) {
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            names.add("PartitionedWriter " + i);
+        }
+        return names;
+    }
+
+    public void testCommit() throws Exception {
+        assertEquals(3, writer.size());
+        writer.beginTransaction();
+        writer.process(names(10), new PartitionedObjectStoreWriter.Job<String>() {
+            public void process(String name, ObjectStoreWriter osw) throws Exception {
+                Employee employee = new Employee();
+                employee.setName(name);
+                osw.store(employee);
+                synchronized (stored) {
+                    stored.add(employee);
+                }
+            }
+        });
+        writer.commitTransaction();
+        os.flushObjectById();
+        assertEquals(10, stored.size());
+        for (Employee employee : stored) {
+            Employee fetched = (Employee) os.getObjectById(employee.getId(), Employee.class);
+            assertNotNull(fetched);
+            assertEquals(employee.getName(), fetched.getName());
+        }
+    }
+
+    public void testAbort() throws Exception {
+        writer.beginTransaction();
+        for (String name : names(4)) {
+            Employee employee = new Employee();
+            employee.setName(name);
+            writer.getWriter(name).store(employee);
+            stored.add(employee);
+        }
+        writer.abortTransaction();
+        os.flushObjectById();
+        for (Employee employee : stored) {
+            assertNull(os.getObjectById(employee.getId(), Employee.class));
+        }
+        for (int i = 0; i < writer.size(); i++) {
+            assertFalse(writer.getWriter(i).isInTransaction());
+        }
+    }
+
+    public void testJobFailure() throws Exception {
+        writer.beginTransaction();
+        try {
+            writer.process(names(5), new PartitionedObjectStoreWriter.Job<String>() {
+                public void process(String name, ObjectStoreWriter osw) throws Exception {
+                    throw new IllegalStateException(name);
+                }
+            });
+            fail("Expected an ObjectStoreException");
+        } catch (ObjectStoreException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        writer.abortTransaction();
+    }
+}
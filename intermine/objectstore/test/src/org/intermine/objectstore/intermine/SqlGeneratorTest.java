@@ -916,6 +916,31 @@ public class SqlGeneratorTest extends SetupDataTestCase
         //org.intermine.sql.query.Query sqlQ = new org.intermine.sql.query.Query(sql);
     }
 
+    public void testTemplateForSameShape() throws Exception {
+        Query q1 = employeeQuery("EmployeeA1", 10);
+        Query q2 = employeeQuery("EmployeeB1", 20);
+        String sql1 = SqlGenerator.generate(q1, 0, Integer.MAX_VALUE, getSchema(), db, new HashMap());
+        String sql2 = SqlGenerator.generate(q2, 0, 10, getSchema(), db, new HashMap());
+        assertEquals(SqlGenerator.generate(q1, getSchema(), db, null, SqlGenerator.QUERY_NORMAL, new HashMap()), sql1);
+        assertEquals(SqlGenerator.generate(q2, getSchema(), db, null, SqlGenerator.QUERY_NORMAL, new HashMap()) + " LIMIT 10", sql2);
+        assertTrue(sql2, sql2.contains("'EmployeeB1'"));
+        assertTrue(sql2, sql2.contains("20"));
+    }
+
+    private static Query employeeQuery(String name, int age) {
+        Query q = new Query();
+        QueryClass qc = new QueryClass(Employee.class);
+        q.addFrom(qc);
+        q.addToSelect(qc);
+        ConstraintSet cs = new ConstraintSet(ConstraintOp.AND);
+        cs.addConstraint(new SimpleConstraint(new QueryField(qc, "name"), ConstraintOp.EQUALS,
+                    new QueryValue(name)));
+        cs.addConstraint(new SimpleConstraint(new QueryField(qc, "age"), ConstraintOp.GREATER_THAN,
+                    new QueryValue(new Integer(age))));
+        q.setConstraint(cs);
+        return q;
+    }
+
     public void testContainsConstraintNullCollectionMN() throws Exception{
         Query q1 = new Query();
         QueryClass qc = new QueryClass(Company.class);
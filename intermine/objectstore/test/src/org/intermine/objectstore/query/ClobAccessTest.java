@@ -0,0 +1,111 @@
+package org.intermine.objectstore.query;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import junit.framework.TestCase;
+
+import org.intermine.objectstore.dummy.ObjectStoreDummyImpl;
+
+public class ClobAccessTest extends TestCase
+{
+    private static final int PAGES = 45;
+
+    private ObjectStoreDummyImpl os;
+    private String text;
+
+    public ClobAccessTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        // The dummy ObjectStore returns the rows from start to start + limit, so it behaves like
+        // the clob table for a single clob.
+        os = new ObjectStoreDummyImpl();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < PAGES * Clob.CLOB_PAGE_SIZE - 500; i++) {
+            sb.append((char) ('a' + (i / 7) % 26));
+        }
+        text = sb.toString();
+        for (int page = 0; page < PAGES; page++) {
+            ResultsRow<Object> row = new ResultsRow<Object>();
+            row.add(text.substring(page * Clob.CLOB_PAGE_SIZE,
+                        Math.min(text.length(), (page + 1) * Clob.CLOB_PAGE_SIZE)));
+            os.addRow(row);
+        }
+        os.setResultsSize(PAGES);
+    }
+
+    public void testUnknownLength() throws Exception {
+        ClobAccess ca = new ClobAccess(os, new Clob(1));
+        assertFalse(ca.isLengthKnown());
+        assertEquals(text.length(), ca.length());
+        assertEquals(text, ca.toString());
+    }
+
+    public void testSubSequenceFetchesOnlyCoveringPages() throws Exception {
+        ClobAccess ca = new ClobAccess(os, new Clob(1), text.length());
+        int start = 30 * Clob.CLOB_PAGE_SIZE - 100;
+        ClobAccess sub = ca.subSequence(start, start + 200);
+        assertEquals(0, os.getExecuteCalls());
+        assertEquals(200, sub.length());
+        assertEquals(text.substring(start, start + 200), sub.toString());
+        assertEquals(1, os.getExecuteCalls());
+        assertEquals(text.charAt(start + 150), sub.charAt(150));
+        assertEquals(1, os.getExecuteCalls());
+    }
+
+    public void testDrainFetchesWindows() throws Exception {
+        ClobAccess ca = new ClobAccess(os, new Clob(1), text.length());
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(baos);
+        ca.drainToPrintStream(out);
+        out.flush();
+        assertEquals(text, baos.toString());
+        assertEquals((PAGES + ClobAccess.PAGE_WINDOW - 1) / ClobAccess.PAGE_WINDOW,
+                os.getExecuteCalls());
+    }
+
+    public void testPacked() throws Exception {
+        ObjectStoreDummyImpl packedOs = new ObjectStoreDummyImpl();
+        for (int page = 0; page < PAGES; page++) {
+            ResultsRow<Object> row = new ResultsRow<Object>();
+            row.add(PackedSequenceCodec.encode(text, page * Clob.CLOB_PAGE_SIZE,
+                        Math.min(text.length(), (page + 1) * Clob.CLOB_PAGE_SIZE)));
+            packedOs.addRow(row);
+        }
+        packedOs.setResultsSize(PAGES);
+        ClobAccess ca = new ClobAccess(packedOs, new Clob(1), text.length(), true);
+        assertEquals("P1,0," + text.length(), ca.getDbDescription());
+        assertEquals(text, ca.toString());
+
+        ClobAccess sub = ClobAccess.decodeDbDescription(packedOs, "P1,13995,10");
+        assertTrue(sub.isPacked());
+        assertEquals(text.substring(13995, 14005), sub.toString());
+        assertEquals(text.charAt(14000), sub.charAt(5));
+    }
+
+    public void testDbDescription() throws Exception {
+        ClobAccess ca = new ClobAccess(os, new Clob(1), text.length());
+        assertEquals("1,0," + text.length(), ca.getDbDescription());
+        assertEquals("1,7005,10", ca.subSequence(7005, 7015).getDbDescription());
+        assertEquals("1", new ClobAccess(os, new Clob(1)).getDbDescription());
+
+        ClobAccess decoded = ClobAccess.decodeDbDescription(os, "1,7005,10");
+        assertTrue(decoded.isLengthKnown());
+        assertEquals(10, decoded.length());
+        assertEquals(0, os.getExecuteCalls());
+        assertEquals(text.substring(7005, 7015), decoded.toString());
+        assertEquals(text.substring(7007, 7009), decoded.subSequence(2, 4).toString());
+    }
+}
@@ -0,0 +1,230 @@
+package org.intermine.objectstore.query;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.intermine.metadata.ConstraintOp;
+import org.intermine.model.testmodel.Department;
+import org.intermine.model.testmodel.Employee;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.dummy.ObjectStoreDummyImpl;
+
+/**
+ * Tests for KeysetResultsIterator, against an ObjectStore that evaluates the keyset constraints
+ * in memory.
+ *
+ * @author julie
+ */
+public class KeysetResultsIteratorTest extends TestCase
+{
+    private List<Employee> employees;
+
+    @Override
+    public void setUp() {
+        employees = new ArrayList<Employee>();
+        String[] names = new String[] {"Carol", null, "Alice", "Bob", "Alice", null, "Dave",
+            "Bob", "Alice", "Eve", "Carol"};
+        for (int i = 0; i < names.length; i++) {
+            Employee e = new Employee();
+            e.setId(Integer.valueOf(100 - i));
+            e.setName(names[i]);
+            e.setAge(20 + (i % 3));
+            employees.add(e);
+        }
+    }
+
+    public void testIsApplicable() {
+        QueryClass qc = new QueryClass(Employee.class);
+        Query q = new Query();
+        q.addFrom(qc);
+        q.addToSelect(qc);
+        q.addToOrderBy(new QueryField(qc, "name"));
+        assertTrue(KeysetResultsIterator.isApplicable(q));
+
+        q.setDistinct(false);
+        assertFalse(KeysetResultsIterator.isApplicable(q));
+        q.setDistinct(true);
+
+        q.setLimit(10);
+        assertFalse(KeysetResultsIterator.isApplicable(q));
+
+        // ordered by a class that is not selected
+        QueryClass qcDept = new QueryClass(Department.class);
+        Query q2 = new Query();
+        q2.addFrom(qc);
+        q2.addFrom(qcDept);
+        q2.addToSelect(qc);
+        q2.addToOrderBy(new QueryField(qcDept, "name"));
+        assertFalse(KeysetResultsIterator.isApplicable(q2));
+
+        // ordered by a boolean
+        Query q3 = new Query();
+        q3.addFrom(qc);
+        q3.addToSelect(qc);
+        q3.addToOrderBy(new QueryField(qc, "fullTime"));
+        assertFalse(KeysetResultsIterator.isApplicable(q3));
+    }
+
+    public void testAscending() throws Exception {
+        QueryClass qc = new QueryClass(Employee.class);
+        Query q = new Query();
+        q.addFrom(qc);
+        q.addToSelect(qc);
+        q.addToOrderBy(new QueryField(qc, "name"));
+        for (int batchSize = 1; batchSize <= 12; batchSize++) {
+            assertOrder(q, batchSize, false);
+        }
+    }
+
+    public void testDescending() throws Exception {
+        QueryClass qc = new QueryClass(Employee.class);
+        Query q = new Query();
+        q.addFrom(qc);
+        q.addToSelect(qc);
+        q.addToOrderBy(new OrderDescending(new QueryField(qc, "name")));
+        for (int batchSize = 1; batchSize <= 12; batchSize++) {
+            assertOrder(q, batchSize, true);
+        }
+    }
+
+    public void testFirstBatchExplained() throws Exception {
+        QueryClass qc = new QueryClass(Employee.class);
+        Query q = new Query();
+        q.addFrom(qc);
+        q.addToSelect(qc);
+        q.addToOrderBy(new QueryField(qc, "name"));
+        InMemoryObjectStore os = new InMemoryObjectStore();
+        KeysetResultsIterator iter = new KeysetResultsIterator(os, q, 4);
+        while (iter.hasNext()) {
+            iter.next();
+        }
+        assertEquals(Arrays.asList(Boolean.TRUE, Boolean.FALSE, Boolean.FALSE), os.explains);
+    }
+
+    private void assertOrder(Query q, int batchSize, final boolean desc) throws Exception {
+        List<Employee> expected = new ArrayList<Employee>(employees);
+        Collections.sort(expected, new Comparator<Employee>() {
+            @Override
+            public int compare(Employee e1, Employee e2) {
+                int retval = compareNames(e1.getName(), e2.getName());
+                if (desc) {
+                    retval = -retval;
+                }
+                return retval != 0 ? retval : e1.getId().compareTo(e2.getId());
+            }
+        });
+        InMemoryObjectStore os = new InMemoryObjectStore();
+        KeysetResultsIterator iter = new KeysetResultsIterator(os, q, batchSize);
+        List<Object> actual = new ArrayList<Object>();
+        while (iter.hasNext()) {
+            actual.add(iter.next().get(0));
+        }
+        assertEquals("batch size " + batchSize, expected, actual);
+        assertEquals(employees.size() / batchSize + 1, iter.getBatchCount());
+    }
+
+    // NULLs sort last, as in PostgreSQL
+    private static int compareNames(String n1, String n2) {
+        if (n1 == null) {
+            return n2 == null ? 0 : 1;
+        }
+        return n2 == null ? -1 : n1.compareTo(n2);
+    }
+
+    private static Object getValue(Employee e, QueryField qf) {
+        if ("id".equals(qf.getFieldName())) {
+            return e.getId();
+        }
+        return e.getName();
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static boolean matches(Employee e, Constraint c) {
+        if (c == null) {
+            return true;
+        }
+        if (c instanceof ConstraintSet) {
+            boolean and = ConstraintOp.AND.equals(c.getOp());
+            for (Constraint sub : ((ConstraintSet) c).getConstraints()) {
+                if (matches(e, sub) != and) {
+                    return !and;
+                }
+            }
+            return and;
+        }
+        SimpleConstraint sc = (SimpleConstraint) c;
+        Comparable value = (Comparable) getValue(e, (QueryField) sc.getArg1());
+        ConstraintOp op = sc.getOp();
+        if (ConstraintOp.IS_NULL.equals(op)) {
+            return value == null;
+        } else if (ConstraintOp.IS_NOT_NULL.equals(op)) {
+            return value != null;
+        } else if (value == null) {
+            return false;
+        }
+        int comparison = value.compareTo(((QueryValue) sc.getArg2()).getValue());
+        if (ConstraintOp.EQUALS.equals(op)) {
+            return comparison == 0;
+        } else if (ConstraintOp.GREATER_THAN.equals(op)) {
+            return comparison > 0;
+        } else if (ConstraintOp.LESS_THAN.equals(op)) {
+            return comparison < 0;
+        }
+        throw new IllegalArgumentException("Unexpected op " + op);
+    }
+
+    /**
+     * Runs single-class queries over the employees, in the order given by the query.
+     */
+    private class InMemoryObjectStore extends ObjectStoreDummyImpl
+    {
+        private final List<Boolean> explains = new ArrayList<Boolean>();
+
+        @Override
+        @SuppressWarnings({ "rawtypes", "unchecked" })
+        public List execute(final Query q, int start, int limit, boolean optimise,
+                boolean explain, Map<Object, Integer> sequence) throws ObjectStoreException {
+            explains.add(Boolean.valueOf(explain));
+            List<Employee> matching = new ArrayList<Employee>();
+            for (Employee e : employees) {
+                if (matches(e, q.getConstraint())) {
+                    matching.add(e);
+                }
+            }
+            final boolean desc = q.getOrderBy().get(0) instanceof OrderDescending;
+            Collections.sort(matching, new Comparator<Employee>() {
+                @Override
+                public int compare(Employee e1, Employee e2) {
+                    int retval = compareNames(e1.getName(), e2.getName());
+                    if (desc) {
+                        retval = -retval;
+                    }
+                    return retval != 0 ? retval : e1.getId().compareTo(e2.getId());
+                }
+            });
+            List rows = new ArrayList();
+            for (int i = start; i < Math.min(start + limit, matching.size()); i++) {
+                ResultsRow row = new ResultsRow();
+                row.add(matching.get(i));
+                rows.add(row);
+            }
+            return rows;
+        }
+    }
+}
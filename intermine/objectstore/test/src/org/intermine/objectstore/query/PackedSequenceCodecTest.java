@@ -0,0 +1,62 @@
+package org.intermine.objectstore.query;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import junit.framework.TestCase;
+
+public class PackedSequenceCodecTest extends TestCase
+{
+    public PackedSequenceCodecTest(String arg) {
+        super(arg);
+    }
+
+    public void testRoundTrip() throws Exception {
+        String[] sequences = new String[] {"", "A", "AC", "ACG", "ACGT", "GATTACA",
+            "NNNNNACGTNNNN", "acgtACGTacgt", "ACGTnnnnACGT", "RYKMSWBDHV", "acgtRYkmACGT-.*",
+            "TTTTTTTTTTTTTTTTTTTTTTTTTTTTTTTTTTTTTTTTTTTn"};
+        for (String sequence : sequences) {
+            String packed = PackedSequenceCodec.encode(sequence, 0, sequence.length());
+            assertEquals(sequence, PackedSequenceCodec.decode(packed));
+        }
+    }
+
+    public void testEncodePart() throws Exception {
+        String sequence = "NNNNacgtGATTACANN";
+        String packed = PackedSequenceCodec.encode(sequence, 4, 15);
+        assertEquals("acgtGATTACA", PackedSequenceCodec.decode(packed));
+    }
+
+    public void testSize() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < Clob.CLOB_PAGE_SIZE; i++) {
+            sb.append("ACGT".charAt((i * 7 + i / 13) % 4));
+        }
+        String packed = PackedSequenceCodec.encode(sb, 0, sb.length());
+        assertTrue(packed.length() < sb.length() / 2);
+        assertEquals(sb.toString(), PackedSequenceCodec.decode(packed));
+    }
+
+    public void testIsWorthPacking() throws Exception {
+        assertTrue(PackedSequenceCodec.isWorthPacking("GATTACAGATTACAGATTACANNNNNNNNNNNNNNNNNNNNNNNN"
+                    + "GATTACAGATTACAGATTACAGATTACAGATTACAGATTACAGATTACAGATTACAGATTACA"));
+        assertFalse(PackedSequenceCodec.isWorthPacking("MKVLAAGIVGLLLAQPSWAEEKTPLEQRLLEMEQRLE"));
+        assertFalse(PackedSequenceCodec.isWorthPacking(""));
+    }
+
+    public void testNotPacked() throws Exception {
+        try {
+            PackedSequenceCodec.decode("ACGT");
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
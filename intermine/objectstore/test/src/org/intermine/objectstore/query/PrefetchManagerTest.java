@@ -0,0 +1,106 @@
+package org.intermine.objectstore.query;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+import org.intermine.model.testmodel.Department;
+import org.intermine.objectstore.ObjectStore;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.objectstore.dummy.ObjectStoreDummyImpl;
+
+public class PrefetchManagerTest extends TestCase
+{
+    private ObjectStoreDummyImpl os;
+    private Query q;
+    // Queries wait for this latch, so that a test can keep the service threads busy
+    private volatile CountDownLatch release = new CountDownLatch(0);
+
+    public PrefetchManagerTest(String arg1) {
+        super(arg1);
+    }
+
+    public void setUp() throws Exception {
+        os = new ObjectStoreDummyImpl() {
+            @Override
+            public List execute(Query q, int start, int limit, boolean optimise,
+                    boolean explain, Map<Object, Integer> sequence) throws ObjectStoreException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new ObjectStoreException(e);
+                }
+                return super.execute(q, start, limit, optimise, explain, sequence);
+            }
+        };
+        os.setResultsSize(100);
+        for (int i = 0; i < 100; i++) {
+            ResultsRow row = new ResultsRow();
+            row.add("" + i);
+            os.addRow(row);
+        }
+        q = new Query();
+        q.addFrom(new QueryClass(Department.class));
+    }
+
+    public void testPrefetchThenFetch() throws Exception {
+        PrefetchManager.configure(os, 2, 10);
+        ResultsBatches batches = new ResultsBatches(q, os, ObjectStore.SEQUENCE_IGNORE);
+        batches.batchSize = 10;
+        for (int i = 0; i < 5; i++) {
+            batches.prefetch(i, true, true);
+        }
+        for (int i = 0; i < 5; i++) {
+            List<Object> batch = batches.getBatch(i, true, true);
+            assertEquals(10, batch.size());
+            assertEquals("" + (i * 10), ((ResultsRow) batch.get(0)).get(0));
+        }
+        PrefetchManager.Statistics stats = PrefetchManager.getStatistics(os);
+        assertEquals(5, stats.getRequested());
+        assertEquals(5, stats.getPrefetched() + stats.getTakenOver() + stats.getWasted());
+    }
+
+    public void testQueueFullDropsRequests() throws Exception {
+        PrefetchManager.configure(os, 1, 1);
+        ResultsBatches batches = new ResultsBatches(q, os, ObjectStore.SEQUENCE_IGNORE);
+        batches.batchSize = 10;
+        release = new CountDownLatch(1);
+        PrefetchManager.Statistics stats = PrefetchManager.getStatistics(os);
+        try {
+            // The first request is handed straight to the single service thread, which blocks
+            // on the latch, and the second fills the queue, so the other eight are dropped.
+            for (int i = 0; i < 10; i++) {
+                batches.prefetch(i, true, true);
+            }
+            assertEquals(10, stats.getRequested());
+            assertEquals(stats.toString(), 8, stats.getDropped());
+        } finally {
+            release.countDown();
+        }
+        // Everything must still be fetchable, whether or not it was prefetched.
+        for (int i = 0; i < 10; i++) {
+            assertEquals(10, batches.getBatch(i, true, true).size());
+        }
+    }
+
+    public void testInvalidConfiguration() throws Exception {
+        try {
+            PrefetchManager.configure(os, 0, 10);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
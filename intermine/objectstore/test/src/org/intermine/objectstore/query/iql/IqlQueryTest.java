@@ -18,7 +18,15 @@ import java.util.List;
 
 import junit.framework.Test;
 
+import org.intermine.metadata.ConstraintOp;
+import org.intermine.model.testmodel.Employee;
+import org.intermine.objectstore.query.BagConstraint;
+import org.intermine.objectstore.query.ConstraintSet;
 import org.intermine.objectstore.query.Query;
+import org.intermine.objectstore.query.QueryClass;
+import org.intermine.objectstore.query.QueryField;
+import org.intermine.objectstore.query.QueryValue;
+import org.intermine.objectstore.query.SimpleConstraint;
 import org.intermine.testing.OneTimeTestCase;
 
 public class IqlQueryTest extends IqlQueryTestCase
@@ -87,6 +95,26 @@ public class IqlQueryTest extends IqlQueryTestCase
         }
     }
 
+    public void testQueryShape() throws Exception {
+        QueryClass qc = new QueryClass(Employee.class);
+        QueryValue name = new QueryValue("EmployeeA1");
+        Query q = new Query();
+        q.addFrom(qc);
+        q.addToSelect(qc);
+        ConstraintSet cs = new ConstraintSet(ConstraintOp.OR);
+        cs.addConstraint(new SimpleConstraint(new QueryField(qc, "name"), ConstraintOp.EQUALS, name));
+        cs.addConstraint(new SimpleConstraint(new QueryField(qc, "fullTime"), ConstraintOp.EQUALS, new QueryValue(Boolean.TRUE)));
+        cs.addConstraint(new SimpleConstraint(new QueryField(qc, "end"), ConstraintOp.EQUALS, name));
+        q.setConstraint(cs);
+        List<QueryValue> values = new ArrayList<QueryValue>();
+        assertEquals("SELECT DISTINCT a1_ FROM org.intermine.model.testmodel.Employee AS a1_ WHERE (a1_.name = ?0:java.lang.String OR a1_.fullTime = ?1:java.lang.Boolean OR a1_.end = ?0:java.lang.String)", IqlQuery.queryShape(q, values));
+        assertEquals(2, values.size());
+        assertSame(name, values.get(0));
+
+        cs.addConstraint(new BagConstraint(new QueryField(qc, "name"), ConstraintOp.IN, Arrays.asList("EmployeeA2")));
+        assertNull(IqlQuery.queryShape(q, new ArrayList<QueryValue>()));
+    }
+
     public void testToStringTruncatedParameters() throws Exception {
         String iql = "SELECT a1_ FROM org.intermine.model.InterMineObject AS a1_ WHERE a1_.id IN ?";
         List<Object> bags = new ArrayList<Object>();
@@ -10,6 +10,9 @@ package org.intermine.sql.precompute;
  *
  */
 
+import java.util.Collections;
+import java.util.HashSet;
+
 import junit.framework.TestCase;
 
 public class OptimiserCacheTest extends TestCase
@@ -28,4 +31,57 @@ public class OptimiserCacheTest extends TestCase
         assertNull(cache.lookup("original1", 10));
         assertNull(cache.lookup("somethingelse", 1000));
     }
+
+    public void testReplaceLineWithSameLimit() throws Exception {
+        OptimiserCache cache = new OptimiserCache();
+        cache.addCacheLine("original1", "optimised1_1", 1000);
+        cache.addCacheLine("original1", "optimised1_1", 1000);
+        cache.addCacheLine("EXPLAIN original1", "EXPLAIN optimised1_2", 1000);
+        assertEquals(1, cache.size());
+        assertEquals("optimised1_2", cache.lookup("original1", 1000));
+        assertEquals("EXPLAIN optimised1_2", cache.lookup("EXPLAIN original1", 1000));
+    }
+
+    public void testEvictLeastRecentlyUsed() throws Exception {
+        OptimiserCache cache = new OptimiserCache(10);
+        for (int i = 0; i < 10; i++) {
+            cache.addCacheLine("original" + i, "optimised" + i, 1000);
+        }
+        assertEquals("optimised0", cache.lookup("original0", 1000));
+        cache.addCacheLine("original10", "optimised10", 1000);
+        assertEquals(9, cache.size());
+        assertEquals("optimised0", cache.lookup("original0", 1000));
+        assertNull(cache.lookup("original1", 1000));
+        assertNull(cache.lookup("original2", 1000));
+        assertEquals("optimised10", cache.lookup("original10", 1000));
+    }
+
+    public void testConcurrentAdds() throws Exception {
+        final OptimiserCache cache = new OptimiserCache();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int limit = 1000 * (int) Math.pow(4, t);
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < 500; i++) {
+                        cache.addCacheLine("original" + i, "optimised" + i + "_" + limit, limit);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(500, cache.size());
+        assertEquals("optimised7_1000", cache.lookup("original7", 1000));
+        assertEquals("optimised7_64000", cache.lookup("original7", 64000));
+    }
+
+    public void testTag() throws Exception {
+        assertEquals(OptimiserCache.getTag("1234", Collections.<PrecomputedTable>emptySet()),
+                OptimiserCache.getTag("1234", new HashSet<PrecomputedTable>()));
+        assertFalse(OptimiserCache.getTag("1234", Collections.<PrecomputedTable>emptySet())
+                .equals(OptimiserCache.getTag("5678", Collections.<PrecomputedTable>emptySet())));
+    }
 }
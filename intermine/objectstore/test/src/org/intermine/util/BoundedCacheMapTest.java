@@ -0,0 +1,89 @@
+package org.intermine.util;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import junit.framework.TestCase;
+
+public class BoundedCacheMapTest extends TestCase
+{
+    public BoundedCacheMapTest(String arg1) {
+        super(arg1);
+    }
+
+    public void testBoundedByEntries() throws Exception {
+        BoundedCacheMap<Integer, String> cm = new BoundedCacheMap<Integer, String>("test", 100);
+        for (int i = 0; i < 1000; i++) {
+            cm.put(new Integer(i), "" + i);
+        }
+        assertTrue("Size was " + cm.size(), cm.size() <= 100);
+        assertTrue("Expected most recent to be present", cm.containsKey(new Integer(999)));
+        assertTrue(cm.getEvictions() + cm.getRejections() >= 900);
+    }
+
+    public void testFrequentEntriesSurviveScan() throws Exception {
+        BoundedCacheMap<Integer, String> cm = new BoundedCacheMap<Integer, String>("test", 100);
+        for (int i = 0; i < 50; i++) {
+            cm.put(new Integer(i), "" + i);
+        }
+        for (int repeat = 0; repeat < 10; repeat++) {
+            for (int i = 0; i < 50; i++) {
+                cm.get(new Integer(i));
+            }
+        }
+        // A one-off scan through lots of other keys should not flush out the popular ones.
+        // This is the access pattern of getObjectById - a lookup, and then a put if it missed.
+        for (int i = 1000; i < 2000; i++) {
+            if (cm.get(new Integer(i)) == null) {
+                cm.put(new Integer(i), "" + i);
+            }
+        }
+        int present = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cm.containsKey(new Integer(i))) {
+                present++;
+            }
+        }
+        // The frequency sketch is probabilistic, but a plain LRU cache would have kept none.
+        assertTrue("Only " + present + " popular entries survived", present >= 45);
+    }
+
+    public void testNullValuesAndStatistics() throws Exception {
+        BoundedCacheMap<Integer, String> cm = new BoundedCacheMap<Integer, String>("test", 10);
+        cm.put(new Integer(5), "40");
+        cm.put(new Integer(2), null);
+
+        assertEquals("40", cm.get(new Integer(5)));
+        assertNull(cm.get(new Integer(2)));
+        assertTrue(cm.containsKey(new Integer(2)));
+        assertNull(cm.get(new Integer(3)));
+        assertEquals(2, cm.getHits());
+        assertEquals(1, cm.getMisses());
+
+        assertEquals("40", cm.remove(new Integer(5)));
+        assertFalse(cm.containsKey(new Integer(5)));
+        cm.clear();
+        assertEquals(0, cm.size());
+    }
+
+    public void testBoundedByWeight() throws Exception {
+        BoundedCacheMap<Integer, String> cm = new BoundedCacheMap<Integer, String>("test", 1000,
+                100, new BoundedCacheMap.Weigher<Integer, String>() {
+                    public long weigh(Integer key, String value) {
+                        return value.length();
+                    }
+                });
+        for (int i = 0; i < 100; i++) {
+            cm.put(new Integer(i), "0123456789");
+        }
+        assertTrue("Weight was " + cm.getWeight(), cm.getWeight() <= 100);
+        assertTrue(cm.size() <= 10);
+    }
+}
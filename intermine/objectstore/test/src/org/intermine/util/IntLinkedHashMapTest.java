@@ -0,0 +1,84 @@
+package org.intermine.util;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class IntLinkedHashMapTest extends TestCase
+{
+    public IntLinkedHashMapTest(String arg) {
+        super(arg);
+    }
+
+    public void testInsertionOrder() throws Exception {
+        IntLinkedHashMap<String> map = new IntLinkedHashMap<String>();
+        map.put(5, "five");
+        map.put(-3, "minus three");
+        map.put(0, "zero");
+        assertEquals("minus three", map.get(-3));
+        assertNull(map.get(7));
+        assertEquals("five", map.put(5, "FIVE"));
+        assertTrue(Arrays.equals(new int[] {5, -3, 0}, map.keys()));
+        assertEquals("minus three", map.remove(-3));
+        assertNull(map.remove(-3));
+        assertFalse(map.containsKey(-3));
+        assertTrue(Arrays.equals(new int[] {5, 0}, map.keys()));
+        assertEquals(2, map.size());
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(5));
+    }
+
+    public void testAccessOrder() throws Exception {
+        IntLinkedHashMap<String> map = new IntLinkedHashMap<String>(4, true);
+        for (int i = 1; i <= 4; i++) {
+            map.put(i, "" + i);
+        }
+        map.get(2);
+        map.put(1, "one");
+        map.peek(3);
+        assertTrue(Arrays.equals(new int[] {3, 4, 2, 1}, map.keys()));
+        assertEquals(3, map.firstKey());
+    }
+
+    public void testAgainstLinkedHashMap() throws Exception {
+        IntLinkedHashMap<Integer> map = new IntLinkedHashMap<Integer>(4, true);
+        LinkedHashMap<Integer, Integer> expected = new LinkedHashMap<Integer, Integer>(16, 0.75F,
+                true);
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            // Keys that collide in the low bits, to exercise probing and deletion
+            int key = random.nextInt(500) * 1024;
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertEquals(expected.put(key, i), map.put(key, i));
+                    break;
+                case 1:
+                    assertEquals(expected.get(key), map.get(key));
+                    break;
+                default:
+                    assertEquals(expected.remove(key), map.remove(key));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        int[] keys = map.keys();
+        int i = 0;
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getKey().intValue(), keys[i++]);
+            assertEquals(entry.getValue(), map.peek(entry.getKey().intValue()));
+        }
+    }
+}
@@ -14,8 +14,6 @@ import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.apache.commons.math3.distribution.HypergeometricDistribution;
-
 /**
  * Calculate enrichment of an attribute applied to members of a sample that is a subset of a larger
  * population.  The result is a p-value per attribute that represents the probability that the
@@ -23,7 +21,7 @@ import org.apache.commons.math3.distribution.HypergeometricDistribution;
  * occurrences in the population as a whole.  Thus a low p-value indicates that the attribute may
  * be characteristic of the items in the sample.
  *
- * Enrichment is implemented using a Hypergeometric test.
+ * Enrichment is implemented using a Hypergeometric test, see Hypergeometric.
  *
  * @author Julie Sullivan
  * @author Richard Smith
@@ -65,9 +63,8 @@ public final class EnrichmentCalculation
             PopulationInfo pi = annotatedPopulationInfo.get(attribute);
             Integer populationCount = (pi != null) ? pi.getSize() : 0;
 
-            HypergeometricDistribution h =
-                new HypergeometricDistribution(populationSize, populationCount, sampleSize);
-            Double pValue = h.upperCumulativeProbability(sampleCount);
+            double pValue = Hypergeometric.upperCumulativeProbability(populationSize,
+                    populationCount, sampleSize, sampleCount);
             rawResults.put(attribute, new BigDecimal(pValue));
         }
 
@@ -20,7 +20,6 @@ import org.intermine.objectstore.ObjectStore;
 import org.intermine.objectstore.query.Query;
 import org.intermine.objectstore.query.Results;
 import org.intermine.objectstore.query.ResultsRow;
-import org.intermine.util.CacheMap;
 
 /**
  * Executes queries and summarises data for a specific EnrichmentWidgetLdr ready for calculation.
@@ -37,18 +36,12 @@ public class EnrichmentInputWidgetLdr implements EnrichmentInput
     private Map<String, String> labels = null;
     private static final int BATCH_SIZE = 20000;
 
-    // population queries that don't involve bags can be cached between widget executions
-    private static CacheMap<String, PopulationInfo> populationCache = new CacheMap<String,
-        PopulationInfo>();
-    private static CacheMap<String, Map<String, PopulationInfo>> populationCountsCache =
-        new CacheMap<String, Map<String, PopulationInfo>>();
-
-    // TODO population counts and sizes are no longer cached
-
-    // TODO make a static cache from populate query to size and populationCounts maps,
-    // this should only have a few entries per widget depending on the organism composition
-    // of bags and other parameters, e.g. GO namespace.  But log cache size for a bit to make
-    // sure.  This should be a CacheMap, old cache was just a standard Map.
+    // population queries that don't involve bags are the same for every request for a given
+    // widget, filter and set of organisms, so are cached for the life of the webapp
+    private static PopulationCache<PopulationInfo> populationCache =
+        new PopulationCache<PopulationInfo>("population sizes");
+    private static PopulationCache<Map<String, PopulationInfo>> populationCountsCache =
+        new PopulationCache<Map<String, PopulationInfo>>("population counts");
 
     /**
      * Construct with an EnrichmentWidgetLdr that contains queries needed for specific widget tests.
@@ -9,8 +9,11 @@ package org.intermine.web.logic.widget;
  * information or http://www.gnu.org/copyleft/lesser.html.
  *
  */
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 
 import org.intermine.api.profile.InterMineBag;
 import org.intermine.objectstore.ObjectStore;
@@ -46,6 +49,7 @@ public class EnrichmentWidgetImplLdr extends WidgetLdr
     private InterMineBag populationBag;
     private boolean extraCorrectionCoefficient;
     private CorrectionCoefficient correctionCoefficient;
+    private Map<String, Collection<Object>> listValues = new HashMap<String, Collection<Object>>();
 
     /**
      * Construct an Enrichment widget loader, which performs the queries needed for
@@ -234,10 +238,11 @@ public class EnrichmentWidgetImplLdr extends WidgetLdr
                         QueryField qfStartClassId = new QueryField(startClass, "id");
                         csSubQuery.addConstraint(new BagConstraint(qfStartClassId,
                                                  ConstraintOp.IN, bag.getOsb()));
-                        QueryField outerQFConstraint = new QueryField(subQuery, qfConstraint);
-                        cs.addConstraint(new SimpleConstraint(qfConstraint, ConstraintOp.EQUALS,
-                                                              outerQFConstraint));
-                        query.addFrom(subQuery);
+                        // constrain to the values themselves rather than to the subquery, so
+                        // that the population query doesn't refer to the list and its results
+                        // can be cached for all lists with the same values, e.g. organisms
+                        cs.addConstraint(new BagConstraint(qfConstraint, ConstraintOp.IN,
+                                                           getListValues(pc.getPath(), subQuery)));
                     }
                 } else {
                     if (queryValue != null) {
@@ -288,6 +293,19 @@ public class EnrichmentWidgetImplLdr extends WidgetLdr
         }
     }
 
+    /**
+     * Returns the distinct values of a list constraint path for the objects in the list, running
+     * the query only once for each path.
+     */
+    private Collection<Object> getListValues(String path, Query subQuery) {
+        Collection<Object> values = listValues.get(path);
+        if (values == null) {
+            values = new LinkedHashSet<Object>(os.executeSingleton(subQuery));
+            listValues.put(path, values);
+        }
+        return values;
+    }
+
     /**
      * @param calcTotal whether or not to calculate the total number of annotated objects in the
      * sample
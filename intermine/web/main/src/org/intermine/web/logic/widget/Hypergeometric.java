@@ -0,0 +1,115 @@
+package org.intermine.web.logic.widget;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+/**
+ * The upper tail of the hypergeometric distribution, calculated from a table of log factorials
+ * that is shared between calculations and grows to the largest population seen. Each p-value
+ * costs one lookup of the largest term in the tail, and then loops outwards from it using the
+ * ratio between consecutive terms, so an enrichment calculation creates no objects per attribute.
+ *
+ * @author julie
+ */
+public final class Hypergeometric
+{
+    private static volatile double[] logFactorials = new double[] {0.0};
+
+    private Hypergeometric() {
+    }
+
+    /**
+     * Returns ln(n!).
+     *
+     * @param n a non-negative number
+     * @return the natural logarithm of n factorial
+     */
+    public static double logFactorial(int n) {
+        double[] table = logFactorials;
+        if (n >= table.length) {
+            table = growTable(n);
+        }
+        return table[n];
+    }
+
+    private static synchronized double[] growTable(int n) {
+        double[] table = logFactorials;
+        if (n < table.length) {
+            return table;
+        }
+        double[] newTable = new double[Math.max(n + 1, Math.min(2 * table.length,
+                        Integer.MAX_VALUE / 2))];
+        System.arraycopy(table, 0, newTable, 0, table.length);
+        for (int i = table.length; i < newTable.length; i++) {
+            newTable[i] = newTable[i - 1] + Math.log(i);
+        }
+        logFactorials = newTable;
+        return newTable;
+    }
+
+    private static double logChoose(int n, int k) {
+        return logFactorial(n) - logFactorial(k) - logFactorial(n - k);
+    }
+
+    /**
+     * Returns the probability of drawing at least sampleCount annotated items in a sample of
+     * sampleSize items drawn without replacement from a population of populationSize items, of
+     * which populationCount are annotated. This is P(X &gt;= sampleCount), the same as
+     * HypergeometricDistribution.upperCumulativeProbability() in commons-math.
+     *
+     * @param populationSize the number of items in the population, N
+     * @param populationCount the number of annotated items in the population, M
+     * @param sampleSize the number of items in the sample, n
+     * @param sampleCount the number of annotated items in the sample, k
+     * @return a p-value
+     */
+    public static double upperCumulativeProbability(int populationSize, int populationCount,
+            int sampleSize, int sampleCount) {
+        int lower = Math.max(0, sampleSize + populationCount - populationSize);
+        int upper = Math.min(populationCount, sampleSize);
+        if (sampleCount <= lower) {
+            return 1.0;
+        }
+        if (sampleCount > upper) {
+            return 0.0;
+        }
+        // Sum the terms relative to the largest of them, which is at the mode or at k if k is
+        // above the mode, so that the first term cannot underflow when k is far below the mean.
+        int mode = (int) (((double) sampleSize + 1) * ((double) populationCount + 1)
+                / ((double) populationSize + 2));
+        int first = Math.max(sampleCount, Math.max(lower, Math.min(upper, mode)));
+        double total = 0.0;
+        double term = 1.0;
+        for (int i = first; i <= upper; i++) {
+            total += term;
+            // P(X = i + 1) / P(X = i) = (M - i)(n - i) / ((i + 1)(N - M - n + i + 1))
+            term *= ((double) (populationCount - i) * (sampleSize - i))
+                / ((double) (i + 1) * (populationSize - populationCount - sampleSize + i + 1));
+            if (term < total * 1e-17) {
+                break;
+            }
+        }
+        term = 1.0;
+        for (int i = first; i > sampleCount; i--) {
+            // P(X = i - 1) / P(X = i) = i(N - M - n + i) / ((M - i + 1)(n - i + 1))
+            term *= ((double) i * (populationSize - populationCount - sampleSize + i))
+                / ((double) (populationCount - i + 1) * (sampleSize - i + 1));
+            total += term;
+            if (term < total * 1e-17) {
+                break;
+            }
+        }
+        // ln P(X = first) = ln C(M, first) + ln C(N - M, n - first) - ln C(N, n)
+        total *= Math.exp(logChoose(populationCount, first)
+                + logChoose(populationSize - populationCount, sampleSize - first)
+                - logChoose(populationSize, sampleSize));
+        return Math.min(total, 1.0);
+    }
+}
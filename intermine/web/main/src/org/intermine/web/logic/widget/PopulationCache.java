@@ -0,0 +1,119 @@
+package org.intermine.web.logic.widget;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A cache of the results of enrichment widget population queries, keyed by the text of the
+ * query. Population queries only refer to lists when the user chooses a background population,
+ * so for a given widget, filter and set of organisms the query, and so its results, are the same
+ * for every request. The production database does not change while a webapp is running, so
+ * entries are held for the life of the webapp rather than in soft references, up to a maximum
+ * number of entries after which the least recently used are dropped.
+ *
+ * @param <V> the type of the cached values
+ * @author julie
+ */
+public class PopulationCache<V>
+{
+    private static final Logger LOG = Logger.getLogger(PopulationCache.class);
+    private static final int DEFAULT_MAX_ENTRIES = 500;
+
+    private final String name;
+    private final Map<String, V> entries;
+    private int hits = 0;
+    private int misses = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param name the name of the cache, for log messages
+     */
+    public PopulationCache(String name) {
+        this(name, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param name the name of the cache, for log messages
+     * @param maxEntries the number of entries to keep
+     */
+    public PopulationCache(String name, final int maxEntries) {
+        this.name = name;
+        this.entries = new LinkedHashMap<String, V>(16, 0.75F, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached result of a population query.
+     *
+     * @param query the text of the query
+     * @return the result, or null if it is not cached
+     */
+    public synchronized V get(String query) {
+        V value = entries.get(query);
+        if (value == null) {
+            misses++;
+            if (misses % 100 == 0) {
+                LOG.info(this);
+            }
+        } else {
+            hits++;
+        }
+        return value;
+    }
+
+    /**
+     * Adds the result of a population query to the cache.
+     *
+     * @param query the text of the query
+     * @param value the result
+     */
+    public synchronized void put(String query, V value) {
+        entries.put(query, value);
+    }
+
+    /**
+     * Returns the number of entries in the cache.
+     *
+     * @return an int
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes all the entries from the cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized String toString() {
+        return "PopulationCache " + name + ": " + entries.size() + " entries, " + hits
+            + " hits, " + misses + " misses";
+    }
+}
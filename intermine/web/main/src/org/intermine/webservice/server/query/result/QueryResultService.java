@@ -333,7 +333,9 @@ public class QueryResultService extends AbstractQueryService
             canGoFaster = firstResult > BATCH_SIZE || maxResults > BATCH_SIZE;
             executor.setBatchSize(BATCH_SIZE);
             try {
-                it = executor.execute(pq, firstResult, maxResults);
+                // Reading more than one batch is cheaper by seeking than with an OFFSET. Queries
+                // that can't be paged that way still go faster.
+                it = executor.execute(pq, firstResult, maxResults, canGoFaster);
             } catch (ObjectStoreQueryDurationException e) {
                 throw new ServiceException("Query would take too long to run");
             } catch (ObjectStoreException e) {
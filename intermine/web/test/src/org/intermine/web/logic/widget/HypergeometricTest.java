@@ -0,0 +1,63 @@
+package org.intermine.web.logic.widget;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import junit.framework.TestCase;
+
+import org.apache.commons.math3.distribution.HypergeometricDistribution;
+
+/**
+ * Tests for Hypergeometric.
+ * @author julie
+ */
+public class HypergeometricTest extends TestCase
+{
+    public void testLogFactorial() {
+        assertEquals(0.0, Hypergeometric.logFactorial(0), 0.0);
+        assertEquals(0.0, Hypergeometric.logFactorial(1), 0.0);
+        assertEquals(Math.log(120), Hypergeometric.logFactorial(5), 1e-12);
+        assertEquals(Math.log(3628800), Hypergeometric.logFactorial(10), 1e-12);
+    }
+
+    public void testSmall() {
+        // 2 of 5 annotated, draw 2: P(X >= 1) = 1 - C(3,2)/C(5,2) = 0.7, P(X >= 2) = 0.1
+        assertEquals(1.0, Hypergeometric.upperCumulativeProbability(5, 2, 2, 0), 0.0);
+        assertEquals(0.7, Hypergeometric.upperCumulativeProbability(5, 2, 2, 1), 1e-12);
+        assertEquals(0.1, Hypergeometric.upperCumulativeProbability(5, 2, 2, 2), 1e-12);
+        assertEquals(0.0, Hypergeometric.upperCumulativeProbability(5, 2, 2, 3), 0.0);
+        // no annotated items in the population
+        assertEquals(0.0, Hypergeometric.upperCumulativeProbability(100, 0, 10, 1), 0.0);
+    }
+
+    public void testAgainstCommonsMath() {
+        int[][] cases = new int[][] {
+            // N, M, n, k
+            {20000, 150, 300, 1},
+            {20000, 150, 300, 12},
+            {20000, 4000, 300, 80},
+            {20000, 4000, 300, 20},
+            {15000, 12, 1000, 5},
+            {30000, 1500, 25000, 1300},
+            {500, 100, 450, 95},
+            // k far below the mean, where P(X = k) underflows
+            {30000, 10000, 3000, 10},
+            {30000, 10000, 3000, 900},
+            {20000, 4000, 3000, 600},
+        };
+        for (int[] c : cases) {
+            double expected = new HypergeometricDistribution(c[0], c[1], c[2])
+                .upperCumulativeProbability(c[3]);
+            double actual = Hypergeometric.upperCumulativeProbability(c[0], c[1], c[2], c[3]);
+            assertEquals("N=" + c[0] + " M=" + c[1] + " n=" + c[2] + " k=" + c[3],
+                    expected, actual, Math.max(1e-12, expected * 1e-8));
+        }
+    }
+}
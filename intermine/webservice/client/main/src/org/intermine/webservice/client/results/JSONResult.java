@@ -13,6 +13,7 @@ package org.intermine.webservice.client.results;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import org.intermine.webservice.client.exceptions.ServiceException;
 import org.intermine.webservice.client.util.ErrorMessageParser;
@@ -21,6 +22,7 @@ import org.intermine.webservice.client.util.HttpConnection;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
 /**
  * @author Alex Kalderimis
@@ -85,29 +87,141 @@ public class JSONResult extends ResultSet
         return line;
     }
 
+    /**
+     * Reads the objects in the results array one at a time, straight from the response, so
+     * that only one object is held in memory at once.
+     */
     private class JSONIterator implements Iterator<JSONObject>
     {
 
-        private JSONArray results;
-        private int index = 0;
+        private final JSONTokener tokener;
+        private JSONObject next;
+        private boolean wasSuccessful = true;
+        private String error = null;
 
         public JSONIterator() {
-            results = getResults();
+            tokener = new JSONTokener(getReader());
+            try {
+                if (openResults()) {
+                    next = readNext();
+                } else {
+                    finish();
+                }
+            } catch (JSONException e) {
+                closeConnection();
+                throw new ServiceException("Bad JSON", e);
+            }
+        }
+
+        /**
+         * Read up to the start of the results array, returning false if there is none.
+         */
+        private boolean openResults() throws JSONException {
+            char c = tokener.nextClean();
+            if (c == '<') {
+                StringBuilder sb = new StringBuilder("<");
+                while (tokener.more()) {
+                    sb.append(tokener.next());
+                }
+                closeConnection();
+                throw new ServiceException(ErrorMessageParser.parseError(sb.toString()));
+            }
+            if (c != '{') {
+                throw tokener.syntaxError("A JSONObject text must begin with '{'");
+            }
+            while (true) {
+                c = tokener.nextClean();
+                if (c == '}') {
+                    return false;
+                }
+                if (c == ',') {
+                    continue;
+                }
+                tokener.back();
+                String key = tokener.nextValue().toString();
+                if (tokener.nextClean() != ':') {
+                    throw tokener.syntaxError("Expected a ':' after a key");
+                }
+                if ("results".equals(key)) {
+                    if (tokener.nextClean() != '[') {
+                        throw tokener.syntaxError("Expected the results to be an array");
+                    }
+                    return true;
+                }
+                readAttribute(key, tokener.nextValue());
+            }
+        }
+
+        private void readAttribute(String key, Object value) {
+            if ("wasSuccessful".equals(key)) {
+                wasSuccessful = Boolean.TRUE.equals(value) || "true".equals(value);
+            } else if ("error".equals(key) && value != null) {
+                error = value.toString();
+            }
+        }
+
+        private JSONObject readNext() throws JSONException {
+            char c = tokener.nextClean();
+            if (c == ',') {
+                c = tokener.nextClean();
+            }
+            if (c == ']') {
+                readRest();
+                finish();
+                return null;
+            }
+            tokener.back();
+            Object value = tokener.nextValue();
+            if (!(value instanceof JSONObject)) {
+                throw tokener.syntaxError("Expected a JSONObject in the results");
+            }
+            return (JSONObject) value;
+        }
+
+        /**
+         * Read the status attributes after the results array.
+         */
+        private void readRest() throws JSONException {
+            while (true) {
+                char c = tokener.nextClean();
+                if (c == '}' || c == 0) {
+                    return;
+                }
+                if (c == ',') {
+                    continue;
+                }
+                tokener.back();
+                String key = tokener.nextValue().toString();
+                if (tokener.nextClean() != ':') {
+                    throw tokener.syntaxError("Expected a ':' after a key");
+                }
+                readAttribute(key, tokener.nextValue());
+            }
+        }
+
+        private void finish() {
+            closeConnection();
+            if (!wasSuccessful) {
+                throw new ServiceException(error);
+            }
         }
 
         public boolean hasNext() {
-            return (index < results.length());
+            return next != null;
         }
 
         public JSONObject next() {
-            JSONObject next;
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            JSONObject tmp = next;
             try {
-                next = results.getJSONObject(index);
+                next = readNext();
             } catch (JSONException e) {
+                closeConnection();
                 throw new RuntimeException("Problem parsing json object", e);
             }
-            index++;
-            return next;
+            return tmp;
         }
 
         public void remove() {
@@ -118,7 +118,10 @@ public abstract class ResultSet
         return nextLine;
     }
 
-    private void closeConnection() {
+    /**
+     * Close the underlying connection, if there is one, returning it to the connection pool.
+     */
+    protected void closeConnection() {
         if (connection != null) {
             connection.close();
         }
@@ -0,0 +1,151 @@
+package org.intermine.webservice.client.util;
+
+/*
+ * Copyright (C) 2002-2014 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Properties;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.ProxyHost;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+
+/**
+ * The HttpClient shared by every HttpConnection in the JVM, so that requests made through any
+ * service from any ServiceFactory reuse open keep-alive connections to the server, instead of
+ * paying for a new TCP and TLS handshake each time.
+ *
+ * The number of connections kept open can be set with the system properties
+ * <code>intermine.ws.maxConnectionsPerHost</code> (default 8) and
+ * <code>intermine.ws.maxTotalConnections</code> (default 32), or with the setters here. A
+ * thread wanting a connection when the limit is reached waits for one to be released, for up to
+ * <code>intermine.ws.connectionManagerTimeout</code> milliseconds (default 60000), and then the
+ * request fails. A connection is released when the response has been read to the end or closed,
+ * so results that are abandoned part way through hold their connection until they are garbage
+ * collected; the timeout stops such leaks from making later requests hang forever.
+ *
+ * @author julie
+ */
+public final class HttpClientPool
+{
+    /** The system property for the maximum number of connections to each host. **/
+    public static final String MAX_PER_HOST_PROPERTY = "intermine.ws.maxConnectionsPerHost";
+    /** The system property for the maximum number of connections to all hosts. **/
+    public static final String MAX_TOTAL_PROPERTY = "intermine.ws.maxTotalConnections";
+    /** The system property for how long to wait for a connection from the pool. **/
+    public static final String TIMEOUT_PROPERTY = "intermine.ws.connectionManagerTimeout";
+
+    private static final int DEFAULT_MAX_PER_HOST = 8;
+    private static final int DEFAULT_MAX_TOTAL = 32;
+    private static final int DEFAULT_TIMEOUT = 60000;
+    private static final long IDLE_TIMEOUT = 60000;
+
+    private static MultiThreadedHttpConnectionManager manager = null;
+    private static HttpClient client = null;
+
+    private HttpClientPool() {
+        // Hidden constructor.
+    }
+
+    /**
+     * Returns the shared client, creating it on first use.
+     *
+     * @return an HttpClient backed by a pool of connections
+     */
+    public static synchronized HttpClient getClient() {
+        if (client == null) {
+            manager = new MultiThreadedHttpConnectionManager();
+            HttpConnectionManagerParams params = manager.getParams();
+            params.setDefaultMaxConnectionsPerHost(getIntProperty(MAX_PER_HOST_PROPERTY,
+                        DEFAULT_MAX_PER_HOST));
+            params.setMaxTotalConnections(getIntProperty(MAX_TOTAL_PROPERTY,
+                        DEFAULT_MAX_TOTAL));
+            params.setStaleCheckingEnabled(true);
+            client = new HttpClient(manager);
+            client.getParams().setConnectionManagerTimeout(getIntProperty(TIMEOUT_PROPERTY,
+                        DEFAULT_TIMEOUT));
+            setProxy(client);
+        }
+        return client;
+    }
+
+    /**
+     * Sets the maximum number of connections open to any one server at once.
+     *
+     * @param max the number of connections
+     */
+    public static synchronized void setMaxConnectionsPerHost(int max) {
+        getClient();
+        manager.getParams().setDefaultMaxConnectionsPerHost(max);
+    }
+
+    /**
+     * Sets the maximum number of connections open at once.
+     *
+     * @param max the number of connections
+     */
+    public static synchronized void setMaxTotalConnections(int max) {
+        getClient();
+        manager.getParams().setMaxTotalConnections(max);
+    }
+
+    /**
+     * Sets how long to wait for a connection from the pool when all the connections are in use.
+     *
+     * @param timeout timeout in milliseconds, or 0 to wait forever
+     */
+    public static synchronized void setConnectionManagerTimeout(long timeout) {
+        getClient().getParams().setConnectionManagerTimeout(timeout);
+    }
+
+    /**
+     * Closes connections that have not been used for a minute. The pool does not do this by
+     * itself, so long-running programs that talk to a server in bursts may call this between
+     * them.
+     */
+    public static synchronized void closeIdleConnections() {
+        if (manager != null) {
+            manager.closeIdleConnections(IDLE_TIMEOUT);
+        }
+    }
+
+    /**
+     * Closes all the pooled connections. The next request will create a new pool.
+     */
+    public static synchronized void shutdown() {
+        if (manager != null) {
+            manager.shutdown();
+            manager = null;
+            client = null;
+        }
+    }
+
+    private static int getIntProperty(String name, int defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static void setProxy(HttpClient httpClient) {
+        Properties systemProps = System.getProperties();
+        if (systemProps.containsKey("http.proxyHost")) {
+            String server = systemProps.getProperty("http.proxyHost");
+            Integer port = Integer.valueOf(systemProps.getProperty("http.proxyPort", "-1"));
+            ProxyHost ph = new ProxyHost(server, port);
+            httpClient.getHostConfiguration().setProxyHost(ph);
+        }
+    }
+}
@@ -12,16 +12,17 @@ package org.intermine.webservice.client.util;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.HttpURLConnection;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
+import java.util.zip.GZIPInputStream;
 
 import org.apache.commons.httpclient.DefaultHttpMethodRetryHandler;
-import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpException;
 import org.apache.commons.httpclient.HttpMethodBase;
-import org.apache.commons.httpclient.ProxyHost;
 import org.apache.commons.httpclient.methods.DeleteMethod;
 import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.commons.httpclient.methods.PostMethod;
@@ -48,6 +49,10 @@ import org.json.JSONObject;
  * The HttpConnection is class wrapping implementation details of http connection and the
  * implementation can change easily.
  *
+ * Connections come from the pool in HttpClientPool, and go back to it when the connection is
+ * closed, so close() should always be called once the response has been read. Responses are
+ * requested gzipped, and are transparently decompressed if the server obliges.
+ *
  * @author Jakub Kulaviak
  **/
 public class HttpConnection
@@ -63,6 +68,8 @@ public class HttpConnection
 
     private boolean opened = false;
 
+    private String responseBody = null;
+
     /**
      * @param request client request
      */
@@ -76,12 +83,27 @@ public class HttpConnection
     public InputStream getResponseStream() {
         connect();
         try {
-            return executedMethod.getResponseBodyAsStream();
+            return getDecodedStream();
         } catch (IOException e) {
             throw new RuntimeException("Fatal transport error.", e);
         }
     }
 
+    /**
+     * Returns the response body, decompressed if it was sent gzipped.
+     */
+    private InputStream getDecodedStream() throws IOException {
+        InputStream in = executedMethod.getResponseBodyAsStream();
+        if (in == null) {
+            return null;
+        }
+        Header encoding = executedMethod.getResponseHeader("Content-Encoding");
+        if (encoding != null && encoding.getValue().toLowerCase().contains("gzip")) {
+            return new GZIPInputStream(in);
+        }
+        return in;
+    }
+
     /**
      * Opens connection.
      */
@@ -116,9 +138,6 @@ public class HttpConnection
     }
 
     private void executeMethod() {
-        HttpClient client = new HttpClient();
-        client.getParams().setConnectionManagerTimeout(timeout);
-        setProxy(client);
         String url = request.getEncodedUrl();
         if (request.getType() == RequestType.GET) {
             executedMethod = new GetMethod(url);
@@ -139,30 +158,25 @@ public class HttpConnection
         // Provide custom retry handler is necessary
         executedMethod.getParams().setParameter(HttpMethodParams.RETRY_HANDLER,
                 new DefaultHttpMethodRetryHandler(retryCount, false));
+        // The client is shared, so the timeout is set on the method rather than on the client.
+        executedMethod.getParams().setSoTimeout(timeout);
+        executedMethod.setRequestHeader("Accept-Encoding", "gzip");
         for (String name : request.getHeaders().keySet()) {
             executedMethod.setRequestHeader(name, request.getHeader(name));
         }
         try {
             // Execute the method.
-            client.executeMethod(executedMethod);
+            HttpClientPool.getClient().executeMethod(executedMethod);
             checkResponse();
         } catch (HttpException e) {
+            executedMethod.releaseConnection();
             throw new RuntimeException("Fatal protocol violation.", e);
         } catch (IOException e) {
+            executedMethod.releaseConnection();
             throw new RuntimeException("Fatal transport error connecting to " + url, e);
         }
     }
 
-    private void setProxy(HttpClient client) {
-        Properties systemProps = System.getProperties();
-        if (systemProps.containsKey("http.proxyHost")) {
-            String server = systemProps.getProperty("http.proxyHost");
-            Integer port = Integer.valueOf(systemProps.getProperty("http.proxyPort", "-1"));
-            ProxyHost ph = new ProxyHost(server, port);
-            client.getHostConfiguration().setProxyHost(ph);
-        }
-    }
-
     private void setMultiPartPostEntity(PostMethod postMethod, MultiPartRequest req) {
         List<Part> parts = req.getParts();
         if (!parts.isEmpty()) {
@@ -229,6 +243,9 @@ public class HttpConnection
                 throw new ServiceException("Error while accessing " + request, e);
             } catch (IOException e) {
                 throw new ServiceException("Error while accessing " + request, e);
+            } finally {
+                // Nobody else will get the chance to return the connection to the pool.
+                executedMethod.releaseConnection();
             }
         }
     }
@@ -244,7 +261,7 @@ public class HttpConnection
      */
     protected void handleErrorResponse() throws IOException {
 
-        String message = executedMethod.getResponseBodyAsString();
+        String message = readBody();
         try {
             JSONObject jo = new JSONObject(message);
             message = jo.getString("error");
@@ -301,7 +318,7 @@ public class HttpConnection
         }
         String res = null;
         try {
-            res = executedMethod.getResponseBodyAsString();
+            res = readBody();
         } catch (IOException e) {
             throw new ServiceException(e);
         } finally {
@@ -318,9 +335,28 @@ public class HttpConnection
             throwNotConnectedException();
         }
         try {
-            return executedMethod.getResponseBodyAsStream();
+            return getDecodedStream();
         } catch (IOException e) {
             throw new ServiceException(e);
         }
     }
+
+    private String readBody() throws IOException {
+        if (responseBody != null) {
+            return responseBody;
+        }
+        InputStream in = getDecodedStream();
+        if (in == null) {
+            return null;
+        }
+        Reader reader = new InputStreamReader(in, executedMethod.getResponseCharSet());
+        StringBuilder sb = new StringBuilder();
+        char[] buffer = new char[8192];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            sb.append(buffer, 0, read);
+        }
+        responseBody = sb.toString();
+        return responseBody;
+    }
 }
@@ -0,0 +1,67 @@
+package org.intermine.webservice.client.results;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.intermine.webservice.client.exceptions.ServiceException;
+import org.json.JSONObject;
+
+public class JSONResultTest extends TestCase {
+
+    private static final String HEADER = "{\"rootClass\":\"Employee\",\"modelName\":\"testmodel\","
+        + "\"views\":[\"Employee.name\"],\"results\":[\n";
+
+    public JSONResultTest(String name) {
+        super(name);
+    }
+
+    public void testIterator() throws Exception {
+        String json = HEADER
+            + "{\"class\":\"Employee\",\"name\":\"EmployeeA1\",\"objectId\":1},\n"
+            + "{\"class\":\"Employee\",\"name\":\"EmployeeA2\",\"objectId\":2},\n"
+            + "{\"class\":\"Employee\",\"name\":\"EmployeeA3\",\"objectId\":3}\n"
+            + "],\"executionTime\":\"2014.01.01 12:00::00\",\"wasSuccessful\":true,"
+            + "\"error\":null,\"statusCode\":200}";
+        List<String> names = new ArrayList<String>();
+        Iterator<JSONObject> it = new JSONResult(json).getIterator();
+        while (it.hasNext()) {
+            names.add(it.next().getString("name"));
+        }
+        assertEquals(3, names.size());
+        assertEquals("EmployeeA1", names.get(0));
+        assertEquals("EmployeeA3", names.get(2));
+    }
+
+    public void testIteratorAgreesWithGetObjects() throws Exception {
+        String json = HEADER
+            + "{\"class\":\"Employee\",\"name\":\"EmployeeA1\",\"objectId\":1,"
+            + "\"department\":{\"class\":\"Department\",\"name\":\"DepartmentA\"}},\n"
+            + "],\"wasSuccessful\":true,\"error\":null,\"statusCode\":200}";
+        List<JSONObject> objects = new JSONResult(json).getObjects();
+        Iterator<JSONObject> it = new JSONResult(json).getIterator();
+        assertTrue(it.hasNext());
+        assertEquals(objects.get(0).toString(), it.next().toString());
+        assertFalse(it.hasNext());
+    }
+
+    public void testEmpty() throws Exception {
+        String json = HEADER + "],\"wasSuccessful\":true,\"error\":null,\"statusCode\":200}";
+        assertFalse(new JSONResult(json).getIterator().hasNext());
+    }
+
+    public void testError() throws Exception {
+        String json = HEADER
+            + "{\"class\":\"Employee\",\"name\":\"EmployeeA1\",\"objectId\":1}\n"
+            + "],\"wasSuccessful\":false,\"error\":\"Something went wrong\",\"statusCode\":500}";
+        Iterator<JSONObject> it = new JSONResult(json).getIterator();
+        try {
+            it.next();
+            fail("Expected a ServiceException");
+        } catch (ServiceException e) {
+            assertEquals("Something went wrong", e.getMessage());
+        }
+    }
+}
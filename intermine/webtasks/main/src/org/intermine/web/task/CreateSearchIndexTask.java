@@ -35,6 +35,7 @@ public class CreateSearchIndexTask extends Task
 
     protected String osAlias = null;
     protected ObjectStore os;
+    protected int reportInterval = 60;
 
     /**
      * Set the alias of the main object store.
@@ -44,12 +45,20 @@ public class CreateSearchIndexTask extends Task
         this.osAlias = osAlias;
     }
 
+    /**
+     * Set how often to report the progress of indexing.
+     * @param reportInterval the number of seconds between reports, or 0 for none
+     */
+    public void setReportInterval(int reportInterval) {
+        this.reportInterval = reportInterval;
+    }
+
     private ObjectStore getObjectStore() throws Exception {
         if (osAlias == null) {
             throw new BuildException("objectStoreWriter attribute is not set");
         }
         if (os == null) {
-            System .out.println("Connecting to db: " + osAlias);
+            log("Connecting to db: " + osAlias);
             os = ObjectStoreFactory.getObjectStore(osAlias);
         }
         return os;
@@ -57,7 +66,7 @@ public class CreateSearchIndexTask extends Task
 
     @Override
     public void execute() {
-        System .out.println("Creating lucene index for keyword search...");
+        log("Creating lucene index for keyword search...");
 
         ObjectStore objectStore;
         try {
@@ -96,9 +105,64 @@ public class CreateSearchIndexTask extends Task
             ClassKeyHelper.readKeys(objectStore.getModel(), classKeyProperties);
 
         //index and save
-        KeywordSearch.saveIndexToDatabase(objectStore, classKeys);
+        Thread reporter = startProgressReporter();
+        try {
+            KeywordSearch.saveIndexToDatabase(objectStore, classKeys);
+        } finally {
+            if (reporter != null) {
+                reporter.interrupt();
+            }
+        }
         KeywordSearch.deleteIndexDirectory();
     }
 
+    /**
+     * Start a thread that prints the number of documents indexed, and the rate, every
+     * reportInterval seconds.
+     */
+    private Thread startProgressReporter() {
+        if (reportInterval <= 0) {
+            return null;
+        }
+        final long start = System.currentTimeMillis();
+        Thread reporter = new Thread("CreateSearchIndexProgress") {
+            @Override
+            public void run() {
+                int lastIndexed = 0;
+                long lastTime = start;
+                try {
+                    while (true) {
+                        Thread.sleep(reportInterval * 1000L);
+                        long now = System.currentTimeMillis();
+                        int indexed = KeywordSearch.getDocumentsIndexed();
+                        StringBuilder message = new StringBuilder("Indexed ").append(indexed);
+                        if (KeywordSearch.getDocumentCount() > 0) {
+                            message.append(" of about ").append(KeywordSearch.getDocumentCount());
+                        }
+                        message.append(" documents");
+                        if (KeywordSearch.getPartitionCount() > 0) {
+                            message.append(", ").append(KeywordSearch.getPartitionsIndexed())
+                                .append(" of ").append(KeywordSearch.getPartitionCount())
+                                .append(" partitions");
+                        }
+                        message.append(" - ")
+                            .append((indexed - lastIndexed) * 1000L / Math.max(1, now - lastTime))
+                            .append(" documents/second now, ")
+                            .append(indexed * 1000L / Math.max(1, now - start))
+                            .append(" overall");
+                        log(message.toString());
+                        lastIndexed = indexed;
+                        lastTime = now;
+                    }
+                } catch (InterruptedException e) {
+                    // indexing has finished
+                }
+            }
+        };
+        reporter.setDaemon(true);
+        reporter.start();
+        return reporter;
+    }
+
 
 }